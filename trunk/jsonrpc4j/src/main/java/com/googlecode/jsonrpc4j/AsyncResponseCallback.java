@@ -0,0 +1,22 @@
+package com.googlecode.jsonrpc4j;
+
+/**
+ * Told when a request handled by
+ * {@link JsonRpcServer#handleAsync(java.io.InputStream, OutputStreamWrapper, AsyncResponseCallback)}
+ * is finished with.  Exactly one of the methods is called, exactly once.
+ */
+public interface AsyncResponseCallback {
+
+	/**
+	 * Called once the response, if there is one, has been written.
+	 */
+	void onResponseWritten();
+
+	/**
+	 * Called if writing the response failed or, when the server
+	 * re-throws exceptions, with the error the method threw.
+	 * @param error the error
+	 */
+	void onError(Throwable error);
+
+}
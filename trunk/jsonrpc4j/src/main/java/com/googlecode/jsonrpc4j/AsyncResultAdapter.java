@@ -0,0 +1,26 @@
+package com.googlecode.jsonrpc4j;
+
+/**
+ * Recognizes the asynchronous types service methods may return,
+ * such as {@link java.util.concurrent.Future}, so that the
+ * {@link JsonRpcServer} can write the response once the value
+ * is available instead of writing the returned object itself.
+ */
+public interface AsyncResultAdapter {
+
+	/**
+	 * Whether or not the given return type is asynchronous.
+	 * @param type the type
+	 * @return true if it's handled by this adapter
+	 */
+	boolean isAsyncType(Class<?> type);
+
+	/**
+	 * Calls the given {@link AsyncResultCallback} once the given
+	 * result has completed, which may be before this method returns.
+	 * @param result the result, an instance of an async type
+	 * @param callback the {@link AsyncResultCallback}
+	 */
+	void addCallback(Object result, AsyncResultCallback callback);
+
+}
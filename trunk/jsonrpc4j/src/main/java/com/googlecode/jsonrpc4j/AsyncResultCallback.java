@@ -0,0 +1,22 @@
+package com.googlecode.jsonrpc4j;
+
+/**
+ * Receives the outcome of an asynchronous result returned
+ * by a service method.  Exactly one of the methods is called,
+ * exactly once.
+ */
+public interface AsyncResultCallback {
+
+	/**
+	 * Called with the value the result completed with.
+	 * @param value the value
+	 */
+	void onSuccess(Object value);
+
+	/**
+	 * Called with the error the result failed with.
+	 * @param cause the error
+	 */
+	void onFailure(Throwable cause);
+
+}
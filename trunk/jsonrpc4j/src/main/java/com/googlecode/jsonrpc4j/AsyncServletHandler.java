@@ -0,0 +1,401 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.BasicOutputStreamWrapper;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.HeaderSetter;
+
+/**
+ * Handles servlet requests for a {@link JsonRpcServer} without
+ * tying up a container thread.  The request is put into async mode,
+ * its body is read with a {@link ReadListener} as it arrives, the
+ * request is handled on an {@link Executor} (and its response written
+ * once an asynchronous result completes, see
+ * {@link JsonRpcServer#handleAsync(InputStream, OutputStreamWrapper, AsyncResponseCallback)})
+ * and the response is written with a {@link WriteListener} as the
+ * client takes it.  This needs a Servlet 3.1 container, requests that
+ * don't support async mode are handled as by
+ * {@link JsonRpcServer#handle(HttpServletRequest, HttpServletResponse)}.
+ * Request bodies larger than {@code maxRequestSize} are answered with
+ * a 413, requests that time out or that the {@link Executor} rejects
+ * with a 503.
+ */
+public class AsyncServletHandler {
+
+	private static final Logger LOGGER = Logger.getLogger(AsyncServletHandler.class.getName());
+
+	private static final int BUFFER_SIZE = 4096;
+
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger(0);
+
+	public static final int DEFAULT_MAX_QUEUED_REQUESTS	= 1024;
+	public static final long DEFAULT_MAX_REQUEST_SIZE	= 16*1024*1024;
+
+	private final JsonRpcServer jsonRpcServer;
+	private final Executor executor;
+	private final ExecutorService ownExecutor;
+	private long timeout = -1;
+	private long maxRequestSize = DEFAULT_MAX_REQUEST_SIZE;
+
+	/**
+	 * Creates the handler with the {@link Executor}
+	 * that requests are handled on.
+	 *
+	 * @param jsonRpcServer the {@link JsonRpcServer}
+	 * @param executor the {@link Executor}
+	 */
+	public AsyncServletHandler(JsonRpcServer jsonRpcServer, Executor executor) {
+		this.jsonRpcServer	= jsonRpcServer;
+		this.executor		= executor;
+		this.ownExecutor	= null;
+	}
+
+	/**
+	 * Creates the handler with its own pool of the given
+	 * number of threads that requests are handled on, up to
+	 * {@link #DEFAULT_MAX_QUEUED_REQUESTS} waiting for one.
+	 *
+	 * @param jsonRpcServer the {@link JsonRpcServer}
+	 * @param threads the number of threads
+	 */
+	public AsyncServletHandler(JsonRpcServer jsonRpcServer, int threads) {
+		this(jsonRpcServer, threads, DEFAULT_MAX_QUEUED_REQUESTS);
+	}
+
+	/**
+	 * Creates the handler with its own pool of the given number
+	 * of threads that requests are handled on.  Requests that
+	 * arrive when the given number are already waiting for a
+	 * thread are answered with a 503.
+	 *
+	 * @param jsonRpcServer the {@link JsonRpcServer}
+	 * @param threads the number of threads
+	 * @param maxQueuedRequests the number of requests that may wait for a thread
+	 */
+	public AsyncServletHandler(JsonRpcServer jsonRpcServer, int threads, int maxQueuedRequests) {
+		if (maxQueuedRequests<1) {
+			throw new IllegalArgumentException(
+				"maxQueuedRequests must be at least 1");
+		}
+		final int poolNumber = POOL_COUNT.incrementAndGet();
+		this.jsonRpcServer	= jsonRpcServer;
+		this.ownExecutor	= new ThreadPoolExecutor(
+			threads, threads, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(maxQueuedRequests),
+			new ThreadFactory() {
+				private final AtomicInteger threadCount = new AtomicInteger(0);
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r,
+						"jsonrpc4j-servlet-"+poolNumber+"-"+threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		this.executor		= ownExecutor;
+	}
+
+	/**
+	 * Handles a servlet request.  Unless the request doesn't
+	 * support async mode this returns before the request has
+	 * been read.
+	 *
+	 * @param request the {@link HttpServletRequest}
+	 * @param response the {@link HttpServletResponse}
+	 * @throws IOException on error
+	 */
+	public void handle(HttpServletRequest request, HttpServletResponse response)
+		throws IOException {
+
+		// fall back to blocking
+		if (!request.isAsyncSupported()) {
+			jsonRpcServer.handle(request, response);
+			response.getOutputStream().flush();
+			return;
+		}
+
+		// GET requests have nothing to read
+		AsyncExchange exchange;
+		if (request.getMethod().equals("POST")) {
+			if (request.getContentLength()>maxRequestSize) {
+				response.setStatus(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+				return;
+			}
+			exchange = new AsyncExchange(request.startAsync(), response);
+			if (timeout>=0) {
+				exchange.asyncContext.setTimeout(timeout);
+			}
+			request.getInputStream().setReadListener(exchange);
+
+		} else if (request.getMethod().equals("GET")) {
+			InputStream input = jsonRpcServer.createInputStream(
+				request.getParameter("method"),
+				request.getParameter("id"),
+				request.getParameter("params"));
+			exchange = new AsyncExchange(request.startAsync(), response);
+			if (timeout>=0) {
+				exchange.asyncContext.setTimeout(timeout);
+			}
+			exchange.dispatch(input);
+
+		} else {
+			throw new IOException(
+				"Invalid request method, only POST and GET is supported");
+		}
+	}
+
+	/**
+	 * Shuts down the handler's own pool, if it has one.
+	 */
+	public void shutdown() {
+		if (ownExecutor!=null) {
+			ownExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Sets the timeout of the {@link AsyncContext} in milliseconds,
+	 * a negative value leaves the container's default.
+	 *
+	 * @param timeout the timeout to set
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Sets the largest request body, in bytes, that's read,
+	 * larger ones are answered with a 413.  It's
+	 * {@link #DEFAULT_MAX_REQUEST_SIZE} by default.
+	 *
+	 * @param maxRequestSize the maxRequestSize to set
+	 */
+	public void setMaxRequestSize(long maxRequestSize) {
+		if (maxRequestSize<1) {
+			throw new IllegalArgumentException(
+				"maxRequestSize must be at least 1");
+		}
+		this.maxRequestSize = maxRequestSize;
+	}
+
+	/**
+	 * A single request being handled in async mode.
+	 */
+	private class AsyncExchange
+		implements ReadListener, WriteListener, AsyncResponseCallback {
+
+		private final AsyncContext asyncContext;
+		private final HttpServletResponse response;
+		private final ByteArrayOutputStream requestBody = new ByteArrayOutputStream();
+		private final ByteArrayOutputStream responseBody = new ByteArrayOutputStream();
+		private final AtomicBoolean completed = new AtomicBoolean(false);
+		private final HttpCompression compression;
+		private final String encoding;
+		private final WireCodec requestCodec;
+		private final WireCodec responseCodec;
+		private byte[] output;
+		private int outputOffset = 0;
+
+		/**
+		 * @param asyncContext the {@link AsyncContext}
+		 * @param response the {@link HttpServletResponse}
+		 */
+		private AsyncExchange(AsyncContext asyncContext, HttpServletResponse response) {
+			HttpServletRequest request = HttpServletRequest.class.cast(asyncContext.getRequest());
+			this.asyncContext	= asyncContext;
+			this.response		= response;
+			this.compression	= jsonRpcServer.getHttpCompression();
+			this.encoding		= compression!=null
+				? compression.negotiate(request.getHeader("Accept-Encoding"))
+				: null;
+			this.requestCodec	= jsonRpcServer.findWireCodec(request.getContentType());
+			this.responseCodec	= jsonRpcServer.negotiateWireCodec(request.getHeader("Accept"), requestCodec);
+
+			// once the container has given up on the request
+			// nothing more is written to the response
+			asyncContext.addListener(new AsyncListener() {
+				public void onTimeout(AsyncEvent event) {
+					LOGGER.log(Level.WARNING, "Async request timed out");
+					fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+				}
+				public void onError(AsyncEvent event) {
+					completed.set(true);
+				}
+				public void onComplete(AsyncEvent event) {
+					completed.set(true);
+				}
+				public void onStartAsync(AsyncEvent event) {
+					// no-op
+				}
+			});
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onDataAvailable()
+			throws IOException {
+			ServletInputStream input = asyncContext.getRequest().getInputStream();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			while (!completed.get() && input.isReady() && !input.isFinished()) {
+				int read = input.read(buffer);
+				if (read<0) {
+					break;
+				}
+				if (requestBody.size()+read>maxRequestSize) {
+					fail(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+					return;
+				}
+				requestBody.write(buffer, 0, read);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onAllDataRead() {
+			if (completed.get()) {
+				return;
+			}
+			InputStream input = new ByteArrayInputStream(requestBody.toByteArray());
+			if (compression!=null) {
+				try {
+					input = compression.decompress(input, HttpServletRequest.class.cast(
+						asyncContext.getRequest()).getHeader("Content-Encoding"));
+				} catch (Throwable t) {
+					onError(t);
+					return;
+				}
+			}
+			dispatch(input);
+		}
+
+		/**
+		 * Handles the request on the {@link Executor}.
+		 * @param input the request body
+		 */
+		private void dispatch(final InputStream input) {
+			try {
+				executor.execute(new Runnable() {
+					public void run() {
+						try {
+							jsonRpcServer.handleAsync(input, requestCodec,
+								new BasicOutputStreamWrapper(jsonRpcServer.mapper, responseCodec, responseBody),
+								AsyncExchange.this);
+						} catch (Throwable t) {
+							onError(t);
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				LOGGER.log(Level.WARNING, "Request executor is saturated", e);
+				fail(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onResponseWritten() {
+			if (completed.get()) {
+				return;
+			}
+			output = responseBody.toByteArray();
+			response.setContentType(responseCodec.getContentType());
+			try {
+				if (compression!=null) {
+					response.setHeader("Vary", "Accept-Encoding");
+					if (encoding!=null && compression.shouldCompress(output.length)) {
+						ByteArrayOutputStream compressed = new ByteArrayOutputStream(output.length/2);
+						OutputStream compressor = compression.compress(compressed, encoding, new HeaderSetter() {
+							public void setHeader(String name, String value) {
+								response.setHeader(name, value);
+							}
+						});
+						compressor.write(output);
+						compressor.close();
+						output = compressed.toByteArray();
+					}
+				}
+				response.setContentLength(output.length);
+				response.getOutputStream().setWriteListener(this);
+			} catch (Throwable t) {
+				onError(t);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onWritePossible()
+			throws IOException {
+			ServletOutputStream ops = response.getOutputStream();
+			while (!completed.get() && ops.isReady()) {
+				if (outputOffset==output.length) {
+					complete();
+					return;
+				}
+				int length = Math.min(BUFFER_SIZE, output.length-outputOffset);
+				ops.write(output, outputOffset, length);
+				outputOffset += length;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onError(Throwable t) {
+			LOGGER.log(Level.SEVERE, "Error handling async request", t);
+			fail(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+		}
+
+		/**
+		 * Responds with the given status unless the response
+		 * has been committed, or the exchange completed.
+		 * @param status the http status
+		 */
+		private void fail(int status) {
+			if (completed.compareAndSet(false, true)) {
+				if (!response.isCommitted()) {
+					response.reset();
+					response.setStatus(status);
+				}
+				asyncContext.complete();
+			}
+		}
+
+		/**
+		 * Completes the {@link AsyncContext}, once.
+		 */
+		private void complete() {
+			if (completed.compareAndSet(false, true)) {
+				asyncContext.complete();
+			}
+		}
+	}
+
+}
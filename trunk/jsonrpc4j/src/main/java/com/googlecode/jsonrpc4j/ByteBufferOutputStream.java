@@ -0,0 +1,97 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An {@link OutputStream} that writes into a {@link ByteBuffer} taken
+ * from a {@link ByteBufferPool}, moving to a buffer twice the size
+ * when it runs out of room, so that what's written can be handed to
+ * a channel without being copied into a {@code byte[]} first.
+ */
+public class ByteBufferOutputStream
+	extends OutputStream {
+
+	private final ByteBufferPool pool;
+	private ByteBuffer buffer;
+
+	/**
+	 * Creates the stream.
+	 * @param pool the {@link ByteBufferPool}
+	 * @param initialCapacity the capacity to start with
+	 */
+	public ByteBufferOutputStream(ByteBufferPool pool, int initialCapacity) {
+		this.pool	= pool;
+		this.buffer	= pool.acquire(initialCapacity);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(int b) {
+		ensureRemaining(1);
+		buffer.put((byte)b);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void write(byte[] b, int off, int len) {
+		ensureRemaining(len);
+		buffer.put(b, off, len);
+	}
+
+	/**
+	 * @return the number of bytes written
+	 */
+	public int size() {
+		return buffer.position();
+	}
+
+	/**
+	 * Hands over the buffer, flipped so that it holds what's been
+	 * written.  The stream can't be used afterwards and the caller
+	 * gives the buffer back to the pool when it's done with it.
+	 * @return the buffer
+	 */
+	public ByteBuffer detach() {
+		ByteBuffer detached = buffer;
+		buffer = null;
+		detached.flip();
+		return detached;
+	}
+
+	/**
+	 * Gives the buffer back to the pool, unless it's been detached.
+	 */
+	@Override
+	public void close() {
+		if (buffer!=null) {
+			pool.release(buffer);
+			buffer = null;
+		}
+	}
+
+	/**
+	 * Moves to a larger buffer if there isn't room for more bytes.
+	 * @param length the number of bytes
+	 */
+	private void ensureRemaining(int length) {
+		if (buffer.remaining()>=length) {
+			return;
+		}
+		int needed = buffer.position()+length;
+		int capacity = Math.max(buffer.capacity()*2, needed);
+		if (capacity<0) {
+			throw new OutOfMemoryError("Buffer would exceed 2^31 bytes");
+		}
+		ByteBuffer larger = pool.acquire(capacity);
+		buffer.flip();
+		larger.put(buffer);
+		pool.release(buffer);
+		buffer = larger;
+	}
+
+}
@@ -0,0 +1,172 @@
+package com.googlecode.jsonrpc4j;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A pool of reusable {@link ByteBuffer}s for socket I/O.  Buffers come
+ * in size classes, powers of two from a minimum to a maximum size, and
+ * a request is served from the smallest class that fits.  Larger
+ * requests get a buffer of their own that's never pooled.  The total
+ * size of the buffers kept in the pool is capped, buffers released
+ * beyond that are left to the garbage collector.  Direct buffers are
+ * the ones to use with channels, as the JDK would otherwise copy heap
+ * buffers into a direct buffer of its own for every read and write.
+ */
+public class ByteBufferPool {
+
+	public static final int DEFAULT_MIN_BUFFER_SIZE		= 4*1024;
+	public static final int DEFAULT_MAX_BUFFER_SIZE		= 1024*1024;
+	public static final long DEFAULT_MAX_POOLED_BYTES	= 64L*1024*1024;
+
+	private final boolean direct;
+	private final int minShift;
+	private final SizeClass[] classes;
+	private final long maxPooledBytes;
+	private final AtomicLong pooledBytes	= new AtomicLong(0);
+	private final AtomicLong hits			= new AtomicLong(0);
+	private final AtomicLong misses			= new AtomicLong(0);
+
+	/**
+	 * Creates the pool.
+	 * @param direct whether the buffers are direct
+	 * @param minBufferSize the smallest size class, rounded up to a power of two
+	 * @param maxBufferSize the largest size class, rounded up to a power of two
+	 * @param maxPooledBytes the most bytes kept in the pool
+	 */
+	public ByteBufferPool(boolean direct, int minBufferSize, int maxBufferSize, long maxPooledBytes) {
+		if (minBufferSize<1) {
+			throw new IllegalArgumentException("minBufferSize must be at least 1");
+		} else if (maxBufferSize<minBufferSize || maxBufferSize>(1<<30)) {
+			throw new IllegalArgumentException(
+				"maxBufferSize must be between minBufferSize and 2^30");
+		} else if (maxPooledBytes<0) {
+			throw new IllegalArgumentException("maxPooledBytes must be at least 0");
+		}
+		this.direct			= direct;
+		this.minShift		= shift(minBufferSize);
+		this.classes		= new SizeClass[shift(maxBufferSize)-minShift+1];
+		this.maxPooledBytes	= maxPooledBytes;
+		for (int i=0; i<classes.length; i++) {
+			classes[i] = new SizeClass();
+		}
+	}
+
+	/**
+	 * Creates the pool with {@link #DEFAULT_MIN_BUFFER_SIZE},
+	 * {@link #DEFAULT_MAX_BUFFER_SIZE} and {@link #DEFAULT_MAX_POOLED_BYTES}.
+	 * @param direct whether the buffers are direct
+	 */
+	public ByteBufferPool(boolean direct) {
+		this(direct, DEFAULT_MIN_BUFFER_SIZE, DEFAULT_MAX_BUFFER_SIZE, DEFAULT_MAX_POOLED_BYTES);
+	}
+
+	/**
+	 * Takes a cleared buffer from the pool, or allocates one.
+	 * @param capacity the least capacity needed
+	 * @return the buffer, to be given back with {@link #release(ByteBuffer)}
+	 */
+	public ByteBuffer acquire(int capacity) {
+		int index = shift(capacity)-minShift;
+		if (index<0) {
+			index = 0;
+		} else if (index>=classes.length) {
+			misses.incrementAndGet();
+			return allocate(capacity);
+		}
+		ByteBuffer buffer = classes[index].buffers.poll();
+		if (buffer==null) {
+			misses.incrementAndGet();
+			return allocate(1<<(index+minShift));
+		}
+		pooledBytes.addAndGet(-buffer.capacity());
+		hits.incrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Gives a buffer back to the pool.  It mustn't be
+	 * used afterwards, by its holder or anyone else.
+	 * @param buffer the buffer, or null
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer==null || buffer.isDirect()!=direct) {
+			return;
+		}
+		int capacity = buffer.capacity();
+		int index = shift(capacity)-minShift;
+		if (index<0 || index>=classes.length || capacity!=1<<(index+minShift)) {
+			return;
+		}
+		if (pooledBytes.addAndGet(capacity)>maxPooledBytes) {
+			pooledBytes.addAndGet(-capacity);
+			return;
+		}
+		classes[index].buffers.offer(buffer);
+	}
+
+	/**
+	 * @param capacity the capacity
+	 * @return a new buffer
+	 */
+	private ByteBuffer allocate(int capacity) {
+		return direct
+			? ByteBuffer.allocateDirect(capacity)
+			: ByteBuffer.allocate(capacity);
+	}
+
+	/**
+	 * @param size the size
+	 * @return the log2 of the size rounded up to a power of two
+	 */
+	private static int shift(int size) {
+		return size<=1 ? 0 : 32-Integer.numberOfLeadingZeros(size-1);
+	}
+
+	/**
+	 * @return whether the buffers are direct
+	 */
+	public boolean isDirect() {
+		return direct;
+	}
+
+	/**
+	 * @return the number of buffers served from the pool
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of buffers that had to be allocated
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of bytes in the buffers kept in the pool
+	 */
+	public long getPooledBytes() {
+		return pooledBytes.get();
+	}
+
+	/**
+	 * @return the most bytes kept in the pool
+	 */
+	public long getMaxPooledBytes() {
+		return maxPooledBytes;
+	}
+
+	/**
+	 * The buffers of one size class.
+	 */
+	private static class SizeClass {
+
+		private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<ByteBuffer>();
+	}
+
+}
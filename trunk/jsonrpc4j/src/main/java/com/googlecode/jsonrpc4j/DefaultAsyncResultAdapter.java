@@ -0,0 +1,319 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The default {@link AsyncResultAdapter}, it handles
+ * {@link JsonRpcFuture}, {@code java.util.concurrent.CompletionStage}
+ * and Spring's {@code ListenableFuture} when they're available, by registering
+ * a callback, and any other {@link Future}.  A {@link Future} has
+ * no way of telling us when it's done, so unless it already is,
+ * a thread of the waiter {@link Executor} waits for it.  When the
+ * waiter rejects it, because all of its threads are already waiting,
+ * the result fails with a {@link RejectedExecutionException}.
+ * <p>
+ * A {@link JsonRpcServer} has no adapter by default, so methods that
+ * return any of these types have them written as they are, use
+ * {@link JsonRpcServer#setAsyncResultAdapter(AsyncResultAdapter)}
+ * to respond with what they complete with instead.
+ */
+public class DefaultAsyncResultAdapter
+	implements AsyncResultAdapter {
+
+	private static final Logger LOGGER = Logger.getLogger(DefaultAsyncResultAdapter.class.getName());
+
+	public static final int DEFAULT_MAX_WAITERS = 64;
+
+	public static final DefaultAsyncResultAdapter INSTANCE = new DefaultAsyncResultAdapter();
+
+	private static final Class<?> COMPLETION_STAGE			= findClass("java.util.concurrent.CompletionStage");
+	private static final Class<?> COMPLETION_EXCEPTION		= findClass("java.util.concurrent.CompletionException");
+	private static final Class<?> BI_CONSUMER				= findClass("java.util.function.BiConsumer");
+	private static final Class<?> LISTENABLE_FUTURE			= findClass("org.springframework.util.concurrent.ListenableFuture");
+	private static final Class<?> LISTENABLE_FUTURE_CALLBACK = findClass("org.springframework.util.concurrent.ListenableFutureCallback");
+
+	private static final Method WHEN_COMPLETE	= findMethod(COMPLETION_STAGE, "whenComplete", BI_CONSUMER);
+	private static final Method ADD_CALLBACK	= findMethod(LISTENABLE_FUTURE, "addCallback", LISTENABLE_FUTURE_CALLBACK);
+
+	private final Executor waiter;
+
+	/**
+	 * Creates the adapter with the given {@link Executor} for
+	 * waiting on plain {@link Future}s.
+	 * @param waiter the {@link Executor}
+	 */
+	public DefaultAsyncResultAdapter(Executor waiter) {
+		this.waiter = waiter;
+	}
+
+	/**
+	 * Creates the adapter with a pool of up to the given number
+	 * of daemon threads for waiting on plain {@link Future}s,
+	 * they're only started once there's something to wait for
+	 * and stop once they've had nothing to wait for for a while.
+	 * @param maxWaiters the maximum number of threads
+	 */
+	public DefaultAsyncResultAdapter(int maxWaiters) {
+		this(new LazyWaiter(maxWaiters));
+	}
+
+	/**
+	 * Creates the adapter with a pool of up to
+	 * {@link #DEFAULT_MAX_WAITERS} daemon threads
+	 * for waiting on plain {@link Future}s.
+	 */
+	public DefaultAsyncResultAdapter() {
+		this(DEFAULT_MAX_WAITERS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public boolean isAsyncType(Class<?> type) {
+		return Future.class.isAssignableFrom(type)
+			|| (WHEN_COMPLETE!=null && COMPLETION_STAGE.isAssignableFrom(type))
+			|| (ADD_CALLBACK!=null && LISTENABLE_FUTURE.isAssignableFrom(type));
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void addCallback(Object result, AsyncResultCallback callback) {
+
+		// callback based types
+		if (JsonRpcFuture.class.isInstance(result)) {
+			JsonRpcFuture.class.cast(result).addCallback(callback);
+			return;
+		} else if (ADD_CALLBACK!=null && LISTENABLE_FUTURE.isInstance(result)) {
+			invokeWithProxy(ADD_CALLBACK, result, LISTENABLE_FUTURE_CALLBACK, callback);
+			return;
+		} else if (WHEN_COMPLETE!=null && COMPLETION_STAGE.isInstance(result)) {
+			invokeWithProxy(WHEN_COMPLETE, result, BI_CONSUMER, callback);
+			return;
+		}
+
+		// a plain future, which we may not have to wait for
+		final Future<?> future = Future.class.cast(result);
+		if (future.isDone()) {
+			complete(future, callback);
+			return;
+		}
+		final AsyncResultCallback cb = callback;
+		try {
+			waiter.execute(new Runnable() {
+				public void run() {
+					complete(future, cb);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			LOGGER.log(Level.WARNING, "No thread to wait for a Future on");
+			callback.onFailure(e);
+		}
+	}
+
+	/**
+	 * Gets the value of the given {@link Future}, waiting for it
+	 * if need be, and passes it on to the given callback.
+	 * @param future the {@link Future}
+	 * @param callback the {@link AsyncResultCallback}
+	 */
+	private static void complete(Future<?> future, AsyncResultCallback callback) {
+		Object value;
+		try {
+			value = future.get();
+		} catch (ExecutionException e) {
+			callback.onFailure(e.getCause()!=null ? e.getCause() : e);
+			return;
+		} catch (Throwable e) {
+			callback.onFailure(e);
+			return;
+		}
+		callback.onSuccess(value);
+	}
+
+	/**
+	 * Invokes the given callback registration method on the given
+	 * result with a proxy of the given callback interface that
+	 * passes the outcome on to the {@link AsyncResultCallback}.
+	 * @param method the registration method
+	 * @param result the result
+	 * @param callbackType the callback interface
+	 * @param callback the {@link AsyncResultCallback}
+	 */
+	private static void invokeWithProxy(
+		Method method, Object result, Class<?> callbackType, AsyncResultCallback callback) {
+		Object proxy = Proxy.newProxyInstance(
+			callbackType.getClassLoader()!=null
+				? callbackType.getClassLoader()
+				: DefaultAsyncResultAdapter.class.getClassLoader(),
+			new Class<?>[] {callbackType},
+			new CallbackInvocationHandler(callback));
+		try {
+			method.invoke(result, proxy);
+		} catch (InvocationTargetException e) {
+			callback.onFailure(e.getTargetException());
+		} catch (Throwable e) {
+			callback.onFailure(e);
+		}
+	}
+
+	/**
+	 * Turns calls to the {@code BiConsumer} given to a
+	 * {@code CompletionStage} or the {@code ListenableFutureCallback}
+	 * given to a {@code ListenableFuture} into calls to an
+	 * {@link AsyncResultCallback}.
+	 */
+	private static class CallbackInvocationHandler
+		implements InvocationHandler {
+
+		private final AsyncResultCallback callback;
+
+		private CallbackInvocationHandler(AsyncResultCallback callback) {
+			this.callback = callback;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+			String name = method.getName();
+
+			// BiConsumer
+			if (name.equals("accept") && args!=null && args.length==2) {
+				Throwable cause = Throwable.class.cast(args[1]);
+				if (cause==null) {
+					callback.onSuccess(args[0]);
+				} else {
+					if (COMPLETION_EXCEPTION!=null && COMPLETION_EXCEPTION.isInstance(cause)
+						&& cause.getCause()!=null) {
+						cause = cause.getCause();
+					}
+					callback.onFailure(cause);
+				}
+				return null;
+
+			// ListenableFutureCallback
+			} else if (name.equals("onSuccess") && args!=null && args.length==1) {
+				callback.onSuccess(args[0]);
+				return null;
+			} else if (name.equals("onFailure") && args!=null && args.length==1) {
+				callback.onFailure(Throwable.class.cast(args[0]));
+				return null;
+
+			// Object methods
+			} else if (name.equals("equals") && args!=null && args.length==1) {
+				return proxy==args[0];
+			} else if (name.equals("hashCode") && args==null) {
+				return System.identityHashCode(proxy);
+			} else if (name.equals("toString") && args==null) {
+				return "AsyncResultCallback proxy for "+callback;
+			}
+			throw new UnsupportedOperationException(method.toString());
+		}
+	}
+
+	/**
+	 * Waits on plain {@link Future}s with a bounded pool of
+	 * daemon threads that isn't created until it's needed.
+	 */
+	private static class LazyWaiter
+		implements Executor {
+
+		private static final AtomicInteger THREAD_COUNT = new AtomicInteger(0);
+
+		private static final long KEEP_ALIVE_SECONDS = 60;
+
+		private final int maxWaiters;
+		private volatile ExecutorService executor;
+
+		/**
+		 * @param maxWaiters the maximum number of threads
+		 */
+		private LazyWaiter(int maxWaiters) {
+			if (maxWaiters<1) {
+				throw new IllegalArgumentException(
+					"maxWaiters must be at least 1");
+			}
+			this.maxWaiters = maxWaiters;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void execute(Runnable command) {
+			ExecutorService executor = this.executor;
+			if (executor==null) {
+				synchronized (this) {
+					executor = this.executor;
+					if (executor==null) {
+						ThreadPoolExecutor pool = new ThreadPoolExecutor(
+							maxWaiters, maxWaiters, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+							new SynchronousQueue<Runnable>(), new ThreadFactory() {
+								public Thread newThread(Runnable r) {
+									Thread thread = new Thread(r,
+										"jsonrpc4j-future-waiter-"+THREAD_COUNT.incrementAndGet());
+									thread.setDaemon(true);
+									return thread;
+								}
+							});
+						pool.allowCoreThreadTimeOut(true);
+						executor = pool;
+						this.executor = executor;
+					}
+				}
+			}
+			executor.execute(command);
+		}
+	}
+
+	/**
+	 * Loads the given class if it's available.
+	 * @param name the class name
+	 * @return the class or null
+	 */
+	private static Class<?> findClass(String name) {
+		try {
+			return Class.forName(name, false, DefaultAsyncResultAdapter.class.getClassLoader());
+		} catch (ClassNotFoundException e) {
+			return null;
+		} catch (LinkageError e) {
+			LOGGER.log(Level.FINE, "Unable to load "+name, e);
+			return null;
+		}
+	}
+
+	/**
+	 * Finds the given public method if its class is available.
+	 * @param clazz the class or null
+	 * @param name the method name
+	 * @param parameterType the parameter type or null
+	 * @return the method or null
+	 */
+	private static Method findMethod(Class<?> clazz, String name, Class<?> parameterType) {
+		if (clazz==null || parameterType==null) {
+			return null;
+		}
+		try {
+			return clazz.getMethod(name, parameterType);
+		} catch (NoSuchMethodException e) {
+			return null;
+		}
+	}
+
+}
@@ -0,0 +1,100 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.jsonrpc4j.ProxyUtil.CompositeServiceInvocationHandler;
+import com.googlecode.jsonrpc4j.ReflectionInvokerFactory.ReflectionInvoker;
+
+/**
+ * {@link InvokerFactory} that binds each exported method directly
+ * to the object implementing it when the server is set up.
+ * Composite services created by {@link ProxyUtil} are unwrapped
+ * so that calls go straight to the service implementing the
+ * method rather than through the composite {@link Proxy}, and the
+ * implementation's own {@link Method} is used with access checks
+ * suppressed.  Methods that can't be bound this way use the same
+ * {@link Invoker} as the {@link ReflectionInvokerFactory}.
+ */
+public class DirectInvokerFactory
+	implements InvokerFactory {
+
+	private static final Logger LOGGER = Logger.getLogger(DirectInvokerFactory.class.getName());
+
+	public static final DirectInvokerFactory INSTANCE = new DirectInvokerFactory();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Invoker createInvoker(Object handler, ServiceMethod method) {
+		Method interfaceMethod = method.getMethod();
+
+		// unwrap composite services
+		Object target = handler;
+		if (Proxy.isProxyClass(handler.getClass())) {
+			InvocationHandler ih = Proxy.getInvocationHandler(handler);
+			if (!CompositeServiceInvocationHandler.class.isInstance(ih)) {
+				return new ReflectionInvoker(handler, interfaceMethod);
+			}
+			target = findService(
+				CompositeServiceInvocationHandler.class.cast(ih),
+				handler.getClass(), interfaceMethod);
+			if (target==null) {
+				return new ReflectionInvoker(handler, interfaceMethod);
+			}
+		}
+
+		// find the implementation
+		Method implMethod;
+		try {
+			implMethod = target.getClass().getMethod(
+				interfaceMethod.getName(), interfaceMethod.getParameterTypes());
+			implMethod.setAccessible(true);
+		} catch (NoSuchMethodException e) {
+			implMethod = interfaceMethod;
+		} catch (SecurityException e) {
+			implMethod = interfaceMethod;
+		}
+
+		// debug log
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.fine("Binding "+interfaceMethod.getName()
+				+" directly to "+target.getClass().getName());
+		}
+		return new ReflectionInvoker(target, implMethod);
+	}
+
+	/**
+	 * Finds the service of a composite {@link Proxy} that calls
+	 * to the given method are delegated to.  The method may come
+	 * from the proxy class itself so each of the interfaces that
+	 * it implements is checked for a matching declaration.
+	 * @param ih the proxy's {@link CompositeServiceInvocationHandler}
+	 * @param proxyClass the proxy's class
+	 * @param method the method
+	 * @return the service or null if it can't be found
+	 */
+	private static Object findService(
+		CompositeServiceInvocationHandler ih, Class<?> proxyClass, Method method) {
+		Object service = ih.getService(method.getDeclaringClass());
+		if (service!=null) {
+			return service;
+		}
+		for (Class<?> iface : proxyClass.getInterfaces()) {
+			try {
+				Method declared = iface.getMethod(method.getName(), method.getParameterTypes());
+				service = ih.getService(declared.getDeclaringClass());
+				if (service!=null) {
+					return service;
+				}
+			} catch (NoSuchMethodException e) {
+				// not declared by this interface
+			}
+		}
+		return null;
+	}
+
+}
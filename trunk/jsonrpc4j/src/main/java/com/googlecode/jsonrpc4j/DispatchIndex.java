@@ -0,0 +1,107 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+/**
+ * An immutable index of the methods available on a class
+ * keyed by JSON-RPC method name.  It's built once per
+ * {@link JsonRpcServer} so that finding the candidates for
+ * a request is a single map lookup.
+ */
+public class DispatchIndex {
+
+	private final Map<String, OverloadGroup> groups;
+	private final List<OverloadGroup> groupList;
+	private final List<ServiceMethod> methodList;
+	private final Map<Method, ServiceMethod> methods;
+
+	/**
+	 * Builds the index for the public methods of the given class.
+	 * @param clazz the class
+	 */
+	public DispatchIndex(Class<?> clazz) {
+
+		// collect the overloads in declaration order
+		Map<String, List<ServiceMethod>> methodsByName
+			= new LinkedHashMap<String, List<ServiceMethod>>();
+		List<ServiceMethod> methodList = new ArrayList<ServiceMethod>();
+		Map<Method, ServiceMethod> methods = new HashMap<Method, ServiceMethod>();
+		for (Method method : clazz.getMethods()) {
+			List<ServiceMethod> overloads = methodsByName.get(method.getName());
+			if (overloads==null) {
+				overloads = new ArrayList<ServiceMethod>();
+				methodsByName.put(method.getName(), overloads);
+			}
+			ServiceMethod serviceMethod = new ServiceMethod(methodList.size(), method);
+			overloads.add(serviceMethod);
+			methodList.add(serviceMethod);
+			methods.put(method, serviceMethod);
+		}
+		this.methodList = Collections.unmodifiableList(methodList);
+		this.methods = methods;
+
+		// create the groups
+		Map<String, OverloadGroup> groups = new HashMap<String, OverloadGroup>();
+		List<OverloadGroup> groupList = new ArrayList<OverloadGroup>();
+		for (Entry<String, List<ServiceMethod>> entry : methodsByName.entrySet()) {
+			OverloadGroup group = new OverloadGroup(
+				groupList.size(), entry.getKey(), entry.getValue());
+			groups.put(entry.getKey(), group);
+			groupList.add(group);
+		}
+		this.groups = groups;
+		this.groupList = Collections.unmodifiableList(groupList);
+	}
+
+	/**
+	 * Returns the {@link OverloadGroup} for the given method name.
+	 * @param methodName the method name
+	 * @return the group or null if there is no such method
+	 */
+	public OverloadGroup get(String methodName) {
+		return groups.get(methodName);
+	}
+
+	/**
+	 * Returns the {@link ServiceMethod} for the given {@link Method}.
+	 * @param method the method
+	 * @return the service method or null if it isn't indexed
+	 */
+	public ServiceMethod get(Method method) {
+		return methods.get(method);
+	}
+
+	/**
+	 * Returns every {@link OverloadGroup} in the index, the position
+	 * of each being its {@link OverloadGroup#getIndex()}.
+	 * @return the groups
+	 */
+	public List<OverloadGroup> getGroups() {
+		return groupList;
+	}
+
+	/**
+	 * Returns every {@link ServiceMethod} in the index, the position
+	 * of each being its {@link ServiceMethod#getIndex()}.
+	 * @return the methods
+	 */
+	public List<ServiceMethod> getMethods() {
+		return methodList;
+	}
+
+	/**
+	 * @return the indexed method names
+	 */
+	public Set<String> getMethodNames() {
+		return Collections.unmodifiableSet(groups.keySet());
+	}
+
+}
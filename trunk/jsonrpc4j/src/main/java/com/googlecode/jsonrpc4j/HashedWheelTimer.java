@@ -0,0 +1,319 @@
+package com.googlecode.jsonrpc4j;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A timer for large numbers of timeouts that are mostly cancelled
+ * before they expire, such as the timeouts of connections.  Timeouts
+ * are kept in a wheel of buckets, one per tick, that a single thread
+ * steps through, so scheduling and cancelling are cheap and a timeout
+ * expires up to a tick late.  A cancelled timeout is taken out of its
+ * bucket at the next tick, rather than when the wheel comes round to
+ * it, so timeouts that are scheduled and cancelled over and over don't
+ * build up.  Tasks are run on the timer's thread and
+ * so should be quick.  The thread is started when the first timeout
+ * is scheduled.
+ */
+public class HashedWheelTimer {
+
+	private static final Logger LOGGER = Logger.getLogger(HashedWheelTimer.class.getName());
+
+	public static final long DEFAULT_TICK_MILLIS	= 100;
+	public static final int DEFAULT_WHEEL_SIZE		= 512;
+
+	private static final AtomicInteger TIMER_COUNT = new AtomicInteger(0);
+
+	private final long tickNanos;
+	private final Bucket[] wheel;
+	private final int mask;
+	private final Queue<Timeout> added		= new ConcurrentLinkedQueue<Timeout>();
+	private final Queue<Timeout> cancelled	= new ConcurrentLinkedQueue<Timeout>();
+	private volatile boolean started = false;
+	private volatile boolean running = true;
+	private volatile long startTime;
+	private Thread thread;
+
+	/**
+	 * Creates the timer.
+	 * @param tickMillis the length of a tick in milliseconds
+	 * @param wheelSize the number of buckets, rounded up to a power of two
+	 */
+	public HashedWheelTimer(long tickMillis, int wheelSize) {
+		if (tickMillis<1) {
+			throw new IllegalArgumentException("tickMillis must be at least 1");
+		} else if (wheelSize<1 || wheelSize>(1<<30)) {
+			throw new IllegalArgumentException("wheelSize must be between 1 and 2^30");
+		}
+		int size = 1;
+		while (size<wheelSize) {
+			size <<= 1;
+		}
+		this.tickNanos	= TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.wheel		= new Bucket[size];
+		this.mask		= size-1;
+		for (int i=0; i<size; i++) {
+			wheel[i] = new Bucket();
+		}
+	}
+
+	/**
+	 * Creates the timer with {@link #DEFAULT_TICK_MILLIS}
+	 * and {@link #DEFAULT_WHEEL_SIZE}.
+	 */
+	public HashedWheelTimer() {
+		this(DEFAULT_TICK_MILLIS, DEFAULT_WHEEL_SIZE);
+	}
+
+	/**
+	 * Schedules a task.
+	 * @param task the task
+	 * @param delayMillis the delay in milliseconds
+	 * @return the {@link Timeout}, for cancelling it
+	 */
+	public Timeout schedule(Runnable task, long delayMillis) {
+		if (!running) {
+			throw new IllegalStateException("The timer has been stopped");
+		}
+		start();
+		Timeout timeout = new Timeout(this, task,
+			System.nanoTime()-startTime+TimeUnit.MILLISECONDS.toNanos(delayMillis));
+		added.add(timeout);
+		return timeout;
+	}
+
+	/**
+	 * Stops the timer, timeouts that haven't
+	 * expired yet never will.
+	 */
+	public void stop() {
+		running = false;
+		Thread thread;
+		synchronized (this) {
+			thread = this.thread;
+		}
+		if (thread!=null) {
+			thread.interrupt();
+		}
+	}
+
+	/**
+	 * Starts the timer's thread if it isn't running.
+	 */
+	private void start() {
+		if (started) {
+			return;
+		}
+		synchronized (this) {
+			if (!started) {
+				startTime = System.nanoTime();
+				thread = new Thread(new Worker(),
+					"jsonrpc4j-timer-"+TIMER_COUNT.incrementAndGet());
+				thread.setDaemon(true);
+				thread.start();
+				started = true;
+			}
+		}
+	}
+
+	/**
+	 * A scheduled task.
+	 */
+	public static class Timeout {
+
+		private static final int PENDING	= 0;
+		private static final int CANCELLED	= 1;
+		private static final int EXPIRED	= 2;
+
+		private final HashedWheelTimer timer;
+		private final Runnable task;
+		private final long deadline;
+		private final AtomicInteger state = new AtomicInteger(PENDING);
+
+		// only used by the timer's thread
+		private long rounds;
+		private Bucket bucket;
+		private Timeout previous;
+		private Timeout next;
+
+		/**
+		 * @param timer the {@link HashedWheelTimer}
+		 * @param task the task
+		 * @param deadline the deadline in nanoseconds since the timer started
+		 */
+		private Timeout(HashedWheelTimer timer, Runnable task, long deadline) {
+			this.timer		= timer;
+			this.task		= task;
+			this.deadline	= deadline;
+		}
+
+		/**
+		 * Cancels the timeout, it won't expire unless it already has.
+		 */
+		public void cancel() {
+			if (state.compareAndSet(PENDING, CANCELLED)) {
+				timer.cancelled.add(this);
+			}
+		}
+
+		/**
+		 * @return whether it's been cancelled
+		 */
+		public boolean isCancelled() {
+			return state.get()==CANCELLED;
+		}
+	}
+
+	/**
+	 * The timeouts due in a tick of the wheel, or a
+	 * whole number of turns of it later, linked both
+	 * ways so that any of them can be taken out.
+	 */
+	private static class Bucket {
+
+		private Timeout head;
+		private Timeout tail;
+
+		/**
+		 * @param timeout the {@link Timeout} to add
+		 */
+		private void add(Timeout timeout) {
+			timeout.bucket = this;
+			timeout.previous = tail;
+			if (tail!=null) {
+				tail.next = timeout;
+			} else {
+				head = timeout;
+			}
+			tail = timeout;
+		}
+
+		/**
+		 * @param timeout the {@link Timeout} to take out
+		 * @return the timeout that followed it
+		 */
+		private Timeout remove(Timeout timeout) {
+			Timeout next = timeout.next;
+			if (timeout.previous!=null) {
+				timeout.previous.next = next;
+			} else {
+				head = next;
+			}
+			if (next!=null) {
+				next.previous = timeout.previous;
+			} else {
+				tail = timeout.previous;
+			}
+			timeout.bucket		= null;
+			timeout.previous	= null;
+			timeout.next		= null;
+			return next;
+		}
+	}
+
+	/**
+	 * Steps through the wheel, a bucket per tick.
+	 */
+	private class Worker
+		implements Runnable {
+
+		private long tick = 0;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			while (running) {
+				if (!awaitTick()) {
+					break;
+				}
+				removeCancelled();
+				transferAdded();
+				expire(wheel[(int)(tick & mask)]);
+				tick++;
+			}
+			added.clear();
+			cancelled.clear();
+		}
+
+		/**
+		 * Sleeps until the end of the current tick.
+		 * @return false if the timer was stopped
+		 */
+		private boolean awaitTick() {
+			long deadline = startTime+tickNanos*(tick+1);
+			while (running) {
+				long sleepNanos = deadline-System.nanoTime();
+				if (sleepNanos<=0) {
+					return true;
+				}
+				try {
+					TimeUnit.NANOSECONDS.sleep(sleepNanos);
+				} catch (InterruptedException e) {
+					return false;
+				}
+			}
+			return false;
+		}
+
+		/**
+		 * Takes the timeouts cancelled since the
+		 * last tick out of their buckets.
+		 */
+		private void removeCancelled() {
+			Timeout timeout;
+			while ((timeout = cancelled.poll())!=null) {
+				if (timeout.bucket!=null) {
+					timeout.bucket.remove(timeout);
+				}
+			}
+		}
+
+		/**
+		 * Puts the newly scheduled timeouts in their buckets.
+		 */
+		private void transferAdded() {
+			Timeout timeout;
+			while ((timeout = added.poll())!=null) {
+				if (timeout.state.get()!=Timeout.PENDING) {
+					continue;
+				}
+				long expiryTick = Math.max(timeout.deadline/tickNanos, tick);
+				timeout.rounds = (expiryTick-tick)/wheel.length;
+				wheel[(int)(expiryTick & mask)].add(timeout);
+			}
+		}
+
+		/**
+		 * Runs the timeouts of a bucket that are due
+		 * and drops the ones that were cancelled.
+		 * @param bucket the bucket
+		 */
+		private void expire(Bucket bucket) {
+			Timeout timeout = bucket.head;
+			while (timeout!=null) {
+				if (timeout.state.get()==Timeout.CANCELLED) {
+					timeout = bucket.remove(timeout);
+				} else if (timeout.rounds<=0) {
+					Timeout expired = timeout;
+					timeout = bucket.remove(timeout);
+					if (expired.state.compareAndSet(Timeout.PENDING, Timeout.EXPIRED)) {
+						try {
+							expired.task.run();
+						} catch (Throwable t) {
+							LOGGER.log(Level.WARNING, "Exception running a timeout", t);
+						}
+					}
+				} else {
+					timeout.rounds--;
+					timeout = timeout.next;
+				}
+			}
+		}
+	}
+
+}
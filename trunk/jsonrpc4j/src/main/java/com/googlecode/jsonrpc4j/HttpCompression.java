@@ -0,0 +1,540 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.HeaderSetter;
+
+/**
+ * Compresses and decompresses http bodies, with the {@code gzip}
+ * and {@code deflate} content codings, and keeps track of how well
+ * and how quickly it does so.  Bodies smaller than {@code minSize}
+ * are sent as they are, as compressing them costs more than it
+ * saves.  Decompressed bodies larger than {@code maxDecompressedSize}
+ * fail to be read, so a small body can't expand into one that
+ * exhausts the heap.  The same {@code HttpCompression} can be used by clients
+ * and servers, see {@link JsonRpcHttpClient#setHttpCompression(HttpCompression)}
+ * and {@link JsonRpcServer#setHttpCompression(HttpCompression)}.
+ */
+public class HttpCompression {
+
+	public static final String GZIP				= "gzip";
+	public static final String DEFLATE			= "deflate";
+	public static final String ACCEPT_ENCODING	= GZIP+", "+DEFLATE;
+	public static final int DEFAULT_MIN_SIZE	= 1024;
+	public static final long DEFAULT_MAX_DECOMPRESSED_SIZE = 16*1024*1024;
+
+	private int level	= Deflater.DEFAULT_COMPRESSION;
+	private int minSize	= DEFAULT_MIN_SIZE;
+	private long maxDecompressedSize = DEFAULT_MAX_DECOMPRESSED_SIZE;
+
+	private final AtomicLong compressedBodies		= new AtomicLong(0);
+	private final AtomicLong uncompressedBytes		= new AtomicLong(0);
+	private final AtomicLong compressedBytes		= new AtomicLong(0);
+	private final AtomicLong compressionNanos		= new AtomicLong(0);
+	private final AtomicLong decompressedBodies		= new AtomicLong(0);
+	private final AtomicLong decompressionNanos		= new AtomicLong(0);
+
+	/**
+	 * Picks the content coding to respond with from the value
+	 * of an {@code Accept-Encoding} header, preferring gzip.
+	 * @param acceptEncoding the header, or null
+	 * @return the content coding, or null to send the body as it is
+	 */
+	public String negotiate(String acceptEncoding) {
+		if (acceptEncoding==null) {
+			return null;
+		}
+		Boolean gzip = null;
+		Boolean deflate = null;
+		boolean any = false;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			String name = parts[0].trim().toLowerCase();
+			boolean accepted = true;
+			for (int i=1; i<parts.length; i++) {
+				String param = parts[i].trim();
+				if (param.startsWith("q=")) {
+					try {
+						accepted = Double.parseDouble(param.substring(2).trim())>0;
+					} catch (NumberFormatException e) {
+						accepted = false;
+					}
+				}
+			}
+			if (name.equals(GZIP) || name.equals("x-gzip")) {
+				gzip = Boolean.valueOf(accepted);
+			} else if (name.equals(DEFLATE)) {
+				deflate = Boolean.valueOf(accepted);
+			} else if (name.equals("*")) {
+				any = accepted;
+			}
+		}
+
+		// codings that aren't named are accepted by a *
+		if (gzip!=null ? gzip.booleanValue() : any) {
+			return GZIP;
+		} else if (deflate!=null ? deflate.booleanValue() : any) {
+			return DEFLATE;
+		}
+		return null;
+	}
+
+	/**
+	 * @param length the length of an uncompressed body
+	 * @return whether it's large enough to be compressed
+	 */
+	public boolean shouldCompress(int length) {
+		return length>=minSize;
+	}
+
+	/**
+	 * Starts compressing a body, telling the {@link HeaderSetter}
+	 * its content coding.  The body's written to the returned
+	 * {@link OutputStream}, which must be closed to finish it but
+	 * which doesn't close the given one.
+	 * @param ops the {@link OutputStream} to write the compressed body to
+	 * @param encoding the content coding
+	 * @param headerSetter told the {@code Content-Encoding}, or null
+	 * @return the {@link OutputStream} to write the body to
+	 * @throws IOException on error
+	 */
+	public OutputStream compress(OutputStream ops, String encoding, HeaderSetter headerSetter)
+		throws IOException {
+		if (headerSetter!=null) {
+			headerSetter.setHeader("Content-Encoding", encoding);
+		}
+		return new CompressingOutputStream(ops, encoding);
+	}
+
+	/**
+	 * Decompresses a body, if it's compressed.  Reading more than
+	 * {@code maxDecompressedSize} bytes of it fails.
+	 * @param ips the body
+	 * @param encoding the value of its {@code Content-Encoding} header, or null
+	 * @return the decompressed body
+	 * @throws IOException if the content coding isn't supported, or on error
+	 */
+	public InputStream decompress(InputStream ips, String encoding)
+		throws IOException {
+		if (encoding==null) {
+			return ips;
+		}
+		encoding = encoding.trim().toLowerCase();
+		if (encoding.length()==0 || encoding.equals("identity")) {
+			return ips;
+		}
+		TimedSource source = new TimedSource(ips);
+		InputStream decompressed;
+		if (encoding.equals(GZIP) || encoding.equals("x-gzip")) {
+			decompressed = new GZIPInputStream(source);
+		} else if (encoding.equals(DEFLATE)) {
+			decompressed = new InflaterInputStream(source);
+		} else {
+			throw new IOException("Unsupported Content-Encoding: "+encoding);
+		}
+		decompressedBodies.incrementAndGet();
+		return new TimedInputStream(decompressed, source);
+	}
+
+	/**
+	 * Sets the compression level, from 1, the fastest, to
+	 * 9, the smallest.  The default is zlib's default, 6.
+	 *
+	 * @param level the level to set
+	 */
+	public void setLevel(int level) {
+		if (level<Deflater.BEST_SPEED || level>Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("level must be between 1 and 9");
+		}
+		this.level = level;
+	}
+
+	/**
+	 * Sets the size, in bytes, below which bodies aren't compressed.
+	 *
+	 * @param minSize the minSize to set
+	 */
+	public void setMinSize(int minSize) {
+		if (minSize<0) {
+			throw new IllegalArgumentException("minSize must be at least 0");
+		}
+		this.minSize = minSize;
+	}
+
+	/**
+	 * Sets the largest size, in bytes, that a body may be
+	 * decompressed to, {@link #DEFAULT_MAX_DECOMPRESSED_SIZE}
+	 * by default.
+	 *
+	 * @param maxDecompressedSize the maxDecompressedSize to set
+	 */
+	public void setMaxDecompressedSize(long maxDecompressedSize) {
+		if (maxDecompressedSize<1) {
+			throw new IllegalArgumentException("maxDecompressedSize must be at least 1");
+		}
+		this.maxDecompressedSize = maxDecompressedSize;
+	}
+
+	/**
+	 * @return the size below which bodies aren't compressed
+	 */
+	public int getMinSize() {
+		return minSize;
+	}
+
+	/**
+	 * @return the number of bodies compressed
+	 */
+	public long getCompressedBodies() {
+		return compressedBodies.get();
+	}
+
+	/**
+	 * @return the number of bytes compressed
+	 */
+	public long getUncompressedBytes() {
+		return uncompressedBytes.get();
+	}
+
+	/**
+	 * @return the number of bytes they were compressed to
+	 */
+	public long getCompressedBytes() {
+		return compressedBytes.get();
+	}
+
+	/**
+	 * @return the compressed size of the bodies compressed so far
+	 * as a fraction of their uncompressed size, 1 if there are none
+	 */
+	public double getCompressionRatio() {
+		long uncompressed = uncompressedBytes.get();
+		return uncompressed>0
+			? (double)compressedBytes.get()/uncompressed
+			: 1;
+	}
+
+	/**
+	 * @return the time spent compressing, in nanoseconds, not
+	 * counting writing the compressed body
+	 */
+	public long getCompressionNanos() {
+		return compressionNanos.get();
+	}
+
+	/**
+	 * @return the number of bodies decompressed
+	 */
+	public long getDecompressedBodies() {
+		return decompressedBodies.get();
+	}
+
+	/**
+	 * @return the time spent decompressing, in nanoseconds, not
+	 * counting reading the compressed body
+	 */
+	public long getDecompressionNanos() {
+		return decompressionNanos.get();
+	}
+
+	/**
+	 * Compresses what's written to it, counting the bytes and
+	 * the time spent, less that spent writing the compressed
+	 * bytes on.
+	 */
+	private class CompressingOutputStream
+		extends OutputStream {
+
+		private final CountingOutputStream counter;
+		private final DeflaterOutputStream deflater;
+		private long uncompressed = 0;
+		private long nanos = 0;
+		private boolean closed = false;
+
+		/**
+		 * @param ops the {@link OutputStream}
+		 * @param encoding the content coding
+		 * @throws IOException on error
+		 */
+		private CompressingOutputStream(OutputStream ops, String encoding)
+			throws IOException {
+			this.counter = new CountingOutputStream(ops);
+			if (encoding.equals(GZIP)) {
+				this.deflater = new GZIPOutputStream(counter) {
+					{
+						def.setLevel(level);
+					}
+				};
+			} else if (encoding.equals(DEFLATE)) {
+				this.deflater = new DeflaterOutputStream(counter, new Deflater(level)) {
+					@Override
+					public void close()
+						throws IOException {
+						super.close();
+						def.end();
+					}
+				};
+			} else {
+				throw new IOException("Unsupported Content-Encoding: "+encoding);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int b)
+			throws IOException {
+			write(new byte[] { (byte)b }, 0, 1);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] b, int off, int len)
+			throws IOException {
+			long start = System.nanoTime();
+			long written = counter.nanos;
+			deflater.write(b, off, len);
+			nanos += System.nanoTime()-start-(counter.nanos-written);
+			uncompressed += len;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void flush()
+			throws IOException {
+			counter.flush();
+		}
+
+		/**
+		 * Finishes the compressed body, without closing
+		 * the underlying {@link OutputStream}.
+		 * @throws IOException on error
+		 */
+		@Override
+		public void close()
+			throws IOException {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			long start = System.nanoTime();
+			long written = counter.nanos;
+			counter.detach = true;
+			deflater.close();
+			nanos += System.nanoTime()-start-(counter.nanos-written);
+			compressedBodies.incrementAndGet();
+			uncompressedBytes.addAndGet(uncompressed);
+			compressedBytes.addAndGet(counter.count);
+			compressionNanos.addAndGet(nanos);
+		}
+	}
+
+	/**
+	 * Counts what's written through it and the time spent
+	 * writing it, and stops passing closes on once it's been
+	 * detached.
+	 */
+	private static class CountingOutputStream
+		extends OutputStream {
+
+		private final OutputStream ops;
+		private long count = 0;
+		private long nanos = 0;
+		private boolean detach = false;
+
+		/**
+		 * @param ops the {@link OutputStream}
+		 */
+		private CountingOutputStream(OutputStream ops) {
+			this.ops = ops;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int b)
+			throws IOException {
+			long start = System.nanoTime();
+			ops.write(b);
+			nanos += System.nanoTime()-start;
+			count++;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] b, int off, int len)
+			throws IOException {
+			long start = System.nanoTime();
+			ops.write(b, off, len);
+			nanos += System.nanoTime()-start;
+			count += len;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void flush()
+			throws IOException {
+			ops.flush();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void close()
+			throws IOException {
+			if (!detach) {
+				ops.close();
+			}
+		}
+	}
+
+	/**
+	 * Counts the time spent reading a compressed body.
+	 */
+	private static class TimedSource
+		extends FilterInputStream {
+
+		private long nanos = 0;
+
+		/**
+		 * @param ips the compressed {@link InputStream}
+		 */
+		private TimedSource(InputStream ips) {
+			super(ips);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read()
+			throws IOException {
+			long start = System.nanoTime();
+			try {
+				return super.read();
+			} finally {
+				nanos += System.nanoTime()-start;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] b, int off, int len)
+			throws IOException {
+			long start = System.nanoTime();
+			try {
+				return super.read(b, off, len);
+			} finally {
+				nanos += System.nanoTime()-start;
+			}
+		}
+	}
+
+	/**
+	 * Counts the time spent decompressing a body, less that
+	 * spent reading the compressed body, and fails once more
+	 * than {@code maxDecompressedSize} bytes have been read.
+	 */
+	private class TimedInputStream
+		extends FilterInputStream {
+
+		private final TimedSource source;
+		private final long maxSize = maxDecompressedSize;
+		private long size = 0;
+
+		/**
+		 * @param ips the decompressed {@link InputStream}
+		 * @param source the compressed body it reads
+		 */
+		private TimedInputStream(InputStream ips, TimedSource source) {
+			super(ips);
+			this.source = source;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read()
+			throws IOException {
+			long start = System.nanoTime();
+			long read = source.nanos;
+			try {
+				int b = super.read();
+				if (b>=0) {
+					count(1);
+				}
+				return b;
+			} finally {
+				decompressionNanos.addAndGet(System.nanoTime()-start-(source.nanos-read));
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] b, int off, int len)
+			throws IOException {
+			long start = System.nanoTime();
+			long read = source.nanos;
+			try {
+				int n = super.read(b, off, len);
+				if (n>0) {
+					count(n);
+				}
+				return n;
+			} finally {
+				decompressionNanos.addAndGet(System.nanoTime()-start-(source.nanos-read));
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public long skip(long n)
+			throws IOException {
+			long skipped = super.skip(n);
+			count(skipped);
+			return skipped;
+		}
+
+		/**
+		 * Counts bytes of the decompressed body.
+		 * @param n the number of bytes
+		 * @throws IOException if the body is now too large
+		 */
+		private void count(long n)
+			throws IOException {
+			size += n;
+			if (size>maxSize) {
+				throw new IOException(
+					"Decompressed body is larger than "+maxSize+" bytes");
+			}
+		}
+	}
+
+}
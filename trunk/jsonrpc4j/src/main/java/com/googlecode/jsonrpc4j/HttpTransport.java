@@ -0,0 +1,161 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Proxy;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Sends the http requests of a {@link JsonRpcHttpClient}.  The
+ * default, {@link PooledHttpTransport}, keeps connections alive in a
+ * bounded pool per host; {@link UrlConnectionHttpTransport} leaves
+ * that to {@link java.net.HttpURLConnection}.  A transport can be
+ * shared by any number of clients and threads.
+ */
+public interface HttpTransport {
+
+	/**
+	 * Posts a request.  The response must be closed,
+	 * which drains it and releases its connection.
+	 *
+	 * @param request the {@link Request}
+	 * @return the {@link Response}
+	 * @throws IOException on error
+	 */
+	Response post(Request request)
+		throws IOException;
+
+	/**
+	 * Closes the transport's idle connections.
+	 */
+	void close();
+
+	/**
+	 * The body of a request, which is streamed to the server.
+	 */
+	public static interface RequestBody {
+
+		/**
+		 * @return the length of the body, or -1 to send it chunked
+		 */
+		long getContentLength();
+
+		/**
+		 * Writes the body, without closing the {@link OutputStream}.
+		 * @param ops the {@link OutputStream}
+		 * @throws IOException on error
+		 */
+		void writeTo(OutputStream ops)
+			throws IOException;
+	}
+
+	/**
+	 * A response, which must be closed once it's been read.
+	 */
+	public static interface Response {
+
+		/**
+		 * @return the http status code
+		 */
+		int getStatusCode();
+
+		/**
+		 * @param name the header's name, in any case
+		 * @return the header's value, or null
+		 */
+		String getHeader(String name);
+
+		/**
+		 * @return the body
+		 * @throws IOException on error
+		 */
+		InputStream getInputStream()
+			throws IOException;
+
+		/**
+		 * Drains what's left of the body and releases
+		 * the connection, or closes it if it can't be reused.
+		 */
+		void close();
+	}
+
+	/**
+	 * A request to post.
+	 */
+	public static class Request {
+
+		private final URL url;
+		private final Map<String, String> headers;
+		private final RequestBody body;
+		private final Proxy proxy;
+		private final int connectTimeoutMillis;
+		private final int readTimeoutMillis;
+
+		/**
+		 * Creates the request.
+		 * @param url the {@link URL}
+		 * @param headers the headers
+		 * @param body the {@link RequestBody}
+		 * @param proxy the {@link Proxy}
+		 * @param connectTimeoutMillis the connect timeout, 0 for none
+		 * @param readTimeoutMillis the read timeout, 0 for none
+		 */
+		public Request(
+			URL url, Map<String, String> headers, RequestBody body, Proxy proxy,
+			int connectTimeoutMillis, int readTimeoutMillis) {
+			this.url					= url;
+			this.headers				= Collections.unmodifiableMap(new LinkedHashMap<String, String>(headers));
+			this.body					= body;
+			this.proxy					= proxy;
+			this.connectTimeoutMillis	= connectTimeoutMillis;
+			this.readTimeoutMillis		= readTimeoutMillis;
+		}
+
+		/**
+		 * @return the url
+		 */
+		public URL getUrl() {
+			return url;
+		}
+
+		/**
+		 * @return the headers
+		 */
+		public Map<String, String> getHeaders() {
+			return headers;
+		}
+
+		/**
+		 * @return the body
+		 */
+		public RequestBody getBody() {
+			return body;
+		}
+
+		/**
+		 * @return the proxy
+		 */
+		public Proxy getProxy() {
+			return proxy;
+		}
+
+		/**
+		 * @return the connectTimeoutMillis
+		 */
+		public int getConnectTimeoutMillis() {
+			return connectTimeoutMillis;
+		}
+
+		/**
+		 * @return the readTimeoutMillis
+		 */
+		public int getReadTimeoutMillis() {
+			return readTimeoutMillis;
+		}
+	}
+
+}
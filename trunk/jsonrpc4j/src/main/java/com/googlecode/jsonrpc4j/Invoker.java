@@ -0,0 +1,26 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Calls a single exported method on the object that
+ * implements it.  {@link Invoker}s are created by an
+ * {@link InvokerFactory} when a {@link JsonRpcServer}
+ * is set up and are then shared by every request for
+ * their method.
+ */
+public interface Invoker {
+
+	/**
+	 * Invokes the method with the given arguments.
+	 *
+	 * @param arguments the converted arguments
+	 * @return the return value (or null if no return)
+	 * @throws IllegalAccessException if the method can't be accessed
+	 * @throws InvocationTargetException wrapping anything the method throws
+	 */
+	Object invoke(Object[] arguments)
+		throws IllegalAccessException,
+		InvocationTargetException;
+
+}
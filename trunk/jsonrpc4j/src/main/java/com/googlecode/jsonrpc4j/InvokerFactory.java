@@ -0,0 +1,22 @@
+package com.googlecode.jsonrpc4j;
+
+/**
+ * Creates the {@link Invoker}s used by a {@link JsonRpcServer}
+ * to call its handler's methods.
+ *
+ * @see ReflectionInvokerFactory
+ * @see DirectInvokerFactory
+ */
+public interface InvokerFactory {
+
+	/**
+	 * Creates the {@link Invoker} for calling the given
+	 * {@link ServiceMethod} on the given {@code handler}.
+	 *
+	 * @param handler the handler
+	 * @param method the {@link ServiceMethod}
+	 * @return the {@link Invoker}
+	 */
+	Invoker createInvoker(Object handler, ServiceMethod method);
+
+}
@@ -1,5 +1,8 @@
 package com.googlecode.jsonrpc4j;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -7,15 +10,17 @@ import java.lang.reflect.Type;
 import java.util.Collection;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.type.TypeFactory;
 
 /**
  * A JSON-RPC client.
@@ -26,10 +31,15 @@ public class JsonRpcClient {
 
 	private static final String JSON_RPC_VERSION = "2.0";
 
+	public static final int DEFAULT_MAX_CACHED_READERS = 256;
+
 	private ObjectMapper mapper;
 	private Random random;
 	private RequestListener requestListener;
 	private ExceptionResolver exceptionResolver = DefaultExceptionResolver.INSTANCE;
+	private WireCodec wireCodec = WireCodec.JSON;
+	private final Map<Type, ObjectReader> readers = new ConcurrentHashMap<Type, ObjectReader>();
+	private int maxCachedReaders = DEFAULT_MAX_CACHED_READERS;
 
 	/**
 	 * Creates a client that uses the given {@link ObjectMapper} to
@@ -57,6 +67,24 @@ public class JsonRpcClient {
 		this.requestListener = requestListener;
 	}
 
+	/**
+	 * Sets the number of return types whose {@link ObjectReader}s
+	 * are cached, {@link #DEFAULT_MAX_CACHED_READERS} by default.
+	 * Types are usually the return types of a proxy's methods, so
+	 * the default only runs out when types are made up per call.
+	 * Readers are created with the {@link ObjectMapper}'s
+	 * configuration when a type is first seen.
+	 *
+	 * @param maxCachedReaders the maxCachedReaders to set
+	 */
+	public void setMaxCachedReaders(int maxCachedReaders) {
+		if (maxCachedReaders<0) {
+			throw new IllegalArgumentException(
+				"maxCachedReaders must not be negative");
+		}
+		this.maxCachedReaders = maxCachedReaders;
+	}
+
 	/**
 	 * Invokes the given method on the remote service
 	 * passing the given arguments, a generated id and reads
@@ -153,6 +181,36 @@ public class JsonRpcClient {
 			methodName, argument, Type.class.cast(clazz), ops, ips, id);
 	}
 
+	/**
+	 * Invokes the given method on the remote service
+	 * passing the given arguments, a generated id and reads
+	 * a response, the request and response being framed by
+	 * the given {@link MessageFraming}.
+	 *
+	 * @see #writeRequest(String, Object, OutputStream, String)
+	 * @param methodName the method to invoke
+	 * @param argument the argument to pass to the method
+	 * @param returnType the expected return type
+	 * @param ops the {@link OutputStream} to write to
+	 * @param ips the {@link InputStream} to read from
+	 * @param framing the {@link MessageFraming}
+	 * @return the returned Object
+	 * @throws Throwable on error
+	 */
+	public Object invokeAndReadResponse(
+		String methodName, Object argument, Type returnType,
+		OutputStream ops, InputStream ips, MessageFraming framing)
+		throws Throwable {
+
+		// invoke it
+		ByteArrayOutputStream request = new ByteArrayOutputStream();
+		writeRequest(methodName, argument, request, random.nextLong()+"");
+		framing.writeMessage(ops, request.toByteArray());
+
+		// read it
+		return readResponse(returnType, new ByteArrayInputStream(framing.readMessage(ips)));
+	}
+
 	/**
 	 * Invokes the given method on the remote service passing
 	 * the given argument.  An id is generated automatically.  To read
@@ -235,9 +293,20 @@ public class JsonRpcClient {
 	 */
 	public Object readResponse(Type returnType, InputStream ips)
 		throws Throwable {
+		return readResponse(returnType, readTree(ips));
+	}
 
-		// read the response
-		JsonNode response = mapper.readTree(new NoCloseInputStream(ips));
+	/**
+	 * Handles a JSON-RPC response that's already been read
+	 * from the server, as by the asynchronous clients.
+	 *
+	 * @param returnType the expected return type
+	 * @param response the response
+	 * @return the object returned by the JSON-RPC response
+	 * @throws Throwable on error
+	 */
+	public Object readResponse(Type returnType, JsonNode response)
+		throws Throwable {
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.log(Level.FINE, "JSON-PRC Response: "+response.toString());
 		}
@@ -276,16 +345,61 @@ public class JsonRpcClient {
 				return null;
 			}
 			
-			JsonParser returnJsonParser = mapper.treeAsTokens(jsonObject.get("result"));
-			JavaType returnJavaType = TypeFactory.defaultInstance().constructType(returnType);
-			
-			return mapper.readValue(returnJsonParser, returnJavaType);
+			return getReader(returnType).readValue(
+				mapper.treeAsTokens(jsonObject.get("result")));
 		}
 
 		// no return type
 		return null;
 	}
 
+	/**
+	 * Returns the numeric id of a response to a request written
+	 * by {@link #writeRequest(String, Object, OutputStream, long)},
+	 * for matching it to its call.
+	 * @param response the response
+	 * @return the id, or -1 if it has none
+	 */
+	protected static long getNumericId(JsonNode response) {
+		JsonNode id = response.get("id");
+		if (id==null || id.isNull()) {
+			return -1;
+		} else if (id.isIntegralNumber()) {
+			return id.asLong();
+		}
+		try {
+			return Long.parseLong(id.asText());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * Returns the {@link ObjectReader} for reading results of the
+	 * given type, creating and caching it the first time the type
+	 * is seen.  Once {@code maxCachedReaders} types are cached the
+	 * readers for further types are created for each response.
+	 * @param returnType the return type
+	 * @return the {@link ObjectReader}
+	 */
+	protected ObjectReader getReader(Type returnType) {
+		ObjectReader reader = readers.get(returnType);
+		if (reader==null) {
+			reader = mapper.reader(mapper.getTypeFactory().constructType(returnType));
+			if (readers.size()<maxCachedReaders) {
+				readers.put(returnType, reader);
+			}
+		}
+		return reader;
+	}
+
+	/**
+	 * @return the number of return types whose readers are cached
+	 */
+	public int getCachedReaderCount() {
+		return readers.size();
+	}
+
 	/**
 	 * Writes a JSON-RPC request to the given {@link OutputStream}.
 	 * If the value passed for argument is null then the {@code params}
@@ -324,6 +438,23 @@ public class JsonRpcClient {
 		internalWriteRequest(methodName, argument, ops, id);
 	}
 
+	/**
+	 * Writes a JSON-RPC request with a numeric id, which is more
+	 * compact than a string and quicker to match to its response.
+	 *
+	 * @see #writeRequest(String, Object, OutputStream, String)
+	 * @param methodName the method to invoke
+	 * @param argument the method argument
+	 * @param ops the {@link OutputStream} to write to
+	 * @param id the request id
+	 * @throws IOException on error
+	 */
+	public void writeRequest(
+		String methodName, Object argument, OutputStream ops, long id)
+		throws IOException {
+		internalWriteRequest(methodName, argument, ops, Long.valueOf(id));
+	}
+
 	/**
 	 * Writes a JSON-RPC notification to the given
 	 * {@link OutputStream}.
@@ -345,18 +476,22 @@ public class JsonRpcClient {
 	 * @param methodName the method name
 	 * @param arguments the arguments
 	 * @param ops the stream
-	 * @param id the optional id
+	 * @param id the optional id, a {@link String} or a {@link Long}
 	 * @throws IOException on error
 	 */
 	private void internalWriteRequest(
-		String methodName, Object arguments, OutputStream ops, String id)
+		String methodName, Object arguments, OutputStream ops, Object id)
 		throws IOException {
 		
 		// create the request
 		ObjectNode request = mapper.createObjectNode();
 		
 		// add id
-		if (id!=null) { request.put("id", id); }
+		if (Long.class.isInstance(id)) {
+			request.put("id", Long.class.cast(id).longValue());
+		} else if (id!=null) {
+			request.put("id", id.toString());
+		}
 		
 		// add protocol and method
 		request.put("jsonrpc", JSON_RPC_VERSION);
@@ -407,9 +542,58 @@ public class JsonRpcClient {
 	 */
 	private void writeAndFlushValue(OutputStream ops, Object value)
 		throws IOException {
-		mapper.writeValue(new NoCloseOutputStream(ops), value);
+		if (wireCodec.isText()) {
+			mapper.writeValue(new NoCloseOutputStream(ops), value);
+		} else {
+			JsonGenerator generator = wireCodec.getJsonFactory()
+				.createJsonGenerator(new NoCloseOutputStream(ops), JsonEncoding.UTF8);
+			mapper.writeValue(generator, value);
+			generator.close();
+		}
 		ops.flush();
 	}
+
+	/**
+	 * Reads a value from the given {@link InputStream}, in
+	 * the client's {@link WireCodec}, without closing it.
+	 * @param ips the {@link InputStream}
+	 * @return the value
+	 * @throws IOException on error
+	 */
+	private JsonNode readTree(InputStream ips)
+		throws IOException {
+		if (wireCodec.isText()) {
+			return mapper.readTree(new NoCloseInputStream(ips));
+		}
+		JsonParser parser = wireCodec.getJsonFactory()
+			.createJsonParser(new NoCloseInputStream(ips));
+		try {
+			if (parser.nextToken()==null) {
+				throw new EOFException("No content to map due to end-of-input");
+			}
+			return mapper.readTree(parser);
+		} finally {
+			parser.close();
+		}
+	}
+
+	/**
+	 * Sets the {@link WireCodec} that requests are written, and
+	 * responses read, in.  It's JSON by default and the server
+	 * has to support the codec.
+	 *
+	 * @param wireCodec the wireCodec to set
+	 */
+	public void setWireCodec(WireCodec wireCodec) {
+		this.wireCodec = wireCodec;
+	}
+
+	/**
+	 * @return the {@link WireCodec}
+	 */
+	public WireCodec getWireCodec() {
+		return wireCodec;
+	}
 	
 	/**
 	 * Returns the {@link ObjectMapper} that the client
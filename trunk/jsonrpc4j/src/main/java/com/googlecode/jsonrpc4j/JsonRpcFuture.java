@@ -0,0 +1,184 @@
+package com.googlecode.jsonrpc4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The pending result of an asynchronous JSON-RPC call.  Besides
+ * waiting for it with {@link #get()}, {@link AsyncResultCallback}s can
+ * be added that are called once it's done, on the thread completing
+ * it, which for the clients is a thread of the completion
+ * {@link java.util.concurrent.Executor} of their {@link NioClientEngine},
+ * or on the adding thread if it's already done.
+ *
+ * @param <T> the type of the result
+ */
+public class JsonRpcFuture<T>
+	implements Future<T> {
+
+	private static final Logger LOGGER = Logger.getLogger(JsonRpcFuture.class.getName());
+
+	private static final int PENDING	= 0;
+	private static final int SUCCEEDED	= 1;
+	private static final int FAILED		= 2;
+	private static final int CANCELLED	= 3;
+
+	private int state = PENDING;
+	private T value;
+	private Throwable cause;
+	private List<AsyncResultCallback> callbacks;
+
+	/**
+	 * Completes the future with the given value, unless it's already done.
+	 * @param value the value
+	 * @return whether the future was completed by this call
+	 */
+	public boolean complete(T value) {
+		return finish(SUCCEEDED, value, null);
+	}
+
+	/**
+	 * Fails the future with the given error, unless it's already done.
+	 * @param cause the error
+	 * @return whether the future was failed by this call
+	 */
+	public boolean fail(Throwable cause) {
+		return finish(FAILED, null, cause);
+	}
+
+	/**
+	 * Cancels the future, the call itself can't be taken
+	 * back but its response is ignored.
+	 * @param mayInterruptIfRunning ignored
+	 * @return whether the future was cancelled by this call
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		return finish(CANCELLED, null, new CancellationException());
+	}
+
+	/**
+	 * Adds a callback that's called once the future is done, which
+	 * may be before this method returns.  A cancelled future fails
+	 * its callbacks with a {@link CancellationException}.
+	 * @param callback the {@link AsyncResultCallback}
+	 */
+	public void addCallback(AsyncResultCallback callback) {
+		synchronized (this) {
+			if (state==PENDING) {
+				if (callbacks==null) {
+					callbacks = new ArrayList<AsyncResultCallback>(1);
+				}
+				callbacks.add(callback);
+				return;
+			}
+		}
+		runCallback(callback);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized boolean isCancelled() {
+		return state==CANCELLED;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized boolean isDone() {
+		return state!=PENDING;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized T get()
+		throws InterruptedException, ExecutionException {
+		while (state==PENDING) {
+			wait();
+		}
+		return result();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public synchronized T get(long timeout, TimeUnit unit)
+		throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.nanoTime()+unit.toNanos(timeout);
+		while (state==PENDING) {
+			long remaining = deadline-System.nanoTime();
+			if (remaining<=0) {
+				throw new TimeoutException();
+			}
+			TimeUnit.NANOSECONDS.timedWait(this, remaining);
+		}
+		return result();
+	}
+
+	/**
+	 * @return the value of a done future
+	 * @throws ExecutionException if it failed
+	 */
+	private T result()
+		throws ExecutionException {
+		if (state==SUCCEEDED) {
+			return value;
+		} else if (state==CANCELLED) {
+			throw new CancellationException();
+		}
+		throw new ExecutionException(cause);
+	}
+
+	/**
+	 * Moves the future to the given state and calls its callbacks.
+	 * @param newState the state
+	 * @param newValue the value
+	 * @param newCause the error
+	 * @return false if it was already done
+	 */
+	private boolean finish(int newState, T newValue, Throwable newCause) {
+		List<AsyncResultCallback> toNotify;
+		synchronized (this) {
+			if (state!=PENDING) {
+				return false;
+			}
+			state		= newState;
+			value		= newValue;
+			cause		= newCause;
+			toNotify	= callbacks;
+			callbacks	= null;
+			notifyAll();
+		}
+		if (toNotify!=null) {
+			for (AsyncResultCallback callback : toNotify) {
+				runCallback(callback);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Calls a callback of a done future.
+	 * @param callback the {@link AsyncResultCallback}
+	 */
+	private void runCallback(AsyncResultCallback callback) {
+		try {
+			if (state==SUCCEEDED) {
+				callback.onSuccess(value);
+			} else {
+				callback.onFailure(cause);
+			}
+		} catch (Throwable t) {
+			LOGGER.log(Level.WARNING, "Exception in callback", t);
+		}
+	}
+
+}
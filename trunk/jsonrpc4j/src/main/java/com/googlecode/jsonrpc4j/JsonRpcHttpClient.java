@@ -1,16 +1,21 @@
 package com.googlecode.jsonrpc4j;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.lang.reflect.Type;
-import java.net.HttpURLConnection;
 import java.net.Proxy;
 import java.net.URL;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.HttpTransport.Request;
+import com.googlecode.jsonrpc4j.HttpTransport.RequestBody;
+import com.googlecode.jsonrpc4j.HttpTransport.Response;
 
 /**
  * A JSON-RPC client that uses the HTTP protocol.
@@ -25,6 +30,10 @@ public class JsonRpcHttpClient
 	private int connectionTimeoutMillis	= 60*1000;
 	private int readTimeoutMillis		= 60*1000*2;
 	private Map<String, String> headers	= new HashMap<String, String>();
+	private HttpCompression httpCompression	= null;
+	private boolean compressRequests	= false;
+	private HttpTransport httpTransport	= new UrlConnectionHttpTransport();
+	private NioHttpTransport nioHttpTransport;
 
 	/**
 	 * Creates the {@link JsonRpcHttpClient} bound to the given {@code serviceUrl}.
@@ -129,14 +138,178 @@ public class JsonRpcHttpClient
 		Map<String, String> extraHeaders)
 		throws Throwable {
 
-		// create URLConnection
-		HttpURLConnection con = openConnection(extraHeaders);
+		// post it
+		Response response = httpTransport.post(
+			createRequest(methodName, argument, extraHeaders));
 
-		// invoke it
-		super.invoke(methodName, argument, con.getOutputStream());
+		// read and return value, the response is always
+		// closed so that its connection can be reused
+		try {
+			return readResponse(returnType, response);
+		} finally {
+			response.close();
+		}
+	}
+
+	/**
+	 * Invokes the given method with the given arguments without
+	 * waiting for the response.  Plain http requests are posted
+	 * by the {@link NioHttpTransport}, so that no thread waits
+	 * on them, others by the {@link HttpTransport} on a thread of
+	 * the completion {@link java.util.concurrent.Executor}.
+	 * 
+	 * @see JsonRpcClient#writeRequest(String, Object, java.io.OutputStream, String)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param returnType the return type
+	 * @param extraHeaders extra headers to add to the request
+	 * @return the {@link JsonRpcFuture} of the return value
+	 */
+	public JsonRpcFuture<Object> invokeAsync(
+		final String methodName, final Object argument, final Type returnType,
+		final Map<String, String> extraHeaders) {
+		final JsonRpcFuture<Object> future = new JsonRpcFuture<Object>();
+		NioHttpTransport transport = getNioHttpTransport();
+		try {
+
+			// blocking, on a completion thread
+			if (!"http".equalsIgnoreCase(serviceUrl.getProtocol())
+				|| connectionProxy.type()!=Proxy.Type.DIRECT) {
+				transport.getEngine().getCompletionExecutor().execute(new Runnable() {
+					public void run() {
+						try {
+							future.complete(invoke(methodName, argument, returnType, extraHeaders));
+						} catch (Throwable t) {
+							future.fail(t);
+						}
+					}
+				});
+				return future;
+			}
+
+			// non-blocking
+			transport.post(createRequest(methodName, argument, extraHeaders),
+				new NioHttpTransport.Callback() {
+				public void onResponse(Response response) {
+					try {
+						future.complete(readResponse(returnType, response));
+					} catch (Throwable t) {
+						future.fail(t);
+					}
+				}
+				public void onFailure(Throwable cause) {
+					future.fail(cause);
+				}
+			});
+		} catch (Throwable t) {
+			future.fail(t);
+		}
+		return future;
+	}
+
+	/**
+	 * Invokes the given method with the given arguments without
+	 * waiting for the response.
+	 * 
+	 * @see #invokeAsync(String, Object, Type, Map)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param returnType the return type
+	 * @return the {@link JsonRpcFuture} of the return value
+	 */
+	public JsonRpcFuture<Object> invokeAsync(
+		String methodName, Object argument, Type returnType) {
+		return invokeAsync(methodName, argument, returnType, new HashMap<String, String>());
+	}
 
-		// read and return value
-		return super.readResponse(returnType, con.getInputStream());
+	/**
+	 * Invokes the given method with the given arguments without
+	 * waiting for the response.
+	 * 
+	 * @see #invokeAsync(String, Object, Type, Map)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param clazz the return type
+	 * @return the {@link JsonRpcFuture} of the return value
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> JsonRpcFuture<T> invokeAsync(
+		String methodName, Object argument, Class<T> clazz) {
+		return (JsonRpcFuture<T>)(JsonRpcFuture<?>)invokeAsync(
+			methodName, argument, Type.class.cast(clazz));
+	}
+
+	/**
+	 * Creates the http request of a call.
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param extraHeaders extra headers to add to the request
+	 * @return the {@link Request}
+	 * @throws IOException on error
+	 */
+	private Request createRequest(
+		final String methodName, final Object argument, Map<String, String> extraHeaders)
+		throws IOException {
+
+		// a request that may be compressed is buffered to see if it's
+		// worth it, any other is streamed as it's written
+		RequestBody body;
+		String encoding = null;
+		if (httpCompression!=null && compressRequests) {
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			super.invoke(methodName, argument, buffer);
+			if (httpCompression.shouldCompress(buffer.size())) {
+				ByteArrayOutputStream compressed = new ByteArrayOutputStream(buffer.size()/2);
+				OutputStream compressor = httpCompression.compress(compressed, HttpCompression.GZIP, null);
+				buffer.writeTo(compressor);
+				compressor.close();
+				buffer = compressed;
+				encoding = HttpCompression.GZIP;
+			}
+			final ByteArrayOutputStream buffered = buffer;
+			body = new RequestBody() {
+				public long getContentLength() {
+					return buffered.size();
+				}
+				public void writeTo(OutputStream ops)
+					throws IOException {
+					buffered.writeTo(ops);
+				}
+			};
+		} else {
+			body = new RequestBody() {
+				public long getContentLength() {
+					return -1;
+				}
+				public void writeTo(OutputStream ops)
+					throws IOException {
+					JsonRpcHttpClient.super.invoke(methodName, argument, ops);
+				}
+			};
+		}
+		return new Request(
+			serviceUrl, createHeaders(extraHeaders, encoding), body,
+			connectionProxy, connectionTimeoutMillis, readTimeoutMillis);
+	}
+
+	/**
+	 * Reads the JSON-RPC response from an http response.
+	 * @param returnType the return type
+	 * @param response the {@link Response}
+	 * @return the return value
+	 * @throws Throwable on error
+	 */
+	private Object readResponse(Type returnType, Response response)
+		throws Throwable {
+		if (response.getStatusCode()>=400) {
+			throw new IOException("Server returned HTTP response code: "
+				+response.getStatusCode()+" for URL: "+serviceUrl);
+		}
+		InputStream input = response.getInputStream();
+		if (httpCompression!=null) {
+			input = httpCompression.decompress(input, response.getHeader("Content-Encoding"));
+		}
+		return super.readResponse(returnType, input);
 	}
 
 	/**
@@ -160,40 +333,25 @@ public class JsonRpcHttpClient
 	}
 
 	/**
-	 * Opens a connection to the server.
+	 * Creates the headers of a request.
 	 * @param extraHeaders extra headers to add to the request
-	 * @return the connection
-	 * @throws IOException 
+	 * @param encoding the request's content coding, or null
+	 * @return the headers
 	 */
-	private HttpURLConnection openConnection(Map<String, String> extraHeaders)
-		throws IOException {
-		
-		// create URLConnection
-		HttpURLConnection con = (HttpURLConnection)serviceUrl.openConnection(connectionProxy);
-		con.setConnectTimeout(connectionTimeoutMillis);
-		con.setReadTimeout(readTimeoutMillis);
-		con.setAllowUserInteraction(false);
-		con.setDefaultUseCaches(false);
-		con.setDoInput(true);
-		con.setDoOutput(true);
-		con.setUseCaches(false);
-		con.setInstanceFollowRedirects(true);
-		con.setRequestMethod("POST");
-
-		// add headers
-		for (Entry<String, String> entry : headers.entrySet()) {
-			con.setRequestProperty(entry.getKey(), entry.getValue());
+	private Map<String, String> createHeaders(Map<String, String> extraHeaders, String encoding) {
+		Map<String, String> requestHeaders = new LinkedHashMap<String, String>(headers);
+		requestHeaders.putAll(extraHeaders);
+		requestHeaders.put("Content-Type", getWireCodec().getContentType());
+		if (!getWireCodec().isText()) {
+			requestHeaders.put("Accept", getWireCodec().getContentType());
 		}
-		for (Entry<String, String> entry : extraHeaders.entrySet()) {
-			con.setRequestProperty(entry.getKey(), entry.getValue());
+		if (httpCompression!=null) {
+			requestHeaders.put("Accept-Encoding", HttpCompression.ACCEPT_ENCODING);
 		}
-		con.setRequestProperty("Content-Type", "application/json-rpc");
-
-		// open the connection
-		con.connect();
-
-		// return it
-		return con;
+		if (encoding!=null) {
+			requestHeaders.put("Content-Encoding", encoding);
+		}
+		return requestHeaders;
 	}
 
 	/**
@@ -252,6 +410,79 @@ public class JsonRpcHttpClient
 		this.readTimeoutMillis = readTimeoutMillis;
 	}
 
+	/**
+	 * Sets the {@link HttpCompression} used to ask for compressed
+	 * responses and to decompress them.  When null, the default,
+	 * responses aren't compressed.
+	 *
+	 * @param httpCompression the httpCompression to set
+	 */
+	public void setHttpCompression(HttpCompression httpCompression) {
+		this.httpCompression = httpCompression;
+	}
+
+	/**
+	 * @return the {@link HttpCompression}, or null
+	 */
+	public HttpCompression getHttpCompression() {
+		return httpCompression;
+	}
+
+	/**
+	 * Sets whether requests that are large enough are gzipped too,
+	 * when there's an {@link HttpCompression}.  The server has to
+	 * support compressed requests, so they aren't by default.
+	 *
+	 * @param compressRequests the compressRequests to set
+	 */
+	public void setCompressRequests(boolean compressRequests) {
+		this.compressRequests = compressRequests;
+	}
+
+	/**
+	 * Sets the {@link HttpTransport} that requests are posted with,
+	 * which may be shared with other clients.  By default each client
+	 * has an {@link UrlConnectionHttpTransport} of its own, a
+	 * {@link PooledHttpTransport} trades what that does for the
+	 * JDK's proxies, redirects and authentication for control
+	 * over its pool of connections.
+	 *
+	 * @param httpTransport the httpTransport to set
+	 */
+	public void setHttpTransport(HttpTransport httpTransport) {
+		this.httpTransport = httpTransport;
+	}
+
+	/**
+	 * @return the {@link HttpTransport}
+	 */
+	public HttpTransport getHttpTransport() {
+		return httpTransport;
+	}
+
+	/**
+	 * Sets the {@link NioHttpTransport} that asynchronous calls are
+	 * posted with, whose {@link NioClientEngine} they're completed on.
+	 * By default it's one of the client's own over the
+	 * {@link NioClientEngine#getDefault()} engine, created by the
+	 * first asynchronous call.
+	 *
+	 * @param nioHttpTransport the nioHttpTransport to set
+	 */
+	public synchronized void setNioHttpTransport(NioHttpTransport nioHttpTransport) {
+		this.nioHttpTransport = nioHttpTransport;
+	}
+
+	/**
+	 * @return the {@link NioHttpTransport}
+	 */
+	public synchronized NioHttpTransport getNioHttpTransport() {
+		if (nioHttpTransport==null) {
+			nioHttpTransport = new NioHttpTransport(NioClientEngine.getDefault());
+		}
+		return nioHttpTransport;
+	}
+
 	/**
 	 * @return the headers
 	 */
@@ -1,25 +1,24 @@
 package com.googlecode.jsonrpc4j;
 
 import java.io.ByteArrayInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.GenericDeclaration;
-import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
-import java.lang.reflect.ParameterizedType;
-import java.lang.reflect.Proxy;
-import java.lang.reflect.Type;
-import java.lang.reflect.TypeVariable;
 import java.math.BigDecimal;
+import java.math.BigInteger;
 import java.net.URLDecoder;
 import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashSet;
-import java.util.Iterator;
+import java.util.Collections;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -28,17 +27,25 @@ import javax.portlet.ResourceResponse;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
-import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.core.JsonStreamContext;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.NullNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
-import com.fasterxml.jackson.databind.type.TypeFactory;
 import com.fasterxml.jackson.databind.util.TokenBuffer;
 import com.googlecode.jsonrpc4j.ErrorResolver.JsonError;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.ContentLengthOutputStreamWrapper;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.ContentLengthSetter;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.HeaderSetter;
 
 /**
  * A JSON-RPC request server reads JSON-RPC requests from an
@@ -50,6 +57,8 @@ public class JsonRpcServer {
 
 	public static final String JSONRPC_RESPONSE_CONTENT_TYPE = "application/json-rpc";
 
+	public static final int DEFAULT_MAX_BATCH_IN_FLIGHT = 128;
+
 	public static final ErrorResolver DEFAULT_ERRROR_RESOLVER
 		= new MultipleErrorResolver(AnnotationsErrorResolver.INSTANCE, DefaultErrorResolver.INSTANCE);
 
@@ -57,15 +66,35 @@ public class JsonRpcServer {
 	private boolean rethrowExceptions 		= false;
 	private boolean allowExtraParams 		= false;
 	private boolean allowLessParams			= false;
+	private int maxCachedParamShapes		= OverloadResolver.DEFAULT_MAX_CACHED_SHAPES;
+	private Executor batchExecutor			= null;
+	private int maxBatchParallelism			= Runtime.getRuntime().availableProcessors();
+	private int maxBatchSize				= Integer.MAX_VALUE;
+	private int maxBatchInFlight			= DEFAULT_MAX_BATCH_IN_FLIGHT;
+	private NotificationExecutor notificationExecutor;
 	protected ErrorResolver errorResolver	= null;
+	private InvokerFactory invokerFactory	= ReflectionInvokerFactory.INSTANCE;
+	private AsyncResultAdapter asyncResultAdapter = null;
+	private ResponseBuffers responseBuffers	= new ResponseBuffers();
+	private HttpCompression httpCompression	= null;
+	private List<WireCodec> wireCodecs		= Collections.emptyList();
 	protected ObjectMapper mapper;
 	protected Object handler;
 	protected Class<?> remoteInterface;
+	private final DispatchIndex dispatchIndex;
+	private volatile OverloadResolver[] resolvers;
+	private volatile Invoker[] invokers;
+	private volatile ServiceMethodBinding[] bindings;
+	private volatile ObjectWriter errorWriter;
 
 	/**
 	 * Creates the server with the given {@link ObjectMapper} delegating
 	 * all calls to the given {@code handler} {@link Object} but only
-	 * methods available on the {@code remoteInterface}.
+	 * methods available on the {@code remoteInterface}.  The readers
+	 * and writers of each method are created from the mapper when it's
+	 * first called, see {@link ServiceMethodBinding}, so the mapper can
+	 * be configured after the server is created but before it handles
+	 * requests.
 	 *
 	 * @param mapper the {@link ObjectMapper}
 	 * @param handler the {@code handler}
@@ -76,6 +105,10 @@ public class JsonRpcServer {
 		this.mapper				= mapper;
 		this.handler 			= handler;
 		this.remoteInterface	= remoteInterface;
+		this.dispatchIndex		= new DispatchIndex(getHandlerClass());
+		createBindings();
+		compileResolvers();
+		createInvokers();
 	}
 
 	/**
@@ -118,22 +151,24 @@ public class JsonRpcServer {
 	 * @param response the {@link ResourceResponse}
 	 * @throws IOException on error
 	 */
-	public void handle(ResourceRequest request, ResourceResponse response)
+	public void handle(ResourceRequest request, final ResourceResponse response)
 		throws IOException {
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.log(Level.FINE, "Handing ResourceRequest "+request.getMethod());
 		}
 
-		// set response type
-		response.setContentType(JSONRPC_RESPONSE_CONTENT_TYPE);
-
 		// setup streams
 		InputStream input 	= null;
 		OutputStream output	= response.getPortletOutputStream();
+		WireCodec codec		= WireCodec.JSON;
 
 		// POST
 		if (request.getMethod().equals("POST")) {
 			input = request.getPortletInputStream();
+			codec = findWireCodec(request.getContentType());
+			if (httpCompression!=null) {
+				input = httpCompression.decompress(input, request.getProperty("Content-Encoding"));
+			}
 
 		// GET
 		} else if (request.getMethod().equals("GET")) {
@@ -148,8 +183,27 @@ public class JsonRpcServer {
 				"Invalid request method, only POST and GET is supported");
 		}
 
+		// negotiate the response's codec and compression
+		WireCodec responseCodec = negotiateWireCodec(request.getProperty("Accept"), codec);
+		response.setContentType(responseCodec.getContentType());
+		String encoding = null;
+		if (httpCompression!=null) {
+			encoding = httpCompression.negotiate(request.getProperty("Accept-Encoding"));
+			response.setProperty("Vary", "Accept-Encoding");
+		}
+
 		// service the request
-		handle(input, output);
+		handle(input, codec, new ContentLengthOutputStreamWrapper(mapper, responseCodec, output, responseBuffers,
+			new ContentLengthSetter() {
+				public void setContentLength(int contentLength) {
+					response.setContentLength(contentLength);
+				}
+			},
+			httpCompression, encoding, new HeaderSetter() {
+				public void setHeader(String name, String value) {
+					response.setProperty(name, value);
+				}
+			}));
 	}
 
 	/**
@@ -159,22 +213,24 @@ public class JsonRpcServer {
 	 * @param response the {@link HttpServletResponse}
 	 * @throws IOException on error
 	 */
-	public void handle(HttpServletRequest request, HttpServletResponse response)
+	public void handle(HttpServletRequest request, final HttpServletResponse response)
 		throws IOException {
 		if (LOGGER.isLoggable(Level.FINE)) {
 			LOGGER.log(Level.FINE, "Handing HttpServletRequest "+request.getMethod());
 		}
 
-		// set response type
-		response.setContentType(JSONRPC_RESPONSE_CONTENT_TYPE);
-
 		// setup streams
 		InputStream input 	= null;
 		OutputStream output	= response.getOutputStream();
+		WireCodec codec		= WireCodec.JSON;
 
 		// POST
 		if (request.getMethod().equals("POST")) {
 			input = request.getInputStream();
+			codec = findWireCodec(request.getContentType());
+			if (httpCompression!=null) {
+				input = httpCompression.decompress(input, request.getHeader("Content-Encoding"));
+			}
 
 		// GET
 		} else if (request.getMethod().equals("GET")) {
@@ -189,14 +245,33 @@ public class JsonRpcServer {
 				"Invalid request method, only POST and GET is supported");
 		}
 
+		// negotiate the response's codec and compression
+		WireCodec responseCodec = negotiateWireCodec(request.getHeader("Accept"), codec);
+		response.setContentType(responseCodec.getContentType());
+		String encoding = null;
+		if (httpCompression!=null) {
+			encoding = httpCompression.negotiate(request.getHeader("Accept-Encoding"));
+			response.setHeader("Vary", "Accept-Encoding");
+		}
+
 		// service the request
-		handle(input, output);
+		handle(input, codec, new ContentLengthOutputStreamWrapper(mapper, responseCodec, output, responseBuffers,
+			new ContentLengthSetter() {
+				public void setContentLength(int contentLength) {
+					response.setContentLength(contentLength);
+				}
+			},
+			httpCompression, encoding, new HeaderSetter() {
+				public void setHeader(String name, String value) {
+					response.setHeader(name, value);
+				}
+			}));
 	}
 
 	/**
 	 * Handles a single request from the given {@link InputStream},
-	 * that is to say that a single {@link JsonNode} is read from
-	 * the stream and treated as a JSON-RPC request.  All responses
+	 * that is to say that a single JSON value is read from the
+	 * stream and treated as a JSON-RPC request.  All responses
 	 * are written to the given {@link OutputStreamWrapper}.
 	 *
 	 * @param ips the {@link InputStream}
@@ -205,7 +280,30 @@ public class JsonRpcServer {
 	 */
 	public void handle(InputStream ips, OutputStreamWrapper opsw)
 		throws IOException {
-		handleNode(mapper.readTree(new NoCloseInputStream(ips)), opsw);
+		handle(ips, WireCodec.JSON, opsw);
+	}
+
+	/**
+	 * Handles a single request from the given {@link InputStream}
+	 * like {@link #handle(InputStream, OutputStreamWrapper)}, the
+	 * request being in the given {@link WireCodec}.  Responses are
+	 * written in whichever codec the {@link OutputStreamWrapper}
+	 * was created with.
+	 *
+	 * @param ips the {@link InputStream}
+	 * @param codec the {@link WireCodec} of the request
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @throws IOException on error
+	 */
+	public void handle(InputStream ips, WireCodec codec, OutputStreamWrapper opsw)
+		throws IOException {
+		JsonParser parser = codec.getJsonFactory(mapper)
+			.createJsonParser(new NoCloseInputStream(ips));
+		try {
+			handleParser(parser, opsw);
+		} finally {
+			parser.close();
+		}
 	}
 	
 	/**
@@ -220,7 +318,192 @@ public class JsonRpcServer {
 	 */
 	public void handle(InputStream ips, OutputStream ops)
 		throws IOException {
-		handleNode(mapper.readTree(new NoCloseInputStream(ips)), new com.googlecode.jsonrpc4j.OutputStreamWrapper.BasicOutputStreamWrapper(mapper, ops));
+		handle(ips, new com.googlecode.jsonrpc4j.OutputStreamWrapper.BasicOutputStreamWrapper(mapper, ops));
+	}
+
+	/**
+	 * Handles a single request from the given {@link InputStream} like
+	 * {@link #handle(InputStream, OutputStreamWrapper)} but without
+	 * waiting for a method that returns an asynchronous result (see
+	 * {@link AsyncResultAdapter}), its response is written by the
+	 * thread that completes the result and so the given
+	 * {@link OutputStreamWrapper} must be usable from that thread.
+	 * Anything else, batches included, is handled before this method
+	 * returns.  The given {@link AsyncResponseCallback} is told when
+	 * the request is finished with, unless this method throws.
+	 *
+	 * @param ips the {@link InputStream}
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @param callback the {@link AsyncResponseCallback}
+	 * @throws IOException on error reading the request
+	 */
+	public void handleAsync(
+		InputStream ips, OutputStreamWrapper opsw, AsyncResponseCallback callback)
+		throws IOException {
+		handleAsync(ips, WireCodec.JSON, opsw, callback);
+	}
+
+	/**
+	 * Handles a single request from the given {@link InputStream} like
+	 * {@link #handleAsync(InputStream, OutputStreamWrapper, AsyncResponseCallback)},
+	 * the request being in the given {@link WireCodec}.
+	 *
+	 * @param ips the {@link InputStream}
+	 * @param codec the {@link WireCodec} of the request
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @param callback the {@link AsyncResponseCallback}
+	 * @throws IOException on error reading the request
+	 */
+	public void handleAsync(
+		InputStream ips, WireCodec codec, OutputStreamWrapper opsw, AsyncResponseCallback callback)
+		throws IOException {
+		handleAsync(codec.getJsonFactory(mapper)
+			.createJsonParser(new NoCloseInputStream(ips)), opsw, callback);
+	}
+
+	/**
+	 * Handles a single request that has been read into a buffer like
+	 * {@link #handleAsync(InputStream, OutputStreamWrapper, AsyncResponseCallback)},
+	 * parsing it straight from the buffer.
+	 *
+	 * @param data the buffer
+	 * @param offset where the request starts in the buffer
+	 * @param length the length of the request
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @param callback the {@link AsyncResponseCallback}
+	 * @throws IOException on error reading the request
+	 */
+	public void handleAsync(
+		byte[] data, int offset, int length, OutputStreamWrapper opsw, AsyncResponseCallback callback)
+		throws IOException {
+		handleAsync(data, offset, length, WireCodec.JSON, opsw, callback);
+	}
+
+	/**
+	 * Handles a single request that has been read into a buffer like
+	 * {@link #handleAsync(byte[], int, int, OutputStreamWrapper, AsyncResponseCallback)},
+	 * the request being in the given {@link WireCodec}.
+	 *
+	 * @param data the buffer
+	 * @param offset where the request starts in the buffer
+	 * @param length the length of the request
+	 * @param codec the {@link WireCodec} of the request
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @param callback the {@link AsyncResponseCallback}
+	 * @throws IOException on error reading the request
+	 */
+	public void handleAsync(
+		byte[] data, int offset, int length, WireCodec codec,
+		OutputStreamWrapper opsw, AsyncResponseCallback callback)
+		throws IOException {
+		handleAsync(codec.getJsonFactory(mapper)
+			.createJsonParser(data, offset, length), opsw, callback);
+	}
+
+	/**
+	 * Handles a single request from the given {@link JsonParser},
+	 * which is closed afterwards.
+	 *
+	 * @param parser the {@link JsonParser}
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @param callback the {@link AsyncResponseCallback}
+	 * @throws IOException on error reading the request
+	 */
+	private void handleAsync(
+		JsonParser parser, OutputStreamWrapper opsw, AsyncResponseCallback callback)
+		throws IOException {
+		RequestOutcome outcome = null;
+		try {
+
+			// bail on an empty stream
+			JsonToken token = parser.nextToken();
+			if (token==null) {
+				throw new EOFException("No content to map due to end-of-input");
+			}
+
+			// only single requests are handled asynchronously
+			if (token==JsonToken.START_OBJECT) {
+				outcome = processObject(parser);
+			} else if (token==JsonToken.START_ARRAY) {
+				handleArray(parser, opsw);
+			} else {
+				JsonNode node = mapper.readTree(parser);
+				if (node.isObject()) {
+					outcome = processObject(ObjectNode.class.cast(node));
+				} else {
+					handleNode(node, opsw);
+				}
+			}
+		} finally {
+			parser.close();
+		}
+		respondAsync(outcome, opsw, callback);
+	}
+
+	/**
+	 * Reads the next request from the given {@link JsonParser}
+	 * without handling it, so that it can be handled later, on
+	 * another thread, with
+	 * {@link #handleAsync(JsonNode, OutputStreamWrapper, AsyncResponseCallback)}.
+	 * The parser reads ahead, so it should be kept for reading
+	 * the requests that follow.
+	 *
+	 * @param parser the {@link JsonParser}
+	 * @return the request
+	 * @throws IOException on error
+	 */
+	public JsonNode readRequest(JsonParser parser)
+		throws IOException {
+
+		// bail on an empty stream
+		if (parser.nextToken()==null) {
+			throw new EOFException("No content to map due to end-of-input");
+		}
+		return mapper.readTree(parser);
+	}
+
+	/**
+	 * Handles a request that has already been read, as by
+	 * {@link #handleAsync(InputStream, OutputStreamWrapper, AsyncResponseCallback)}.
+	 *
+	 * @param node the request
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @param callback the {@link AsyncResponseCallback}
+	 * @throws IOException on error
+	 */
+	public void handleAsync(
+		JsonNode node, OutputStreamWrapper opsw, AsyncResponseCallback callback)
+		throws IOException {
+		RequestOutcome outcome = null;
+		if (node.isObject()) {
+			outcome = processObject(ObjectNode.class.cast(node));
+		} else {
+			handleNode(node, opsw);
+		}
+		respondAsync(outcome, opsw, callback);
+	}
+
+	/**
+	 * Writes the response of a request handled asynchronously,
+	 * now or once its result completes.
+	 *
+	 * @param outcome the {@link RequestOutcome}, null if it's been handled
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @param callback the {@link AsyncResponseCallback}
+	 */
+	private void respondAsync(
+		RequestOutcome outcome, final OutputStreamWrapper opsw, final AsyncResponseCallback callback) {
+		if (outcome==null) {
+			callback.onResponseWritten();
+		} else if (outcome.pending==null) {
+			writeOutcome(outcome, opsw, callback);
+		} else {
+			outcome.pending.setListener(new OutcomeListener() {
+				public void onOutcome(RequestOutcome outcome) {
+					writeOutcome(outcome, opsw, callback);
+				}
+			});
+		}
 	}
 
 	/**
@@ -262,6 +545,36 @@ public class JsonRpcServer {
 			? remoteInterface : handler.getClass();
 	}
 
+	/**
+	 * Handles the next JSON value from the given {@link JsonParser}
+	 * and writes the responses to the given {@link OutputStreamWrapper}.
+	 * Single requests and batches are read straight from the parser,
+	 * anything else is read into a {@link JsonNode} and passed on to
+	 * {@link #handleNode(JsonNode, OutputStreamWrapper)}.
+	 *
+	 * @param parser the {@link JsonParser}
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @throws IOException on error
+	 */
+	protected void handleParser(JsonParser parser, OutputStreamWrapper opsw)
+		throws IOException {
+
+		// bail on an empty stream
+		JsonToken token = parser.nextToken();
+		if (token==null) {
+			throw new EOFException("No content to map due to end-of-input");
+		}
+
+		if (token==JsonToken.START_OBJECT) {
+			handleObject(parser, opsw);
+		} else if (token==JsonToken.START_ARRAY) {
+			handleArray(parser, opsw);
+		} else {
+			JsonNode node = mapper.readTree(parser);
+			handleNode(node, opsw);
+		}
+	}
+
 	/**
 	 * Handles the given {@link JsonNode} and writes the
 	 * responses to the given {@link OutputStream}.
@@ -298,219 +611,1196 @@ public class JsonRpcServer {
 	 */
 	protected void handleArray(ArrayNode node, OutputStreamWrapper opsw)
 		throws IOException {
-		throw new RuntimeException("not implemented with http error code support yet");
-//		if (LOGGER.isLoggable(Level.FINE)) {
-//			LOGGER.log(Level.FINE, "Handing "+node.size()+" requests");
-//		}
-//
-//		// loop through each array element
-//		ops.write('[');
-//		for (int i=0; i<node.size(); i++) {
-//			handleNode(node.get(i), ops);
-//			if (i != node.size() - 1) ops.write(','); 
-//		}
-//		ops.write(']');
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, "Handing "+node.size()+" requests");
+		}
+
+		// an empty batch is an invalid request
+		if (node.size()==0) {
+			writeAndFlushResponse(opsw, createErrorResponse(
+				"jsonrpc", "null", StandardJsonError.INVALID_REQUEST, null));
+			return;
+		}
+
+		// only handle as many elements as are allowed
+		boolean tooLarge = node.size()>maxBatchSize;
+		if (tooLarge) {
+			ArrayNode allowed = mapper.createArrayNode();
+			for (int i=0; i<maxBatchSize; i++) {
+				allowed.add(node.get(i));
+			}
+			node = allowed;
+		}
+
+		// handle the elements, collecting the
+		// responses in the order of the requests
+		RequestOutcome[] outcomes = processBatch(node);
+		List<JsonRpcServerResponse> responses = new ArrayList<JsonRpcServerResponse>();
+		Throwable thrown = null;
+		for (RequestOutcome outcome : outcomes) {
+			if (outcome.response!=null) {
+				responses.add(outcome.response);
+			}
+			if (thrown==null && outcome.thrown!=null) {
+				thrown = outcome.thrown;
+			}
+		}
+		if (tooLarge) {
+			responses.add(createBatchTooLargeResponse());
+		}
+
+		// nothing is written for a batch of notifications
+		if (!responses.isEmpty()) {
+			writeAndFlushResponse(opsw, new JsonRpcServerBatchResponse(responses));
+		}
+		if (thrown!=null && rethrowExceptions) {
+			throw new RuntimeException(thrown);
+		}
 	}
 
 	/**
-	 * Handles the given {@link ObjectNode} and writes the
-	 * responses to the given {@link OutputStream}.
+	 * Handles the batch that the given {@link JsonParser} is positioned
+	 * at the start of and writes the responses to the given
+	 * {@link OutputStreamWrapper}.  Elements are read and handled
+	 * {@code maxBatchInFlight} at a time so that only that many are
+	 * in memory at once.  Responses are held back until the batch has
+	 * been handled, so that the http code can follow the same rules as
+	 * {@link #handleArray(ArrayNode, OutputStreamWrapper)}, unless there
+	 * are more than {@code maxBatchInFlight} of them, in which case the
+	 * response array is written as the rest of the batch is handled and
+	 * the http code is 200.  Elements beyond {@code maxBatchSize} aren't
+	 * handled and an Invalid Request error is added in their place.
 	 *
-	 * @param node the {@link JsonNode}
-	 * @param ops the {@link OutputStream}
+	 * @param parser the {@link JsonParser}
+	 * @param opsw the {@link OutputStreamWrapper}
 	 * @throws IOException on error
 	 */
-	protected void handleObject(ObjectNode node, OutputStreamWrapper opsw)
+	protected void handleArray(JsonParser parser, OutputStreamWrapper opsw)
 		throws IOException {
-		if (LOGGER.isLoggable(Level.FINE)) {
-			LOGGER.log(Level.FINE, "Request: "+node.toString());
+		StreamingBatch batch = new StreamingBatch(parser);
+
+		// hold on to the responses while there are few enough
+		List<JsonRpcServerResponse> responses = new ArrayList<JsonRpcServerResponse>();
+		while (!batch.ended && responses.size()<=maxBatchInFlight) {
+			batch.nextChunk(responses);
 		}
 
-		// validate request
-		if (!backwardsComaptible && !node.has("jsonrpc") || !node.has("method")) {
+		// an empty batch is an invalid request
+		if (batch.elementCount==0) {
 			writeAndFlushResponse(opsw, createErrorResponse(
 				"jsonrpc", "null", StandardJsonError.INVALID_REQUEST, null));
 			return;
 		}
 
-		// get nodes
-		JsonNode jsonPrcNode	= node.get("jsonrpc");
-		JsonNode methodNode		= node.get("method");
-		JsonNode idNode 		= node.get("id");
-		JsonNode paramsNode		= node.get("params");
-
-		// get node values
-		String jsonRpc		= (jsonPrcNode!=null && !jsonPrcNode.isNull()) ? jsonPrcNode.asText() : "2.0";
-		String methodName	= (methodNode!=null && !methodNode.isNull()) ? methodNode.asText() : null;
-		Object id			= parseId(idNode);
-
-		// find methods
-		Set<Method> methods = new HashSet<Method>();
-		methods.addAll(ReflectionUtil.findMethods(getHandlerClass(), methodName));
-		if (methods.isEmpty()) {
-			writeAndFlushResponse(opsw, createErrorResponse(
-				jsonRpc, id, StandardJsonError.METHOD_NOT_FOUND, null));
-			return;
+		// write the whole batch or stream the rest of it,
+		// nothing is written for a batch of notifications
+		if (batch.ended) {
+			if (batch.tooLarge) {
+				responses.add(createBatchTooLargeResponse());
+			}
+			if (!responses.isEmpty()) {
+				writeAndFlushResponse(opsw, new JsonRpcServerBatchResponse(responses));
+			}
+		} else {
+			writeAndFlushResponse(opsw, new StreamingBatchResponse(batch, responses));
 		}
-
-		// choose a method
-		MethodAndArgs methodArgs = findBestMethodByParamsNode(methods, paramsNode);
-		if (methodArgs==null) {
-			writeAndFlushResponse(opsw, createErrorResponse(
-				jsonRpc, id, StandardJsonError.INVALID_PARAMS, null));
-			return;
+		if (batch.thrown!=null && rethrowExceptions) {
+			throw new RuntimeException(batch.thrown);
 		}
+	}
 
-		// invoke the method
-		JsonNode result = null;
-		Throwable thrown = null;
-		try {
-			result = invoke(methodArgs.method, methodArgs.arguments);
-		} catch (Throwable e) {
-			thrown = e;
+	/**
+	 * Creates the response to a request that's turned away
+	 * because the server has no room for it.
+	 *
+	 * @param request the request, or null if it hasn't been read
+	 * @return the response, or null if the request is a notification
+	 */
+	protected JsonRpcServerResponse createOverloadedResponse(JsonNode request) {
+		String jsonRpc	= "jsonrpc";
+		Object id		= "null";
+		if (request!=null && request.isObject()) {
+			if (!request.has("id")) {
+				return null;
+			}
+			JsonNode jsonRpcNode = request.get("jsonrpc");
+			jsonRpc = (jsonRpcNode!=null && !jsonRpcNode.isNull()) ? jsonRpcNode.asText() : "2.0";
+			try {
+				id = parseId(request.get("id"));
+			} catch (IllegalArgumentException e) {
+				id = "null";
+			}
 		}
+		return createErrorResponse(
+			jsonRpc, id, StandardJsonError.SERVER_ERROR.getJsonCode(),
+			StandardJsonError.SERVER_ERROR.getHttpCode(),
+			StandardJsonError.SERVER_ERROR.getMessage(),
+			"Server is overloaded");
+	}
 
-		// respond if it's not a notification request
-		if (id!=null) {
+	/**
+	 * Creates the error added to the response of a batch
+	 * with more than {@code maxBatchSize} elements.
+	 *
+	 * @return the response
+	 */
+	protected JsonRpcServerResponse createBatchTooLargeResponse() {
+		return createErrorResponse(
+			"jsonrpc", "null", StandardJsonError.INVALID_REQUEST.getJsonCode(),
+			StandardJsonError.INVALID_REQUEST.getHttpCode(),
+			StandardJsonError.INVALID_REQUEST.getMessage(),
+			"Batch exceeds the maximum size of "+maxBatchSize);
+	}
 
-			// attempt to resolve the error
-			JsonError error = null;
-			if (thrown!=null) {
+	/**
+	 * A batch being read from a {@link JsonParser} a chunk at a time.
+	 */
+	private class StreamingBatch {
+
+		private final JsonParser parser;
+		private int elementCount = 0;
+		private boolean ended = false;
+		private boolean tooLarge = false;
+		private Throwable thrown = null;
+
+		/**
+		 * @param parser the {@link JsonParser} positioned at the start of the batch
+		 */
+		private StreamingBatch(JsonParser parser) {
+			this.parser = parser;
+		}
 
-				// get cause of exception
-				Throwable e = thrown;
-				if (InvocationTargetException.class.isInstance(e)) {
-					e = InvocationTargetException.class.cast(e).getTargetException();
+		/**
+		 * Reads and handles up to {@code maxBatchInFlight} elements.
+		 * @param responses the list to add the responses to
+		 * @throws IOException on error
+		 */
+		private void nextChunk(List<JsonRpcServerResponse> responses)
+			throws IOException {
+
+			// read the chunk
+			ArrayNode chunk = mapper.createArrayNode();
+			while (chunk.size()<maxBatchInFlight) {
+				JsonToken token = parser.nextToken();
+				if (token==null || token==JsonToken.END_ARRAY) {
+					ended = true;
+					break;
+				} else if (elementCount>=maxBatchSize) {
+					skipRest();
+					break;
 				}
+				JsonNode element = mapper.readTree(parser);
+				chunk.add(element!=null ? element : NullNode.getInstance());
+				elementCount++;
+			}
 
-				// resolve error
-				if (errorResolver!=null) {
-					error = errorResolver.resolveError(
-						e, methodArgs.method, methodArgs.arguments);
-				} else {
-					error = DEFAULT_ERRROR_RESOLVER.resolveError(
-						e, methodArgs.method, methodArgs.arguments);
+			// handle it
+			for (RequestOutcome outcome : processBatch(chunk)) {
+				if (outcome.response!=null) {
+					responses.add(outcome.response);
 				}
-
-				// make sure we have a JsonError
-				if (error==null) {
-					error = new com.googlecode.jsonrpc4j.ErrorResolver.BasicJsonError(
-						0, e.getMessage(), e.getClass().getName());
+				if (thrown==null && outcome.thrown!=null) {
+					thrown = outcome.thrown;
 				}
 			}
+		}
 
-			// the resoponse object
-			JsonRpcServerResponse response = null;
-
-			// build error
-			if (error!=null) {
-				response = createErrorResponse(
-					jsonRpc, id, error.getCode(), 500, error.getMessage(), error.getData());
-
-			// build success
-			} else {
-				response = createSuccessResponse(jsonRpc, id, result);
+		/**
+		 * Skips the elements beyond {@code maxBatchSize}.
+		 * @throws IOException on error
+		 */
+		private void skipRest()
+			throws IOException {
+			tooLarge = true;
+			parser.skipChildren();
+			JsonToken token = parser.getCurrentToken();
+			while (token!=null && token!=JsonToken.END_ARRAY) {
+				token = parser.nextToken();
+				parser.skipChildren();
 			}
+			ended = true;
+		}
+	}
 
-			// write it
-			writeAndFlushResponse(opsw, response);
+	/**
+	 * The response to a {@link StreamingBatch} that has more responses
+	 * than are held back, it reads and handles the rest of the batch
+	 * as it's written.
+	 */
+	private class StreamingBatchResponse
+		extends JsonRpcServerResponse {
+
+		private final StreamingBatch batch;
+		private final List<JsonRpcServerResponse> responses;
+
+		/**
+		 * @param batch the {@link StreamingBatch}
+		 * @param responses the responses so far
+		 */
+		private StreamingBatchResponse(
+			StreamingBatch batch, List<JsonRpcServerResponse> responses) {
+			super(200);
+			this.batch = batch;
+			this.responses = responses;
 		}
 
-		// log and potentially re-throw errors
-		if (thrown!=null) {
-			if (LOGGER.isLoggable(Level.SEVERE)) {
-				LOGGER.log(Level.SEVERE, "Error in JSON-RPC Service", thrown);
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void writeTo(JsonGenerator generator)
+			throws IOException {
+			generator.writeStartArray();
+			while (!responses.isEmpty()) {
+				for (JsonRpcServerResponse response : responses) {
+					response.writeTo(generator);
+				}
+				generator.flush();
+				responses.clear();
+				if (!batch.ended) {
+					batch.nextChunk(responses);
+				}
 			}
-			if (rethrowExceptions) {
-				throw new RuntimeException(thrown);
+			if (batch.tooLarge) {
+				createBatchTooLargeResponse().writeTo(generator);
 			}
+			generator.writeEndArray();
 		}
 	}
 
 	/**
-	 * Invokes the given method on the {@code handler} passing
-	 * the given params (after converting them to beans\objects)
-	 * to it.
+	 * Handles each element of the given batch.  If there's a batch
+	 * {@link Executor} the elements are handled concurrently by up
+	 * to {@code maxBatchParallelism} threads, the calling thread being
+	 * one of them, otherwise they're handled one after another.
 	 *
-	 * @param m the method to invoke
-	 * @param params the params to pass to the method
-	 * @return the return value (or null if no return)
-	 * @throws IOException on error
-	 * @throws IllegalAccessException on error
-	 * @throws InvocationTargetException on error
+	 * @param node the batch
+	 * @return the {@link RequestOutcome} of each element
 	 */
-	protected JsonNode invoke(Method m, List<JsonNode> params)
-		throws IOException,
-		IllegalAccessException,
-		InvocationTargetException {
-
-		// debug log
-		if (LOGGER.isLoggable(Level.FINE)) {
-			LOGGER.log(Level.FINE, "Invoking method: "+m.getName());
-		}
-
-		// convert the parameters
-		Object[] convertedParams = new Object[params.size()];
-		Type[] parameterTypes = m.getGenericParameterTypes();
-		
-		for (int i=0; i<parameterTypes.length; i++) {
-		    JsonParser paramJsonParser = mapper.treeAsTokens(params.get(i));
-		    JavaType paramJavaType = TypeFactory.defaultInstance().constructType(parameterTypes[i]);
-			convertedParams[i] = mapper.readValue(paramJsonParser, paramJavaType);
-		}
-
-		// invoke the method
-		Object result = m.invoke(handler, convertedParams);
-		Type genericReturnType = m.getGenericReturnType();
-		if (genericReturnType!=null) {
-			if (Collection.class.isInstance(result) && genericReturnType instanceof ParameterizedType) {
-				try {
-					if (LOGGER.isLoggable(Level.FINE)) {
-						LOGGER.log(Level.FINE, "attempting custom collection serialization");
+	private RequestOutcome[] processBatch(final ArrayNode node) {
+		final RequestOutcome[] outcomes = new RequestOutcome[node.size()];
+		final AtomicInteger nextElement = new AtomicInteger();
+		final CountDownLatch elementsDone = new CountDownLatch(outcomes.length);
+		Runnable worker = new Runnable() {
+			public void run() {
+				for (int i=nextElement.getAndIncrement(); i<outcomes.length; i=nextElement.getAndIncrement()) {
+					try {
+						outcomes[i] = processBatchElement(node.get(i));
+					} finally {
+						elementsDone.countDown();
 					}
-					TypeFactory typeFactory = mapper.getTypeFactory();
-					Type actualTypeInCollection = ((ParameterizedType) genericReturnType).getActualTypeArguments()[0];
-					if (actualTypeInCollection instanceof TypeVariable) { // collection actually has a generic return type
-						actualTypeInCollection = ((TypeVariable) actualTypeInCollection).getBounds()[0];
-					}
-					JavaType rootType = typeFactory.constructCollectionType(Collection.class, typeFactory.constructType(actualTypeInCollection));
-					return valueToTree(mapper.writerWithType(rootType), result);
-				} catch (Exception e) {
-					LOGGER.log(Level.WARNING, "could not do custom collection serialization falling back to default", e);
 				}
 			}
-			return mapper.valueToTree(result);
-		} else {
-			return null;
+		};
+
+		// start the helpers
+		Executor executor = batchExecutor;
+		int helpers = executor!=null
+			? Math.min(maxBatchParallelism, outcomes.length)-1 : 0;
+		for (int i=0; i<helpers; i++) {
+			try {
+				executor.execute(worker);
+			} catch (RejectedExecutionException e) {
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.log(Level.FINE, "Batch executor is saturated, handling batch with "+(i+1)+" threads");
+				}
+				break;
+			}
 		}
-		//return (genericReturnType!=null) ? mapper.valueToTree(result) : null;
-	}
-	
-    @SuppressWarnings("unchecked")
-    public <T extends JsonNode> T valueToTree(ObjectWriter writer, Object fromValue)
-        throws IllegalArgumentException
-    {
-        if (fromValue == null) return null;
-        TokenBuffer buf = new TokenBuffer(mapper);
-        JsonNode result;
-        try {
-        	writer.writeValue(buf, fromValue);
-            JsonParser jp = buf.asParser();
-            result = mapper.readTree(jp);
-            jp.close();
-        } catch (IOException e) { // should not occur, no real i/o...
-            throw new IllegalArgumentException(e.getMessage(), e);
-        }
-        return (T) result;
-    } 
-	
+
+		// join in and wait for the rest
+		worker.run();
+		boolean interrupted = false;
+		while (elementsDone.getCount()>0) {
+			try {
+				elementsDone.await();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		return outcomes;
+	}
+
+	/**
+	 * Handles a single element of a batch.  Elements that aren't
+	 * valid requests, and errors that would otherwise have been
+	 * thrown out of the server, get an error response so that the
+	 * rest of the batch is unaffected.
+	 *
+	 * @param element the element
+	 * @return the {@link RequestOutcome}
+	 */
+	protected RequestOutcome processBatchElement(JsonNode element) {
+		try {
+			if (element.isObject()) {
+				return awaitOutcome(processObject(ObjectNode.class.cast(element)));
+			}
+			return new RequestOutcome(createErrorResponse(
+				"jsonrpc", "null", StandardJsonError.INVALID_REQUEST, null), null);
+		} catch (IllegalArgumentException e) {
+			return new RequestOutcome(createErrorResponse(
+				"jsonrpc", "null", StandardJsonError.INVALID_REQUEST, null), null);
+		} catch (Throwable t) {
+			LOGGER.log(Level.SEVERE, "Error handling batch element", t);
+			return new RequestOutcome(createErrorResponse(
+				"jsonrpc", "null", StandardJsonError.INTERNAL_ERROR, null), t);
+		}
+	}
+
+	/**
+	 * Handles the given {@link ObjectNode} and writes the
+	 * responses to the given {@link OutputStream}.
+	 *
+	 * @param node the {@link JsonNode}
+	 * @param ops the {@link OutputStream}
+	 * @throws IOException on error
+	 */
+	protected void handleObject(ObjectNode node, OutputStreamWrapper opsw)
+		throws IOException {
+		writeOutcome(processObject(node), opsw);
+	}
+
+	/**
+	 * Handles the given {@link ObjectNode} without writing
+	 * the response.
+	 *
+	 * @param node the {@link JsonNode}
+	 * @return the {@link RequestOutcome}
+	 */
+	protected RequestOutcome processObject(ObjectNode node) {
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, "Request: "+node.toString());
+		}
+
+		// validate request
+		if (!backwardsComaptible && !node.has("jsonrpc") || !node.has("method")) {
+			return new RequestOutcome(createErrorResponse(
+				"jsonrpc", "null", StandardJsonError.INVALID_REQUEST, null), null);
+		}
+
+		// get nodes
+		JsonNode jsonPrcNode	= node.get("jsonrpc");
+		JsonNode methodNode		= node.get("method");
+		JsonNode idNode 		= node.get("id");
+		JsonNode paramsNode		= node.get("params");
+
+		// get node values
+		String jsonRpc		= (jsonPrcNode!=null && !jsonPrcNode.isNull()) ? jsonPrcNode.asText() : "2.0";
+		String methodName	= (methodNode!=null && !methodNode.isNull()) ? methodNode.asText() : null;
+		Object id			= parseId(idNode);
+
+		// find methods
+		OverloadGroup methods = dispatchIndex.get(methodName);
+		if (methods==null) {
+			return new RequestOutcome(createErrorResponse(
+				jsonRpc, id, StandardJsonError.METHOD_NOT_FOUND, null), null);
+		}
+
+		// choose a method
+		MethodAndArgs methodArgs = findBestMethodByParamsNode(methods, paramsNode);
+		if (methodArgs==null) {
+			return new RequestOutcome(createErrorResponse(
+				jsonRpc, id, StandardJsonError.INVALID_PARAMS, null), null);
+		}
+
+		// invoke the method
+		return invokeMethod(jsonRpc, id, methodArgs);
+	}
+
+	/**
+	 * Handles the JSON-RPC request object that the given {@link JsonParser}
+	 * is positioned at the start of and writes the responses to the given
+	 * {@link OutputStreamWrapper}.  When the method has been read by the
+	 * time the params are reached, and isn't overloaded, each param is
+	 * deserialized straight from the parser into its parameter type.
+	 * Otherwise the params are read into a {@link JsonNode} and the
+	 * method is chosen as in {@link #handleObject(ObjectNode, OutputStreamWrapper)}.
+	 *
+	 * @param parser the {@link JsonParser}
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @throws IOException on error
+	 */
+	protected void handleObject(JsonParser parser, OutputStreamWrapper opsw)
+		throws IOException {
+		writeOutcome(processObject(parser), opsw);
+	}
+
+	/**
+	 * Handles the JSON-RPC request object that the given {@link JsonParser}
+	 * is positioned at the start of without writing the response.
+	 *
+	 * @param parser the {@link JsonParser}
+	 * @return the {@link RequestOutcome}
+	 * @throws IOException on error
+	 * @see #handleObject(JsonParser, OutputStreamWrapper)
+	 */
+	protected RequestOutcome processObject(JsonParser parser)
+		throws IOException {
+
+		// read the request
+		JsonNode jsonPrcNode		= null;
+		JsonNode methodNode			= null;
+		JsonNode idNode				= null;
+		JsonNode paramsNode			= null;
+		boolean hasJsonRpc			= false;
+		OverloadGroup methods		= null;
+		MethodAndArgs methodArgs	= null;
+		while (parser.nextToken()==JsonToken.FIELD_NAME) {
+			String fieldName = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+
+			if (fieldName.equals("jsonrpc")) {
+				hasJsonRpc = true;
+				jsonPrcNode = mapper.readTree(parser);
+
+			} else if (fieldName.equals("id")) {
+				idNode = mapper.readTree(parser);
+
+			} else if (fieldName.equals("method")) {
+				methodNode = mapper.readTree(parser);
+				methods = dispatchIndex.get(
+					(methodNode!=null && !methodNode.isNull()) ? methodNode.asText() : null);
+
+			} else if (fieldName.equals("params")) {
+
+				// nothing to bind to
+				if (methodNode!=null && methods==null) {
+					parser.skipChildren();
+
+				// bind the params as they're read
+				} else if (methods!=null && methods.size()==1 && token==JsonToken.START_ARRAY) {
+					methodArgs = bindIndexedParams(parser, methods.get(0));
+				} else if (methods!=null && methods.size()==1 && token==JsonToken.START_OBJECT) {
+					methodArgs = bindNamedParams(parser, methods.get(0));
+
+				// we need the whole tree to choose a method
+				} else {
+					paramsNode = mapper.readTree(parser);
+				}
+
+			} else {
+				parser.skipChildren();
+			}
+		}
+
+		// debug log
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, "Request: method "+methodNode+", id "+idNode);
+		}
+
+		// validate request
+		if (!backwardsComaptible && !hasJsonRpc || methodNode==null) {
+			return new RequestOutcome(createErrorResponse(
+				"jsonrpc", "null", StandardJsonError.INVALID_REQUEST, null), null);
+		}
+
+		// get node values
+		String jsonRpc		= (jsonPrcNode!=null && !jsonPrcNode.isNull()) ? jsonPrcNode.asText() : "2.0";
+		Object id			= parseId(idNode);
+
+		// find methods
+		if (methods==null) {
+			return new RequestOutcome(createErrorResponse(
+				jsonRpc, id, StandardJsonError.METHOD_NOT_FOUND, null), null);
+		}
+
+		// check the bound params or choose a method
+		if (methodArgs!=null) {
+			ServiceMethod resolved = methodArgs.paramsNamed
+				? resolvers[methods.getIndex()].resolveNamed(
+					methodArgs.paramCount, methodArgs.matchingParamCount)
+				: resolvers[methods.getIndex()].resolveIndexed(methodArgs.paramCount);
+			if (resolved==null) {
+				methodArgs = null;
+			}
+		} else {
+			methodArgs = findBestMethodByParamsNode(methods, paramsNode);
+		}
+		if (methodArgs==null) {
+			return new RequestOutcome(createErrorResponse(
+				jsonRpc, id, StandardJsonError.INVALID_PARAMS, null), null);
+		}
+
+		// invoke the method
+		return invokeMethod(jsonRpc, id, methodArgs);
+	}
+
+	/**
+	 * Binds the indexed params that the given {@link JsonParser} is
+	 * positioned at the start of to the given {@link ServiceMethod}.
+	 * Superfluous params are skipped and missing ones are left to
+	 * {@link #invoke(ServiceMethod, Object[])} to fill in.
+	 *
+	 * @param parser the {@link JsonParser}
+	 * @param method the {@link ServiceMethod}
+	 * @return the {@link MethodAndArgs}
+	 * @throws IOException on error
+	 */
+	protected MethodAndArgs bindIndexedParams(JsonParser parser, ServiceMethod method)
+		throws IOException {
+		MethodAndArgs ret = new MethodAndArgs(method);
+		ret.convertedArguments = new Object[method.getParameterCount()];
+		JsonStreamContext paramsContext = parser.getParsingContext();
+		while (parser.nextToken()!=JsonToken.END_ARRAY) {
+			int index = ret.paramCount++;
+			if (index<method.getParameterCount() && ret.conversionError==null) {
+				bindParam(parser, paramsContext, ret, index);
+			} else {
+				parser.skipChildren();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Binds the named params that the given {@link JsonParser} is
+	 * positioned at the start of to the given {@link ServiceMethod}.
+	 * Params that the method doesn't declare are skipped and missing
+	 * ones are left to {@link #invoke(ServiceMethod, Object[])} to fill in.
+	 *
+	 * @param parser the {@link JsonParser}
+	 * @param method the {@link ServiceMethod}
+	 * @return the {@link MethodAndArgs}
+	 * @throws IOException on error
+	 */
+	protected MethodAndArgs bindNamedParams(JsonParser parser, ServiceMethod method)
+		throws IOException {
+		MethodAndArgs ret = new MethodAndArgs(method);
+		ret.paramsNamed = true;
+		ret.convertedArguments = new Object[method.getParameterCount()];
+		boolean[] bound = new boolean[method.getParameterCount()];
+		JsonStreamContext paramsContext = parser.getParsingContext();
+		while (parser.nextToken()==JsonToken.FIELD_NAME) {
+			String paramName = parser.getCurrentName();
+			parser.nextToken();
+			ret.paramCount++;
+
+			// bind to every parameter with the name
+			int first = -1;
+			for (int i=0; i<method.getParameterCount(); i++) {
+				if (!paramName.equals(method.getParameterName(i))) {
+					continue;
+				} else if (!bound[i]) {
+					ret.matchingParamCount++;
+					bound[i] = true;
+				}
+				if (first<0 && ret.conversionError==null) {
+					bindParam(parser, paramsContext, ret, i);
+				} else if (first>=0) {
+					ret.convertedArguments[i] = ret.convertedArguments[first];
+				}
+				first = i;
+			}
+			if (first<0 || ret.conversionError!=null) {
+				parser.skipChildren();
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Deserializes the param that the given {@link JsonParser} is
+	 * positioned at into the argument at the given index.  If it
+	 * can't be deserialized the error is kept for when the method
+	 * would have been invoked and the parser is moved past the
+	 * param so that the rest of the request can still be read.
+	 *
+	 * @param parser the {@link JsonParser}
+	 * @param paramsContext the context of the params container
+	 * @param methodArgs the {@link MethodAndArgs}
+	 * @param index the argument index
+	 * @throws IOException on error
+	 */
+	private void bindParam(
+		JsonParser parser, JsonStreamContext paramsContext, MethodAndArgs methodArgs, int index)
+		throws IOException {
+		try {
+			methodArgs.convertedArguments[index] = readArgument(
+				methodArgs.serviceMethod, index, parser);
+		} catch (JsonMappingException e) {
+			methodArgs.conversionError = e;
+			while (parser.getParsingContext()!=paramsContext) {
+				parser.nextToken();
+			}
+		}
+	}
+
+	/**
+	 * Invokes the method chosen for a request and creates
+	 * the response if it isn't a notification.
+	 *
+	 * @param jsonRpc the jsonrpc string
+	 * @param id the id
+	 * @param methodArgs the {@link MethodAndArgs}
+	 * @return the {@link RequestOutcome}
+	 */
+	protected RequestOutcome invokeMethod(
+		final String jsonRpc, final Object id, final MethodAndArgs methodArgs) {
+
+		// notifications don't wait for the method when there's an executor
+		if (id==null && notificationExecutor!=null && methodArgs.conversionError==null) {
+			notificationExecutor.execute(new Runnable() {
+				public void run() {
+					try {
+						invoke(methodArgs);
+					} catch (Throwable e) {
+						if (LOGGER.isLoggable(Level.SEVERE)) {
+							LOGGER.log(Level.SEVERE, "Error in JSON-RPC Service", e);
+						}
+					}
+				}
+			});
+			return new RequestOutcome(null, null);
+		}
+
+		// invoke the method
+		Object result = null;
+		Throwable thrown = methodArgs.conversionError;
+		if (thrown==null) {
+			try {
+				result = invoke(methodArgs);
+			} catch (Throwable e) {
+				thrown = e;
+			}
+		}
+
+		// asynchronous results are responded to once they complete
+		AsyncResultAdapter adapter = asyncResultAdapter;
+		if (thrown==null && result!=null
+			&& adapter!=null && adapter.isAsyncType(result.getClass())) {
+			final PendingOutcome pending = new PendingOutcome();
+			adapter.addCallback(result, new AsyncResultCallback() {
+				public void onSuccess(Object value) {
+					completeOutcome(pending, jsonRpc, id, methodArgs, value, null);
+				}
+				public void onFailure(Throwable cause) {
+					completeOutcome(pending, jsonRpc, id, methodArgs, null, cause);
+				}
+			});
+
+			// notifications have nothing to wait for
+			return id!=null
+				? new RequestOutcome(pending)
+				: new RequestOutcome(null, null);
+		}
+		return createOutcome(jsonRpc, id, methodArgs, result, thrown);
+	}
+
+	/**
+	 * Completes the given {@link PendingOutcome} with the outcome
+	 * of the asynchronous result it was waiting for.
+	 *
+	 * @param pending the {@link PendingOutcome}
+	 * @param jsonRpc the jsonrpc string
+	 * @param id the id
+	 * @param methodArgs the {@link MethodAndArgs}
+	 * @param result the value the result completed with
+	 * @param thrown the error the result failed with
+	 */
+	private void completeOutcome(
+		PendingOutcome pending, String jsonRpc, Object id,
+		MethodAndArgs methodArgs, Object result, Throwable thrown) {
+		try {
+			pending.complete(createOutcome(jsonRpc, id, methodArgs, result, thrown));
+		} catch (Throwable t) {
+			LOGGER.log(Level.SEVERE, "Error completing asynchronous result", t);
+			pending.complete(new RequestOutcome(createErrorResponse(
+				jsonRpc, id, StandardJsonError.INTERNAL_ERROR, null), t));
+		}
+	}
+
+	/**
+	 * Creates the outcome of a request from what its method
+	 * returned or threw, with a response if the request
+	 * isn't a notification.
+	 *
+	 * @param jsonRpc the jsonrpc string
+	 * @param id the id
+	 * @param methodArgs the {@link MethodAndArgs}
+	 * @param result the value the method returned
+	 * @param thrown the error the method threw
+	 * @return the {@link RequestOutcome}
+	 */
+	protected RequestOutcome createOutcome(
+		String jsonRpc, Object id, MethodAndArgs methodArgs, Object result, Throwable thrown) {
+
+		// respond if it's not a notification request
+		JsonRpcServerResponse response = null;
+		if (id!=null) {
+
+			// attempt to resolve the error
+			JsonError error = null;
+			if (thrown!=null) {
+
+				// get cause of exception
+				Throwable e = thrown;
+				if (InvocationTargetException.class.isInstance(e)) {
+					e = InvocationTargetException.class.cast(e).getTargetException();
+				}
+
+				// resolve error
+				if (errorResolver!=null) {
+					error = errorResolver.resolveError(
+						e, methodArgs.method, methodArgs.arguments);
+				} else {
+					error = DEFAULT_ERRROR_RESOLVER.resolveError(
+						e, methodArgs.method, methodArgs.arguments);
+				}
+
+				// make sure we have a JsonError
+				if (error==null) {
+					error = new com.googlecode.jsonrpc4j.ErrorResolver.BasicJsonError(
+						0, e.getMessage(), e.getClass().getName());
+				}
+			}
+
+			// build error
+			if (error!=null) {
+				response = createErrorResponse(
+					jsonRpc, id, error.getCode(), 500, error.getMessage(), error.getData());
+
+			// build success
+			} else {
+				response = createSuccessResponse(jsonRpc, id, result,
+					findResultWriter(methodArgs.serviceMethod, result));
+			}
+			response.method = methodArgs.method;
+		}
+
+		// log errors
+		if (thrown!=null) {
+			if (LOGGER.isLoggable(Level.SEVERE)) {
+				LOGGER.log(Level.SEVERE, "Error in JSON-RPC Service", thrown);
+			}
+		}
+		return new RequestOutcome(response, thrown);
+	}
+
+	/**
+	 * Writes the response of the given {@link RequestOutcome}, if
+	 * there is one, and re-throws the error the method threw if
+	 * the server is configured to.
+	 *
+	 * @param outcome the {@link RequestOutcome}
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @throws IOException on error
+	 */
+	private void writeOutcome(RequestOutcome outcome, OutputStreamWrapper opsw)
+		throws IOException {
+		outcome = awaitOutcome(outcome);
+		if (outcome.response!=null) {
+			writeAndFlushResponse(opsw, outcome.response);
+		}
+		if (outcome.thrown!=null && rethrowExceptions) {
+			throw new RuntimeException(outcome.thrown);
+		}
+	}
+
+	/**
+	 * Writes the response of the given completed {@link RequestOutcome}
+	 * and tells the given {@link AsyncResponseCallback} how it went.
+	 *
+	 * @param outcome the {@link RequestOutcome}
+	 * @param opsw the {@link OutputStreamWrapper}
+	 * @param callback the {@link AsyncResponseCallback}
+	 */
+	private void writeOutcome(
+		RequestOutcome outcome, OutputStreamWrapper opsw, AsyncResponseCallback callback) {
+		try {
+			writeOutcome(outcome, opsw);
+		} catch (Throwable e) {
+			callback.onError(e);
+			return;
+		}
+		callback.onResponseWritten();
+	}
+
+	/**
+	 * Waits for the given {@link RequestOutcome} if it's pending.
+	 *
+	 * @param outcome the {@link RequestOutcome}
+	 * @return the completed {@link RequestOutcome}
+	 */
+	private static RequestOutcome awaitOutcome(RequestOutcome outcome) {
+		return outcome.pending!=null
+			? outcome.pending.await()
+			: outcome;
+	}
+
+	/**
+	 * Invokes the method chosen for a request with its
+	 * bound arguments or, if they weren't bound, its params.
+	 *
+	 * @param methodArgs the {@link MethodAndArgs}
+	 * @return the return value (or null if no return)
+	 * @throws IOException on error
+	 * @throws IllegalAccessException on error
+	 * @throws InvocationTargetException on error
+	 */
+	private Object invoke(MethodAndArgs methodArgs)
+		throws IOException,
+		IllegalAccessException,
+		InvocationTargetException {
+		return methodArgs.convertedArguments!=null
+			? invoke(methodArgs.serviceMethod, methodArgs.convertedArguments)
+			: invoke(methodArgs.serviceMethod, methodArgs.arguments);
+	}
+
+	/**
+	 * Invokes the given method on the {@code handler} passing
+	 * the given params (after converting them to beans\objects)
+	 * to it.
+	 *
+	 * @param m the method to invoke
+	 * @param params the params to pass to the method
+	 * @return the return value (or null if no return)
+	 * @throws IOException on error
+	 * @throws IllegalAccessException on error
+	 * @throws InvocationTargetException on error
+	 */
+	protected Object invoke(ServiceMethod m, List<JsonNode> params)
+		throws IOException,
+		IllegalAccessException,
+		InvocationTargetException {
+
+		// convert the parameters
+		Object[] convertedParams = new Object[params.size()];
+		for (int i=0; i<m.getParameterCount(); i++) {
+			convertedParams[i] = readArgument(m, i, mapper.treeAsTokens(params.get(i)));
+		}
+		return invoke(m, convertedParams);
+	}
+
+	/**
+	 * Invokes the given method on the {@code handler} passing
+	 * the given params (after converting them to beans\objects)
+	 * to it, and converts the result to a tree.
+	 *
+	 * @param m the method to invoke
+	 * @param params the params to pass to the method
+	 * @return the return value as a tree (or null if no return)
+	 * @throws IOException on error
+	 * @throws IllegalAccessException on error
+	 * @throws InvocationTargetException on error
+	 * @deprecated use {@link #invoke(ServiceMethod, List)}, the
+	 * result of which is written straight into the response.
+	 * Requests are no longer invoked through this method, so
+	 * overriding it doesn't change how they're handled; override
+	 * {@link #invoke(ServiceMethod, Object[])} instead
+	 */
+	@Deprecated
+	protected JsonNode invoke(Method m, List<JsonNode> params)
+		throws IOException,
+		IllegalAccessException,
+		InvocationTargetException {
+		ServiceMethod serviceMethod = findServiceMethod(m);
+		Object result = invoke(serviceMethod, params);
+		return valueToTree(findResultWriter(serviceMethod, result), result);
+	}
+
+	/**
+	 * Invokes the given method on the {@code handler} passing
+	 * the given already converted arguments to it.  Arguments
+	 * that were never bound are converted from null.
+	 *
+	 * @param m the method to invoke
+	 * @param arguments the arguments to pass to the method
+	 * @return the return value (or null if no return)
+	 * @throws IOException on error
+	 * @throws IllegalAccessException on error
+	 * @throws InvocationTargetException on error
+	 */
+	protected Object invoke(ServiceMethod m, Object[] arguments)
+		throws IOException,
+		IllegalAccessException,
+		InvocationTargetException {
+
+		// debug log
+		if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, "Invoking method: "+m.getMethod().getName());
+		}
+
+		// fill in missing parameters
+		for (int i=0; i<arguments.length; i++) {
+			if (arguments[i]==null) {
+				arguments[i] = readArgument(m, i, mapper.treeAsTokens(NullNode.getInstance()));
+			}
+		}
+
+		// invoke the method
+		return invokers[m.getIndex()].invoke(arguments);
+	}
+
+	/**
+	 * Finds the {@link ObjectWriter} for writing the given result
+	 * of the given method.
+	 *
+	 * @see ServiceMethodBinding#getResultWriter(Object)
+	 * @param m the method
+	 * @param result the result
+	 * @return the {@link ObjectWriter}
+	 */
+	protected ObjectWriter findResultWriter(ServiceMethod m, Object result) {
+		return bindings[m.getIndex()].getResultWriter(result);
+	}
+
+	/**
+	 * Converts a value to a tree with the given {@link ObjectWriter}.
+	 *
+	 * @param writer the {@link ObjectWriter}
+	 * @param fromValue the value
+	 * @return the tree, or null if the value is null
+	 * @throws IllegalArgumentException on error
+	 * @deprecated results are written straight into the response,
+	 * see {@link #findResultWriter(ServiceMethod, Object)}
+	 */
+	@Deprecated
+	@SuppressWarnings("unchecked")
+	public <T extends JsonNode> T valueToTree(ObjectWriter writer, Object fromValue)
+		throws IllegalArgumentException {
+		if (fromValue==null) {
+			return null;
+		}
+		TokenBuffer buffer = new TokenBuffer(mapper);
+		JsonNode result;
+		try {
+			writer.writeValue(buffer, fromValue);
+			JsonParser parser = buffer.asParser();
+			result = mapper.readTree(parser);
+			parser.close();
+		} catch (IOException e) { // should not occur, no real i/o...
+			throw new IllegalArgumentException(e.getMessage(), e);
+		}
+		return (T)result;
+	}
+
+	/**
+	 * Reads the argument at the given index of the given
+	 * method from the given {@link JsonParser}.
+	 *
+	 * @param m the method
+	 * @param index the argument index
+	 * @param parser the {@link JsonParser}
+	 * @return the argument
+	 * @throws IOException on error
+	 */
+	protected Object readArgument(ServiceMethod m, int index, JsonParser parser)
+		throws IOException {
+		return bindings[m.getIndex()].readParameter(index, parser);
+	}
+
+	/**
+	 * A response to a single request.  Responses are written field
+	 * by field to a {@link JsonGenerator}, the result and error data
+	 * being serialized straight into it rather than into a tree first.
+	 */
 	protected static class JsonRpcServerResponse {
-		ObjectNode objectNode;
+		String jsonRpc;
+		Object id;
+		Object result;
+		int errorCode;
+		String errorMessage;
+		Object errorData;
+		boolean error;
+		ObjectWriter writer;
 		int httpCode;
-		public JsonRpcServerResponse(ObjectNode objectNode, int httpCode) {
-			this.objectNode = objectNode;
+		Method method;
+
+		/**
+		 * Creates a success response.
+		 * @param jsonRpc the jsonrpc string
+		 * @param id the id
+		 * @param result the result
+		 * @param writer the {@link ObjectWriter} for the result
+		 */
+		public JsonRpcServerResponse(String jsonRpc, Object id, Object result, ObjectWriter writer) {
+			this.jsonRpc = jsonRpc;
+			this.id = id;
+			this.result = result;
+			this.writer = writer;
+			this.httpCode = 200;
+		}
+
+		/**
+		 * Creates an error response.
+		 * @param jsonRpc the jsonrpc string
+		 * @param id the id
+		 * @param code the error code
+		 * @param message the error message
+		 * @param data the error data (if any)
+		 * @param writer the {@link ObjectWriter} for the data
+		 * @param httpCode the http code
+		 */
+		public JsonRpcServerResponse(
+			String jsonRpc, Object id, int code, String message,
+			Object data, ObjectWriter writer, int httpCode) {
+			this.jsonRpc = jsonRpc;
+			this.id = id;
+			this.error = true;
+			this.errorCode = code;
+			this.errorMessage = message;
+			this.errorData = data;
+			this.writer = writer;
+			this.httpCode = httpCode;
+		}
+
+		/**
+		 * Creates a response that writes itself.
+		 * @param httpCode the http code
+		 */
+		protected JsonRpcServerResponse(int httpCode) {
 			this.httpCode = httpCode;
 		}
+
+		/**
+		 * @return the http code
+		 */
+		public int getHttpCode() {
+			return httpCode;
+		}
+
+		/**
+		 * Writes the response to the given {@link OutputStream}
+		 * using the given {@link ObjectMapper}'s {@link JsonFactory}.
+		 * @param mapper the {@link ObjectMapper}
+		 * @param ops the {@link OutputStream}
+		 * @throws IOException on error
+		 */
+		public void writeTo(ObjectMapper mapper, OutputStream ops)
+			throws IOException {
+			writeTo(mapper, null, ops);
+		}
+
+		/**
+		 * Writes the response to the given {@link OutputStream}
+		 * in the given {@link WireCodec}.
+		 * @param mapper the {@link ObjectMapper}
+		 * @param codec the {@link WireCodec}, or null for JSON
+		 * @param ops the {@link OutputStream}
+		 * @throws IOException on error
+		 */
+		public void writeTo(ObjectMapper mapper, WireCodec codec, OutputStream ops)
+			throws IOException {
+			if (codec==null) {
+				codec = WireCodec.JSON;
+			}
+			JsonGenerator generator = codec.getJsonFactory(mapper)
+				.createJsonGenerator(ops, JsonEncoding.UTF8);
+			if (codec.isText()
+				&& mapper.getSerializationConfig().isEnabled(SerializationFeature.INDENT_OUTPUT)) {
+				generator.useDefaultPrettyPrinter();
+			}
+			writeTo(generator);
+			generator.close();
+		}
+
+		/**
+		 * Writes the response to the given {@link JsonGenerator}.
+		 * @param generator the {@link JsonGenerator}
+		 * @throws IOException on error
+		 */
+		public void writeTo(JsonGenerator generator)
+			throws IOException {
+			generator.writeStartObject();
+			generator.writeStringField("jsonrpc", jsonRpc);
+			generator.writeFieldName("id");
+			if (Integer.class.isInstance(id)) {
+				generator.writeNumber(Integer.class.cast(id).intValue());
+			} else if (Long.class.isInstance(id)) {
+				generator.writeNumber(Long.class.cast(id).longValue());
+			} else if (Float.class.isInstance(id)) {
+				generator.writeNumber(Float.class.cast(id).floatValue());
+			} else if (Double.class.isInstance(id)) {
+				generator.writeNumber(Double.class.cast(id).doubleValue());
+			} else if (BigDecimal.class.isInstance(id)) {
+				generator.writeNumber(BigDecimal.class.cast(id));
+			} else if (BigInteger.class.isInstance(id)) {
+				generator.writeNumber(BigInteger.class.cast(id));
+			} else {
+				generator.writeString(String.class.cast(id));
+			}
+			if (error) {
+				generator.writeObjectFieldStart("error");
+				generator.writeNumberField("code", errorCode);
+				generator.writeStringField("message", errorMessage);
+				if (errorData!=null) {
+					generator.writeFieldName("data");
+					writer.writeValue(generator, errorData);
+				}
+				generator.writeEndObject();
+			} else {
+				generator.writeFieldName("result");
+				if (result!=null) {
+					writer.writeValue(generator, result);
+				} else {
+					generator.writeNull();
+				}
+			}
+			generator.writeEndObject();
+		}
+	}
+
+	/**
+	 * The response to a batch, which is an array of the responses
+	 * to the batch's requests.  Its http code is 200 if any of the
+	 * requests succeeded, otherwise it's the code that all of the
+	 * errors have in common or 500 if they differ.
+	 */
+	protected static class JsonRpcServerBatchResponse
+		extends JsonRpcServerResponse {
+
+		private final List<JsonRpcServerResponse> responses;
+
+		/**
+		 * Creates the batch response.
+		 * @param responses the responses, in request order
+		 */
+		public JsonRpcServerBatchResponse(List<JsonRpcServerResponse> responses) {
+			super(batchHttpCode(responses));
+			this.responses = responses;
+		}
+
+		/**
+		 * Works out the http code of a batch.
+		 * @param responses the responses
+		 * @return the http code
+		 */
+		private static int batchHttpCode(List<JsonRpcServerResponse> responses) {
+			int httpCode = 0;
+			for (JsonRpcServerResponse response : responses) {
+				if (!response.error) {
+					return 200;
+				} else if (httpCode==0) {
+					httpCode = response.httpCode;
+				} else if (httpCode!=response.httpCode) {
+					httpCode = 500;
+				}
+			}
+			return httpCode;
+		}
+
+		/**
+		 * @return the responses
+		 */
+		public List<JsonRpcServerResponse> getResponses() {
+			return responses;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void writeTo(JsonGenerator generator)
+			throws IOException {
+			generator.writeStartArray();
+			for (JsonRpcServerResponse response : responses) {
+				response.writeTo(generator);
+			}
+			generator.writeEndArray();
+		}
 	}
 
 	/**
@@ -540,56 +1830,105 @@ public class JsonRpcServer {
 	 */
 	protected JsonRpcServerResponse createErrorResponse(
 		String jsonRpc, Object id, int code, int httpCode, String message, Object data) {
-		ObjectNode response = mapper.createObjectNode();
-		ObjectNode error = mapper.createObjectNode();
-		error.put("code", code);
-		error.put("message", message);
-		if (data!=null) {
-			error.put("data", mapper.valueToTree(data));
-		}
-		response.put("jsonrpc", jsonRpc);
-		if (Integer.class.isInstance(id)) {
-			response.put("id", Integer.class.cast(id).intValue());
-		} else if (Long.class.isInstance(id)) {
-			response.put("id", Long.class.cast(id).longValue());
-		} else if (Float.class.isInstance(id)) {
-			response.put("id", Float.class.cast(id).floatValue());
-		} else if (Double.class.isInstance(id)) {
-			response.put("id", Double.class.cast(id).doubleValue());
-		} else if (BigDecimal.class.isInstance(id)) {
-			response.put("id", BigDecimal.class.cast(id));
-		} else {
-			response.put("id", String.class.cast(id));
+		return new JsonRpcServerResponse(
+			jsonRpc, id, code, message, data,
+			getErrorWriter(), httpCode);
+	}
+
+	/**
+	 * Returns the {@link ObjectWriter} for error data, creating it from
+	 * the {@link ObjectMapper} the first time an error is written.
+	 * @return the {@link ObjectWriter}
+	 */
+	private ObjectWriter getErrorWriter() {
+		ObjectWriter errorWriter = this.errorWriter;
+		if (errorWriter==null) {
+			errorWriter = ServiceMethodBinding.createWriter(mapper);
+			this.errorWriter = errorWriter;
 		}
-		response.put("error", error);
-		return new JsonRpcServerResponse(response, httpCode);
+		return errorWriter;
 	}
 
 	/**
 	 * Creates a sucess response.
-	 * @param jsonRpc
-	 * @param id
-	 * @param result
-	 * @return
+	 * @param jsonRpc the jsonrpc string
+	 * @param id the id
+	 * @param result the result
+	 * @param writer the {@link ObjectWriter} for the result
+	 * @return the response
 	 */
+	protected JsonRpcServerResponse createSuccessResponse(
+		String jsonRpc, Object id, Object result, ObjectWriter writer) {
+		return new JsonRpcServerResponse(jsonRpc, id, result, writer);
+	}
+
+	/**
+	 * Creates a sucess response with a result that's
+	 * already been converted to a tree.
+	 * @param jsonRpc the jsonrpc string
+	 * @param id the id
+	 * @param result the result
+	 * @return the response
+	 * @deprecated use {@link #createSuccessResponse(String, Object, Object, ObjectWriter)},
+	 * which writes the result straight into the response
+	 */
+	@Deprecated
 	protected JsonRpcServerResponse createSuccessResponse(String jsonRpc, Object id, JsonNode result) {
-		ObjectNode response = mapper.createObjectNode();
-		response.put("jsonrpc", jsonRpc);
-		if (Integer.class.isInstance(id)) {
-			response.put("id", Integer.class.cast(id).intValue());
-		} else if (Long.class.isInstance(id)) {
-			response.put("id", Long.class.cast(id).longValue());
-		} else if (Float.class.isInstance(id)) {
-			response.put("id", Float.class.cast(id).floatValue());
-		} else if (Double.class.isInstance(id)) {
-			response.put("id", Double.class.cast(id).doubleValue());
-		} else if (BigDecimal.class.isInstance(id)) {
-			response.put("id", BigDecimal.class.cast(id));
-		} else {
-			response.put("id", String.class.cast(id));
-		}
-		response.put("result", result);
-		return new JsonRpcServerResponse(response, 200);
+		return createSuccessResponse(jsonRpc, id, result, ServiceMethodBinding.createWriter(mapper));
+	}
+
+	/**
+	 * Finds the {@link ServiceMethod} from the supplied {@link OverloadGroup}
+	 * that best matches the rest of the arguments supplied and returns
+	 * it as a {@link MethodAndArgs} class.
+	 *
+	 * @param methods the {@link OverloadGroup}
+	 * @param paramsNode the {@link JsonNode} passed as the parameters
+	 * @return the {@link MethodAndArgs}
+	 */
+	protected MethodAndArgs findBestMethodByParamsNode(OverloadGroup methods, JsonNode paramsNode) {
+		return findBestMethodByParamsNode(resolvers[methods.getIndex()], paramsNode);
+	}
+
+	/**
+	 * Finds the {@link Method} from the supplied {@link Set} that
+	 * best matches the rest of the arguments supplied and returns
+	 * it as a {@link MethodAndArgs} class.
+	 *
+	 * @param methods the {@link Method}s
+	 * @param paramsNode the {@link JsonNode} passed as the parameters
+	 * @return the {@link MethodAndArgs}
+	 * @deprecated use {@link #findBestMethodByParamsNode(OverloadGroup, JsonNode)},
+	 * which resolves with the group's compiled {@link OverloadResolver}.
+	 * Requests are no longer resolved through this method, so overriding
+	 * it doesn't change how they're handled; override the
+	 * {@link OverloadGroup} variant instead
+	 */
+	@Deprecated
+	protected MethodAndArgs findBestMethodByParamsNode(Set<Method> methods, JsonNode paramsNode) {
+		return findBestMethodByParamsNode(createResolver(methods), paramsNode);
+	}
+
+	/**
+	 * Finds the {@link Method} from the supplied {@link Set} that
+	 * best matches the rest of the arguments supplied and returns
+	 * it as a {@link MethodAndArgs} class.
+	 *
+	 * @param methods the {@link Method}s
+	 * @param paramCount the number of expect parameters, which
+	 * is taken from {@code paramNodes} now
+	 * @param paramNodes the parameters for matching types
+	 * @return the {@link MethodAndArgs}
+	 * @deprecated overloads are resolved by {@link OverloadResolver#resolveIndexed(JsonNode)}.
+	 * Requests are no longer resolved through this method, so
+	 * overriding it doesn't change how they're handled; override
+	 * {@link #findBestMethodByParamsNode(OverloadGroup, JsonNode)} instead
+	 */
+	@Deprecated
+	protected MethodAndArgs findBestMethodUsingParamIndexes(
+		Set<Method> methods, int paramCount, ArrayNode paramNodes) {
+		return createMethodAndArgs(
+			createResolver(methods).resolveIndexed(paramNodes), paramNodes);
 	}
 
 	/**
@@ -598,27 +1937,60 @@ public class JsonRpcServer {
 	 * it as a {@link MethodAndArgs} class.
 	 *
 	 * @param methods the {@link Method}s
+	 * @param paramNames the parameter names, which are
+	 * taken from {@code paramNodes} now
+	 * @param paramNodes the parameters for matching types
+	 * @return the {@link MethodAndArgs}
+	 * @deprecated overloads are resolved by {@link OverloadResolver#resolveNamed(JsonNode)}.
+	 * Requests are no longer resolved through this method, so
+	 * overriding it doesn't change how they're handled; override
+	 * {@link #findBestMethodByParamsNode(OverloadGroup, JsonNode)} instead
+	 */
+	@Deprecated
+	protected MethodAndArgs findBestMethodUsingParamNames(
+		Set<Method> methods, Set<String> paramNames, ObjectNode paramNodes) {
+		return createMethodAndArgs(
+			createResolver(methods).resolveNamed(paramNodes), paramNodes);
+	}
+
+	/**
+	 * Determines whether or not the given {@link JsonNode} matches
+	 * the given type.  This method is limitted to a few java types
+	 * only and shouldn't be used to determine with great accuracy
+	 * whether or not the types match.  Overriding it no longer
+	 * changes how overloads are resolved.
+	 *
+	 * @param node the {@link JsonNode}
+	 * @param type the {@link Class}
+	 * @return true if the types match, false otherwise
+	 * @deprecated use {@link OverloadResolver#isMatchingType(JsonNode, Class)}
+	 */
+	@Deprecated
+	protected boolean isMatchingType(JsonNode node, Class<?> type) {
+		return OverloadResolver.isMatchingType(node, type);
+	}
+
+	/**
+	 * Finds the {@link ServiceMethod} that best matches
+	 * the given params with the given {@link OverloadResolver}.
+	 *
+	 * @param resolver the {@link OverloadResolver}
 	 * @param paramsNode the {@link JsonNode} passed as the parameters
 	 * @return the {@link MethodAndArgs}
 	 */
-	protected MethodAndArgs findBestMethodByParamsNode(Set<Method> methods, JsonNode paramsNode) {
+	private MethodAndArgs findBestMethodByParamsNode(OverloadResolver resolver, JsonNode paramsNode) {
 
 		// no parameters
 		if (paramsNode==null || paramsNode.isNull()) {
-			return findBestMethodUsingParamIndexes(methods, 0, null);
+			return createMethodAndArgs(resolver.resolveIndexed(null), null);
 
 		// array parameters
 		} else if (paramsNode.isArray()) {
-			return findBestMethodUsingParamIndexes(methods, paramsNode.size(), ArrayNode.class.cast(paramsNode));
+			return createMethodAndArgs(resolver.resolveIndexed(paramsNode), paramsNode);
 
 		// named parameters
 		} else if (paramsNode.isObject()) {
-			Set<String> fieldNames = new HashSet<String>();
-			Iterator<String> itr=paramsNode.fieldNames();
-			while (itr.hasNext()) {
-				fieldNames.add(itr.next());
-			}
-			return findBestMethodUsingParamNames(methods, fieldNames, ObjectNode.class.cast(paramsNode));
+			return createMethodAndArgs(resolver.resolveNamed(paramsNode), paramsNode);
 
 		}
 
@@ -627,295 +1999,109 @@ public class JsonRpcServer {
 	}
 
 	/**
-	 * Finds the {@link Method} from the supplied {@link Set} that
-	 * best matches the rest of the arguments supplied and returns
-	 * it as a {@link MethodAndArgs} class.
+	 * Pairs the chosen {@link ServiceMethod} with its arguments
+	 * taken from the given params node, missing arguments being
+	 * filled in with nulls.
 	 *
-	 * @param methods the {@link Method}s
-	 * @param paramCount the number of expect parameters
-	 * @param paramNodes the parameters for matching types
-	 * @return the {@link MethodAndArgs}
+	 * @param method the {@link ServiceMethod} or null
+	 * @param paramsNode the params node, may be null
+	 * @return the {@link MethodAndArgs} or null if there's no method
 	 */
-	protected MethodAndArgs findBestMethodUsingParamIndexes(
-		Set<Method> methods, int paramCount, ArrayNode paramNodes) {
-
-		// get param count
-		int numParams = paramNodes!=null && !paramNodes.isNull()
-			? paramNodes.size() : 0;
-
-		// determine param count
-		int bestParamNumDiff		= Integer.MAX_VALUE;
-		Set<Method> matchedMethods	= new HashSet<Method>();
-
-		// check every method
-		for (Method method : methods) {
-
-			// get parameter types
-			Class<?>[] paramTypes = method.getParameterTypes();
-			int paramNumDiff = paramTypes.length-paramCount;
-
-			// we've already found a better match
-			if (Math.abs(paramNumDiff)>Math.abs(bestParamNumDiff)) {
-				continue;
-
-			// we don't allow extra params
-			} else if (
-				!allowExtraParams && paramNumDiff<0
-				|| !allowLessParams && paramNumDiff>0) {
-				continue;
-
-			// check the parameters
-			} else {
-				if (Math.abs(paramNumDiff)<Math.abs(bestParamNumDiff)) {
-					matchedMethods.clear();
-				}
-				matchedMethods.add(method);
-				bestParamNumDiff = paramNumDiff;
-				continue;
-			}
-		}
+	protected MethodAndArgs createMethodAndArgs(ServiceMethod method, JsonNode paramsNode) {
 
 		// bail early
-		if (matchedMethods.isEmpty()) {
+		if (method==null) {
 			return null;
 		}
 
-		// now narrow it down to the best method
-		// based on argument types
-		Method bestMethod = null;
-		if (matchedMethods.size()==1 || numParams==0) {
-			bestMethod = matchedMethods.iterator().next();
-
-		} else {
-
-			// check the matching methods for
-			// matching parameter types
-			int mostMatches	= -1;
-			for (Method method : matchedMethods) {
-				List<Class<?>> parameterTypes = ReflectionUtil.getParameterTypes(method);
-				int numMatches = 0;
-				for (int i=0; i<parameterTypes.size() && i<numParams; i++) {
-					if (isMatchingType(paramNodes.get(i), parameterTypes.get(i))) {
-						numMatches++;
-					}
-				}
-				if (numMatches>mostMatches) {
-					mostMatches = numMatches;
-					bestMethod = method;
-				}
-			}
-		}
-
-		// create return
-		MethodAndArgs ret = new MethodAndArgs();
-		ret.method = bestMethod;
-
 		// now fill arguments
-		int numParameters = bestMethod.getParameterTypes().length;
+		MethodAndArgs ret = new MethodAndArgs(method);
+		int numParameters = method.getParameterCount();
 		for (int i=0; i<numParameters; i++) {
-			if (i<numParams) {
-				ret.arguments.add(paramNodes.get(i));
-			} else {
-				ret.arguments.add(NullNode.getInstance());
+			JsonNode argument = null;
+			if (paramsNode!=null && paramsNode.isArray()) {
+				argument = paramsNode.get(i);
+			} else if (paramsNode!=null && method.getParameterName(i)!=null) {
+				argument = paramsNode.get(method.getParameterName(i));
 			}
+			ret.arguments.add(argument!=null ? argument : NullNode.getInstance());
 		}
-
-		// return the method
 		return ret;
 	}
 
 	/**
-	 * Finds the {@link Method} from the supplied {@link Set} that
-	 * best matches the rest of the arguments supplied and returns
-	 * it as a {@link MethodAndArgs} class.
-	 *
-	 * @param methods the {@link Method}s
-	 * @param paramNames the parameter names
-	 * @param paramNodes the parameters for matching types
-	 * @return the {@link MethodAndArgs}
+	 * Finds the {@link ServiceMethod} for one of the
+	 * handler class's {@link Method}s.
+	 * @param method the {@link Method}
+	 * @return the {@link ServiceMethod}
+	 * @throws IllegalArgumentException if it isn't one of them
 	 */
-	@SuppressWarnings("deprecation")
-	protected MethodAndArgs findBestMethodUsingParamNames(
-		Set<Method> methods, Set<String> paramNames, ObjectNode paramNodes) {
-
-		// determine param count
-		int maxMatchingParams 				= -1;
-		int maxMatchingParamTypes			= -1;
-		Method bestMethod 					= null;
-		List<JsonRpcParam> bestAnnotations	= null;
+	private ServiceMethod findServiceMethod(Method method) {
+		ServiceMethod serviceMethod = dispatchIndex.get(method);
+		if (serviceMethod==null) {
+			throw new IllegalArgumentException(
+				method+" is not a method of "+getHandlerClass().getName());
+		}
+		return serviceMethod;
+	}
 
+	/**
+	 * Compiles an uncached {@link OverloadResolver}
+	 * for an arbitrary set of the handler's methods.
+	 * @param methods the {@link Method}s
+	 * @return the {@link OverloadResolver}
+	 */
+	private OverloadResolver createResolver(Set<Method> methods) {
+		List<ServiceMethod> serviceMethods = new ArrayList<ServiceMethod>();
+		String name = null;
 		for (Method method : methods) {
-
-			// get parameter types
-			List<Class<?>> parameterTypes = ReflectionUtil.getParameterTypes(method);
-
-			// bail early if possible
-			if (!allowExtraParams && paramNames.size()>parameterTypes.size()) {
-				continue;
-			} else if (!allowLessParams && paramNames.size()<parameterTypes.size()) {
-				continue;
-			}
-
-			// list of params
-			List<JsonRpcParam> annotations = new ArrayList<JsonRpcParam>();
-
-			// try the deprecated parameter first
-			List<List<JsonRpcParamName>> depMethodAnnotations = ReflectionUtil
-				.getParameterAnnotations(method, JsonRpcParamName.class);
-			if (!depMethodAnnotations.isEmpty()) {
-				for (List<JsonRpcParamName> annots : depMethodAnnotations) {
-					if (annots.size()>0) {
-						final JsonRpcParamName annotation = annots.get(0);
-						annotations.add((JsonRpcParam)Proxy.newProxyInstance(
-							getClass().getClassLoader(), new Class[] {JsonRpcParam.class},
-								new InvocationHandler() {
-									public Object invoke(Object proxy, Method method, Object[] args)
-										throws Throwable {
-										if (method.getName().equals("value")) {
-											return annotation.value();
-										}
-										throw new Exception("Unknown method: "+method.getName());
-									}
-							}));
-					} else {
-						annots.add(null);
-					}
-				}
-			}
-
-			// now try the non-deprecated parameters
-			List<List<JsonRpcParam>> methodAnnotations = ReflectionUtil
-				.getParameterAnnotations(method, JsonRpcParam.class);
-			if (!methodAnnotations.isEmpty()) {
-				for (List<JsonRpcParam> annots : methodAnnotations) {
-					if (annots.size()>0) {
-						annotations.add(annots.get(0));
-					} else {
-						annots.add(null);
-					}
-				}
-			}
-
-			// count the matching params for this method
-			int numMatchingParamTypes = 0;
-			int numMatchingParams = 0;
-			for (int i=0; i<annotations.size(); i++) {
-
-				// skip parameters that didn't have an annotation
-				JsonRpcParam annotation	= annotations.get(i);
-				if (annotation==null) {
-					continue;
-				}
-
-				// check for a match
-				String paramName			= annotation.value();
-				boolean hasParamName 		= paramNames.contains(paramName);
-
-				if (hasParamName && isMatchingType(paramNodes.get(paramName), parameterTypes.get(i))) {
-					numMatchingParamTypes++;
-					numMatchingParams++;
-
-				} else if (hasParamName) {
-					numMatchingParams++;
-
-				}
-			}
-
-			// check for exact param matches
-			// bail early if possible
-			if (!allowExtraParams && numMatchingParams>parameterTypes.size()) {
-				continue;
-			} else if (!allowLessParams && numMatchingParams<parameterTypes.size()) {
-				continue;
-			}
-
-			// better match
-			if (numMatchingParams>maxMatchingParams
-				|| (numMatchingParams==maxMatchingParams && numMatchingParamTypes>maxMatchingParamTypes)) {
-				bestMethod 				= method;
-				maxMatchingParams 		= numMatchingParams;
-				maxMatchingParamTypes 	= numMatchingParamTypes;
-				bestAnnotations 		= annotations;
-			}
+			serviceMethods.add(findServiceMethod(method));
+			name = method.getName();
 		}
+		return new OverloadResolver(
+			new OverloadGroup(-1, name, serviceMethods),
+			allowExtraParams, allowLessParams, 0);
+	}
 
-		// bail early
-		if (bestMethod==null) {
-			return null;
+	/**
+	 * Compiles an {@link OverloadResolver} for every method
+	 * name with the current parameter settings.
+	 */
+	private void compileResolvers() {
+		List<OverloadGroup> groups = dispatchIndex.getGroups();
+		OverloadResolver[] resolvers = new OverloadResolver[groups.size()];
+		for (OverloadGroup group : groups) {
+			resolvers[group.getIndex()] = new OverloadResolver(
+				group, allowExtraParams, allowLessParams, maxCachedParamShapes);
 		}
+		this.resolvers = resolvers;
+	}
 
-		// create return
-		MethodAndArgs ret = new MethodAndArgs();
-		ret.method = bestMethod;
-
-		// now fill arguments
-		int numParameters = bestMethod.getParameterTypes().length;
-		for (int i=0; i<numParameters; i++) {
-			JsonRpcParam param = bestAnnotations.get(i);
-			if (param!=null && paramNames.contains(param.value())) {
-				ret.arguments.add(paramNodes.get(param.value()));
-			} else {
-				ret.arguments.add(NullNode.getInstance());
-			}
+	/**
+	 * Creates the {@link ServiceMethodBinding} for every method
+	 * using the current {@link AsyncResultAdapter}.
+	 */
+	private void createBindings() {
+		List<ServiceMethod> methods = dispatchIndex.getMethods();
+		ServiceMethodBinding[] bindings = new ServiceMethodBinding[methods.size()];
+		for (ServiceMethod method : methods) {
+			bindings[method.getIndex()] = new ServiceMethodBinding(
+				mapper, method, asyncResultAdapter);
 		}
-
-		// return the method
-		return ret;
+		this.bindings = bindings;
 	}
 
 	/**
-	 * Determines whether or not the given {@link JsonNode} matches
-	 * the given type.  This method is limitted to a few java types
-	 * only and shouldn't be used to determine with great accuracy
-	 * whether or not the types match.
-	 *
-	 * @param node the {@link JsonNode}
-	 * @param type the {@link Class}
-	 * @return true if the types match, false otherwise
+	 * Creates an {@link Invoker} for every method using
+	 * the current {@link InvokerFactory}.
 	 */
-	protected boolean isMatchingType(JsonNode node, Class<?> type) {
-
-		if (node.isNull()) {
-			return true;
-
-		} else if (node.isTextual()) {
-			return String.class.isAssignableFrom(type);
-
-		} else if (node.isNumber()) {
-			return Number.class.isAssignableFrom(type)
-				|| short.class.isAssignableFrom(type)
-				|| int.class.isAssignableFrom(type)
-				|| long.class.isAssignableFrom(type)
-				|| float.class.isAssignableFrom(type)
-				|| double.class.isAssignableFrom(type);
-
-		} else if (node.isArray() && type.isArray()) {
-			return (node.size()>0)
-				? isMatchingType(node.get(0), type.getComponentType())
-				: false;
-
-		} else if (node.isArray()) {
-			return type.isArray() || Collection.class.isAssignableFrom(type);
-
-		} else if (node.isBinary()) {
-			return byte[].class.isAssignableFrom(type)
-				|| Byte[].class.isAssignableFrom(type)
-				|| char[].class.isAssignableFrom(type)
-				|| Character[].class.isAssignableFrom(type);
-
-		} else if (node.isBoolean()) {
-			return boolean.class.isAssignableFrom(type)
-				|| Boolean.class.isAssignableFrom(type);
-
-		} else if (node.isObject() || node.isPojo()) {
-			return !type.isPrimitive()
-				&& !String.class.isAssignableFrom(type)
-				&& !Number.class.isAssignableFrom(type)
-				&& !Boolean.class.isAssignableFrom(type);
+	private void createInvokers() {
+		List<ServiceMethod> methods = dispatchIndex.getMethods();
+		Invoker[] invokers = new Invoker[methods.size()];
+		for (ServiceMethod method : methods) {
+			invokers[method.getIndex()] = invokerFactory.createInvoker(handler, method);
 		}
-
-		// not sure if it's a matching type
-		return false;
+		this.invokers = invokers;
 	}
 
 	/**
@@ -932,12 +2118,112 @@ public class JsonRpcServer {
 //		ops.flush();
 	}
 	
+	/**
+	 * The outcome of handling a single request.
+	 */
+	protected static class RequestOutcome {
+		protected JsonRpcServerResponse response = null;
+		protected Throwable thrown = null;
+		protected PendingOutcome pending = null;
+		protected RequestOutcome(JsonRpcServerResponse response, Throwable thrown) {
+			this.response = response;
+			this.thrown = thrown;
+		}
+		protected RequestOutcome(PendingOutcome pending) {
+			this.pending = pending;
+		}
+	}
+
+	/**
+	 * Told when a {@link PendingOutcome} completes.
+	 */
+	protected static interface OutcomeListener {
+		void onOutcome(RequestOutcome outcome);
+	}
+
+	/**
+	 * The outcome of a request whose method returned an asynchronous
+	 * result, it's completed along with the result.
+	 */
+	protected static class PendingOutcome {
+		private final CountDownLatch completed = new CountDownLatch(1);
+		private RequestOutcome outcome = null;
+		private OutcomeListener listener = null;
+
+		/**
+		 * Completes the outcome, only the first call counts.
+		 * @param outcome the completed {@link RequestOutcome}
+		 */
+		protected void complete(RequestOutcome outcome) {
+			OutcomeListener listener;
+			synchronized (this) {
+				if (this.outcome!=null) {
+					return;
+				}
+				this.outcome = outcome;
+				listener = this.listener;
+			}
+			completed.countDown();
+			if (listener!=null) {
+				listener.onOutcome(outcome);
+			}
+		}
+
+		/**
+		 * Sets the {@link OutcomeListener}, it's called right
+		 * away if the outcome is already complete.
+		 * @param listener the {@link OutcomeListener}
+		 */
+		protected void setListener(OutcomeListener listener) {
+			RequestOutcome outcome;
+			synchronized (this) {
+				this.listener = listener;
+				outcome = this.outcome;
+			}
+			if (outcome!=null) {
+				listener.onOutcome(outcome);
+			}
+		}
+
+		/**
+		 * Waits for the outcome to complete, an interrupt
+		 * doesn't stop the wait but is kept.
+		 * @return the completed {@link RequestOutcome}
+		 */
+		protected RequestOutcome await() {
+			boolean interrupted = false;
+			while (completed.getCount()>0) {
+				try {
+					completed.await();
+				} catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+			synchronized (this) {
+				return outcome;
+			}
+		}
+	}
+
 	/**
 	 * Simple inner class for the {@code findXXX} methods.
 	 */
 	protected static class MethodAndArgs {
+		protected ServiceMethod serviceMethod = null;
 		protected Method method = null;
 		protected List<JsonNode> arguments = new ArrayList<JsonNode>();
+		protected Object[] convertedArguments = null;
+		protected Throwable conversionError = null;
+		protected boolean paramsNamed = false;
+		protected int paramCount = 0;
+		protected int matchingParamCount = 0;
+		protected MethodAndArgs(ServiceMethod serviceMethod) {
+			this.serviceMethod = serviceMethod;
+			this.method = serviceMethod.getMethod();
+		}
 	}
 
 	/**
@@ -954,10 +2240,10 @@ public class JsonRpcServer {
 			return node.asDouble();
 		} else if (node.isInt()) {
 			return node.asInt();
-		} else if (node.isIntegralNumber()) {
-			return node.asInt();
 		} else if (node.isLong()) {
 			return node.asLong();
+		} else if (node.isIntegralNumber()) {
+			return node.bigIntegerValue();
 		} else if (node.isTextual()) {
 			return node.asText();
 		}
@@ -993,6 +2279,7 @@ public class JsonRpcServer {
 	 */
 	public void setAllowExtraParams(boolean allowExtraParams) {
 		this.allowExtraParams = allowExtraParams;
+		compileResolvers();
 	}
 
 	/**
@@ -1003,6 +2290,233 @@ public class JsonRpcServer {
 	 */
 	public void setAllowLessParams(boolean allowLessParams) {
 		this.allowLessParams = allowLessParams;
+		compileResolvers();
+	}
+
+	/**
+	 * Sets the maximum number of distinct argument shapes
+	 * that are remembered per method name when choosing
+	 * between overloaded methods, rounded down to a power
+	 * of two.
+	 *
+	 * @param maxCachedParamShapes the maximum, 0 to disable
+	 */
+	public void setMaxCachedParamShapes(int maxCachedParamShapes) {
+		this.maxCachedParamShapes = maxCachedParamShapes;
+		compileResolvers();
+	}
+
+	/**
+	 * Sets the {@link Executor} used for handling the elements
+	 * of a batch concurrently.  Without one batches are handled
+	 * one element at a time on the calling thread.
+	 *
+	 * @param batchExecutor the batchExecutor to set
+	 */
+	public void setBatchExecutor(Executor batchExecutor) {
+		this.batchExecutor = batchExecutor;
+	}
+
+	/**
+	 * Sets the maximum number of threads, including the calling
+	 * thread, that handle the elements of a single batch.  The
+	 * default is the number of available processors.
+	 *
+	 * @param maxBatchParallelism the maxBatchParallelism to set
+	 */
+	public void setMaxBatchParallelism(int maxBatchParallelism) {
+		if (maxBatchParallelism<1) {
+			throw new IllegalArgumentException(
+				"maxBatchParallelism must be at least 1");
+		}
+		this.maxBatchParallelism = maxBatchParallelism;
+	}
+
+	/**
+	 * Sets the {@link NotificationExecutor} that notifications are
+	 * run on.  The request returns as soon as the notification has
+	 * been handed to the executor, so errors thrown by the method
+	 * are logged but never re-thrown.  When null notifications are
+	 * run on the request thread.
+	 *
+	 * @param notificationExecutor the notificationExecutor to set
+	 */
+	public void setNotificationExecutor(NotificationExecutor notificationExecutor) {
+		this.notificationExecutor = notificationExecutor;
+	}
+
+	/**
+	 * Sets the maximum number of elements in a batch, any
+	 * further elements aren't handled and an Invalid Request
+	 * error is added to the response in their place.
+	 *
+	 * @param maxBatchSize the maxBatchSize to set
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		if (maxBatchSize<1) {
+			throw new IllegalArgumentException(
+				"maxBatchSize must be at least 1");
+		}
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * Sets the maximum number of batch elements that are read
+	 * ahead of the responses that have been written.
+	 *
+	 * @param maxBatchInFlight the maxBatchInFlight to set
+	 */
+	public void setMaxBatchInFlight(int maxBatchInFlight) {
+		if (maxBatchInFlight<1) {
+			throw new IllegalArgumentException(
+				"maxBatchInFlight must be at least 1");
+		}
+		this.maxBatchInFlight = maxBatchInFlight;
+	}
+
+	/**
+	 * Sets the {@link AsyncResultAdapter} used to recognize methods
+	 * that return asynchronous results, whose responses are written
+	 * with the value they complete with.  When null, the default,
+	 * the returned objects are written as they are.  See
+	 * {@link DefaultAsyncResultAdapter}.
+	 *
+	 * @param asyncResultAdapter the asyncResultAdapter to set
+	 */
+	public void setAsyncResultAdapter(AsyncResultAdapter asyncResultAdapter) {
+		this.asyncResultAdapter = asyncResultAdapter;
+		createBindings();
+	}
+
+	/**
+	 * Sets the {@link InvokerFactory} used for creating the
+	 * {@link Invoker}s that call the handler's methods.
+	 *
+	 * @param invokerFactory the invokerFactory to set
+	 * @see ReflectionInvokerFactory
+	 * @see DirectInvokerFactory
+	 */
+	public void setInvokerFactory(InvokerFactory invokerFactory) {
+		this.invokerFactory = invokerFactory!=null
+			? invokerFactory : ReflectionInvokerFactory.INSTANCE;
+		createInvokers();
+	}
+
+	/**
+	 * Sets the {@link ResponseBuffers} that responses to http and
+	 * portlet requests are written through, so that they can be
+	 * shared with other servers.
+	 *
+	 * @param responseBuffers the responseBuffers to set
+	 */
+	public void setResponseBuffers(ResponseBuffers responseBuffers) {
+		this.responseBuffers = responseBuffers;
+	}
+
+	/**
+	 * @return the {@link ResponseBuffers}
+	 */
+	public ResponseBuffers getResponseBuffers() {
+		return responseBuffers;
+	}
+
+	/**
+	 * Sets the {@link HttpCompression} used to decompress http and
+	 * portlet requests with a {@code Content-Encoding}, and to compress
+	 * responses to requests whose {@code Accept-Encoding} allows it.
+	 * When null, the default, bodies are neither.
+	 *
+	 * @param httpCompression the httpCompression to set
+	 */
+	public void setHttpCompression(HttpCompression httpCompression) {
+		this.httpCompression = httpCompression;
+	}
+
+	/**
+	 * @return the {@link HttpCompression}, or null
+	 */
+	public HttpCompression getHttpCompression() {
+		return httpCompression;
+	}
+
+	/**
+	 * Sets the {@link WireCodec}s that requests may be sent in, besides
+	 * JSON.  Over http the request's codec is picked by its content type
+	 * and the response's by the {@code Accept} header, falling back to the
+	 * request's codec.  On a {@link StreamServer} connection the codec is
+	 * picked by the first byte the client sends, trying the codecs in
+	 * order, and is used for the rest of the connection.  Anything that
+	 * none of them recognises is read as JSON.
+	 *
+	 * @param wireCodecs the wireCodecs to set
+	 */
+	public void setWireCodecs(List<WireCodec> wireCodecs) {
+		this.wireCodecs = Collections.unmodifiableList(new ArrayList<WireCodec>(wireCodecs));
+	}
+
+	/**
+	 * @return the {@link WireCodec}s besides JSON
+	 */
+	public List<WireCodec> getWireCodecs() {
+		return wireCodecs;
+	}
+
+	/**
+	 * Picks the {@link WireCodec} of a request by its content type.
+	 * @param contentType the content type, or null
+	 * @return the {@link WireCodec}, JSON if none of them match
+	 */
+	public WireCodec findWireCodec(String contentType) {
+		for (WireCodec codec : wireCodecs) {
+			if (codec.matchesContentType(contentType)) {
+				return codec;
+			}
+		}
+		return WireCodec.JSON;
+	}
+
+	/**
+	 * Picks the {@link WireCodec} to respond with from the value
+	 * of an {@code Accept} header, taking the first media type in
+	 * it that's one of the codecs' or JSON.
+	 * @param accept the header, or null
+	 * @param requestCodec the request's {@link WireCodec}, the fallback
+	 * @return the {@link WireCodec}
+	 */
+	public WireCodec negotiateWireCodec(String accept, WireCodec requestCodec) {
+		if (accept==null || wireCodecs.isEmpty()) {
+			return requestCodec;
+		}
+		for (String mediaType : accept.split(",")) {
+			if (requestCodec.matchesContentType(mediaType)) {
+				return requestCodec;
+			} else if (WireCodec.JSON.matchesContentType(mediaType)) {
+				return WireCodec.JSON;
+			}
+			for (WireCodec codec : wireCodecs) {
+				if (codec.matchesContentType(mediaType)) {
+					return codec;
+				}
+			}
+		}
+		return requestCodec;
+	}
+
+	/**
+	 * Picks the {@link WireCodec} of a stream by its first byte.
+	 * @param firstByte the first byte
+	 * @return the {@link WireCodec}, JSON if none of them match
+	 */
+	public WireCodec detectWireCodec(int firstByte) {
+		if (WireCodec.JSON.matchesFirstByte(firstByte)) {
+			return WireCodec.JSON;
+		}
+		for (WireCodec codec : wireCodecs) {
+			if (codec.matchesFirstByte(firstByte)) {
+				return codec;
+			}
+		}
+		return WireCodec.JSON;
 	}
 
 	/**
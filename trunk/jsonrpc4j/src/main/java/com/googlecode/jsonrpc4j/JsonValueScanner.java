@@ -0,0 +1,204 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * Finds the boundaries of the top level JSON values in a
+ * stream of UTF-8 bytes that arrive in arbitrary chunks, without
+ * parsing them.  It only tracks nesting depth and strings, so
+ * the values it finds may still be malformed JSON, and every
+ * byte that belongs to a structural character is ASCII so
+ * multi-byte characters never need to be decoded.  Top level
+ * values other than objects, arrays and strings end at the
+ * next whitespace.  Bytes are copied out a value, or what's
+ * in a buffer of one, at a time rather than one by one.
+ */
+public class JsonValueScanner {
+
+	private static final int RETAINED_BUFFER_SIZE = 8192;
+
+	private final int maxValueSize;
+	private ByteArrayOutputStream value = new ByteArrayOutputStream();
+	private boolean started	= false;
+	private boolean inString	= false;
+	private boolean escaped	= false;
+	private boolean inScalar	= false;
+	private int depth		= 0;
+
+	/**
+	 * Creates the scanner.
+	 * @param maxValueSize the largest value, in bytes, that's accepted
+	 */
+	public JsonValueScanner(int maxValueSize) {
+		this.maxValueSize = maxValueSize;
+	}
+
+	/**
+	 * Scans the remaining bytes of the given {@link ByteBuffer}, adding
+	 * each value that's completed to the given list.  Bytes of a value
+	 * that isn't complete yet are kept until the next call.
+	 * @param buffer the bytes
+	 * @param values the list to add complete values to
+	 * @throws IOException if a value is larger than allowed
+	 */
+	public void scan(ByteBuffer buffer, List<byte[]> values)
+		throws IOException {
+
+		// where the current value starts in the buffer
+		int start = buffer.position();
+		while (buffer.hasRemaining()) {
+			byte b = buffer.get();
+
+			// skip whitespace between values
+			if (!started) {
+				if (isWhitespace(b)) {
+					continue;
+				}
+				started = true;
+				start = buffer.position()-1;
+				if (b=='{' || b=='[') {
+					depth = 1;
+				} else if (b=='"') {
+					inString = true;
+				} else {
+					inScalar = true;
+				}
+				continue;
+			}
+
+			// scalars end at whitespace
+			if (inScalar) {
+				if (isWhitespace(b)) {
+					complete(buffer, start, buffer.position()-1, values);
+				}
+				continue;
+			}
+
+			if (inString) {
+				if (escaped) {
+					escaped = false;
+				} else if (b=='\\') {
+					escaped = true;
+				} else if (b=='"') {
+					inString = false;
+					if (depth==0) {
+						complete(buffer, start, buffer.position(), values);
+					}
+				}
+			} else if (b=='"') {
+				inString = true;
+			} else if (b=='{' || b=='[') {
+				depth++;
+			} else if (b=='}' || b==']') {
+				if (--depth==0) {
+					complete(buffer, start, buffer.position(), values);
+				}
+			}
+		}
+
+		// keep the part of a value that's been scanned
+		if (started) {
+			append(buffer, start, buffer.position());
+		}
+	}
+
+	/**
+	 * @return whether part of a value has been scanned
+	 */
+	public boolean isInValue() {
+		return started;
+	}
+
+	/**
+	 * Adds bytes of a buffer to the current value.
+	 * @param buffer the buffer
+	 * @param from the index of the first byte
+	 * @param to the index after the last byte
+	 * @throws IOException if the value is larger than allowed
+	 */
+	private void append(ByteBuffer buffer, int from, int to)
+		throws IOException {
+		checkSize(to-from);
+		if (buffer.hasArray()) {
+			value.write(buffer.array(), buffer.arrayOffset()+from, to-from);
+		} else {
+			value.write(copy(buffer, from, to));
+		}
+	}
+
+	/**
+	 * Finishes the current value, which ends with the given bytes
+	 * of a buffer.
+	 * @param buffer the buffer
+	 * @param from the index of the first byte
+	 * @param to the index after the last byte
+	 * @param values the list to add it to
+	 * @throws IOException if the value is larger than allowed
+	 */
+	private void complete(ByteBuffer buffer, int from, int to, List<byte[]> values)
+		throws IOException {
+
+		// a value that's all in the buffer is copied straight out
+		if (value.size()==0) {
+			checkSize(to-from);
+			values.add(copy(buffer, from, to));
+		} else {
+			append(buffer, from, to);
+			values.add(value.toByteArray());
+		}
+
+		// don't hold on to the buffer of an unusually large value
+		if (value.size()>RETAINED_BUFFER_SIZE) {
+			value = new ByteArrayOutputStream();
+		} else {
+			value.reset();
+		}
+		started		= false;
+		inString	= false;
+		escaped		= false;
+		inScalar	= false;
+		depth		= 0;
+	}
+
+	/**
+	 * @param length the number of bytes to be added to the current value
+	 * @throws IOException if the value would be larger than allowed
+	 */
+	private void checkSize(int length)
+		throws IOException {
+		if (value.size()+length>maxValueSize) {
+			throw new IOException(
+				"JSON value exceeds the maximum size of "+maxValueSize+" bytes");
+		}
+	}
+
+	/**
+	 * @param buffer the buffer
+	 * @param from the index of the first byte
+	 * @param to the index after the last byte
+	 * @return a copy of the bytes
+	 */
+	private static byte[] copy(ByteBuffer buffer, int from, int to) {
+		byte[] bytes = new byte[to-from];
+		if (buffer.hasArray()) {
+			System.arraycopy(buffer.array(), buffer.arrayOffset()+from, bytes, 0, bytes.length);
+		} else {
+			ByteBuffer range = buffer.duplicate();
+			range.position(from);
+			range.get(bytes);
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param b the byte
+	 * @return whether it's JSON whitespace
+	 */
+	private static boolean isWhitespace(byte b) {
+		return b==' ' || b=='\t' || b=='\n' || b=='\r';
+	}
+
+}
@@ -0,0 +1,196 @@
+package com.googlecode.jsonrpc4j;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A hash map from primitive {@code long} keys to values, for the
+ * calls waiting on their responses by request id.  Keys aren't boxed
+ * and entries aren't allocated: keys and values are kept in two arrays,
+ * probed linearly, and removal shifts the entries that follow back so
+ * that no tombstones build up.  Ids that increase one by one spread
+ * evenly over the arrays.  It isn't thread safe.
+ *
+ * @param <V> the type of the values
+ */
+public class LongHashMap<V> {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private long[] keys;
+	private Object[] values;
+	private int mask;
+	private int size = 0;
+
+	/**
+	 * Creates the map.
+	 * @param expectedSize how many entries it's expected to hold
+	 */
+	public LongHashMap(int expectedSize) {
+		int capacity = MIN_CAPACITY;
+		while (capacity<expectedSize*2) {
+			capacity <<= 1;
+		}
+		allocate(capacity);
+	}
+
+	/**
+	 * Creates an empty map.
+	 */
+	public LongHashMap() {
+		this(MIN_CAPACITY/2);
+	}
+
+	/**
+	 * @param key the key
+	 * @return the value of the key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(long key) {
+		for (int i=index(key); values[i]!=null; i=(i+1) & mask) {
+			if (keys[i]==key) {
+				return (V)values[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Maps a key to a value.
+	 * @param key the key
+	 * @param value the value, not null
+	 * @return the previous value of the key, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(long key, V value) {
+		if (value==null) {
+			throw new IllegalArgumentException("value must not be null");
+		}
+		int i = index(key);
+		for (; values[i]!=null; i=(i+1) & mask) {
+			if (keys[i]==key) {
+				V previous = (V)values[i];
+				values[i] = value;
+				return previous;
+			}
+		}
+		keys[i]		= key;
+		values[i]	= value;
+		if (++size*2>keys.length) {
+			resize(keys.length*2);
+		}
+		return null;
+	}
+
+	/**
+	 * Removes a key.
+	 * @param key the key
+	 * @return the value it had, or null
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(long key) {
+		for (int i=index(key); values[i]!=null; i=(i+1) & mask) {
+			if (keys[i]==key) {
+				V removed = (V)values[i];
+				shiftBack(i);
+				size--;
+				return removed;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Removes every entry.
+	 * @return the values it had
+	 */
+	@SuppressWarnings("unchecked")
+	public List<V> removeAll() {
+		List<V> removed = new ArrayList<V>(size);
+		for (int i=0; i<values.length; i++) {
+			if (values[i]!=null) {
+				removed.add((V)values[i]);
+				values[i] = null;
+			}
+		}
+		size = 0;
+		return removed;
+	}
+
+	/**
+	 * @return the number of entries
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return whether there are no entries
+	 */
+	public boolean isEmpty() {
+		return size==0;
+	}
+
+	/**
+	 * Fills the hole left by a removed entry with the entries
+	 * after it that would otherwise no longer be found.
+	 * @param hole the index of the removed entry
+	 */
+	private void shiftBack(int hole) {
+		int i = hole;
+		while (true) {
+			i = (i+1) & mask;
+			if (values[i]==null) {
+				break;
+			}
+			int home = index(keys[i]);
+
+			// move the entry unless its home lies after the hole
+			if (((i-home) & mask)>=((i-hole) & mask)) {
+				keys[hole]		= keys[i];
+				values[hole]	= values[i];
+				hole = i;
+			}
+		}
+		values[hole] = null;
+	}
+
+	/**
+	 * Moves the entries to arrays of the given capacity.
+	 * @param capacity the capacity, a power of two
+	 */
+	private void resize(int capacity) {
+		long[] oldKeys		= keys;
+		Object[] oldValues	= values;
+		allocate(capacity);
+		for (int i=0; i<oldValues.length; i++) {
+			if (oldValues[i]!=null) {
+				int j = index(oldKeys[i]);
+				while (values[j]!=null) {
+					j = (j+1) & mask;
+				}
+				keys[j]		= oldKeys[i];
+				values[j]	= oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * @param capacity the capacity, a power of two
+	 */
+	private void allocate(int capacity) {
+		keys	= new long[capacity];
+		values	= new Object[capacity];
+		mask	= capacity-1;
+	}
+
+	/**
+	 * @param key the key
+	 * @return the index the key's probe starts at
+	 */
+	private int index(long key) {
+		int hash = (int)(key ^ (key>>>32));
+		return (hash ^ (hash>>>16)) & mask;
+	}
+
+}
@@ -0,0 +1,318 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Marks where each JSON-RPC message starts and ends on a stream,
+ * so that messages can be read whole, into a buffer of the right
+ * size, rather than by a JSON parser that may read past the end
+ * of the message it's parsing.  The same framing has to be used at
+ * both ends of the stream, see {@link StreamServer#setFraming(MessageFraming)}
+ * and {@link ProxyUtil#createClientProxy(ClassLoader, Class, JsonRpcClient, java.net.Socket, MessageFraming)}.
+ */
+public interface MessageFraming {
+
+	/**
+	 * The default maximum size, in bytes, of a message.
+	 */
+	int DEFAULT_MAX_MESSAGE_SIZE = 16*1024*1024;
+
+	/**
+	 * Reads the next message.  A message that's larger than allowed
+	 * is skipped, when its end can be found, so that the stream is
+	 * left at the start of the message after it.
+	 *
+	 * @param ips the {@link InputStream}
+	 * @return the message
+	 * @throws EOFException if the stream ends before a message starts
+	 * @throws IOException on error, or if the message is too large
+	 */
+	byte[] readMessage(InputStream ips)
+		throws IOException;
+
+	/**
+	 * Writes a message and flushes the stream.
+	 *
+	 * @param ops the {@link OutputStream}
+	 * @param message the message
+	 * @throws IOException on error
+	 */
+	void writeMessage(OutputStream ops, byte[] message)
+		throws IOException;
+
+	/**
+	 * Newline delimited JSON, each message being followed by
+	 * a {@code \n}.  This relies on messages not containing
+	 * any, which holds unless the {@code ObjectMapper} is set
+	 * to indent its output.  Blank lines are ignored.
+	 */
+	public static class NewlineDelimited
+		implements MessageFraming {
+
+		public static final NewlineDelimited INSTANCE = new NewlineDelimited(DEFAULT_MAX_MESSAGE_SIZE);
+
+		private final int maxMessageSize;
+
+		/**
+		 * @param maxMessageSize the largest message, in bytes, that's accepted
+		 */
+		public NewlineDelimited(int maxMessageSize) {
+			this.maxMessageSize = maxMessageSize;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public byte[] readMessage(InputStream ips)
+			throws IOException {
+			ByteArrayOutputStream message = new ByteArrayOutputStream();
+			boolean tooLarge = false;
+			while (true) {
+				int b = ips.read();
+				if (b<0) {
+					if (message.size()==0 && !tooLarge) {
+						throw new EOFException("No content to map due to end-of-input");
+					}
+					throw new EOFException("Stream ended in the middle of a message");
+				} else if (b=='\n') {
+					if (tooLarge) {
+						throw new IOException(
+							"Message exceeds the maximum size of "+maxMessageSize+" bytes");
+					} else if (message.size()>0) {
+						return message.toByteArray();
+					}
+				} else if (b=='\r' && message.size()==0) {
+					continue;
+				} else if (message.size()>=maxMessageSize) {
+					tooLarge = true;
+				} else if (!tooLarge) {
+					message.write(b);
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void writeMessage(OutputStream ops, byte[] message)
+			throws IOException {
+			ops.write(message);
+			ops.write('\n');
+			ops.flush();
+		}
+	}
+
+	/**
+	 * Each message is preceded by its length in bytes, as a
+	 * 4 byte big-endian integer.
+	 */
+	public static class LengthPrefixed
+		implements MessageFraming {
+
+		public static final LengthPrefixed INSTANCE = new LengthPrefixed(DEFAULT_MAX_MESSAGE_SIZE);
+
+		private final int maxMessageSize;
+
+		/**
+		 * @param maxMessageSize the largest message, in bytes, that's accepted
+		 */
+		public LengthPrefixed(int maxMessageSize) {
+			this.maxMessageSize = maxMessageSize;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public byte[] readMessage(InputStream ips)
+			throws IOException {
+			int b0 = ips.read();
+			if (b0<0) {
+				throw new EOFException("No content to map due to end-of-input");
+			}
+			int length = (b0<<24) | (Streams.readByte(ips)<<16)
+				| (Streams.readByte(ips)<<8) | Streams.readByte(ips);
+			if (length<0) {
+				throw new IOException("Invalid message length "+length);
+			} else if (length>maxMessageSize) {
+				Streams.skipFully(ips, length);
+				throw new IOException(
+					"Message exceeds the maximum size of "+maxMessageSize+" bytes");
+			}
+			return Streams.readFully(ips, length);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void writeMessage(OutputStream ops, byte[] message)
+			throws IOException {
+			int length = message.length;
+			ops.write(new byte[] {
+				(byte)(length>>>24), (byte)(length>>>16), (byte)(length>>>8), (byte)length});
+			ops.write(message);
+			ops.flush();
+		}
+	}
+
+	/**
+	 * Each message is preceded by a header, as used by the Language
+	 * Server Protocol: a {@code Content-Length} line giving its length
+	 * in bytes, possibly other header lines, which are ignored, and
+	 * a blank line, each line ending with {@code \r\n}.
+	 */
+	public static class ContentLengthHeader
+		implements MessageFraming {
+
+		public static final ContentLengthHeader INSTANCE = new ContentLengthHeader(DEFAULT_MAX_MESSAGE_SIZE);
+
+		private static final String CONTENT_LENGTH	= "content-length:";
+		private static final int MAX_HEADER_LINE	= 1024;
+
+		private final int maxMessageSize;
+
+		/**
+		 * @param maxMessageSize the largest message, in bytes, that's accepted
+		 */
+		public ContentLengthHeader(int maxMessageSize) {
+			this.maxMessageSize = maxMessageSize;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public byte[] readMessage(InputStream ips)
+			throws IOException {
+
+			// read the header
+			int length = -1;
+			boolean first = true;
+			while (true) {
+				String line = readLine(ips, first);
+				first = false;
+				if (line.length()==0) {
+					break;
+				} else if (line.toLowerCase().startsWith(CONTENT_LENGTH)) {
+					try {
+						length = Integer.parseInt(line.substring(CONTENT_LENGTH.length()).trim());
+					} catch (NumberFormatException e) {
+						throw new IOException("Invalid header: "+line);
+					}
+				}
+			}
+			if (length<0) {
+				throw new IOException("Message has no Content-Length header");
+			} else if (length>maxMessageSize) {
+				Streams.skipFully(ips, length);
+				throw new IOException(
+					"Message exceeds the maximum size of "+maxMessageSize+" bytes");
+			}
+			return Streams.readFully(ips, length);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void writeMessage(OutputStream ops, byte[] message)
+			throws IOException {
+			ops.write(("Content-Length: "+message.length+"\r\n\r\n").getBytes("US-ASCII"));
+			ops.write(message);
+			ops.flush();
+		}
+
+		/**
+		 * Reads a header line.
+		 * @param ips the {@link InputStream}
+		 * @param first whether it's the first line of the header
+		 * @return the line without its line ending
+		 * @throws IOException on error
+		 */
+		private static String readLine(InputStream ips, boolean first)
+			throws IOException {
+			StringBuilder line = new StringBuilder();
+			while (true) {
+				int b = ips.read();
+				if (b<0) {
+					if (first && line.length()==0) {
+						throw new EOFException("No content to map due to end-of-input");
+					}
+					throw new EOFException("Stream ended in the middle of a header");
+				} else if (b=='\n') {
+					int length = line.length();
+					if (length>0 && line.charAt(length-1)=='\r') {
+						line.setLength(length-1);
+					}
+					return line.toString();
+				} else if (line.length()>=MAX_HEADER_LINE) {
+					throw new IOException("Header line is too long");
+				}
+				line.append((char)b);
+			}
+		}
+	}
+
+	/**
+	 * Reads whole messages for the framings.
+	 */
+	static class Streams {
+
+		private Streams() { }
+
+		/**
+		 * @param ips the {@link InputStream}
+		 * @return the next byte
+		 * @throws IOException on error or if the stream ends
+		 */
+		static int readByte(InputStream ips)
+			throws IOException {
+			int b = ips.read();
+			if (b<0) {
+				throw new EOFException("Stream ended in the middle of a frame");
+			}
+			return b;
+		}
+
+		/**
+		 * Reads a message of a known length into a buffer of that size.
+		 * @param ips the {@link InputStream}
+		 * @param length the length
+		 * @return the message
+		 * @throws IOException on error or if the stream ends
+		 */
+		static byte[] readFully(InputStream ips, int length)
+			throws IOException {
+			byte[] message = new byte[length];
+			int offset = 0;
+			while (offset<length) {
+				int read = ips.read(message, offset, length-offset);
+				if (read<0) {
+					throw new EOFException("Stream ended in the middle of a message");
+				}
+				offset += read;
+			}
+			return message;
+		}
+
+		/**
+		 * Skips a message of a known length without reading it into memory.
+		 * @param ips the {@link InputStream}
+		 * @param length the length
+		 * @throws IOException on error or if the stream ends
+		 */
+		static void skipFully(InputStream ips, long length)
+			throws IOException {
+			while (length>0) {
+				long skipped = ips.skip(length);
+				if (skipped<=0) {
+					readByte(ips);
+					skipped = 1;
+				}
+				length -= skipped;
+			}
+		}
+	}
+
+}
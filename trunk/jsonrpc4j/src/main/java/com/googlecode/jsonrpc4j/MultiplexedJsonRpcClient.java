@@ -0,0 +1,367 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.Type;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A JSON-RPC client that lets any number of threads make calls at
+ * once over one connection, such as a socket to a {@link StreamServer}.
+ * Each request gets the next of a sequence of numeric ids and is
+ * written whole, so requests never interleave, and the caller waits
+ * for the response with its id.  A reader thread reads the responses
+ * as they arrive, in whatever order, and hands each to its caller
+ * through the {@link PendingCalls}.  A call that times out gives up
+ * waiting but leaves the connection open.
+ * Once the connection is closed, or fails, every waiting call fails
+ * and later calls fail straight away.  The {@link WireCodec} is given
+ * when the client is created, as the reader starts with it, and can't
+ * be changed.
+ */
+public class MultiplexedJsonRpcClient
+	extends JsonRpcClient {
+
+	private static final Logger LOGGER = Logger.getLogger(MultiplexedJsonRpcClient.class.getName());
+
+	private static final AtomicInteger CLIENT_COUNT = new AtomicInteger(0);
+
+	private static final HashedWheelTimer TIMER = new HashedWheelTimer();
+
+	private final InputStream ips;
+	private final OutputStream ops;
+	private final Socket socket;
+	private final boolean started;
+	private final PendingCalls pendingCalls = new PendingCalls(TIMER);
+	private volatile long callTimeoutMillis = 0;
+
+	/**
+	 * Creates the client and starts its reader thread.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param wireCodec the {@link WireCodec} of requests and responses
+	 * @param ips the {@link InputStream} responses are read from
+	 * @param ops the {@link OutputStream} requests are written to
+	 */
+	public MultiplexedJsonRpcClient(
+		ObjectMapper mapper, WireCodec wireCodec, InputStream ips, OutputStream ops) {
+		this(mapper, wireCodec, ips, ops, null);
+	}
+
+	/**
+	 * Creates the client, using JSON, and starts its reader thread.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param ips the {@link InputStream} responses are read from
+	 * @param ops the {@link OutputStream} requests are written to
+	 */
+	public MultiplexedJsonRpcClient(ObjectMapper mapper, InputStream ips, OutputStream ops) {
+		this(mapper, WireCodec.JSON, ips, ops, null);
+	}
+
+	/**
+	 * Creates the client over the given {@link Socket}, which
+	 * it closes when it's closed, and starts its reader thread.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param wireCodec the {@link WireCodec} of requests and responses
+	 * @param socket the {@link Socket}
+	 * @throws IOException on error
+	 */
+	public MultiplexedJsonRpcClient(ObjectMapper mapper, WireCodec wireCodec, Socket socket)
+		throws IOException {
+		this(mapper, wireCodec,
+			new BufferedInputStream(socket.getInputStream()),
+			new BufferedOutputStream(socket.getOutputStream()),
+			socket);
+	}
+
+	/**
+	 * Creates the client over the given {@link Socket}, using
+	 * JSON, which it closes when it's closed, and starts its
+	 * reader thread.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param socket the {@link Socket}
+	 * @throws IOException on error
+	 */
+	public MultiplexedJsonRpcClient(ObjectMapper mapper, Socket socket)
+		throws IOException {
+		this(mapper, WireCodec.JSON, socket);
+	}
+
+	/**
+	 * Creates the client over the given {@link Socket}, which
+	 * it closes when it's closed, and starts its reader thread.
+	 * @param socket the {@link Socket}
+	 * @throws IOException on error
+	 */
+	public MultiplexedJsonRpcClient(Socket socket)
+		throws IOException {
+		this(new ObjectMapper(), socket);
+	}
+
+	/**
+	 * @param mapper the {@link ObjectMapper}
+	 * @param wireCodec the {@link WireCodec}
+	 * @param ips the {@link InputStream}
+	 * @param ops the {@link OutputStream}
+	 * @param socket the {@link Socket}, or null
+	 */
+	private MultiplexedJsonRpcClient(
+		ObjectMapper mapper, WireCodec wireCodec,
+		InputStream ips, OutputStream ops, Socket socket) {
+		super(mapper);
+		super.setWireCodec(wireCodec);
+		this.ips		= ips;
+		this.ops		= ops;
+		this.socket		= socket;
+		this.started	= true;
+		Thread reader = new Thread(new Reader(wireCodec),
+			"jsonrpc4j-multiplexed-client-"+CLIENT_COUNT.incrementAndGet()+"-reader");
+		reader.setDaemon(true);
+		reader.start();
+	}
+
+	/**
+	 * Invokes the given method with the given argument and waits
+	 * for the response for up to the {@code callTimeoutMillis}.
+	 *
+	 * @see JsonRpcClient#writeRequest(String, Object, OutputStream, long)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param returnType the return type
+	 * @return the return value
+	 * @throws Throwable on error
+	 */
+	public Object invoke(String methodName, Object argument, Type returnType)
+		throws Throwable {
+		return invoke(methodName, argument, returnType, callTimeoutMillis);
+	}
+
+	/**
+	 * Invokes the given method with the given argument and waits
+	 * for the response for up to the {@code callTimeoutMillis}.
+	 *
+	 * @see JsonRpcClient#writeRequest(String, Object, OutputStream, long)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param clazz the return type
+	 * @return the return value
+	 * @throws Throwable on error
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T invoke(String methodName, Object argument, Class<T> clazz)
+		throws Throwable {
+		return (T)invoke(methodName, argument, Type.class.cast(clazz));
+	}
+
+	/**
+	 * Invokes the given method with the given argument and waits
+	 * for the response.
+	 *
+	 * @see JsonRpcClient#writeRequest(String, Object, OutputStream, long)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param returnType the return type
+	 * @param timeoutMillis how long to wait, 0 for ever
+	 * @return the return value
+	 * @throws SocketTimeoutException if there's no response in time
+	 * @throws Throwable on error
+	 */
+	public Object invoke(
+		String methodName, Object argument, Type returnType, long timeoutMillis)
+		throws Throwable {
+
+		// register the call
+		JsonRpcFuture<JsonNode> call = new JsonRpcFuture<JsonNode>();
+		long id = pendingCalls.register(call, timeoutMillis);
+
+		// send it
+		try {
+			ByteArrayOutputStream request = new ByteArrayOutputStream();
+			writeRequest(methodName, argument, request, id);
+			send(request);
+		} catch (Throwable t) {
+			pendingCalls.fail(id, t);
+			throw t;
+		}
+
+		// wait for the response, or the timeout
+		JsonNode response;
+		try {
+			response = call.get();
+		} catch (InterruptedException e) {
+			pendingCalls.fail(id, e);
+			throw e;
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+		return readResponse(returnType, response);
+	}
+
+	/**
+	 * Sends a notification, which has no response.
+	 *
+	 * @see JsonRpcClient#writeNotification(String, Object, OutputStream)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @throws IOException on error
+	 */
+	public void invokeNotification(String methodName, Object argument)
+		throws IOException {
+		if (pendingCalls.isClosed()) {
+			throw pendingCalls.closedException();
+		}
+		ByteArrayOutputStream request = new ByteArrayOutputStream();
+		writeNotification(methodName, argument, request);
+		send(request);
+	}
+
+	/**
+	 * Closes the connection, failing the calls that are waiting.
+	 */
+	public void close() {
+		closeConnection(new IOException("The client was closed"));
+		closeStreams();
+	}
+
+	/**
+	 * Closes the socket, or the streams, which stops the reader.
+	 */
+	private void closeStreams() {
+		try {
+			if (socket!=null) {
+				socket.close();
+			} else {
+				ips.close();
+				ops.close();
+			}
+		} catch (IOException e) {
+			LOGGER.log(Level.FINE, "Exception closing the connection", e);
+		}
+	}
+
+	/**
+	 * Writes a request, whole, to the connection.
+	 * @param request the request
+	 * @throws IOException on error, which closes the connection
+	 */
+	private void send(ByteArrayOutputStream request)
+		throws IOException {
+		try {
+			synchronized (ops) {
+				request.writeTo(ops);
+				ops.flush();
+			}
+		} catch (IOException e) {
+
+			// part of the request may have been written
+			closeConnection(e);
+			closeStreams();
+			throw e;
+		}
+	}
+
+	/**
+	 * Marks the connection closed and fails the calls that are waiting.
+	 * @param cause why it's closed
+	 * @return false if it already was
+	 */
+	private boolean closeConnection(IOException cause) {
+		return pendingCalls.close(cause);
+	}
+
+	/**
+	 * Reads the responses and hands them to their calls.
+	 */
+	private class Reader
+		implements Runnable {
+
+		private final WireCodec wireCodec;
+
+		/**
+		 * @param wireCodec the {@link WireCodec} of the responses
+		 */
+		private Reader(WireCodec wireCodec) {
+			this.wireCodec = wireCodec;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			IOException cause;
+			try {
+				JsonParser parser = wireCodec.getJsonFactory(getObjectMapper())
+					.createJsonParser(new NoCloseInputStream(ips));
+				while (parser.nextToken()!=null) {
+					JsonNode response = getObjectMapper().readTree(parser);
+					pendingCalls.complete(response);
+				}
+				cause = new EOFException("The connection was closed by the server");
+			} catch (IOException e) {
+				cause = e;
+			} catch (Throwable t) {
+				LOGGER.log(Level.SEVERE, "Exception in reader", t);
+				cause = new IOException("The reader failed: "+t);
+				cause.initCause(t);
+			}
+			if (closeConnection(cause)) {
+				LOGGER.log(Level.FINE, "Connection closed", cause);
+			}
+			closeStreams();
+		}
+	}
+
+	/**
+	 * @return the number of calls waiting for their responses
+	 */
+	public int getPendingCalls() {
+		return pendingCalls.size();
+	}
+
+	/**
+	 * @return whether the connection is closed
+	 */
+	public boolean isClosed() {
+		return pendingCalls.isClosed();
+	}
+
+	/**
+	 * The {@link WireCodec} can only be given when the client is
+	 * created, as its reader is already reading with it.
+	 * @param wireCodec the wireCodec to set
+	 * @throws IllegalStateException always, once the client is created
+	 */
+	@Override
+	public void setWireCodec(WireCodec wireCodec) {
+		if (started) {
+			throw new IllegalStateException(
+				"The WireCodec of a MultiplexedJsonRpcClient is set when it's created");
+		}
+		super.setWireCodec(wireCodec);
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a call waits for its response
+	 * before it fails with a {@link SocketTimeoutException}, 0 for ever,
+	 * the default.
+	 *
+	 * @param callTimeoutMillis the callTimeoutMillis to set
+	 */
+	public void setCallTimeoutMillis(long callTimeoutMillis) {
+		this.callTimeoutMillis = callTimeoutMillis;
+	}
+
+}
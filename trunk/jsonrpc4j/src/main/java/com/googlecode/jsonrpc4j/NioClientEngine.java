@@ -0,0 +1,540 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The non-blocking I/O engine of the asynchronous clients,
+ * {@link NioJsonRpcClient} and {@link NioHttpTransport}.  A few I/O
+ * threads each run a {@link Selector} over their share of the
+ * connections, so that any number of calls can be in flight without
+ * a thread waiting on each.  What's read is handed to a connection's
+ * {@link Handler} on its I/O thread, and the clients complete their
+ * calls on the completion {@link Executor}, which is where the
+ * callbacks of their {@link JsonRpcFuture}s run.  Writes go through
+ * direct buffers from a {@link ByteBufferPool}.  An engine can be
+ * shared by any number of clients.
+ */
+public class NioClientEngine {
+
+	private static final Logger LOGGER = Logger.getLogger(NioClientEngine.class.getName());
+
+	public static final int DEFAULT_IO_THREADS = 2;
+
+	private static final int READ_BUFFER_SIZE = 16*1024;
+
+	private static final AtomicInteger ENGINE_COUNT = new AtomicInteger(0);
+
+	private static NioClientEngine defaultEngine;
+
+	private final int engineNumber = ENGINE_COUNT.incrementAndGet();
+	private final IoLoop[] ioLoops;
+	private final Executor completionExecutor;
+	private final ExecutorService ownExecutor;
+	private final AtomicInteger nextIoLoop = new AtomicInteger(0);
+	private final HashedWheelTimer timer = new HashedWheelTimer();
+	private ByteBufferPool bufferPool = new ByteBufferPool(true);
+	private volatile boolean running = true;
+
+	/**
+	 * Creates the engine and starts its I/O threads.
+	 * @param ioThreads the number of threads doing I/O
+	 * @param completionExecutor the {@link Executor} that calls are completed
+	 * on, or null for a pool of daemon threads, one per processor
+	 * @throws IOException on error
+	 */
+	public NioClientEngine(int ioThreads, Executor completionExecutor)
+		throws IOException {
+		if (ioThreads<1) {
+			throw new IllegalArgumentException("ioThreads must be at least 1");
+		}
+
+		// the completion threads
+		if (completionExecutor!=null) {
+			this.completionExecutor	= completionExecutor;
+			this.ownExecutor		= null;
+		} else {
+			this.ownExecutor = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+				private final AtomicInteger threadCount = new AtomicInteger(0);
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r,
+						"jsonrpc4j-nio-client-"+engineNumber+"-completion-"+threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			this.completionExecutor = ownExecutor;
+		}
+
+		// the I/O threads
+		this.ioLoops = new IoLoop[ioThreads];
+		for (int i=0; i<ioLoops.length; i++) {
+			ioLoops[i] = new IoLoop(Selector.open());
+		}
+		for (int i=0; i<ioLoops.length; i++) {
+			ioLoops[i].thread = new Thread(ioLoops[i], "jsonrpc4j-nio-client-"+engineNumber+"-io-"+(i+1));
+			ioLoops[i].thread.setDaemon(true);
+			ioLoops[i].thread.start();
+		}
+	}
+
+	/**
+	 * Creates the engine, with a pool of daemon threads, one per
+	 * processor, that calls are completed on, and starts its I/O threads.
+	 * @param ioThreads the number of threads doing I/O
+	 * @throws IOException on error
+	 */
+	public NioClientEngine(int ioThreads)
+		throws IOException {
+		this(ioThreads, null);
+	}
+
+	/**
+	 * Creates the engine with {@link #DEFAULT_IO_THREADS} and
+	 * a pool of daemon threads that calls are completed on.
+	 * @throws IOException on error
+	 */
+	public NioClientEngine()
+		throws IOException {
+		this(DEFAULT_IO_THREADS, null);
+	}
+
+	/**
+	 * Returns the engine the clients use when they aren't given one,
+	 * creating it the first time it's needed.  It has daemon threads
+	 * and is never closed.
+	 * @return the default {@link NioClientEngine}
+	 */
+	public static synchronized NioClientEngine getDefault() {
+		if (defaultEngine==null) {
+			try {
+				defaultEngine = new NioClientEngine();
+			} catch (IOException e) {
+				throw new IllegalStateException("Unable to create the default NioClientEngine", e);
+			}
+		}
+		return defaultEngine;
+	}
+
+	/**
+	 * Opens a connection to the given address, which is usable
+	 * straight away: what's written before it's established is
+	 * sent once it is.  If it isn't established in time it's
+	 * closed with a {@link SocketTimeoutException}.
+	 * @param address the address
+	 * @param handler the {@link Handler} of the connection
+	 * @param connectTimeoutMillis the connect timeout, 0 for none
+	 * @return the {@link Connection}
+	 * @throws IOException on error
+	 */
+	public Connection connect(SocketAddress address, Handler handler, long connectTimeoutMillis)
+		throws IOException {
+		if (!running) {
+			throw new IllegalStateException("The NioClientEngine has been closed");
+		}
+		SocketChannel channel = SocketChannel.open();
+		final Connection connection;
+		try {
+			channel.configureBlocking(false);
+			channel.socket().setTcpNoDelay(true);
+			channel.socket().setKeepAlive(true);
+			boolean connected = channel.connect(address);
+			IoLoop ioLoop = ioLoops[(nextIoLoop.getAndIncrement() & Integer.MAX_VALUE) % ioLoops.length];
+			connection = new Connection(ioLoop, channel, handler, connected);
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		connection.ioLoop.execute(new Runnable() {
+			public void run() {
+				connection.register();
+			}
+		});
+		if (connectTimeoutMillis>0 && !connection.connected) {
+			connection.connectTimer = timer.schedule(new Runnable() {
+				public void run() {
+					if (!connection.connected) {
+						connection.close(new SocketTimeoutException("connect timed out"));
+					}
+				}
+			}, connectTimeoutMillis);
+		}
+		return connection;
+	}
+
+	/**
+	 * Closes every connection, which fails the calls in flight,
+	 * and stops the threads.  Completion threads given to the
+	 * engine are left running.
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public void close()
+		throws InterruptedException {
+		running = false;
+		for (IoLoop ioLoop : ioLoops) {
+			ioLoop.selector.wakeup();
+		}
+		for (IoLoop ioLoop : ioLoops) {
+			ioLoop.thread.join(2000);
+		}
+		timer.stop();
+		if (ownExecutor!=null) {
+			ownExecutor.shutdown();
+			ownExecutor.awaitTermination(2000, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Receives the events of a connection.
+	 */
+	public static interface Handler {
+
+		/**
+		 * Called on the connection's I/O thread with what's been read,
+		 * which can only be used until this returns.  Throwing closes
+		 * the connection.
+		 * @param connection the {@link Connection}
+		 * @param buffer the bytes read
+		 * @throws IOException on error
+		 */
+		void onRead(Connection connection, ByteBuffer buffer)
+			throws IOException;
+
+		/**
+		 * Called once the connection is closed, on the thread that
+		 * closed it.
+		 * @param connection the {@link Connection}
+		 * @param cause why it was closed
+		 */
+		void onClose(Connection connection, Throwable cause);
+	}
+
+	/**
+	 * A thread running a {@link Selector} over a share of the connections.
+	 */
+	private class IoLoop
+		implements Runnable {
+
+		private final Selector selector;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		private ByteBuffer readBuffer;
+		private Thread thread;
+
+		/**
+		 * @param selector the {@link Selector}
+		 */
+		private IoLoop(Selector selector) {
+			this.selector = selector;
+		}
+
+		/**
+		 * Runs the given task on this loop's thread.
+		 * @param task the task
+		 */
+		private void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			readBuffer = bufferPool.acquire(READ_BUFFER_SIZE);
+			while (running) {
+				try {
+					selector.select();
+
+					// run the tasks
+					for (Runnable task=tasks.poll(); task!=null; task=tasks.poll()) {
+						task.run();
+					}
+
+					// handle the ready channels
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						if (!key.isValid()) {
+							continue;
+						}
+						Connection connection = Connection.class.cast(key.attachment());
+						try {
+							if (key.isConnectable()) {
+								connection.finishConnect();
+							}
+							if (key.isValid() && key.isReadable()) {
+								connection.read();
+							}
+							if (key.isValid() && key.isWritable()) {
+								connection.write();
+							}
+						} catch (Exception e) {
+							connection.close(e);
+						}
+					}
+
+				} catch (Throwable t) {
+					LOGGER.log(Level.SEVERE, "Exception in I/O loop", t);
+				}
+			}
+
+			// clean up
+			for (SelectionKey key : selector.keys()) {
+				Connection.class.cast(key.attachment()).close(
+					new ClosedChannelException());
+			}
+			for (Runnable task=tasks.poll(); task!=null; task=tasks.poll()) {
+				task.run();
+			}
+			try {
+				selector.close();
+			} catch (IOException e) { /* no-op */ }
+			bufferPool.release(readBuffer);
+			readBuffer = null;
+		}
+	}
+
+	/**
+	 * A connection, that can be written to from any thread.
+	 */
+	public class Connection {
+
+		private final IoLoop ioLoop;
+		private final SocketChannel channel;
+		private final Handler handler;
+		private final Queue<ByteBuffer> queued = new ConcurrentLinkedQueue<ByteBuffer>();
+		private final LinkedList<ByteBuffer> writes = new LinkedList<ByteBuffer>();
+		private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+		private final AtomicBoolean closed = new AtomicBoolean(false);
+		private final Runnable flush = new Runnable() {
+			public void run() {
+				flushScheduled.set(false);
+				try {
+					write();
+				} catch (IOException e) {
+					close(e);
+				}
+			}
+		};
+		private volatile boolean connected;
+		private volatile HashedWheelTimer.Timeout connectTimer;
+		private SelectionKey key;
+
+		/**
+		 * @param ioLoop the {@link IoLoop}
+		 * @param channel the {@link SocketChannel}
+		 * @param handler the {@link Handler}
+		 * @param connected whether it's already connected
+		 */
+		private Connection(IoLoop ioLoop, SocketChannel channel, Handler handler, boolean connected) {
+			this.ioLoop		= ioLoop;
+			this.channel	= channel;
+			this.handler	= handler;
+			this.connected	= connected;
+		}
+
+		/**
+		 * Queues the given buffer to be written.  It must
+		 * come from the engine's {@link ByteBufferPool}, or
+		 * be a heap buffer, and is given back once it's written.
+		 * @param buffer the bytes to write
+		 * @throws ClosedChannelException if the connection is closed
+		 */
+		public void write(ByteBuffer buffer)
+			throws ClosedChannelException {
+			if (closed.get()) {
+				bufferPool.release(buffer);
+				throw new ClosedChannelException();
+			}
+			queued.add(buffer);
+			if (flushScheduled.compareAndSet(false, true)) {
+				ioLoop.execute(flush);
+			}
+		}
+
+		/**
+		 * Closes the connection.
+		 */
+		public void close() {
+			close(new ClosedChannelException());
+		}
+
+		/**
+		 * Closes the connection, telling its {@link Handler} why.
+		 * @param cause why it's closed
+		 */
+		public void close(Throwable cause) {
+			if (!closed.compareAndSet(false, true)) {
+				return;
+			}
+			if (connectTimer!=null) {
+				connectTimer.cancel();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) { /* no-op */ }
+			ioLoop.execute(new Runnable() {
+				public void run() {
+					if (key!=null) {
+						key.cancel();
+					}
+					for (ByteBuffer buffer : writes) {
+						bufferPool.release(buffer);
+					}
+					writes.clear();
+					queued.clear();
+				}
+			});
+			try {
+				handler.onClose(this, cause);
+			} catch (Throwable t) {
+				LOGGER.log(Level.WARNING, "Exception in onClose", t);
+			}
+		}
+
+		/**
+		 * @return whether the connection is open
+		 */
+		public boolean isOpen() {
+			return !closed.get();
+		}
+
+		/**
+		 * Registers the channel with the loop's {@link Selector},
+		 * on the loop's thread.
+		 */
+		private void register() {
+			if (!running) {
+				close(new ClosedChannelException());
+				return;
+			} else if (closed.get()) {
+				return;
+			}
+			try {
+				key = channel.register(ioLoop.selector,
+					connected ? SelectionKey.OP_READ : SelectionKey.OP_CONNECT, this);
+				if (connected) {
+					write();
+				}
+			} catch (IOException e) {
+				close(e);
+			}
+		}
+
+		/**
+		 * Finishes connecting, on the loop's thread.
+		 * @throws IOException on error
+		 */
+		private void finishConnect()
+			throws IOException {
+			if (!channel.finishConnect()) {
+				return;
+			}
+			connected = true;
+			if (connectTimer!=null) {
+				connectTimer.cancel();
+			}
+			write();
+		}
+
+		/**
+		 * Reads what's available and hands it to the
+		 * {@link Handler}, on the loop's thread.
+		 * @throws IOException on error
+		 */
+		private void read()
+			throws IOException {
+			ByteBuffer buffer = ioLoop.readBuffer;
+			buffer.clear();
+			int read = channel.read(buffer);
+			if (read<0) {
+				close(new EOFException("The connection was closed by the peer"));
+				return;
+			}
+			buffer.flip();
+			handler.onRead(this, buffer);
+		}
+
+		/**
+		 * Writes as much of the queued buffers as the
+		 * socket takes, on the loop's thread.
+		 * @throws IOException on error
+		 */
+		private void write()
+			throws IOException {
+			for (ByteBuffer buffer=queued.poll(); buffer!=null; buffer=queued.poll()) {
+				writes.add(buffer);
+			}
+			if (!connected || key==null || !key.isValid()) {
+				return;
+			}
+			while (!writes.isEmpty()) {
+				ByteBuffer buffer = writes.getFirst();
+				channel.write(buffer);
+				if (buffer.hasRemaining()) {
+					break;
+				}
+				bufferPool.release(writes.removeFirst());
+			}
+			key.interestOps(writes.isEmpty()
+				? SelectionKey.OP_READ
+				: SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+	}
+
+	/**
+	 * @return the {@link Executor} that calls are completed on
+	 */
+	public Executor getCompletionExecutor() {
+		return completionExecutor;
+	}
+
+	/**
+	 * @return the {@link HashedWheelTimer} for the timeouts of calls
+	 */
+	public HashedWheelTimer getTimer() {
+		return timer;
+	}
+
+	/**
+	 * Sets the {@link ByteBufferPool} that reads and writes go
+	 * through, so that it can be shared with servers.  It should
+	 * hold direct buffers and be set before the engine is used.
+	 * By default the engine has its own.
+	 *
+	 * @param bufferPool the bufferPool to set
+	 */
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * @return the {@link ByteBufferPool}
+	 */
+	public ByteBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+}
@@ -0,0 +1,865 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.jsonrpc4j.HttpTransport.Request;
+import com.googlecode.jsonrpc4j.HttpTransport.Response;
+import com.googlecode.jsonrpc4j.NioClientEngine.Connection;
+
+/**
+ * Posts http requests asynchronously, speaking HTTP/1.1 over the
+ * connections of a {@link NioClientEngine}, for the
+ * {@link JsonRpcHttpClient#invokeAsync(String, Object, java.lang.reflect.Type)}
+ * calls.  Connections are kept alive in a pool per host, of at most
+ * {@code maxConnectionsPerHost} connections, each carrying one
+ * request at a time; requests beyond that are queued until a
+ * connection is free, so any number of them can be in flight without
+ * a thread waiting on each.  Bodies are buffered, both ways.  As with
+ * the {@link PooledHttpTransport}, a request that fails on a kept
+ * alive connection before any of its response arrives is retried once
+ * on a new connection.  Only plain http is spoken, without proxies.
+ */
+public class NioHttpTransport {
+
+	private static final Logger LOGGER = Logger.getLogger(NioHttpTransport.class.getName());
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST	= 20;
+	public static final int DEFAULT_MAX_RESPONSE_SIZE			= 16*1024*1024;
+
+	private static final int MAX_HEAD_SIZE		= 64*1024;
+	private static final int REQUEST_BUFFER_SIZE	= 4*1024;
+	private static final String CHARSET			= "ISO-8859-1";
+
+	private final NioClientEngine engine;
+	private final ConcurrentMap<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+	private final AtomicLong created = new AtomicLong(0);
+	private int maxConnectionsPerHost	= DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private int maxResponseSize			= DEFAULT_MAX_RESPONSE_SIZE;
+	private volatile boolean closed		= false;
+
+	/**
+	 * Creates the transport.
+	 * @param engine the {@link NioClientEngine}
+	 */
+	public NioHttpTransport(NioClientEngine engine) {
+		this.engine = engine;
+	}
+
+	/**
+	 * Posts a request.  Its read timeout bounds the wait for the whole
+	 * response.  The {@link Callback} is called on the completion
+	 * {@link java.util.concurrent.Executor} of the engine.
+	 * @param request the {@link Request}
+	 * @param callback the {@link Callback}
+	 * @throws IOException if the request's body can't be written
+	 */
+	public void post(Request request, Callback callback)
+		throws IOException {
+		if (closed) {
+			throw new IllegalStateException("The transport has been closed");
+		}
+		URL url = request.getUrl();
+		if (!"http".equalsIgnoreCase(url.getProtocol())) {
+			throw new UnsupportedOperationException(
+				"The NioHttpTransport only speaks http, not "+url.getProtocol());
+		} else if (request.getProxy()!=null && request.getProxy().type()!=Proxy.Type.DIRECT) {
+			throw new UnsupportedOperationException(
+				"The NioHttpTransport doesn't support proxies");
+		}
+		pool(url).submit(new Exchange(request, writeRequest(request), callback));
+	}
+
+	/**
+	 * Closes the idle connections, and the others once
+	 * their responses have arrived.
+	 */
+	public void close() {
+		closed = true;
+		for (HostPool pool : pools.values()) {
+			pool.closeIdle();
+		}
+	}
+
+	/**
+	 * Receives the outcome of a request.
+	 */
+	public static interface Callback {
+
+		/**
+		 * Called with the response, which holds the whole body
+		 * and needn't be closed.
+		 * @param response the {@link Response}
+		 */
+		void onResponse(Response response);
+
+		/**
+		 * Called with the error that the request failed with.
+		 * @param cause the error
+		 */
+		void onFailure(Throwable cause);
+	}
+
+	/**
+	 * @param url the {@link URL}
+	 * @return the pool of connections for its host
+	 */
+	private HostPool pool(URL url) {
+		int port = url.getPort()!=-1 ? url.getPort() : url.getDefaultPort();
+		String key = url.getHost().toLowerCase()+":"+port;
+		HostPool pool = pools.get(key);
+		if (pool==null) {
+			pool = new HostPool(key, new InetSocketAddress(url.getHost(), port));
+			HostPool existing = pools.putIfAbsent(key, pool);
+			if (existing!=null) {
+				pool = existing;
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Writes a request, with its body, to a byte array.
+	 * @param request the {@link Request}
+	 * @return the bytes
+	 * @throws IOException on error
+	 */
+	private static byte[] writeRequest(Request request)
+		throws IOException {
+		URL url = request.getUrl();
+
+		// the body
+		ByteArrayBody body = new ByteArrayBody(REQUEST_BUFFER_SIZE);
+		request.getBody().writeTo(body);
+
+		// the request line and headers
+		StringBuilder head = new StringBuilder("POST ");
+		head.append(url.getPath().length()>0 ? url.getPath() : "/");
+		if (url.getQuery()!=null) {
+			head.append('?').append(url.getQuery());
+		}
+		head.append(" HTTP/1.1\r\nHost: ").append(url.getHost());
+		if (url.getPort()!=-1 && url.getPort()!=url.getDefaultPort()) {
+			head.append(':').append(url.getPort());
+		}
+		head.append("\r\n");
+		for (Entry<String, String> entry : request.getHeaders().entrySet()) {
+			String name = entry.getKey();
+			if (name.equalsIgnoreCase("Host") || name.equalsIgnoreCase("Content-Length")
+				|| name.equalsIgnoreCase("Transfer-Encoding") || name.equalsIgnoreCase("Connection")) {
+				continue;
+			}
+			head.append(name).append(": ").append(entry.getValue()).append("\r\n");
+		}
+		head.append("Content-Length: ").append(body.size()).append("\r\n\r\n");
+
+		// the whole request
+		byte[] headBytes = head.toString().getBytes(CHARSET);
+		byte[] bytes = new byte[headBytes.length+body.size()];
+		System.arraycopy(headBytes, 0, bytes, 0, headBytes.length);
+		System.arraycopy(body.array(), 0, bytes, headBytes.length, body.size());
+		return bytes;
+	}
+
+	/**
+	 * A {@link ByteArrayOutputStream} whose bytes
+	 * can be read without being copied.
+	 */
+	private static class ByteArrayBody
+		extends ByteArrayOutputStream {
+
+		/**
+		 * @param size the initial size
+		 */
+		private ByteArrayBody(int size) {
+			super(size);
+		}
+
+		/**
+		 * @return the bytes, of which the first {@link #size()} count
+		 */
+		private byte[] array() {
+			return buf;
+		}
+	}
+
+	/**
+	 * A request and the callback for its response.
+	 */
+	private class Exchange {
+
+		private final Request request;
+		private final byte[] bytes;
+		private final Callback callback;
+		private boolean retried = false;
+
+		/**
+		 * @param request the {@link Request}
+		 * @param bytes the request, written out
+		 * @param callback the {@link Callback}
+		 */
+		private Exchange(Request request, byte[] bytes, Callback callback) {
+			this.request	= request;
+			this.bytes		= bytes;
+			this.callback	= callback;
+		}
+
+		/**
+		 * Calls the callback with the response, on a completion thread.
+		 * @param response the {@link Response}
+		 */
+		private void succeed(final Response response) {
+			complete(new Runnable() {
+				public void run() {
+					callback.onResponse(response);
+				}
+			});
+		}
+
+		/**
+		 * Calls the callback with the error, on a completion thread.
+		 * @param cause the error
+		 */
+		private void fail(final Throwable cause) {
+			complete(new Runnable() {
+				public void run() {
+					callback.onFailure(cause);
+				}
+			});
+		}
+
+		/**
+		 * @param task runs the callback
+		 */
+		private void complete(Runnable task) {
+			try {
+				engine.getCompletionExecutor().execute(task);
+			} catch (RejectedExecutionException e) {
+				LOGGER.log(Level.WARNING, "The completion executor rejected a response", e);
+			}
+		}
+	}
+
+	/**
+	 * The connections to one host, the most recently released
+	 * of which is reused first so that the others can be closed
+	 * by the server, and the requests waiting for a connection.
+	 */
+	private class HostPool {
+
+		private final String key;
+		private final InetSocketAddress address;
+		private final LinkedList<HttpConnection> idle = new LinkedList<HttpConnection>();
+		private final LinkedList<Exchange> waiting = new LinkedList<Exchange>();
+		private int open = 0;
+
+		/**
+		 * @param key the host's key
+		 * @param address the host's address
+		 */
+		private HostPool(String key, InetSocketAddress address) {
+			this.key		= key;
+			this.address	= address;
+		}
+
+		/**
+		 * Sends a request on an idle connection, or a new one, or
+		 * queues it if there are too many.
+		 * @param exchange the {@link Exchange}
+		 */
+		private void submit(Exchange exchange) {
+			HttpConnection connection = null;
+			synchronized (this) {
+				if (!idle.isEmpty()) {
+					connection = idle.removeFirst();
+				} else if (open<maxConnectionsPerHost) {
+					open++;
+				} else {
+					waiting.add(exchange);
+					return;
+				}
+			}
+			if (connection!=null) {
+				connection.send(exchange);
+			} else {
+				connect(exchange);
+			}
+		}
+
+		/**
+		 * Opens a connection, whose slot has been
+		 * taken, and sends a request on it.
+		 * @param exchange the {@link Exchange}
+		 */
+		private void connect(Exchange exchange) {
+			HttpConnection connection = new HttpConnection(this);
+			try {
+				connection.connection = engine.connect(
+					address, connection, exchange.request.getConnectTimeoutMillis());
+			} catch (Throwable t) {
+				exchange.fail(t);
+				closed(null);
+				return;
+			}
+			created.incrementAndGet();
+			connection.send(exchange);
+		}
+
+		/**
+		 * Gives back a connection whose response has arrived,
+		 * sending the next waiting request on it.
+		 * @param connection the {@link HttpConnection}
+		 */
+		private void release(HttpConnection connection) {
+			Exchange next;
+			synchronized (this) {
+				next = waiting.poll();
+				if (next==null && !closed) {
+					idle.addFirst(connection);
+					return;
+				}
+			}
+			if (next!=null) {
+				connection.send(next);
+			} else {
+				connection.connection.close();
+			}
+		}
+
+		/**
+		 * Gives back the slot of a connection that's been
+		 * closed, opening another for the next waiting request.
+		 * @param connection the closed {@link HttpConnection}, or null
+		 */
+		private void closed(HttpConnection connection) {
+			Exchange next;
+			synchronized (this) {
+				if (connection!=null && idle.remove(connection)) {
+					open--;
+					return;
+				}
+				next = waiting.poll();
+				if (next==null) {
+					open--;
+					return;
+				}
+			}
+			connect(next);
+		}
+
+		/**
+		 * Closes the idle connections.
+		 */
+		private void closeIdle() {
+			List<HttpConnection> closing;
+			synchronized (this) {
+				closing = new ArrayList<HttpConnection>(idle);
+			}
+			for (HttpConnection connection : closing) {
+				connection.connection.close();
+			}
+		}
+	}
+
+	/**
+	 * A connection and the exchange in flight on it.
+	 */
+	private class HttpConnection
+		implements NioClientEngine.Handler {
+
+		private final HostPool pool;
+		private final ResponseParser parser = new ResponseParser(maxResponseSize);
+		private volatile Connection connection;
+		private Exchange exchange;
+		private HashedWheelTimer.Timeout readTimer;
+		private boolean used = false;
+		private boolean exchangeOnReused = false;
+		private boolean responseStarted = false;
+		private boolean closed = false;
+
+		/**
+		 * @param pool the {@link HostPool}
+		 */
+		private HttpConnection(HostPool pool) {
+			this.pool = pool;
+		}
+
+		/**
+		 * Sends a request.
+		 * @param exchange the {@link Exchange}
+		 */
+		private void send(Exchange exchange) {
+			final int readTimeoutMillis = exchange.request.getReadTimeoutMillis();
+			boolean sending;
+			synchronized (this) {
+				sending = !closed;
+				if (sending) {
+					this.exchange			= exchange;
+					this.exchangeOnReused	= used;
+					this.responseStarted	= false;
+					this.used				= true;
+					if (readTimeoutMillis>0) {
+						readTimer = engine.getTimer().schedule(new Runnable() {
+							public void run() {
+								connection.close(new SocketTimeoutException("Read timed out"));
+							}
+						}, readTimeoutMillis);
+					}
+				}
+			}
+
+			// closed before it was sent, it's tried on another connection
+			if (!sending) {
+				if (exchange.retried) {
+					exchange.fail(new IOException("The connection to "+pool.key+" was closed"));
+				} else {
+					exchange.retried = true;
+					pool.submit(exchange);
+				}
+				return;
+			}
+			try {
+				connection.write(ByteBuffer.wrap(exchange.bytes));
+			} catch (IOException e) {
+				// onClose fails or retries the exchange
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onRead(Connection connection, ByteBuffer buffer)
+			throws IOException {
+			Exchange current;
+			synchronized (this) {
+				current = exchange;
+				responseStarted = true;
+			}
+			if (current==null) {
+				throw new IOException("Unexpected bytes from "+pool.key);
+			}
+			if (!parser.parse(buffer)) {
+				return;
+			}
+
+			// the response is complete
+			Response response = parser.finish();
+			boolean keepAlive = parser.isKeepAlive() && !buffer.hasRemaining();
+			parser.reset();
+			synchronized (this) {
+				exchange = null;
+				if (readTimer!=null) {
+					readTimer.cancel();
+					readTimer = null;
+				}
+			}
+			current.succeed(response);
+			if (keepAlive) {
+				pool.release(this);
+			} else {
+				connection.close();
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onClose(Connection connection, Throwable cause) {
+			Exchange current;
+			boolean retry;
+			synchronized (this) {
+				closed = true;
+				current = exchange;
+				exchange = null;
+				if (readTimer!=null) {
+					readTimer.cancel();
+					readTimer = null;
+				}
+				retry = current!=null && exchangeOnReused && !responseStarted && !current.retried
+					&& !(cause instanceof SocketTimeoutException);
+			}
+
+			// a body without a length ends when the server closes the connection
+			Response untilClosed = cause instanceof EOFException && parser.isReadingUntilClose()
+				? parser.finish()
+				: null;
+			pool.closed(this);
+			if (current==null) {
+				return;
+			} else if (untilClosed!=null) {
+				current.succeed(untilClosed);
+			} else if (retry) {
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.log(Level.FINE, "Retrying on a new connection to "+pool.key, cause);
+				}
+				current.retried = true;
+				pool.submit(current);
+			} else {
+				current.fail(cause);
+			}
+		}
+	}
+
+	/**
+	 * Parses a response as it arrives in arbitrary chunks.
+	 */
+	private static class ResponseParser {
+
+		private static final int STATUS_LINE	= 0;
+		private static final int HEADERS		= 1;
+		private static final int BODY			= 2;
+		private static final int CHUNK_SIZE		= 3;
+		private static final int CHUNK_DATA		= 4;
+		private static final int CHUNK_END		= 5;
+		private static final int TRAILERS		= 6;
+		private static final int UNTIL_CLOSE	= 7;
+		private static final int DONE			= 8;
+
+		private final int maxResponseSize;
+		private final StringBuilder line = new StringBuilder();
+		private ByteArrayBody body;
+		private Map<String, String> headers;
+		private String statusLine;
+		private int statusCode;
+		private int state;
+		private long remaining;
+		private int headSize;
+
+		/**
+		 * @param maxResponseSize the largest body accepted
+		 */
+		private ResponseParser(int maxResponseSize) {
+			this.maxResponseSize = maxResponseSize;
+			reset();
+		}
+
+		/**
+		 * Gets ready for the next response.
+		 */
+		private void reset() {
+			line.setLength(0);
+			body		= null;
+			headers		= new HashMap<String, String>();
+			statusLine	= null;
+			statusCode	= 0;
+			state		= STATUS_LINE;
+			remaining	= 0;
+			headSize	= 0;
+		}
+
+		/**
+		 * Parses what's arrived.
+		 * @param buffer the bytes
+		 * @return whether the response is complete
+		 * @throws IOException if it's malformed or too large
+		 */
+		private boolean parse(ByteBuffer buffer)
+			throws IOException {
+			while (buffer.hasRemaining() && state!=DONE) {
+				switch (state) {
+				case STATUS_LINE:
+				case HEADERS:
+				case CHUNK_SIZE:
+				case CHUNK_END:
+				case TRAILERS:
+					if (readLine(buffer)) {
+						String text = line.toString();
+						line.setLength(0);
+						onLine(text);
+					}
+					break;
+				case BODY:
+				case CHUNK_DATA:
+					int length = (int)Math.min(remaining, buffer.remaining());
+					append(buffer, length);
+					remaining -= length;
+					if (remaining==0) {
+						state = state==BODY ? DONE : CHUNK_END;
+					}
+					break;
+				case UNTIL_CLOSE:
+					append(buffer, buffer.remaining());
+					break;
+				}
+			}
+			return state==DONE;
+		}
+
+		/**
+		 * Handles a line of the response.
+		 * @param text the line, without its end
+		 * @throws IOException if it's malformed
+		 */
+		private void onLine(String text)
+			throws IOException {
+			switch (state) {
+			case STATUS_LINE:
+				String[] parts = text.split(" ", 3);
+				if (parts.length<2 || !parts[0].startsWith("HTTP/")) {
+					throw new IOException("Invalid status line: "+text);
+				}
+				try {
+					statusCode = Integer.parseInt(parts[1]);
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid status line: "+text);
+				}
+				statusLine	= text;
+				state		= HEADERS;
+				break;
+			case HEADERS:
+				if (text.length()>0) {
+					int colon = text.indexOf(':');
+					if (colon>0) {
+						String name = text.substring(0, colon).trim().toLowerCase();
+						String value = text.substring(colon+1).trim();
+						String previous = headers.get(name);
+						headers.put(name, previous!=null ? previous+", "+value : value);
+					}
+				} else {
+					startBody();
+				}
+				break;
+			case CHUNK_SIZE:
+				int semicolon = text.indexOf(';');
+				try {
+					remaining = Long.parseLong(
+						(semicolon>=0 ? text.substring(0, semicolon) : text).trim(), 16);
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid chunk size: "+text);
+				}
+				state = remaining>0 ? CHUNK_DATA : TRAILERS;
+				break;
+			case CHUNK_END:
+				state = CHUNK_SIZE;
+				break;
+			case TRAILERS:
+				if (text.length()==0) {
+					state = DONE;
+				}
+				break;
+			}
+		}
+
+		/**
+		 * Works out how the body ends, once the headers are read.
+		 * @throws IOException if it's malformed
+		 */
+		private void startBody()
+			throws IOException {
+
+			// skip informational responses, such as 100 Continue
+			if (statusCode>=100 && statusCode<200) {
+				headers.clear();
+				state = STATUS_LINE;
+				return;
+			}
+			String transferEncoding = headers.get("transfer-encoding");
+			String contentLength = headers.get("content-length");
+			body = new ByteArrayBody(REQUEST_BUFFER_SIZE);
+			if (statusCode==204 || statusCode==304) {
+				state = DONE;
+			} else if (transferEncoding!=null && transferEncoding.toLowerCase().endsWith("chunked")) {
+				state = CHUNK_SIZE;
+			} else if (contentLength!=null) {
+				try {
+					remaining = Long.parseLong(contentLength.trim());
+				} catch (NumberFormatException e) {
+					throw new IOException("Invalid Content-Length: "+contentLength);
+				}
+				if (remaining>maxResponseSize) {
+					throw new IOException("The response is larger than "+maxResponseSize+" bytes");
+				}
+				state = remaining>0 ? BODY : DONE;
+			} else {
+				state = UNTIL_CLOSE;
+			}
+		}
+
+		/**
+		 * Reads up to the end of a line, which is CRLF or LF.
+		 * @param buffer the bytes
+		 * @return whether the line is complete
+		 * @throws IOException if the head is too large
+		 */
+		private boolean readLine(ByteBuffer buffer)
+			throws IOException {
+			while (buffer.hasRemaining()) {
+				byte b = buffer.get();
+				if (++headSize>MAX_HEAD_SIZE) {
+					throw new IOException("The response's head is larger than "+MAX_HEAD_SIZE+" bytes");
+				}
+				if (b=='\n') {
+					int length = line.length();
+					if (length>0 && line.charAt(length-1)=='\r') {
+						line.setLength(length-1);
+					}
+					return true;
+				}
+				line.append((char)(b & 0xFF));
+			}
+			return false;
+		}
+
+		/**
+		 * Appends bytes to the body.
+		 * @param buffer the bytes
+		 * @param length how many
+		 * @throws IOException if the body is too large
+		 */
+		private void append(ByteBuffer buffer, int length)
+			throws IOException {
+			if (body.size()+length>maxResponseSize) {
+				throw new IOException("The response is larger than "+maxResponseSize+" bytes");
+			}
+			if (buffer.hasArray()) {
+				body.write(buffer.array(), buffer.arrayOffset()+buffer.position(), length);
+				buffer.position(buffer.position()+length);
+			} else {
+				byte[] bytes = new byte[length];
+				buffer.get(bytes);
+				body.write(bytes, 0, length);
+			}
+		}
+
+		/**
+		 * @return whether the body ends when the connection is closed
+		 */
+		private boolean isReadingUntilClose() {
+			return state==UNTIL_CLOSE;
+		}
+
+		/**
+		 * @return whether the connection can be reused
+		 */
+		private boolean isKeepAlive() {
+			String connection = headers.get("connection");
+			return statusLine.startsWith("HTTP/1.1")
+				? !"close".equalsIgnoreCase(connection)
+				: "keep-alive".equalsIgnoreCase(connection);
+		}
+
+		/**
+		 * @return the response
+		 */
+		private Response finish() {
+			return new BufferedResponse(statusCode, headers, body.toByteArray());
+		}
+	}
+
+	/**
+	 * A response whose body has been read.
+	 */
+	private static class BufferedResponse
+		implements Response {
+
+		private final int statusCode;
+		private final Map<String, String> headers;
+		private final byte[] body;
+
+		/**
+		 * @param statusCode the status code
+		 * @param headers the headers, by their lower case names
+		 * @param body the body
+		 */
+		private BufferedResponse(int statusCode, Map<String, String> headers, byte[] body) {
+			this.statusCode	= statusCode;
+			this.headers	= headers;
+			this.body		= body;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public String getHeader(String name) {
+			return headers.get(name.toLowerCase());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public InputStream getInputStream() {
+			return new ByteArrayInputStream(body);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void close() {
+			// there's nothing to release
+		}
+	}
+
+	/**
+	 * Sets the most connections kept to a host, busy or idle.
+	 *
+	 * @param maxConnectionsPerHost the maxConnectionsPerHost to set
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		if (maxConnectionsPerHost<1) {
+			throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1");
+		}
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * @param maxResponseSize the maxResponseSize to set
+	 */
+	public void setMaxResponseSize(int maxResponseSize) {
+		this.maxResponseSize = maxResponseSize;
+	}
+
+	/**
+	 * @return the {@link NioClientEngine}
+	 */
+	public NioClientEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @return the number of idle connections
+	 */
+	public int getIdle() {
+		int count = 0;
+		for (HostPool pool : pools.values()) {
+			synchronized (pool) {
+				count += pool.idle.size();
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of connections opened so far
+	 */
+	public long getCreated() {
+		return created.get();
+	}
+
+}
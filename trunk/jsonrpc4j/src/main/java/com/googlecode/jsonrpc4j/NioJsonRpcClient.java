@@ -0,0 +1,327 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.NioClientEngine.Connection;
+
+/**
+ * A JSON-RPC client that calls a {@link StreamServer} or
+ * {@link NioStreamServer} asynchronously, over a connection of a
+ * {@link NioClientEngine}.  Any number of calls, from any number of
+ * threads, can be in flight on the connection at once: each request
+ * gets a numeric id of its own and the responses, found in what's read
+ * with a {@link JsonValueScanner}, are matched to their calls by it in
+ * whatever order they arrive, through the connection's
+ * {@link PendingCalls}.  The connection is opened by the first
+ * call, and again by the first call after it's been closed, which
+ * fails the calls that were in flight on it.  Only JSON is supported.
+ */
+public class NioJsonRpcClient
+	extends JsonRpcClient {
+
+	private static final Logger LOGGER = Logger.getLogger(NioJsonRpcClient.class.getName());
+
+	public static final int DEFAULT_MAX_RESPONSE_SIZE = 16*1024*1024;
+
+	private static final int REQUEST_BUFFER_SIZE = 4*1024;
+
+	private final SocketAddress address;
+	private final NioClientEngine engine;
+	private int connectionTimeoutMillis	= 60*1000;
+	private long callTimeoutMillis		= 0;
+	private int maxResponseSize			= DEFAULT_MAX_RESPONSE_SIZE;
+	private ConnectionHandler handler;
+
+	/**
+	 * Creates the client.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param address the address of the server
+	 * @param engine the {@link NioClientEngine}
+	 */
+	public NioJsonRpcClient(ObjectMapper mapper, SocketAddress address, NioClientEngine engine) {
+		super(mapper);
+		this.address	= address;
+		this.engine		= engine;
+	}
+
+	/**
+	 * Creates the client.
+	 * @param address the address of the server
+	 * @param engine the {@link NioClientEngine}
+	 */
+	public NioJsonRpcClient(SocketAddress address, NioClientEngine engine) {
+		this(new ObjectMapper(), address, engine);
+	}
+
+	/**
+	 * Creates the client with the {@link NioClientEngine#getDefault()} engine.
+	 * @param address the address of the server
+	 */
+	public NioJsonRpcClient(SocketAddress address) {
+		this(new ObjectMapper(), address, NioClientEngine.getDefault());
+	}
+
+	/**
+	 * Invokes the given method with the given argument without
+	 * waiting for the response.
+	 *
+	 * @see JsonRpcClient#writeRequest(String, Object, java.io.OutputStream, long)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param returnType the return type
+	 * @return the {@link JsonRpcFuture} of the return value
+	 */
+	public JsonRpcFuture<Object> invokeAsync(
+		String methodName, Object argument, final Type returnType) {
+
+		// the response is read into the return value on the completion thread
+		final JsonRpcFuture<Object> future = new JsonRpcFuture<Object>();
+		JsonRpcFuture<JsonNode> response = new JsonRpcFuture<JsonNode>();
+		response.addCallback(new AsyncResultCallback() {
+			public void onSuccess(Object value) {
+				try {
+					future.complete(readResponse(returnType, JsonNode.class.cast(value)));
+				} catch (Throwable t) {
+					future.fail(t);
+				}
+			}
+			public void onFailure(Throwable cause) {
+				future.fail(cause);
+			}
+		});
+
+		ConnectionHandler handler = null;
+		long id = -1;
+		ByteBufferOutputStream request = new ByteBufferOutputStream(
+			engine.getBufferPool(), REQUEST_BUFFER_SIZE);
+		try {
+			handler = getConnectionHandler();
+			id = handler.pendingCalls.register(response, callTimeoutMillis);
+			writeRequest(methodName, argument, request, id);
+			handler.connection.write(request.detach());
+		} catch (Throwable t) {
+			request.close();
+			if (id>0) {
+				handler.pendingCalls.fail(id, t);
+			} else {
+				response.fail(t);
+			}
+		}
+		return future;
+	}
+
+	/**
+	 * Invokes the given method with the given argument without
+	 * waiting for the response.
+	 *
+	 * @see JsonRpcClient#writeRequest(String, Object, java.io.OutputStream, long)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param clazz the return type
+	 * @return the {@link JsonRpcFuture} of the return value
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> JsonRpcFuture<T> invokeAsync(
+		String methodName, Object argument, Class<T> clazz) {
+		return (JsonRpcFuture<T>)(JsonRpcFuture<?>)invokeAsync(
+			methodName, argument, Type.class.cast(clazz));
+	}
+
+	/**
+	 * Invokes the given method with the given argument and
+	 * waits for the response.
+	 *
+	 * @see JsonRpcClient#writeRequest(String, Object, java.io.OutputStream, long)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @param returnType the return type
+	 * @return the return value
+	 * @throws Throwable on error
+	 */
+	public Object invoke(
+		String methodName, Object argument, Type returnType)
+		throws Throwable {
+		try {
+			return invokeAsync(methodName, argument, returnType).get();
+		} catch (ExecutionException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Sends a notification, which has no response.
+	 *
+	 * @see JsonRpcClient#writeNotification(String, Object, java.io.OutputStream)
+	 * @param methodName the name of the method to invoke
+	 * @param argument the arguments to the method
+	 * @throws IOException on error
+	 */
+	public void invokeNotificationAsync(String methodName, Object argument)
+		throws IOException {
+		ByteBufferOutputStream request = new ByteBufferOutputStream(
+			engine.getBufferPool(), REQUEST_BUFFER_SIZE);
+		try {
+			writeNotification(methodName, argument, request);
+			getConnectionHandler().connection.write(request.detach());
+		} finally {
+			request.close();
+		}
+	}
+
+	/**
+	 * Closes the connection, which fails the calls in flight.
+	 */
+	public void close() {
+		ConnectionHandler closing;
+		synchronized (this) {
+			closing = handler;
+			handler = null;
+		}
+		if (closing!=null) {
+			closing.connection.close();
+		}
+	}
+
+	/**
+	 * @return the handler of an open connection, opening one if need be
+	 * @throws IOException on error
+	 */
+	private synchronized ConnectionHandler getConnectionHandler()
+		throws IOException {
+		if (handler==null || !handler.connection.isOpen()) {
+			ConnectionHandler opened = new ConnectionHandler();
+			opened.connection = engine.connect(address, opened, connectionTimeoutMillis);
+			handler = opened;
+		}
+		return handler;
+	}
+
+	/**
+	 * Matches the responses read from a connection to their calls.
+	 */
+	private class ConnectionHandler
+		implements NioClientEngine.Handler {
+
+		private final PendingCalls pendingCalls = new PendingCalls(engine.getTimer());
+		private final JsonValueScanner scanner = new JsonValueScanner(maxResponseSize);
+		private final List<byte[]> responses = new ArrayList<byte[]>();
+		private volatile Connection connection;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onRead(Connection connection, ByteBuffer buffer)
+			throws IOException {
+			responses.clear();
+			scanner.scan(buffer, responses);
+			for (final byte[] response : responses) {
+				try {
+					engine.getCompletionExecutor().execute(new Runnable() {
+						public void run() {
+							complete(response);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					throw new IOException("The completion executor rejected a response");
+				}
+			}
+			responses.clear();
+		}
+
+		/**
+		 * Completes the call of a response, on a completion thread.
+		 * @param bytes the response
+		 */
+		private void complete(byte[] bytes) {
+			JsonNode response;
+			try {
+				response = getObjectMapper().readTree(bytes);
+			} catch (Throwable t) {
+				LOGGER.log(Level.WARNING, "Unable to parse a response", t);
+				return;
+			}
+			pendingCalls.complete(response);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onClose(Connection connection, Throwable cause) {
+			IOException closed;
+			if (IOException.class.isInstance(cause)) {
+				closed = IOException.class.cast(cause);
+			} else {
+				closed = new IOException("The connection was closed");
+				closed.initCause(cause);
+			}
+			pendingCalls.close(closed);
+		}
+	}
+
+	/**
+	 * Only JSON can be used, as responses are found by scanning for
+	 * JSON values.
+	 * @param wireCodec the wireCodec to set
+	 * @throws UnsupportedOperationException for any other codec
+	 */
+	@Override
+	public void setWireCodec(WireCodec wireCodec) {
+		if (!wireCodec.isText()) {
+			throw new UnsupportedOperationException(
+				"The NioJsonRpcClient only supports JSON, not "+wireCodec);
+		}
+		super.setWireCodec(wireCodec);
+	}
+
+	/**
+	 * @return the address of the server
+	 */
+	public SocketAddress getAddress() {
+		return address;
+	}
+
+	/**
+	 * @return the {@link NioClientEngine}
+	 */
+	public NioClientEngine getEngine() {
+		return engine;
+	}
+
+	/**
+	 * @param connectionTimeoutMillis the connectionTimeoutMillis to set
+	 */
+	public void setConnectionTimeoutMillis(int connectionTimeoutMillis) {
+		this.connectionTimeoutMillis = connectionTimeoutMillis;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a call waits for its response
+	 * before it fails with a {@link SocketTimeoutException}, 0 for ever,
+	 * the default.  The connection is left open.
+	 *
+	 * @param callTimeoutMillis the callTimeoutMillis to set
+	 */
+	public void setCallTimeoutMillis(long callTimeoutMillis) {
+		this.callTimeoutMillis = callTimeoutMillis;
+	}
+
+	/**
+	 * @param maxResponseSize the maxResponseSize to set
+	 */
+	public void setMaxResponseSize(int maxResponseSize) {
+		this.maxResponseSize = maxResponseSize;
+	}
+
+}
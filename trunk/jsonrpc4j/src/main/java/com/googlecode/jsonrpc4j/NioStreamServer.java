@@ -0,0 +1,556 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.BasicOutputStreamWrapper;
+
+/**
+ * A streaming server that uses JSON-RPC over sockets like
+ * {@link StreamServer}, but with non-blocking I/O so that idle
+ * connections don't cost a thread.  A few I/O threads each run a
+ * {@link Selector} over their share of the connections, complete
+ * JSON values are found in what's read with a {@link JsonValueScanner}
+ * and handed to a pool of worker threads, and responses are written
+ * back by the I/O threads.  The requests of a connection are handled
+ * one at a time, in the order they arrive.  Reads and responses go
+ * through direct buffers from a {@link ByteBufferPool}, requests are
+ * parsed straight from the bytes the scanner found, and responses are
+ * serialized straight into the buffers they're written from.
+ */
+public class NioStreamServer {
+
+	private static final Logger LOGGER = Logger.getLogger(NioStreamServer.class.getName());
+
+	public static final int DEFAULT_MAX_REQUEST_SIZE	= 16*1024*1024;
+	public static final int DEFAULT_MAX_QUEUED_REQUESTS	= 16;
+
+	private static final int READ_BUFFER_SIZE		= 16*1024;
+	private static final int RESPONSE_BUFFER_SIZE	= 4*1024;
+
+	private static final AtomicInteger SERVER_COUNT = new AtomicInteger(0);
+
+	private final JsonRpcServer jsonRpcServer;
+	private final ServerSocketChannel serverChannel;
+	private final IoLoop[] ioLoops;
+	private final ExecutorService workers;
+	private final int serverNumber = SERVER_COUNT.incrementAndGet();
+	private final AtomicInteger nextIoLoop = new AtomicInteger(0);
+	private int maxRequestSize		= DEFAULT_MAX_REQUEST_SIZE;
+	private int maxQueuedRequests	= DEFAULT_MAX_QUEUED_REQUESTS;
+	private int maxClientErrors		= 5;
+	private ByteBufferPool bufferPool = new ByteBufferPool(true);
+
+	private AtomicBoolean isStarted 	= new AtomicBoolean(false);
+	private AtomicBoolean keepRunning 	= new AtomicBoolean(false);
+
+	/**
+	 * Creates a {@code NioStreamServer} that accepts connections
+	 * on the given {@link ServerSocketChannel}.
+	 *
+	 * @param jsonRpcServer the {@link JsonRpcServer} that will handle requests
+	 * @param ioThreads the number of threads doing I/O
+	 * @param workerThreads the number of threads handling requests
+	 * @param serverChannel the bound {@link ServerSocketChannel}
+	 * @throws IOException on error
+	 */
+	public NioStreamServer(
+		JsonRpcServer jsonRpcServer, int ioThreads, int workerThreads,
+		ServerSocketChannel serverChannel)
+		throws IOException {
+
+		// initialize values
+		this.jsonRpcServer	= jsonRpcServer;
+		this.serverChannel	= serverChannel;
+		serverChannel.configureBlocking(false);
+
+		// create the threads
+		this.ioLoops = new IoLoop[ioThreads];
+		for (int i=0; i<ioLoops.length; i++) {
+			ioLoops[i] = new IoLoop(Selector.open());
+		}
+		this.workers = Executors.newFixedThreadPool(workerThreads, new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger(0);
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r,
+					"jsonrpc4j-nio-"+serverNumber+"-worker-"+threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+
+		// we can't allow the server to re-throw exceptions
+		jsonRpcServer.setRethrowExceptions(false);
+	}
+
+	/**
+	 * Creates a {@code NioStreamServer} listening on the
+	 * given {@code port} and {@link InetAddress}.
+	 *
+	 * @param jsonRpcServer the {@link JsonRpcServer} that will handle requests
+	 * @param ioThreads the number of threads doing I/O
+	 * @param workerThreads the number of threads handling requests
+	 * @param port the port to listen on
+	 * @param backlog the socket backlog
+	 * @param bindAddress the address to listen on
+	 * @throws IOException on error
+	 */
+	public NioStreamServer(
+		JsonRpcServer jsonRpcServer, int ioThreads, int workerThreads,
+		int port, int backlog, InetAddress bindAddress)
+		throws IOException {
+		this(jsonRpcServer, ioThreads, workerThreads, bind(port, backlog, bindAddress));
+	}
+
+	/**
+	 * Opens a {@link ServerSocketChannel} bound to the given address.
+	 * @param port the port
+	 * @param backlog the backlog
+	 * @param bindAddress the address
+	 * @return the {@link ServerSocketChannel}
+	 * @throws IOException on error
+	 */
+	private static ServerSocketChannel bind(int port, int backlog, InetAddress bindAddress)
+		throws IOException {
+		ServerSocketChannel serverChannel = ServerSocketChannel.open();
+		serverChannel.socket().bind(new InetSocketAddress(bindAddress, port), backlog);
+		return serverChannel;
+	}
+
+	/**
+	 * Starts the server.
+	 * @throws IOException on error
+	 */
+	public void start()
+		throws IOException {
+
+		// make sure we're not already started
+		if (!isStarted.compareAndSet(false, true)) {
+			throw new IllegalStateException(
+				"The NioStreamServer is already started");
+		}
+
+		// we're starting
+		LOGGER.log(Level.INFO,
+			"NioStreamServer starting "
+			+serverChannel.socket().getInetAddress()
+			+":"+serverChannel.socket().getLocalPort());
+
+		// start the I/O threads, the first one accepts connections
+		keepRunning.set(true);
+		serverChannel.register(ioLoops[0].selector, SelectionKey.OP_ACCEPT);
+		for (int i=0; i<ioLoops.length; i++) {
+			ioLoops[i].thread = new Thread(ioLoops[i], "jsonrpc4j-nio-"+serverNumber+"-io-"+(i+1));
+			ioLoops[i].thread.setDaemon(true);
+			ioLoops[i].thread.start();
+		}
+	}
+
+	/**
+	 * Stops the server, closing every connection.
+	 * @throws InterruptedException if interrupted while waiting for the threads
+	 */
+	public void stop()
+		throws InterruptedException {
+
+		// make sure we're started
+		if (!isStarted.get()) {
+			throw new IllegalStateException(
+				"The NioStreamServer is not started");
+		}
+
+		// stop the I/O threads
+		keepRunning.set(false);
+		for (IoLoop ioLoop : ioLoops) {
+			ioLoop.selector.wakeup();
+		}
+		for (IoLoop ioLoop : ioLoops) {
+			ioLoop.thread.join(2000);
+		}
+		try {
+			serverChannel.close();
+		} catch (IOException e) { /* no-op */ }
+
+		// stop the workers
+		workers.shutdownNow();
+		workers.awaitTermination(2000, TimeUnit.MILLISECONDS);
+		isStarted.set(false);
+	}
+
+	/**
+	 * A thread running a {@link Selector} over a share of the connections.
+	 */
+	private class IoLoop
+		implements Runnable {
+
+		private final Selector selector;
+		private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+		private ByteBuffer readBuffer;
+		private final List<byte[]> requests = new ArrayList<byte[]>();
+		private Thread thread;
+
+		/**
+		 * @param selector the {@link Selector}
+		 */
+		private IoLoop(Selector selector) {
+			this.selector = selector;
+		}
+
+		/**
+		 * Runs the given task on this loop's thread.
+		 * @param task the task
+		 */
+		private void execute(Runnable task) {
+			tasks.add(task);
+			selector.wakeup();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			readBuffer = bufferPool.acquire(READ_BUFFER_SIZE);
+			while (keepRunning.get()) {
+				try {
+					selector.select();
+
+					// run the tasks
+					for (Runnable task=tasks.poll(); task!=null; task=tasks.poll()) {
+						task.run();
+					}
+
+					// handle the ready channels
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while (keys.hasNext()) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						if (!key.isValid()) {
+							continue;
+						} else if (key.isAcceptable()) {
+							accept();
+							continue;
+						}
+						Connection connection = Connection.class.cast(key.attachment());
+						try {
+							if (key.isReadable()) {
+								connection.read();
+							}
+							if (key.isValid() && key.isWritable()) {
+								connection.write();
+							}
+						} catch (IOException e) {
+							LOGGER.log(Level.FINE, "Closing client connection", e);
+							connection.close();
+						}
+					}
+
+				} catch (Throwable t) {
+					LOGGER.log(Level.SEVERE, "Exception in I/O loop", t);
+				}
+			}
+
+			// clean up
+			for (SelectionKey key : selector.keys()) {
+				if (Connection.class.isInstance(key.attachment())) {
+					Connection.class.cast(key.attachment()).close();
+				} else {
+					try {
+						key.channel().close();
+					} catch (IOException e) { /* no-op */ }
+				}
+			}
+			try {
+				selector.close();
+			} catch (IOException e) { /* no-op */ }
+			bufferPool.release(readBuffer);
+			readBuffer = null;
+		}
+
+		/**
+		 * Accepts the pending connections and hands them
+		 * to the I/O loops in turn.
+		 * @throws IOException on error
+		 */
+		private void accept()
+			throws IOException {
+			for (SocketChannel channel=serverChannel.accept(); channel!=null; channel=serverChannel.accept()) {
+				channel.configureBlocking(false);
+				channel.socket().setTcpNoDelay(true);
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.log(Level.FINE, "Connection from "+channel.socket().getRemoteSocketAddress());
+				}
+				final SocketChannel accepted = channel;
+				final IoLoop ioLoop = ioLoops[(nextIoLoop.getAndIncrement() & Integer.MAX_VALUE) % ioLoops.length];
+				ioLoop.execute(new Runnable() {
+					public void run() {
+						try {
+							Connection connection = new Connection(ioLoop, accepted);
+							connection.key = accepted.register(ioLoop.selector, SelectionKey.OP_READ, connection);
+						} catch (ClosedChannelException e) {
+							LOGGER.log(Level.FINE, "Connection closed before it was registered", e);
+						}
+					}
+				});
+			}
+		}
+	}
+
+	/**
+	 * A client connection, only ever touched by its I/O loop's thread.
+	 */
+	private class Connection {
+
+		private final IoLoop ioLoop;
+		private final SocketChannel channel;
+		private final JsonValueScanner scanner = new JsonValueScanner(maxRequestSize);
+		private final LinkedList<byte[]> requests = new LinkedList<byte[]>();
+		private final LinkedList<ByteBuffer> writes = new LinkedList<ByteBuffer>();
+		private SelectionKey key;
+		private boolean busy = false;
+		private int errors = 0;
+
+		/**
+		 * @param ioLoop the {@link IoLoop}
+		 * @param channel the {@link SocketChannel}
+		 */
+		private Connection(IoLoop ioLoop, SocketChannel channel) {
+			this.ioLoop		= ioLoop;
+			this.channel	= channel;
+		}
+
+		/**
+		 * Reads what's available and queues the complete requests.
+		 * @throws IOException on error
+		 */
+		private void read()
+			throws IOException {
+			ByteBuffer buffer = ioLoop.readBuffer;
+			buffer.clear();
+			int read = channel.read(buffer);
+			if (read<0) {
+				close();
+				return;
+			}
+			buffer.flip();
+			List<byte[]> complete = ioLoop.requests;
+			complete.clear();
+			scanner.scan(buffer, complete);
+			requests.addAll(complete);
+			complete.clear();
+			dispatch();
+		}
+
+		/**
+		 * Hands the next request to the workers unless
+		 * one is already being handled.
+		 */
+		private void dispatch() {
+			if (!busy && !requests.isEmpty()) {
+				busy = true;
+				final byte[] request = requests.removeFirst();
+				try {
+					workers.execute(new Runnable() {
+						public void run() {
+							handle(request);
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					LOGGER.log(Level.FINE, "Workers stopped, closing client connection", e);
+					close();
+					return;
+				}
+			}
+			updateInterest();
+		}
+
+		/**
+		 * Handles a request, on a worker thread.
+		 * @param request the request
+		 */
+		private void handle(byte[] request) {
+			final ByteBufferOutputStream response = new ByteBufferOutputStream(
+				bufferPool, RESPONSE_BUFFER_SIZE);
+			AsyncResponseCallback callback = new AsyncResponseCallback() {
+				public void onResponseWritten() {
+					respond(response.detach(), false);
+				}
+				public void onError(Throwable error) {
+					LOGGER.log(Level.SEVERE, "Exception while handling request", error);
+					respond(response.detach(), true);
+				}
+			};
+			try {
+				jsonRpcServer.handleAsync(
+					request, 0, request.length,
+					new BasicOutputStreamWrapper(jsonRpcServer.mapper, response),
+					callback);
+			} catch (Throwable t) {
+				callback.onError(t);
+			}
+		}
+
+		/**
+		 * Queues a response to be written, on any thread.
+		 * @param response the pooled buffer holding the response
+		 * @param failed whether handling the request failed
+		 */
+		private void respond(final ByteBuffer response, final boolean failed) {
+			ioLoop.execute(new Runnable() {
+				public void run() {
+					if (!channel.isOpen()) {
+						bufferPool.release(response);
+						return;
+					}
+					if (failed && ++errors>=maxClientErrors) {
+						LOGGER.log(Level.SEVERE, "Closing client connection due to repeated errors");
+						bufferPool.release(response);
+						close();
+						return;
+					}
+					if (response.hasRemaining()) {
+						writes.add(response);
+					} else {
+						bufferPool.release(response);
+					}
+					busy = false;
+					try {
+						write();
+					} catch (IOException e) {
+						LOGGER.log(Level.FINE, "Closing client connection", e);
+						close();
+						return;
+					}
+					dispatch();
+				}
+			});
+		}
+
+		/**
+		 * Writes as much of the queued responses as the socket takes.
+		 * @throws IOException on error
+		 */
+		private void write()
+			throws IOException {
+			while (!writes.isEmpty()) {
+				ByteBuffer buffer = writes.getFirst();
+				channel.write(buffer);
+				if (buffer.hasRemaining()) {
+					break;
+				}
+				bufferPool.release(writes.removeFirst());
+			}
+			updateInterest();
+		}
+
+		/**
+		 * Stops reading while too many requests are queued
+		 * and waits to write while responses are queued.
+		 */
+		private void updateInterest() {
+			if (key==null || !key.isValid()) {
+				return;
+			}
+			int ops = 0;
+			if (requests.size()<maxQueuedRequests) {
+				ops |= SelectionKey.OP_READ;
+			}
+			if (!writes.isEmpty()) {
+				ops |= SelectionKey.OP_WRITE;
+			}
+			key.interestOps(ops);
+		}
+
+		/**
+		 * Closes the connection.
+		 */
+		private void close() {
+			if (key!=null) {
+				key.cancel();
+			}
+			try {
+				channel.close();
+			} catch (IOException e) { /* no-op */ }
+			requests.clear();
+			for (ByteBuffer buffer : writes) {
+				bufferPool.release(buffer);
+			}
+			writes.clear();
+		}
+	}
+
+	/**
+	 * @param maxRequestSize the maxRequestSize to set
+	 */
+	public void setMaxRequestSize(int maxRequestSize) {
+		this.maxRequestSize = maxRequestSize;
+	}
+
+	/**
+	 * @param maxQueuedRequests the maxQueuedRequests to set
+	 */
+	public void setMaxQueuedRequests(int maxQueuedRequests) {
+		this.maxQueuedRequests = maxQueuedRequests;
+	}
+
+	/**
+	 * Sets the {@link ByteBufferPool} that reads and responses go
+	 * through, so that it can be shared with other servers.  It
+	 * should hold direct buffers.  By default the server has its own.
+	 *
+	 * @param bufferPool the bufferPool to set
+	 */
+	public void setBufferPool(ByteBufferPool bufferPool) {
+		this.bufferPool = bufferPool;
+	}
+
+	/**
+	 * @return the {@link ByteBufferPool}, for its statistics
+	 */
+	public ByteBufferPool getBufferPool() {
+		return bufferPool;
+	}
+
+	/**
+	 * @param maxClientErrors the maxClientErrors to set
+	 */
+	public void setMaxClientErrors(int maxClientErrors) {
+		this.maxClientErrors = maxClientErrors;
+	}
+
+	/**
+	 * @return the port the server is listening on
+	 */
+	public int getLocalPort() {
+		return serverChannel.socket().getLocalPort();
+	}
+
+	/**
+	 * @return the isStarted
+	 */
+	public boolean isStarted() {
+		return isStarted.get();
+	}
+
+}
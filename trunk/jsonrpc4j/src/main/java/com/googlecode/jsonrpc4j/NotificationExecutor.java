@@ -0,0 +1,223 @@
+package com.googlecode.jsonrpc4j;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An {@link Executor} for running notifications off of the
+ * request thread.  Notifications wait in a bounded queue for
+ * one of a fixed number of threads, what happens when the
+ * queue is full is decided by the {@link OverflowPolicy}.
+ */
+public class NotificationExecutor
+	implements Executor {
+
+	private static final Logger LOGGER = Logger.getLogger(NotificationExecutor.class.getName());
+
+	private static final AtomicInteger POOL_COUNT = new AtomicInteger(0);
+
+	/**
+	 * What to do with a notification when the queue is full.
+	 */
+	public static enum OverflowPolicy {
+
+		/**
+		 * The notification is discarded.
+		 */
+		DROP,
+
+		/**
+		 * The notification is run on the request thread.
+		 */
+		CALLER_RUNS,
+
+		/**
+		 * The request thread waits for room in the queue.
+		 */
+		BLOCK
+	}
+
+	private final ThreadPoolExecutor executor;
+	private final OverflowPolicy overflowPolicy;
+
+	private final AtomicLong queuedCount	= new AtomicLong(0);
+	private final AtomicLong droppedCount	= new AtomicLong(0);
+	private final AtomicLong completedCount	= new AtomicLong(0);
+
+	/**
+	 * Creates the {@code NotificationExecutor}.
+	 *
+	 * @param threads the number of threads running notifications
+	 * @param queueCapacity the number of notifications that may wait
+	 * @param overflowPolicy what to do when the queue is full
+	 */
+	public NotificationExecutor(
+		int threads, int queueCapacity, OverflowPolicy overflowPolicy) {
+		if (threads<1) {
+			throw new IllegalArgumentException("threads must be at least 1");
+		}
+		if (queueCapacity<1) {
+			throw new IllegalArgumentException("queueCapacity must be at least 1");
+		}
+		if (overflowPolicy==null) {
+			throw new IllegalArgumentException("overflowPolicy must not be null");
+		}
+		this.overflowPolicy = overflowPolicy;
+		this.executor = new ThreadPoolExecutor(
+			threads, threads, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(queueCapacity),
+			new NotificationThreadFactory(),
+			new OverflowHandler());
+	}
+
+	/**
+	 * Runs the given notification on one of the executor's threads,
+	 * or as the {@link OverflowPolicy} says if the queue is full.
+	 *
+	 * @param command the notification
+	 */
+	public void execute(final Runnable command) {
+		queuedCount.incrementAndGet();
+		executor.execute(new Runnable() {
+			public void run() {
+				try {
+					command.run();
+				} catch (Throwable e) {
+					LOGGER.log(Level.SEVERE, "Error running notification", e);
+				} finally {
+					completedCount.incrementAndGet();
+				}
+			}
+		});
+	}
+
+	/**
+	 * Stops accepting notifications, the ones that are
+	 * already queued are still run.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Waits for the queued notifications to finish after
+	 * a {@link #shutdown()}.
+	 *
+	 * @param timeout the time to wait
+	 * @param unit the unit of {@code timeout}
+	 * @return whether they all finished
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public boolean awaitTermination(long timeout, TimeUnit unit)
+		throws InterruptedException {
+		return executor.awaitTermination(timeout, unit);
+	}
+
+	/**
+	 * @return the overflowPolicy
+	 */
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * @return the number of notifications handed to the executor
+	 */
+	public long getQueuedCount() {
+		return queuedCount.get();
+	}
+
+	/**
+	 * @return the number of notifications dropped because the queue was full
+	 */
+	public long getDroppedCount() {
+		return droppedCount.get();
+	}
+
+	/**
+	 * @return the number of notifications that have been run
+	 */
+	public long getCompletedCount() {
+		return completedCount.get();
+	}
+
+	/**
+	 * @return the number of notifications waiting in the queue
+	 */
+	public int getPendingCount() {
+		return executor.getQueue().size();
+	}
+
+	/**
+	 * Applies the {@link OverflowPolicy} to notifications
+	 * that don't fit in the queue.
+	 */
+	private class OverflowHandler
+		implements RejectedExecutionHandler {
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+
+			// nothing runs once we're shut down
+			if (executor.isShutdown()) {
+				droppedCount.incrementAndGet();
+				return;
+			}
+
+			switch (overflowPolicy) {
+				case CALLER_RUNS:
+					r.run();
+					break;
+
+				case BLOCK:
+					BlockingQueue<Runnable> queue = executor.getQueue();
+					try {
+						queue.put(r);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						droppedCount.incrementAndGet();
+					}
+					break;
+
+				default:
+					droppedCount.incrementAndGet();
+					if (LOGGER.isLoggable(Level.FINE)) {
+						LOGGER.fine("Notification queue is full, dropping notification");
+					}
+					break;
+			}
+		}
+	}
+
+	/**
+	 * Creates the daemon threads that run notifications.
+	 */
+	private static class NotificationThreadFactory
+		implements ThreadFactory {
+
+		private final int poolNumber = POOL_COUNT.incrementAndGet();
+		private final AtomicInteger threadCount = new AtomicInteger(0);
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r,
+				"jsonrpc4j-notification-"+poolNumber+"-"+threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+	}
+
+}
@@ -1,5 +1,6 @@
 package com.googlecode.jsonrpc4j;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -12,20 +13,107 @@ public interface OutputStreamWrapper {
 	
 	public static class BasicOutputStreamWrapper implements OutputStreamWrapper {
 		private ObjectMapper mapper;
+		private WireCodec codec;
 		private OutputStream ops;
 		
 		public BasicOutputStreamWrapper(ObjectMapper mapper, OutputStream ops) {
+			this(mapper, WireCodec.JSON, ops);
+		}
+		
+		public BasicOutputStreamWrapper(ObjectMapper mapper, WireCodec codec, OutputStream ops) {
 			this.mapper = mapper;
+			this.codec = codec;
 			this.ops = ops;
 		}
 
 		public void writeResponse(JsonRpcServerResponse response) throws IOException {
-			mapper.writeValue(new NoCloseOutputStream(ops), response.objectNode);
+			response.writeTo(mapper, codec, new NoCloseOutputStream(ops));
 			ops.flush();
 		}
 		
 	}
 	
+	public static class FramedOutputStreamWrapper implements OutputStreamWrapper {
+		private ObjectMapper mapper;
+		private WireCodec codec;
+		private OutputStream ops;
+		private MessageFraming framing;
+		
+		public FramedOutputStreamWrapper(ObjectMapper mapper, OutputStream ops, MessageFraming framing) {
+			this(mapper, WireCodec.JSON, ops, framing);
+		}
+		
+		public FramedOutputStreamWrapper(ObjectMapper mapper, WireCodec codec, OutputStream ops, MessageFraming framing) {
+			this.mapper = mapper;
+			this.codec = codec;
+			this.ops = ops;
+			this.framing = framing;
+		}
+
+		public void writeResponse(JsonRpcServerResponse response) throws IOException {
+			ByteArrayOutputStream message = new ByteArrayOutputStream();
+			response.writeTo(mapper, codec, message);
+			framing.writeMessage(ops, message.toByteArray());
+		}
+		
+	}
+	
+	public static interface ContentLengthSetter {
+		void setContentLength(int contentLength);
+	}
+	
+	public static interface HeaderSetter {
+		void setHeader(String name, String value);
+	}
+	
+	/**
+	 * Writes each response whole, through {@link ResponseBuffers},
+	 * telling the {@link ContentLengthSetter} its length first, and
+	 * compresses it if a content coding has been negotiated.
+	 */
+	public static class ContentLengthOutputStreamWrapper implements OutputStreamWrapper {
+		private ObjectMapper mapper;
+		private WireCodec codec = WireCodec.JSON;
+		private OutputStream ops;
+		private ResponseBuffers responseBuffers;
+		private ContentLengthSetter contentLengthSetter;
+		private HttpCompression compression;
+		private String encoding;
+		private HeaderSetter headerSetter;
+		
+		public ContentLengthOutputStreamWrapper(ObjectMapper mapper, OutputStream ops,
+			ResponseBuffers responseBuffers, ContentLengthSetter contentLengthSetter) {
+			this.mapper = mapper;
+			this.ops = ops;
+			this.responseBuffers = responseBuffers;
+			this.contentLengthSetter = contentLengthSetter;
+		}
+		
+		public ContentLengthOutputStreamWrapper(ObjectMapper mapper, OutputStream ops,
+			ResponseBuffers responseBuffers, ContentLengthSetter contentLengthSetter,
+			HttpCompression compression, String encoding, HeaderSetter headerSetter) {
+			this(mapper, ops, responseBuffers, contentLengthSetter);
+			this.compression = compression;
+			this.encoding = encoding;
+			this.headerSetter = headerSetter;
+		}
+		
+		public ContentLengthOutputStreamWrapper(ObjectMapper mapper, WireCodec codec, OutputStream ops,
+			ResponseBuffers responseBuffers, ContentLengthSetter contentLengthSetter,
+			HttpCompression compression, String encoding, HeaderSetter headerSetter) {
+			this(mapper, ops, responseBuffers, contentLengthSetter, compression, encoding, headerSetter);
+			this.codec = codec;
+		}
+
+		public void writeResponse(JsonRpcServerResponse response) throws IOException {
+			// only the first response can have its headers set
+			responseBuffers.write(mapper, codec, response, ops, contentLengthSetter,
+				encoding!=null ? compression : null, encoding, headerSetter);
+			contentLengthSetter = null;
+			encoding = null;
+		}
+	}
+	
 	public static interface HttpCodeSetter {
 		void setHttpCode(int httpCode);
 	}
@@ -34,16 +122,42 @@ public interface OutputStreamWrapper {
 		private ObjectMapper mapper;
 		private OutputStream ops;
 		private HttpCodeSetter httpCodeSetter;
+		private ContentLengthOutputStreamWrapper buffered;
 		
 		public OutputStreamWrapperWithHTTPErrorCode( ObjectMapper mapper, OutputStream ops, HttpCodeSetter httpCodeSetter) {
 			this.mapper = mapper;
 			this.ops = ops;
 			this.httpCodeSetter = httpCodeSetter;
 		}
+		
+		public OutputStreamWrapperWithHTTPErrorCode( ObjectMapper mapper, OutputStream ops, HttpCodeSetter httpCodeSetter,
+			ResponseBuffers responseBuffers, ContentLengthSetter contentLengthSetter) {
+			this(mapper, ops, httpCodeSetter);
+			this.buffered = new ContentLengthOutputStreamWrapper(mapper, ops, responseBuffers, contentLengthSetter);
+		}
+		
+		public OutputStreamWrapperWithHTTPErrorCode( ObjectMapper mapper, OutputStream ops, HttpCodeSetter httpCodeSetter,
+			ResponseBuffers responseBuffers, ContentLengthSetter contentLengthSetter,
+			HttpCompression compression, String encoding, HeaderSetter headerSetter) {
+			this(mapper, WireCodec.JSON, ops, httpCodeSetter, responseBuffers, contentLengthSetter,
+				compression, encoding, headerSetter);
+		}
+		
+		public OutputStreamWrapperWithHTTPErrorCode( ObjectMapper mapper, WireCodec codec, OutputStream ops,
+			HttpCodeSetter httpCodeSetter, ResponseBuffers responseBuffers, ContentLengthSetter contentLengthSetter,
+			HttpCompression compression, String encoding, HeaderSetter headerSetter) {
+			this(mapper, ops, httpCodeSetter);
+			this.buffered = new ContentLengthOutputStreamWrapper(mapper, codec, ops, responseBuffers, contentLengthSetter,
+				compression, encoding, headerSetter);
+		}
 
 		public void writeResponse(JsonRpcServerResponse response) throws IOException {
-			httpCodeSetter.setHttpCode(response.httpCode);
-			mapper.writeValue(new NoCloseOutputStream(ops), response.objectNode);
+			httpCodeSetter.setHttpCode(response.getHttpCode());
+			if (buffered!=null) {
+				buffered.writeResponse(response);
+				return;
+			}
+			response.writeTo(mapper, new NoCloseOutputStream(ops));
 			ops.flush();
 		}
 	}
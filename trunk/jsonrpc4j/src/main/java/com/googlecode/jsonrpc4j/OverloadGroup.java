@@ -0,0 +1,56 @@
+package com.googlecode.jsonrpc4j;
+
+import java.util.List;
+
+/**
+ * All of the {@link ServiceMethod}s exported under a
+ * single JSON-RPC method name.
+ */
+public class OverloadGroup {
+
+	private final int index;
+	private final String name;
+	private final ServiceMethod[] methods;
+
+	/**
+	 * Creates the group.
+	 * @param index the group's position in its {@link DispatchIndex}
+	 * @param name the method name
+	 * @param methods the overloads
+	 */
+	public OverloadGroup(int index, String name, List<ServiceMethod> methods) {
+		this.index		= index;
+		this.name		= name;
+		this.methods	= methods.toArray(new ServiceMethod[methods.size()]);
+	}
+
+	/**
+	 * @return the group's position in its {@link DispatchIndex}
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the method name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the number of overloads
+	 */
+	public int size() {
+		return methods.length;
+	}
+
+	/**
+	 * @param index the index
+	 * @return the overload at the given index
+	 */
+	public ServiceMethod get(int index) {
+		return methods[index];
+	}
+
+}
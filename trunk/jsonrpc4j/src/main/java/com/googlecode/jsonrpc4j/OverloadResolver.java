@@ -0,0 +1,547 @@
+package com.googlecode.jsonrpc4j;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * Chooses which {@link ServiceMethod} of an {@link OverloadGroup}
+ * a request is for.  The candidates for every possible number of
+ * indexed parameters are worked out when the resolver is created,
+ * and when more than one overload is left the result of scoring
+ * the arguments is remembered against the "shape" of the request
+ * (its parameter count or names and the JSON type of each value)
+ * so that later requests of the same shape skip scoring entirely.
+ * A shape is packed into a {@code long}, four bits for the type of
+ * each value, and remembered in a fixed-size table that's read
+ * without locking, a shape replacing whichever was in its slot.
+ * Shapes that don't fit in a {@code long}, such as those of more
+ * than 13 parameters or of nested arrays, are always scored.
+ */
+public class OverloadResolver {
+
+	public static final int DEFAULT_MAX_CACHED_SHAPES = 256;
+
+	private static final Object NO_MATCH = new Object();
+
+	private static final long UNCACHED			= -1;
+	private static final long NAMED				= 1L<<61;
+	private static final int COUNT_BITS			= 9;
+	private static final int SHAPE_BITS			= 4;
+	private static final int MAX_SHAPED_PARAMS	= (61-COUNT_BITS)/SHAPE_BITS;
+
+	private final OverloadGroup group;
+	private final boolean allowExtraParams;
+	private final boolean allowLessParams;
+	private final ServiceMethod[][] candidatesByCount;
+	private final int[] scoredParamsByCount;
+	private final Map<String, Integer> parameterSlots;
+	private final ShapeCache shapes;
+
+	/**
+	 * Compiles the resolver for the given {@link OverloadGroup}.
+	 * @param group the {@link OverloadGroup}
+	 * @param allowExtraParams whether superfluous params are allowed
+	 * @param allowLessParams whether missing params are allowed
+	 * @param maxCachedShapes the maximum number of shapes to remember
+	 */
+	public OverloadResolver(
+		OverloadGroup group, boolean allowExtraParams,
+		boolean allowLessParams, int maxCachedShapes) {
+		this.group				= group;
+		this.allowExtraParams	= allowExtraParams;
+		this.allowLessParams	= allowLessParams;
+		this.shapes				= new ShapeCache(maxCachedShapes);
+
+		// find the candidates for each param count, any count
+		// over the largest arity has the same candidates
+		int maxArity = 0;
+		for (int m=0; m<group.size(); m++) {
+			maxArity = Math.max(maxArity, group.get(m).getParameterCount());
+		}
+		candidatesByCount = new ServiceMethod[maxArity+2][];
+		scoredParamsByCount = new int[maxArity+2];
+		for (int count=0; count<candidatesByCount.length; count++) {
+			candidatesByCount[count] = findCandidates(count);
+			for (ServiceMethod candidate : candidatesByCount[count]) {
+				scoredParamsByCount[count] = Math.max(scoredParamsByCount[count],
+					Math.min(count, candidate.getParameterCount()));
+			}
+		}
+
+		// the names used by any overload, each
+		// with its own place in a named shape
+		parameterSlots = new HashMap<String, Integer>();
+		for (int m=0; m<group.size(); m++) {
+			ServiceMethod method = group.get(m);
+			for (int i=0; i<method.getParameterCount(); i++) {
+				String name = method.getParameterName(i);
+				if (name!=null && !parameterSlots.containsKey(name)) {
+					parameterSlots.put(name, parameterSlots.size());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the overloads with the fewest missing or superfluous
+	 * parameters for the given number of indexed parameters.
+	 * @param paramCount the number of parameters
+	 * @return the candidates
+	 */
+	private ServiceMethod[] findCandidates(int paramCount) {
+		int bestParamNumDiff				= Integer.MAX_VALUE;
+		List<ServiceMethod> matchedMethods	= new ArrayList<ServiceMethod>();
+		for (int m=0; m<group.size(); m++) {
+			ServiceMethod method = group.get(m);
+			int paramNumDiff = method.getParameterCount()-paramCount;
+
+			// we've already found a better match
+			if (Math.abs(paramNumDiff)>Math.abs(bestParamNumDiff)) {
+				continue;
+
+			// we don't allow extra params
+			} else if (
+				!allowExtraParams && paramNumDiff<0
+				|| !allowLessParams && paramNumDiff>0) {
+				continue;
+			}
+
+			if (Math.abs(paramNumDiff)<Math.abs(bestParamNumDiff)) {
+				matchedMethods.clear();
+			}
+			matchedMethods.add(method);
+			bestParamNumDiff = paramNumDiff;
+		}
+		return matchedMethods.toArray(new ServiceMethod[matchedMethods.size()]);
+	}
+
+	/**
+	 * @return the {@link OverloadGroup}
+	 */
+	public OverloadGroup getGroup() {
+		return group;
+	}
+
+	/**
+	 * @return the number of shapes currently remembered
+	 */
+	public int getCachedShapeCount() {
+		return shapes.size();
+	}
+
+	/**
+	 * Chooses the overload for the given indexed parameters.
+	 * @param paramNodes the parameters, may be null
+	 * @return the {@link ServiceMethod} or null if none match
+	 */
+	public ServiceMethod resolveIndexed(JsonNode paramNodes) {
+		int numParams = paramNodes!=null ? paramNodes.size() : 0;
+		int row = Math.min(numParams, candidatesByCount.length-1);
+		ServiceMethod[] candidates = candidatesByCount[row];
+
+		// the table has the answer
+		if (candidates.length==0) {
+			return null;
+		} else if (candidates.length==1 || numParams==0) {
+			return candidates[0];
+		}
+
+		// we've seen this shape before
+		long shape = indexedShape(paramNodes, row);
+		Object cached = shapes.get(shape);
+		if (cached!=null) {
+			return cached==NO_MATCH ? null : (ServiceMethod)cached;
+		}
+
+		// check the matching methods for
+		// matching parameter types
+		ServiceMethod bestMethod = null;
+		int mostMatches	= -1;
+		for (ServiceMethod method : candidates) {
+			int numMatches = 0;
+			for (int i=0; i<method.getParameterCount() && i<numParams; i++) {
+				if (isMatchingType(paramNodes.get(i), method.getParameterType(i))) {
+					numMatches++;
+				}
+			}
+			if (numMatches>mostMatches) {
+				mostMatches = numMatches;
+				bestMethod = method;
+			}
+		}
+		shapes.put(shape, bestMethod);
+		return bestMethod;
+	}
+
+	/**
+	 * Checks the only overload of a single method group against
+	 * a number of indexed parameters.  This is all that's needed
+	 * to resolve such a group, so the parameters can be bound
+	 * as they're read without building a tree first.
+	 * @param numParams the number of parameters
+	 * @return the {@link ServiceMethod} or null if it doesn't match
+	 * @throws IllegalStateException if the group is overloaded
+	 */
+	public ServiceMethod resolveIndexed(int numParams) {
+		if (group.size()!=1) {
+			throw new IllegalStateException(
+				"Can't resolve "+group.getName()+" by parameter count alone");
+		}
+		ServiceMethod[] candidates = candidatesByCount[
+			Math.min(numParams, candidatesByCount.length-1)];
+		return candidates.length>0 ? candidates[0] : null;
+	}
+
+	/**
+	 * Checks the only overload of a single method group against a
+	 * number of named parameters and how many of them it declares.
+	 * @param numParams the number of parameters
+	 * @param numMatchingParams the number of them that the method declares
+	 * @return the {@link ServiceMethod} or null if it doesn't match
+	 * @throws IllegalStateException if the group is overloaded
+	 * @see #resolveIndexed(int)
+	 */
+	public ServiceMethod resolveNamed(int numParams, int numMatchingParams) {
+		if (group.size()!=1) {
+			throw new IllegalStateException(
+				"Can't resolve "+group.getName()+" by parameter count alone");
+		}
+		ServiceMethod method = group.get(0);
+		return isAcceptedParamCount(numParams, method.getParameterCount())
+			&& isAcceptedParamCount(numMatchingParams, method.getParameterCount())
+			? method : null;
+	}
+
+	/**
+	 * Chooses the overload for the given named parameters.
+	 * @param paramNodes the parameters
+	 * @return the {@link ServiceMethod} or null if none match
+	 */
+	public ServiceMethod resolveNamed(JsonNode paramNodes) {
+		if (group.size()==1) {
+			return scoreNamed(paramNodes);
+		}
+
+		// we've seen this shape before
+		long shape = namedShape(paramNodes);
+		Object cached = shapes.get(shape);
+		if (cached!=null) {
+			return cached==NO_MATCH ? null : (ServiceMethod)cached;
+		}
+
+		ServiceMethod bestMethod = scoreNamed(paramNodes);
+		shapes.put(shape, bestMethod);
+		return bestMethod;
+	}
+
+	/**
+	 * Scores every overload against the given named parameters.
+	 * @param paramNodes the parameters
+	 * @return the best {@link ServiceMethod} or null if none match
+	 */
+	private ServiceMethod scoreNamed(JsonNode paramNodes) {
+		int numParams				= paramNodes.size();
+		int maxMatchingParams 		= -1;
+		int maxMatchingParamTypes	= -1;
+		ServiceMethod bestMethod	= null;
+
+		for (int m=0; m<group.size(); m++) {
+			ServiceMethod method = group.get(m);
+			int numParameters = method.getParameterCount();
+
+			// bail early if possible
+			if (!isAcceptedParamCount(numParams, numParameters)) {
+				continue;
+			}
+
+			// count the matching params for this method
+			int numMatchingParamTypes = 0;
+			int numMatchingParams = 0;
+			for (int i=0; i<numParameters; i++) {
+
+				// skip parameters that didn't have an annotation
+				String paramName = method.getParameterName(i);
+				if (paramName==null) {
+					continue;
+				}
+
+				// check for a match
+				JsonNode paramNode = paramNodes.get(paramName);
+				if (paramNode!=null && isMatchingType(paramNode, method.getParameterType(i))) {
+					numMatchingParamTypes++;
+					numMatchingParams++;
+
+				} else if (paramNode!=null) {
+					numMatchingParams++;
+
+				}
+			}
+
+			// check for exact param matches
+			// bail early if possible
+			if (!isAcceptedParamCount(numMatchingParams, numParameters)) {
+				continue;
+			}
+
+			// better match
+			if (numMatchingParams>maxMatchingParams
+				|| (numMatchingParams==maxMatchingParams && numMatchingParamTypes>maxMatchingParamTypes)) {
+				bestMethod 				= method;
+				maxMatchingParams 		= numMatchingParams;
+				maxMatchingParamTypes 	= numMatchingParamTypes;
+			}
+		}
+		return bestMethod;
+	}
+
+	/**
+	 * Checks a number of parameters against the number that
+	 * a method declares, allowing for extra or missing params
+	 * as configured.
+	 * @param numParams the number of parameters
+	 * @param numParameters the number the method declares
+	 * @return true if the number is acceptable
+	 */
+	private boolean isAcceptedParamCount(int numParams, int numParameters) {
+		return (allowExtraParams || numParams<=numParameters)
+			&& (allowLessParams || numParams>=numParameters);
+	}
+
+	/**
+	 * Packs the shape of the given indexed parameters, the type
+	 * of each that's scored above the row of the candidates table.
+	 * @param paramNodes the parameters
+	 * @param row the row of the candidates table
+	 * @return the shape, or {@link #UNCACHED} if it doesn't fit
+	 */
+	private long indexedShape(JsonNode paramNodes, int row) {
+		int scoredParams = scoredParamsByCount[row];
+		if (scoredParams>MAX_SHAPED_PARAMS) {
+			return UNCACHED;
+		}
+		long shape = 0;
+		for (int i=0; i<scoredParams; i++) {
+			int code = shapeCode(paramNodes.get(i));
+			if (code<0) {
+				return UNCACHED;
+			}
+			shape = shape<<SHAPE_BITS | code;
+		}
+		return shape<<COUNT_BITS | row;
+	}
+
+	/**
+	 * Packs the shape of the given named parameters, the type of
+	 * each name that an overload uses in that name's place above
+	 * the number of parameters.  Names that no overload uses only
+	 * count towards the number.
+	 * @param paramNodes the parameters
+	 * @return the shape, or {@link #UNCACHED} if it doesn't fit
+	 */
+	private long namedShape(JsonNode paramNodes) {
+		int numParams = paramNodes.size();
+		if (parameterSlots.size()>MAX_SHAPED_PARAMS || numParams>=1<<COUNT_BITS) {
+			return UNCACHED;
+		}
+		long shape = 0;
+		for (Iterator<Map.Entry<String, JsonNode>> itr=paramNodes.fields(); itr.hasNext(); ) {
+			Map.Entry<String, JsonNode> param = itr.next();
+			Integer slot = parameterSlots.get(param.getKey());
+			if (slot==null) {
+				continue;
+			}
+			int code = shapeCode(param.getValue());
+			if (code<0) {
+				return UNCACHED;
+			}
+			shape |= (long)code<<(COUNT_BITS+slot*SHAPE_BITS);
+		}
+		return NAMED | shape | numParams;
+	}
+
+	/**
+	 * Codes the JSON type of the given node for a shape.  Only the
+	 * first element of an array is looked at, as that's all
+	 * {@link #isMatchingType(JsonNode, Class)} looks at.
+	 * @param node the node
+	 * @return the code, from 1 to 15, or -1 for nested arrays
+	 */
+	private static int shapeCode(JsonNode node) {
+		if (!node.isArray()) {
+			return scalarCode(node);
+		} else if (node.size()==0) {
+			return 8;
+		}
+		int element = scalarCode(node.get(0));
+		return element<0 ? -1 : 8+element;
+	}
+
+	/**
+	 * @param node the node
+	 * @return the code of its JSON type, from 1 to 7, or -1 for arrays
+	 */
+	private static int scalarCode(JsonNode node) {
+		if (node.isNull()) {
+			return 1;
+		} else if (node.isTextual()) {
+			return 2;
+		} else if (node.isNumber()) {
+			return 3;
+		} else if (node.isArray()) {
+			return -1;
+		} else if (node.isBinary()) {
+			return 4;
+		} else if (node.isBoolean()) {
+			return 5;
+		} else if (node.isObject() || node.isPojo()) {
+			return 6;
+		}
+		return 7;
+	}
+
+	/**
+	 * Determines whether or not the given {@link JsonNode} matches
+	 * the given type.  This method is limitted to a few java types
+	 * only and shouldn't be used to determine with great accuracy
+	 * whether or not the types match.
+	 *
+	 * @param node the {@link JsonNode}
+	 * @param type the {@link Class}
+	 * @return true if the types match, false otherwise
+	 */
+	public static boolean isMatchingType(JsonNode node, Class<?> type) {
+
+		if (node.isNull()) {
+			return true;
+
+		} else if (node.isTextual()) {
+			return String.class.isAssignableFrom(type);
+
+		} else if (node.isNumber()) {
+			return Number.class.isAssignableFrom(type)
+				|| short.class.isAssignableFrom(type)
+				|| int.class.isAssignableFrom(type)
+				|| long.class.isAssignableFrom(type)
+				|| float.class.isAssignableFrom(type)
+				|| double.class.isAssignableFrom(type);
+
+		} else if (node.isArray() && type.isArray()) {
+			return (node.size()>0)
+				? isMatchingType(node.get(0), type.getComponentType())
+				: false;
+
+		} else if (node.isArray()) {
+			return type.isArray() || Collection.class.isAssignableFrom(type);
+
+		} else if (node.isBinary()) {
+			return byte[].class.isAssignableFrom(type)
+				|| Byte[].class.isAssignableFrom(type)
+				|| char[].class.isAssignableFrom(type)
+				|| Character[].class.isAssignableFrom(type);
+
+		} else if (node.isBoolean()) {
+			return boolean.class.isAssignableFrom(type)
+				|| Boolean.class.isAssignableFrom(type);
+
+		} else if (node.isObject() || node.isPojo()) {
+			return !type.isPrimitive()
+				&& !String.class.isAssignableFrom(type)
+				&& !Number.class.isAssignableFrom(type)
+				&& !Boolean.class.isAssignableFrom(type);
+		}
+
+		// not sure if it's a matching type
+		return false;
+	}
+
+	/**
+	 * A direct mapped cache of resolved shapes, a power of two
+	 * slots that are read and written without locking.
+	 */
+	private static class ShapeCache {
+
+		private final AtomicReferenceArray<Shape> slots;
+		private final AtomicInteger size = new AtomicInteger(0);
+
+		/**
+		 * @param maxSize the most shapes, rounded down to a power of two
+		 */
+		private ShapeCache(int maxSize) {
+			this.slots = maxSize>0
+				? new AtomicReferenceArray<Shape>(Integer.highestOneBit(maxSize))
+				: null;
+		}
+
+		/**
+		 * @param key the shape
+		 * @return the {@link ServiceMethod}, {@link OverloadResolver#NO_MATCH}
+		 * 	or null if the shape isn't known
+		 */
+		public Object get(long key) {
+			if (slots==null || key==UNCACHED) {
+				return null;
+			}
+			Shape shape = slots.get(slot(key));
+			return shape!=null && shape.key==key ? shape.method : null;
+		}
+
+		/**
+		 * Remembers the resolution of a shape, in place
+		 * of whichever shape was in its slot.
+		 * @param key the shape
+		 * @param method the method, or null for no match
+		 */
+		public void put(long key, ServiceMethod method) {
+			if (slots==null || key==UNCACHED) {
+				return;
+			}
+			Shape shape = new Shape(key, method!=null ? method : NO_MATCH);
+			if (slots.getAndSet(slot(key), shape)==null) {
+				size.incrementAndGet();
+			}
+		}
+
+		/**
+		 * @return the number of shapes
+		 */
+		public int size() {
+			return size.get();
+		}
+
+		/**
+		 * @param key the shape
+		 * @return its slot
+		 */
+		private int slot(long key) {
+			long hash = key*0x9E3779B97F4A7C15L;
+			return (int)(hash>>>32) & (slots.length()-1);
+		}
+	}
+
+	/**
+	 * A resolved shape.
+	 */
+	private static class Shape {
+
+		private final long key;
+		private final Object method;
+
+		/**
+		 * @param key the shape
+		 * @param method the {@link ServiceMethod} or {@link OverloadResolver#NO_MATCH}
+		 */
+		private Shape(long key, Object method) {
+			this.key	= key;
+			this.method	= method;
+		}
+	}
+
+}
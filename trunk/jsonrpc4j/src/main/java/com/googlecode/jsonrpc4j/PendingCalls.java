@@ -0,0 +1,189 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+/**
+ * The calls made over a connection that are waiting for their
+ * responses, for clients that have many calls in flight at once.
+ * Each call gets the next of a sequence of numeric ids, for its
+ * request to be written with by
+ * {@link JsonRpcClient#writeRequest(String, Object, java.io.OutputStream, long)},
+ * and is kept in a {@link LongHashMap} by it until the response with
+ * that id is handed to {@link #complete(JsonNode)}.  A call can be
+ * timed out by a {@link HashedWheelTimer}, which fails it with a
+ * {@link SocketTimeoutException}.  Once closed every call waiting
+ * fails, as do calls registered after.  It's thread safe.
+ */
+public class PendingCalls {
+
+	private static final Logger LOGGER = Logger.getLogger(PendingCalls.class.getName());
+
+	private final LongHashMap<PendingCall> calls = new LongHashMap<PendingCall>();
+	private final HashedWheelTimer timer;
+	private long nextId = 0;
+	private boolean closed = false;
+	private IOException closeCause;
+
+	/**
+	 * Creates the calls.
+	 * @param timer the {@link HashedWheelTimer} that times calls out
+	 */
+	public PendingCalls(HashedWheelTimer timer) {
+		this.timer = timer;
+	}
+
+	/**
+	 * Registers a call, before its request is written,
+	 * and starts its timeout.
+	 * @param future the {@link JsonRpcFuture} of its response
+	 * @param timeoutMillis how long to wait for it, 0 for ever
+	 * @return the id of its request
+	 * @throws IOException if they've been closed
+	 */
+	public long register(JsonRpcFuture<JsonNode> future, final long timeoutMillis)
+		throws IOException {
+		PendingCall call = new PendingCall(future);
+		final long id;
+		synchronized (this) {
+			if (closed) {
+				throw closedException();
+			}
+			id = ++nextId;
+			calls.put(id, call);
+		}
+		if (timeoutMillis>0) {
+			call.timeout = timer.schedule(new Runnable() {
+				public void run() {
+					fail(id, new SocketTimeoutException(
+						"No response to call "+id+" within "+timeoutMillis+"ms"));
+				}
+			}, timeoutMillis);
+		}
+		return id;
+	}
+
+	/**
+	 * Completes the call that a response is to.
+	 * @param response the response
+	 * @return false if no call was waiting for it
+	 */
+	public boolean complete(JsonNode response) {
+		long id = JsonRpcClient.getNumericId(response);
+		PendingCall call = remove(id);
+		if (call!=null) {
+			call.future.complete(response);
+			return true;
+		} else if (id<0) {
+			LOGGER.log(Level.WARNING, "Ignoring a response without an id: "+response);
+		} else if (LOGGER.isLoggable(Level.FINE)) {
+			LOGGER.log(Level.FINE, "Ignoring a response to no waiting call: "+response);
+		}
+		return false;
+	}
+
+	/**
+	 * Fails a call, if it's still waiting, as when its
+	 * request couldn't be written or its caller gave up.
+	 * @param id the id of its request
+	 * @param cause the failure
+	 */
+	public void fail(long id, Throwable cause) {
+		PendingCall call = remove(id);
+		if (call!=null) {
+			call.future.fail(cause);
+		}
+	}
+
+	/**
+	 * Fails every call waiting, and those registered from now on.
+	 * @param cause why, as when the connection has been closed
+	 * @return false if they already were
+	 */
+	public boolean close(IOException cause) {
+		List<PendingCall> failed;
+		synchronized (this) {
+			if (closed) {
+				return false;
+			}
+			closed		= true;
+			closeCause	= cause;
+			failed		= calls.removeAll();
+		}
+		for (PendingCall call : failed) {
+			call.cancelTimeout();
+			call.future.fail(cause);
+		}
+		return true;
+	}
+
+	/**
+	 * @return the number of calls waiting
+	 */
+	public synchronized int size() {
+		return calls.size();
+	}
+
+	/**
+	 * @return whether they've been closed
+	 */
+	public synchronized boolean isClosed() {
+		return closed;
+	}
+
+	/**
+	 * @return the exception for a call made once they've been closed
+	 */
+	public synchronized IOException closedException() {
+		IOException e = new IOException("The connection is closed");
+		e.initCause(closeCause);
+		return e;
+	}
+
+	/**
+	 * @param id the id of a call
+	 * @return the call, which has been taken out, or null
+	 */
+	private PendingCall remove(long id) {
+		PendingCall call;
+		synchronized (this) {
+			call = calls.remove(id);
+		}
+		if (call!=null) {
+			call.cancelTimeout();
+		}
+		return call;
+	}
+
+	/**
+	 * A call waiting for its response.
+	 */
+	private static class PendingCall {
+
+		private final JsonRpcFuture<JsonNode> future;
+		private volatile HashedWheelTimer.Timeout timeout;
+
+		/**
+		 * @param future the {@link JsonRpcFuture} of its response
+		 */
+		private PendingCall(JsonRpcFuture<JsonNode> future) {
+			this.future = future;
+		}
+
+		/**
+		 * Cancels its timeout, if it has one.
+		 */
+		private void cancelTimeout() {
+			HashedWheelTimer.Timeout timeout = this.timeout;
+			if (timeout!=null) {
+				timeout.cancel();
+			}
+		}
+	}
+
+}
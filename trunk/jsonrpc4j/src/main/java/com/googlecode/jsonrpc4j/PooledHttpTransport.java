@@ -0,0 +1,1120 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * An {@link HttpTransport} that speaks HTTP/1.1 over sockets of its
+ * own and keeps them alive in a pool per host, so that calls after
+ * the first skip connection setup (and the TLS handshake).  Each
+ * host has at most {@code maxConnectionsPerHost} connections, callers
+ * beyond that wait up to the request's connect timeout for one to be
+ * released, and connections left idle for longer than
+ * {@code maxIdleMillis} are evicted.  Request bodies are streamed,
+ * chunked unless their length is known, and responses are drained
+ * when they're closed so that their connection can be reused.  An
+ * idle connection is checked before it's reused, and dropped if the
+ * server has closed it.  A request that fails on a kept alive
+ * connection while it's being written, as when the server closed the
+ * connection just after the check, is retried once on a new
+ * connection.  Once the whole request has been sent it's never
+ * retried, as the server may have handled it.
+ * <p>
+ * It isn't used unless it's set with
+ * {@link JsonRpcHttpClient#setHttpTransport(HttpTransport)}, as it
+ * does less than {@link UrlConnectionHttpTransport}: redirects aren't
+ * followed, only the request's own {@link Proxy} is used (not the
+ * {@code ProxySelector}, so not the system proxies), there's no
+ * {@code Authenticator}, and https hostnames are verified by the
+ * JDK rather than by the {@code HostnameVerifier} set on
+ * {@link HttpsURLConnection}.
+ */
+public class PooledHttpTransport
+	implements HttpTransport {
+
+	private static final Logger LOGGER = Logger.getLogger(PooledHttpTransport.class.getName());
+
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST	= 20;
+	public static final long DEFAULT_MAX_IDLE_MILLIS			= 60*1000;
+	public static final int MAX_DRAIN_BYTES						= 64*1024;
+
+	private static final int BUFFER_SIZE	= 8*1024;
+	private static final String CHARSET		= "ISO-8859-1";
+
+	private int maxConnectionsPerHost	= DEFAULT_MAX_CONNECTIONS_PER_HOST;
+	private long maxIdleMillis			= DEFAULT_MAX_IDLE_MILLIS;
+	private SSLSocketFactory sslSocketFactory;
+	private volatile boolean closed		= false;
+
+	private final ConcurrentMap<String, HostPool> pools = new ConcurrentHashMap<String, HostPool>();
+	private final AtomicLong created = new AtomicLong(0);
+	private final AtomicLong evicted = new AtomicLong(0);
+
+	/**
+	 * Creates the transport.
+	 * @param maxConnectionsPerHost the most connections to a host
+	 * @param maxIdleMillis how long a connection may be idle
+	 */
+	public PooledHttpTransport(int maxConnectionsPerHost, long maxIdleMillis) {
+		setMaxConnectionsPerHost(maxConnectionsPerHost);
+		setMaxIdleMillis(maxIdleMillis);
+	}
+
+	/**
+	 * Creates the transport with {@link #DEFAULT_MAX_CONNECTIONS_PER_HOST}
+	 * and {@link #DEFAULT_MAX_IDLE_MILLIS}.
+	 */
+	public PooledHttpTransport() {
+		this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_IDLE_MILLIS);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Response post(Request request)
+		throws IOException {
+		if (closed) {
+			throw new IllegalStateException("The transport has been closed");
+		}
+		HostPool pool = pool(request);
+		PooledConnection connection = leaseLive(pool, request);
+		boolean reused = connection!=null;
+		while (true) {
+			try {
+				if (connection==null) {
+					connection = connect(request);
+				}
+				connection.socket.setSoTimeout(request.getReadTimeoutMillis());
+				connection.requestSent = false;
+				writeRequest(connection, request);
+				connection.requestSent = true;
+				return readResponse(pool, connection);
+			} catch (IOException e) {
+				if (connection!=null) {
+					connection.close();
+				}
+				if (!reused || connection==null || connection.requestSent) {
+					pool.discard();
+					throw e;
+				}
+
+				// the server has most likely closed the kept alive connection
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.log(Level.FINE, "Retrying on a new connection to "+pool.key, e);
+				}
+				connection = null;
+				reused = false;
+			} catch (RuntimeException e) {
+				if (connection!=null) {
+					connection.close();
+				}
+				pool.discard();
+				throw e;
+			}
+		}
+	}
+
+	/**
+	 * Leases a connection from a pool, dropping the idle
+	 * ones that the server has closed in the meantime.
+	 * @param pool the {@link HostPool}
+	 * @param request the {@link Request}
+	 * @return the idle connection, or null to open a new one
+	 * @throws IOException on error
+	 */
+	private static PooledConnection leaseLive(HostPool pool, Request request)
+		throws IOException {
+		while (true) {
+			PooledConnection connection = pool.lease(request.getConnectTimeoutMillis());
+			if (connection==null || !connection.isStale()) {
+				return connection;
+			}
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.log(Level.FINE, "Dropping a closed connection to "+pool.key);
+			}
+			connection.close();
+			pool.discard();
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void close() {
+		closed = true;
+		for (HostPool pool : pools.values()) {
+			pool.closeIdle();
+		}
+	}
+
+	/**
+	 * Closes the connections that have been idle
+	 * for longer than {@code maxIdleMillis}.  They're
+	 * also evicted when a connection is leased.
+	 */
+	public void evictIdleConnections() {
+		for (HostPool pool : pools.values()) {
+			pool.evictExpired();
+		}
+	}
+
+	/**
+	 * @param request the {@link Request}
+	 * @return the pool of connections for its host
+	 */
+	private HostPool pool(Request request) {
+		URL url = request.getUrl();
+		Proxy proxy = request.getProxy();
+		String key = url.getProtocol().toLowerCase()+"://"+url.getHost().toLowerCase()+":"+port(url)
+			+(proxy!=null && proxy.type()!=Proxy.Type.DIRECT ? " via "+proxy : "");
+		HostPool pool = pools.get(key);
+		if (pool==null) {
+			pool = new HostPool(key);
+			HostPool existing = pools.putIfAbsent(key, pool);
+			if (existing!=null) {
+				pool = existing;
+			}
+		}
+		return pool;
+	}
+
+	/**
+	 * Opens a connection for a request.
+	 * @param request the {@link Request}
+	 * @return the connection
+	 * @throws IOException on error
+	 */
+	private PooledConnection connect(Request request)
+		throws IOException {
+		URL url = request.getUrl();
+		String protocol = url.getProtocol().toLowerCase();
+		boolean https = protocol.equals("https");
+		if (!https && !protocol.equals("http")) {
+			throw new IOException("Unsupported protocol: "+protocol);
+		}
+		Proxy proxy = request.getProxy()!=null ? request.getProxy() : Proxy.NO_PROXY;
+		boolean httpProxy = proxy.type()==Proxy.Type.HTTP;
+		Socket socket = httpProxy ? new Socket() : new Socket(proxy);
+		try {
+			socket.connect(httpProxy ? proxy.address() : new InetSocketAddress(url.getHost(), port(url)),
+				request.getConnectTimeoutMillis());
+			socket.setTcpNoDelay(true);
+			socket.setSoTimeout(request.getReadTimeoutMillis());
+			if (https) {
+				if (httpProxy) {
+					tunnel(socket, url);
+				}
+				SSLSocket sslSocket = SSLSocket.class.cast(getSslSocketFactory()
+					.createSocket(socket, url.getHost(), port(url), true));
+				socket = sslSocket;
+				verifyHostname(sslSocket);
+				sslSocket.startHandshake();
+			}
+		} catch (IOException e) {
+			try {
+				socket.close();
+			} catch (IOException ce) { /* no-op */ }
+			throw e;
+		}
+		created.incrementAndGet();
+		return new PooledConnection(socket, httpProxy && !https);
+	}
+
+	/**
+	 * Opens a tunnel through an http proxy with {@code CONNECT}.
+	 * @param socket the {@link Socket} to the proxy
+	 * @param url the {@link URL} to tunnel to
+	 * @throws IOException on error
+	 */
+	private static void tunnel(Socket socket, URL url)
+		throws IOException {
+		String authority = url.getHost()+":"+port(url);
+		OutputStream ops = socket.getOutputStream();
+		ops.write(("CONNECT "+authority+" HTTP/1.1\r\nHost: "+authority+"\r\n\r\n").getBytes(CHARSET));
+		ops.flush();
+
+		// read byte by byte so that nothing past the proxy's response is read
+		InputStream ips = socket.getInputStream();
+		String statusLine = readLine(ips);
+		if (statusLine==null) {
+			throw new EOFException("The proxy closed the connection");
+		}
+		int statusCode = parseStatusCode(statusLine);
+		String line;
+		do {
+			line = readLine(ips);
+		} while (line!=null && line.length()>0);
+		if (statusCode!=200) {
+			throw new IOException("Unable to tunnel through the proxy: "+statusLine);
+		}
+	}
+
+	/**
+	 * Turns on hostname verification, which {@link SSLSocket}s
+	 * only have from Java 7 and so is looked up reflectively.
+	 * @param socket the {@link SSLSocket}
+	 */
+	private static void verifyHostname(SSLSocket socket) {
+		try {
+			Class<?> parametersClass = Class.forName("javax.net.ssl.SSLParameters");
+			Object parameters = SSLSocket.class.getMethod("getSSLParameters").invoke(socket);
+			parametersClass.getMethod("setEndpointIdentificationAlgorithm", String.class)
+				.invoke(parameters, "HTTPS");
+			SSLSocket.class.getMethod("setSSLParameters", parametersClass).invoke(socket, parameters);
+		} catch (ClassNotFoundException e) {
+			LOGGER.log(Level.WARNING, "Hostnames can't be verified on this runtime");
+		} catch (NoSuchMethodException e) {
+			LOGGER.log(Level.WARNING, "Hostnames can't be verified on this runtime");
+		} catch (IllegalAccessException e) {
+			LOGGER.log(Level.WARNING, "Hostnames can't be verified on this runtime", e);
+		} catch (InvocationTargetException e) {
+			LOGGER.log(Level.WARNING, "Hostnames can't be verified on this runtime", e.getTargetException());
+		}
+	}
+
+	/**
+	 * Writes a request and its body.
+	 * @param connection the connection
+	 * @param request the {@link Request}
+	 * @throws IOException on error
+	 */
+	private static void writeRequest(PooledConnection connection, Request request)
+		throws IOException {
+		URL url = request.getUrl();
+		long contentLength = request.getBody().getContentLength();
+
+		// the request line and headers
+		StringBuilder head = new StringBuilder("POST ");
+		if (connection.absoluteForm) {
+			head.append(url.getProtocol()).append("://").append(url.getAuthority());
+		}
+		head.append(url.getPath().length()>0 ? url.getPath() : "/");
+		if (url.getQuery()!=null) {
+			head.append('?').append(url.getQuery());
+		}
+		head.append(" HTTP/1.1\r\nHost: ").append(url.getHost());
+		if (url.getPort()!=-1 && url.getPort()!=url.getDefaultPort()) {
+			head.append(':').append(url.getPort());
+		}
+		head.append("\r\n");
+		for (Entry<String, String> entry : request.getHeaders().entrySet()) {
+			String name = entry.getKey();
+			if (name.equalsIgnoreCase("Host") || name.equalsIgnoreCase("Content-Length")
+				|| name.equalsIgnoreCase("Transfer-Encoding") || name.equalsIgnoreCase("Connection")) {
+				continue;
+			}
+			head.append(name).append(": ").append(entry.getValue()).append("\r\n");
+		}
+		if (contentLength>=0) {
+			head.append("Content-Length: ").append(contentLength).append("\r\n");
+		} else {
+			head.append("Transfer-Encoding: chunked\r\n");
+		}
+		head.append("\r\n");
+		connection.output.write(head.toString().getBytes(CHARSET));
+
+		// the body
+		if (contentLength>=0) {
+			FixedLengthOutputStream body = new FixedLengthOutputStream(connection.output, contentLength);
+			request.getBody().writeTo(body);
+			body.finish();
+		} else {
+			ChunkedOutputStream body = new ChunkedOutputStream(connection.output);
+			request.getBody().writeTo(body);
+			body.finish();
+		}
+		connection.output.flush();
+	}
+
+	/**
+	 * Reads the status line and headers of a response.
+	 * @param pool the connection's {@link HostPool}
+	 * @param connection the connection
+	 * @return the {@link Response}
+	 * @throws IOException on error
+	 */
+	private static Response readResponse(HostPool pool, PooledConnection connection)
+		throws IOException {
+		InputStream input = connection.input;
+		String statusLine;
+		int statusCode;
+		Map<String, String> headers;
+
+		// skip informational responses, such as 100 Continue
+		do {
+			int first = input.read();
+			if (first<0) {
+				throw new EOFException("The server closed the connection");
+			}
+			String rest = readLine(input);
+			if (rest==null) {
+				throw new EOFException("The server closed the connection in the status line");
+			}
+			statusLine = (char)first+rest;
+			statusCode = parseStatusCode(statusLine);
+			headers = readHeaders(input);
+		} while (statusCode>=100 && statusCode<200);
+
+		// how the body ends
+		boolean keepAlive = statusLine.startsWith("HTTP/1.1")
+			? !"close".equalsIgnoreCase(headers.get("connection"))
+			: "keep-alive".equalsIgnoreCase(headers.get("connection"));
+		String transferEncoding = headers.get("transfer-encoding");
+		String contentLength = headers.get("content-length");
+		InputStream body;
+		if (statusCode==204 || statusCode==304) {
+			body = new FixedLengthInputStream(input, 0);
+		} else if (transferEncoding!=null && transferEncoding.toLowerCase().endsWith("chunked")) {
+			body = new ChunkedInputStream(input);
+		} else if (contentLength!=null) {
+			try {
+				body = new FixedLengthInputStream(input, Long.parseLong(contentLength.trim()));
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid Content-Length: "+contentLength);
+			}
+		} else {
+			body = new NoCloseInputStream(input);
+			keepAlive = false;
+		}
+		return new PooledResponse(pool, connection, statusCode, headers, body, keepAlive);
+	}
+
+	/**
+	 * @param statusLine the status line of a response
+	 * @return its status code
+	 * @throws IOException if it isn't one
+	 */
+	private static int parseStatusCode(String statusLine)
+		throws IOException {
+		String[] parts = statusLine.split(" ", 3);
+		if (parts.length<2 || !parts[0].startsWith("HTTP/")) {
+			throw new IOException("Invalid status line: "+statusLine);
+		}
+		try {
+			return Integer.parseInt(parts[1]);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid status line: "+statusLine);
+		}
+	}
+
+	/**
+	 * Reads headers, up to the empty line that ends them.
+	 * @param input the {@link InputStream}
+	 * @return the headers, by their lower case names
+	 * @throws IOException on error
+	 */
+	private static Map<String, String> readHeaders(InputStream input)
+		throws IOException {
+		Map<String, String> headers = new HashMap<String, String>();
+		String line;
+		while ((line = readLine(input))!=null && line.length()>0) {
+			int colon = line.indexOf(':');
+			if (colon<=0) {
+				continue;
+			}
+			String name = line.substring(0, colon).trim().toLowerCase();
+			String value = line.substring(colon+1).trim();
+			String previous = headers.get(name);
+			headers.put(name, previous!=null ? previous+", "+value : value);
+		}
+		if (line==null) {
+			throw new EOFException("The server closed the connection in the headers");
+		}
+		return headers;
+	}
+
+	/**
+	 * Reads a line that ends with CRLF, or LF.
+	 * @param input the {@link InputStream}
+	 * @return the line, without its end, or null at the end of the stream
+	 * @throws IOException on error
+	 */
+	private static String readLine(InputStream input)
+		throws IOException {
+		StringBuilder line = new StringBuilder();
+		int b;
+		while ((b = input.read())>=0) {
+			if (b=='\n') {
+				int length = line.length();
+				if (length>0 && line.charAt(length-1)=='\r') {
+					line.setLength(length-1);
+				}
+				return line.toString();
+			}
+			line.append((char)b);
+		}
+		return line.length()>0 ? line.toString() : null;
+	}
+
+	/**
+	 * @param url the {@link URL}
+	 * @return its port, or its protocol's default port
+	 */
+	private static int port(URL url) {
+		return url.getPort()!=-1 ? url.getPort() : url.getDefaultPort();
+	}
+
+	/**
+	 * Sets the most connections kept to a host, leased or idle.
+	 *
+	 * @param maxConnectionsPerHost the maxConnectionsPerHost to set
+	 */
+	public void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		if (maxConnectionsPerHost<1) {
+			throw new IllegalArgumentException("maxConnectionsPerHost must be at least 1");
+		}
+		this.maxConnectionsPerHost = maxConnectionsPerHost;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a connection may be idle before
+	 * it's evicted.  It should be shorter than the server's own idle
+	 * timeout, or most kept alive connections will have been closed
+	 * by the time they're reused.
+	 *
+	 * @param maxIdleMillis the maxIdleMillis to set
+	 */
+	public void setMaxIdleMillis(long maxIdleMillis) {
+		if (maxIdleMillis<1) {
+			throw new IllegalArgumentException("maxIdleMillis must be at least 1");
+		}
+		this.maxIdleMillis = maxIdleMillis;
+	}
+
+	/**
+	 * Sets the {@link SSLSocketFactory} for https connections, by
+	 * default the one set on {@link HttpsURLConnection}.
+	 *
+	 * @param sslSocketFactory the sslSocketFactory to set
+	 */
+	public void setSslSocketFactory(SSLSocketFactory sslSocketFactory) {
+		this.sslSocketFactory = sslSocketFactory;
+	}
+
+	/**
+	 * @return the {@link SSLSocketFactory}
+	 */
+	private SSLSocketFactory getSslSocketFactory() {
+		return sslSocketFactory!=null
+			? sslSocketFactory
+			: HttpsURLConnection.getDefaultSSLSocketFactory();
+	}
+
+	/**
+	 * @return the number of connections in use
+	 */
+	public int getLeased() {
+		int leased = 0;
+		for (HostPool pool : pools.values()) {
+			synchronized (pool) {
+				leased += pool.leased;
+			}
+		}
+		return leased;
+	}
+
+	/**
+	 * @return the number of idle connections in the pool
+	 */
+	public int getIdle() {
+		int idle = 0;
+		for (HostPool pool : pools.values()) {
+			synchronized (pool) {
+				idle += pool.idle.size();
+			}
+		}
+		return idle;
+	}
+
+	/**
+	 * @return the number of connections opened
+	 */
+	public long getCreated() {
+		return created.get();
+	}
+
+	/**
+	 * @return the number of idle connections closed
+	 * for having been idle too long
+	 */
+	public long getEvicted() {
+		return evicted.get();
+	}
+
+	/**
+	 * The connections to one host, the most recently released
+	 * of which is reused first so that the others can expire.
+	 */
+	private class HostPool {
+
+		private final String key;
+		private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+		private int leased = 0;
+
+		/**
+		 * @param key the host's key
+		 */
+		private HostPool(String key) {
+			this.key = key;
+		}
+
+		/**
+		 * Leases an idle connection, or a slot for a new one,
+		 * waiting for one to be released if there are too many.
+		 * @param timeoutMillis how long to wait, 0 for ever
+		 * @return the idle connection, or null to open a new one
+		 * @throws IOException if none is released in time
+		 */
+		private PooledConnection lease(int timeoutMillis)
+			throws IOException {
+			List<PooledConnection> expired = new ArrayList<PooledConnection>();
+			try {
+				synchronized (this) {
+					long deadline = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+					while (true) {
+						removeExpired(expired);
+						if (!idle.isEmpty()) {
+							leased++;
+							return idle.removeFirst();
+						} else if (leased<maxConnectionsPerHost) {
+							leased++;
+							return null;
+						}
+						long waitNanos = deadline-System.nanoTime();
+						if (timeoutMillis>0 && waitNanos<=0) {
+							throw new IOException("Timed out waiting for a connection to "+key);
+						}
+						try {
+							if (timeoutMillis>0) {
+								TimeUnit.NANOSECONDS.timedWait(this, waitNanos);
+							} else {
+								wait();
+							}
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+							throw new IOException("Interrupted waiting for a connection to "+key);
+						}
+					}
+				}
+			} finally {
+				close(expired);
+			}
+		}
+
+		/**
+		 * Gives a connection back to the pool.
+		 * @param connection the connection
+		 */
+		private void release(PooledConnection connection) {
+			synchronized (this) {
+				leased--;
+				notify();
+				if (!closed) {
+					connection.idleSince = System.nanoTime();
+					idle.addFirst(connection);
+					return;
+				}
+			}
+			connection.close();
+		}
+
+		/**
+		 * Gives back the slot of a connection that's been closed.
+		 */
+		private synchronized void discard() {
+			leased--;
+			notify();
+		}
+
+		/**
+		 * Closes the connections that have been idle too long.
+		 */
+		private void evictExpired() {
+			List<PooledConnection> expired = new ArrayList<PooledConnection>();
+			synchronized (this) {
+				removeExpired(expired);
+			}
+			close(expired);
+		}
+
+		/**
+		 * Closes the idle connections.
+		 */
+		private void closeIdle() {
+			List<PooledConnection> connections;
+			synchronized (this) {
+				connections = new ArrayList<PooledConnection>(idle);
+				idle.clear();
+			}
+			close(connections);
+		}
+
+		/**
+		 * Takes the connections that have been idle too long,
+		 * the oldest of which are at the end, out of the pool.
+		 * @param expired where to put them
+		 */
+		private void removeExpired(List<PooledConnection> expired) {
+			long now = System.nanoTime();
+			long maxIdleNanos = TimeUnit.MILLISECONDS.toNanos(maxIdleMillis);
+			while (!idle.isEmpty() && now-idle.getLast().idleSince>maxIdleNanos) {
+				expired.add(idle.removeLast());
+				evicted.incrementAndGet();
+			}
+		}
+
+		/**
+		 * @param connections the connections to close
+		 */
+		private void close(List<PooledConnection> connections) {
+			for (PooledConnection connection : connections) {
+				connection.close();
+			}
+		}
+	}
+
+	/**
+	 * A connection to a host.
+	 */
+	private static class PooledConnection {
+
+		private final Socket socket;
+		private final InputStream input;
+		private final OutputStream output;
+		private final boolean absoluteForm;
+		private boolean requestSent = false;
+		private long idleSince;
+
+		/**
+		 * @param socket the {@link Socket}
+		 * @param absoluteForm whether requests go through an http proxy
+		 * @throws IOException on error
+		 */
+		private PooledConnection(Socket socket, boolean absoluteForm)
+			throws IOException {
+			this.socket			= socket;
+			this.input			= new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+			this.output			= new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+			this.absoluteForm	= absoluteForm;
+		}
+
+		/**
+		 * Checks whether an idle connection can still be used: the
+		 * server has sent nothing since the last response, nor closed
+		 * it.  Waits a millisecond at most.
+		 * @return whether it can't
+		 */
+		private boolean isStale() {
+			try {
+				if (input.available()>0) {
+					return true;
+				}
+				int soTimeout = socket.getSoTimeout();
+				socket.setSoTimeout(1);
+				try {
+					// the end of the stream, or bytes no request asked for
+					input.read();
+					return true;
+				} catch (SocketTimeoutException e) {
+					return false;
+				} finally {
+					socket.setSoTimeout(soTimeout);
+				}
+			} catch (IOException e) {
+				return true;
+			}
+		}
+
+		/**
+		 * Closes the connection.
+		 */
+		private void close() {
+			try {
+				socket.close();
+			} catch (IOException e) { /* no-op */ }
+		}
+	}
+
+	/**
+	 * A response on a pooled connection.
+	 */
+	private static class PooledResponse
+		implements Response {
+
+		private final HostPool pool;
+		private final PooledConnection connection;
+		private final int statusCode;
+		private final Map<String, String> headers;
+		private final InputStream body;
+		private final boolean keepAlive;
+		private boolean closed = false;
+
+		/**
+		 * @param pool the connection's {@link HostPool}
+		 * @param connection the connection
+		 * @param statusCode the status code
+		 * @param headers the headers, by their lower case names
+		 * @param body the body
+		 * @param keepAlive whether the connection can be reused
+		 */
+		private PooledResponse(
+			HostPool pool, PooledConnection connection, int statusCode,
+			Map<String, String> headers, InputStream body, boolean keepAlive) {
+			this.pool		= pool;
+			this.connection	= connection;
+			this.statusCode	= statusCode;
+			this.headers	= headers;
+			this.body		= body;
+			this.keepAlive	= keepAlive;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public int getStatusCode() {
+			return statusCode;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public String getHeader(String name) {
+			return headers.get(name.toLowerCase());
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public InputStream getInputStream() {
+			return body;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void close() {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			boolean reusable = keepAlive;
+			if (reusable) {
+				try {
+					byte[] buffer = new byte[BUFFER_SIZE];
+					long drained = 0;
+					int read;
+					while ((read = body.read(buffer))>=0) {
+						drained += read;
+						if (drained>MAX_DRAIN_BYTES) {
+							reusable = false;
+							break;
+						}
+					}
+				} catch (IOException e) {
+					reusable = false;
+				}
+			}
+			if (reusable) {
+				pool.release(connection);
+			} else {
+				connection.close();
+				pool.discard();
+			}
+		}
+	}
+
+	/**
+	 * Writes a body of a known length, making sure it's that long.
+	 */
+	private static class FixedLengthOutputStream
+		extends OutputStream {
+
+		private final OutputStream ops;
+		private long remaining;
+
+		/**
+		 * @param ops the connection's {@link OutputStream}
+		 * @param length the length of the body
+		 */
+		private FixedLengthOutputStream(OutputStream ops, long length) {
+			this.ops		= ops;
+			this.remaining	= length;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int b)
+			throws IOException {
+			write(new byte[] { (byte)b }, 0, 1);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] b, int off, int len)
+			throws IOException {
+			if (len>remaining) {
+				throw new IOException("The body is longer than its Content-Length");
+			}
+			ops.write(b, off, len);
+			remaining -= len;
+		}
+
+		/**
+		 * Checks that the whole body has been written.
+		 * @throws IOException if it hasn't
+		 */
+		private void finish()
+			throws IOException {
+			if (remaining!=0) {
+				throw new IOException("The body is shorter than its Content-Length");
+			}
+		}
+	}
+
+	/**
+	 * Writes a body in chunks, a chunk per buffer full.
+	 */
+	private static class ChunkedOutputStream
+		extends OutputStream {
+
+		private final OutputStream ops;
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private int count = 0;
+		private boolean finished = false;
+
+		/**
+		 * @param ops the connection's {@link OutputStream}
+		 */
+		private ChunkedOutputStream(OutputStream ops) {
+			this.ops = ops;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int b)
+			throws IOException {
+			if (count==buffer.length) {
+				writeChunk();
+			}
+			buffer[count++] = (byte)b;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] b, int off, int len)
+			throws IOException {
+			while (len>0) {
+				if (count==buffer.length) {
+					writeChunk();
+				}
+				int length = Math.min(len, buffer.length-count);
+				System.arraycopy(b, off, buffer, count, length);
+				count += length;
+				off += length;
+				len -= length;
+			}
+		}
+
+		/**
+		 * Writes what's buffered as a chunk.
+		 * @throws IOException on error
+		 */
+		private void writeChunk()
+			throws IOException {
+			if (count==0) {
+				return;
+			}
+			ops.write((Integer.toHexString(count)+"\r\n").getBytes(CHARSET));
+			ops.write(buffer, 0, count);
+			ops.write('\r');
+			ops.write('\n');
+			count = 0;
+		}
+
+		/**
+		 * Writes the last chunk, the stream itself isn't
+		 * closed as the body's writer may close it.
+		 * @throws IOException on error
+		 */
+		private void finish()
+			throws IOException {
+			if (finished) {
+				return;
+			}
+			finished = true;
+			writeChunk();
+			ops.write("0\r\n\r\n".getBytes(CHARSET));
+		}
+	}
+
+	/**
+	 * Reads a body of a known length.
+	 */
+	private static class FixedLengthInputStream
+		extends InputStream {
+
+		private final InputStream ips;
+		private long remaining;
+
+		/**
+		 * @param ips the connection's {@link InputStream}
+		 * @param length the length of the body
+		 */
+		private FixedLengthInputStream(InputStream ips, long length) {
+			this.ips		= ips;
+			this.remaining	= length;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read()
+			throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1)<0 ? -1 : b[0] & 0xFF;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] b, int off, int len)
+			throws IOException {
+			if (remaining==0) {
+				return -1;
+			} else if (len==0) {
+				return 0;
+			}
+			int read = ips.read(b, off, (int)Math.min(len, remaining));
+			if (read<0) {
+				throw new EOFException("The server closed the connection in the body");
+			}
+			remaining -= read;
+			return read;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int available()
+			throws IOException {
+			return (int)Math.min(ips.available(), remaining);
+		}
+	}
+
+	/**
+	 * Reads a chunked body.
+	 */
+	private static class ChunkedInputStream
+		extends InputStream {
+
+		private final InputStream ips;
+		private long remaining = 0;
+		private boolean eof = false;
+
+		/**
+		 * @param ips the connection's {@link InputStream}
+		 */
+		private ChunkedInputStream(InputStream ips) {
+			this.ips = ips;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read()
+			throws IOException {
+			byte[] b = new byte[1];
+			return read(b, 0, 1)<0 ? -1 : b[0] & 0xFF;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public int read(byte[] b, int off, int len)
+			throws IOException {
+			if (len==0) {
+				return 0;
+			} else if (remaining==0 && !nextChunk()) {
+				return -1;
+			}
+			int read = ips.read(b, off, (int)Math.min(len, remaining));
+			if (read<0) {
+				throw new EOFException("The server closed the connection in the body");
+			}
+			remaining -= read;
+			if (remaining==0) {
+				readLine(ips);
+			}
+			return read;
+		}
+
+		/**
+		 * Starts the next chunk.
+		 * @return false at the end of the body
+		 * @throws IOException on error
+		 */
+		private boolean nextChunk()
+			throws IOException {
+			if (eof) {
+				return false;
+			}
+			String line = readLine(ips);
+			if (line==null) {
+				throw new EOFException("The server closed the connection in the body");
+			}
+			int semicolon = line.indexOf(';');
+			try {
+				remaining = Long.parseLong(
+					(semicolon>=0 ? line.substring(0, semicolon) : line).trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Invalid chunk size: "+line);
+			}
+			if (remaining==0) {
+				readHeaders(ips);
+				eof = true;
+				return false;
+			}
+			return true;
+		}
+	}
+
+}
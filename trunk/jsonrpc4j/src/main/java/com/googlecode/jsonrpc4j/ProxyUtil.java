@@ -1,11 +1,14 @@
 package com.googlecode.jsonrpc4j;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationHandler;
 import java.lang.reflect.Method;
 import java.lang.reflect.Proxy;
+import java.lang.reflect.Type;
 import java.net.Socket;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -61,7 +64,7 @@ public abstract class ProxyUtil {
 		}
 
 		// build the service map
-		final Map<Class<?>, Object> serviceMap = new HashMap<Class<?>, Object>();
+		Map<Class<?>, Object> serviceMap = new HashMap<Class<?>, Object>();
 		for (Class<?> clazz : interfaces) {
 
 			// we will allow for this, but the first
@@ -93,13 +96,46 @@ public abstract class ProxyUtil {
 
 		// now create the proxy
 		return Proxy.newProxyInstance(classLoader, interfaces.toArray(new Class<?>[0]),
-			new InvocationHandler() {
-			public Object invoke(Object proxy, Method method, Object[] args)
-				throws Throwable {
-				Class<?> clazz = method.getDeclaringClass();
-				return method.invoke(serviceMap.get(clazz), args);
-			}
-		});
+			new CompositeServiceInvocationHandler(serviceMap));
+	}
+
+	/**
+	 * The {@link InvocationHandler} of the proxies created by
+	 * {@link ProxyUtil#createCompositeServiceProxy(ClassLoader, Object[], Class[], boolean)},
+	 * delegating each call to the service implementing the
+	 * method's declaring interface.
+	 */
+	public static class CompositeServiceInvocationHandler
+		implements InvocationHandler {
+
+		private final Map<Class<?>, Object> serviceMap;
+
+		/**
+		 * Creates the handler.
+		 * @param serviceMap the services keyed by interface
+		 */
+		public CompositeServiceInvocationHandler(Map<Class<?>, Object> serviceMap) {
+			this.serviceMap = serviceMap;
+		}
+
+		/**
+		 * Returns the service that calls to methods declared
+		 * by the given interface are delegated to.
+		 * @param serviceInterface the interface
+		 * @return the service or null if there is none
+		 */
+		public Object getService(Class<?> serviceInterface) {
+			return serviceMap.get(serviceInterface);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object invoke(Object proxy, Method method, Object[] args)
+			throws Throwable {
+			Class<?> clazz = method.getDeclaringClass();
+			return method.invoke(serviceMap.get(clazz), args);
+		}
 	}
 
 	/**
@@ -124,6 +160,42 @@ public abstract class ProxyUtil {
 			socket.getInputStream(), socket.getOutputStream());
 	}
 
+	/**
+	 * Creates a {@link Proxy} of the given {@link proxyInterface}
+	 * that uses the given {@link JsonRpcClient}, each message on
+	 * the socket being framed by the given {@link MessageFraming}.
+	 * @param <T> the proxy type
+	 * @param classLoader the {@link ClassLoader}
+	 * @param proxyInterface the interface to proxy
+	 * @param client the {@link JsonRpcClient}
+	 * @param socket the {@link Socket}
+	 * @param framing the {@link MessageFraming}
+	 * @return the proxied interface
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T createClientProxy(
+		ClassLoader classLoader,
+		Class<T> proxyInterface,
+		final JsonRpcClient client,
+		Socket socket,
+		final MessageFraming framing) throws IOException {
+		final InputStream ips = new BufferedInputStream(socket.getInputStream());
+		final OutputStream ops = new BufferedOutputStream(socket.getOutputStream());
+
+		// create and return the proxy
+		return (T)Proxy.newProxyInstance(
+			classLoader,
+			new Class<?>[] {proxyInterface},
+			new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args)
+					throws Throwable {
+					Object arguments = ReflectionUtil.parseArguments(method, args, false);
+					return client.invokeAndReadResponse(
+						method.getName(), arguments, method.getGenericReturnType(), ops, ips, framing);
+				}
+			});
+	}
+
 	/**
 	 * Creates a {@link Proxy} of the given {@link proxyInterface}
 	 * that uses the given {@link JsonRpcClient}.
@@ -160,7 +232,109 @@ public abstract class ProxyUtil {
 
 	/**
 	 * Creates a {@link Proxy} of the given {@link proxyInterface}
-	 * that uses the given {@link JsonRpcHttpClient}.
+	 * that uses the given {@link NioJsonRpcClient}.  Methods that
+	 * return a {@link java.util.concurrent.Future} are called
+	 * asynchronously, returning a {@link JsonRpcFuture}, the
+	 * others wait for their response.
+	 * @param <T> the proxy type
+	 * @param classLoader the {@link ClassLoader}
+	 * @param proxyInterface the interface to proxy
+	 * @param useNamedParams whether or not to use named params
+	 * @param client the {@link NioJsonRpcClient}
+	 * @return the proxied interface
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T createClientProxy(
+		ClassLoader classLoader,
+		Class<T> proxyInterface,
+		final boolean useNamedParams,
+		final NioJsonRpcClient client) {
+
+		// create and return the proxy
+		return (T)Proxy.newProxyInstance(
+			classLoader,
+			new Class<?>[] {proxyInterface},
+			new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args)
+					throws Throwable {
+					Object arguments = ReflectionUtil.parseArguments(method, args, useNamedParams);
+					Type futureResultType = ReflectionUtil.getFutureResultType(method);
+					if (futureResultType!=null) {
+						return client.invokeAsync(method.getName(), arguments, futureResultType);
+					}
+					return client.invoke(method.getName(), arguments, method.getGenericReturnType());
+				}
+			});
+	}
+
+	/**
+	 * Creates a {@link Proxy} of the given {@link proxyInterface}
+	 * that uses the given {@link NioJsonRpcClient}.
+	 * @param <T> the proxy type
+	 * @param classLoader the {@link ClassLoader}
+	 * @param proxyInterface the interface to proxy
+	 * @param client the {@link NioJsonRpcClient}
+	 * @return the proxied interface
+	 */
+	public static <T> T createClientProxy(
+		ClassLoader classLoader,
+		Class<T> proxyInterface,
+		NioJsonRpcClient client) {
+		return createClientProxy(classLoader, proxyInterface, false, client);
+	}
+
+	/**
+	 * Creates a {@link Proxy} of the given {@link proxyInterface}
+	 * that uses the given {@link MultiplexedJsonRpcClient}, which
+	 * any number of threads can call at once.
+	 * @param <T> the proxy type
+	 * @param classLoader the {@link ClassLoader}
+	 * @param proxyInterface the interface to proxy
+	 * @param useNamedParams whether or not to use named params
+	 * @param client the {@link MultiplexedJsonRpcClient}
+	 * @return the proxied interface
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T createClientProxy(
+		ClassLoader classLoader,
+		Class<T> proxyInterface,
+		final boolean useNamedParams,
+		final MultiplexedJsonRpcClient client) {
+
+		// create and return the proxy
+		return (T)Proxy.newProxyInstance(
+			classLoader,
+			new Class<?>[] {proxyInterface},
+			new InvocationHandler() {
+				public Object invoke(Object proxy, Method method, Object[] args)
+					throws Throwable {
+					Object arguments = ReflectionUtil.parseArguments(method, args, useNamedParams);
+					return client.invoke(method.getName(), arguments, method.getGenericReturnType());
+				}
+			});
+	}
+
+	/**
+	 * Creates a {@link Proxy} of the given {@link proxyInterface}
+	 * that uses the given {@link MultiplexedJsonRpcClient}.
+	 * @param <T> the proxy type
+	 * @param classLoader the {@link ClassLoader}
+	 * @param proxyInterface the interface to proxy
+	 * @param client the {@link MultiplexedJsonRpcClient}
+	 * @return the proxied interface
+	 */
+	public static <T> T createClientProxy(
+		ClassLoader classLoader,
+		Class<T> proxyInterface,
+		MultiplexedJsonRpcClient client) {
+		return createClientProxy(classLoader, proxyInterface, false, client);
+	}
+
+	/**
+	 * Creates a {@link Proxy} of the given {@link proxyInterface}
+	 * that uses the given {@link JsonRpcHttpClient}.  Methods that
+	 * return a {@link java.util.concurrent.Future} are called
+	 * asynchronously, returning a {@link JsonRpcFuture}.
 	 * @param <T> the proxy type
 	 * @param classLoader the {@link ClassLoader}
 	 * @param proxyInterface the interface to proxy
@@ -184,6 +358,11 @@ public abstract class ProxyUtil {
 				public Object invoke(Object proxy, Method method, Object[] args)
 					throws Throwable {
 					Object arguments = ReflectionUtil.parseArguments(method, args, useNamedParams);
+					Type futureResultType = ReflectionUtil.getFutureResultType(method);
+					if (futureResultType!=null) {
+						return client.invokeAsync(
+							method.getName(), arguments, futureResultType, extraHeaders);
+					}
 					return client.invoke(
 						method.getName(), arguments, method.getGenericReturnType(), extraHeaders);
 				}
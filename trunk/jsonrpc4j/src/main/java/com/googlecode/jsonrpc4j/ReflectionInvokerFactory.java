@@ -0,0 +1,53 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * {@link InvokerFactory} that creates {@link Invoker}s calling
+ * {@link Method#invoke(Object, Object...)} on the handler.
+ * This is the default used by the {@link JsonRpcServer}.
+ */
+public class ReflectionInvokerFactory
+	implements InvokerFactory {
+
+	public static final ReflectionInvokerFactory INSTANCE = new ReflectionInvokerFactory();
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Invoker createInvoker(Object handler, ServiceMethod method) {
+		return new ReflectionInvoker(handler, method.getMethod());
+	}
+
+	/**
+	 * {@link Invoker} that uses reflection.
+	 */
+	public static class ReflectionInvoker
+		implements Invoker {
+
+		private final Object target;
+		private final Method method;
+
+		/**
+		 * Creates the {@link Invoker}.
+		 * @param target the object to invoke the method on
+		 * @param method the {@link Method}
+		 */
+		public ReflectionInvoker(Object target, Method method) {
+			this.target = target;
+			this.method = method;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public Object invoke(Object[] arguments)
+			throws IllegalAccessException,
+			InvocationTargetException {
+			return method.invoke(target, arguments);
+		}
+
+	}
+
+}
@@ -2,6 +2,8 @@ package com.googlecode.jsonrpc4j;
 
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
@@ -9,6 +11,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Future;
 
 /**
  * Utilities for reflection.
@@ -205,4 +208,24 @@ public abstract class ReflectionUtil {
 		}
 	}
 
+	/**
+	 * Returns the type of the result of a method that returns
+	 * a {@link Future} that a {@link JsonRpcFuture} can be, for
+	 * the client proxies to call it asynchronously.
+	 * @param method the method
+	 * @return the type of the result, or null if the method doesn't return such a future
+	 */
+	public static Type getFutureResultType(Method method) {
+		Class<?> returnType = method.getReturnType();
+		if (!Future.class.isAssignableFrom(returnType)
+			|| !returnType.isAssignableFrom(JsonRpcFuture.class)) {
+			return null;
+		}
+		Type genericType = method.getGenericReturnType();
+		if (ParameterizedType.class.isInstance(genericType)) {
+			return ParameterizedType.class.cast(genericType).getActualTypeArguments()[0];
+		}
+		return Object.class;
+	}
+
 }
@@ -0,0 +1,332 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.JsonRpcServer.JsonRpcServerResponse;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.ContentLengthSetter;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.HeaderSetter;
+
+/**
+ * Serializes responses into recycled buffers so that they can be
+ * written in one go, with their {@code Content-Length} known up front.
+ * The buffer a response starts in is sized from the recent responses
+ * of the same method, so that it rarely has to grow.  A response
+ * larger than {@code maxBufferedSize} is streamed, without a
+ * {@code Content-Length}, once it gets that large.  Responses can
+ * be compressed with {@link HttpCompression}, a buffered response
+ * only if it's large enough to be worth it and a streamed one as
+ * it's streamed.
+ */
+public class ResponseBuffers {
+
+	public static final int DEFAULT_INITIAL_SIZE		= 1024;
+	public static final int DEFAULT_MAX_BUFFERED_SIZE	= 1024*1024;
+	public static final long DEFAULT_MAX_POOLED_BYTES	= 16L*1024*1024;
+
+	private final ByteBufferPool pool;
+	private final int maxBufferedSize;
+	private final ConcurrentMap<Object, Integer> averageSizes = new ConcurrentHashMap<Object, Integer>();
+
+	/**
+	 * Creates the buffers.
+	 * @param pool the {@link ByteBufferPool}, which must hold heap buffers
+	 * @param maxBufferedSize the largest response, in bytes, that's buffered
+	 */
+	public ResponseBuffers(ByteBufferPool pool, int maxBufferedSize) {
+		if (pool.isDirect()) {
+			throw new IllegalArgumentException("The pool must hold heap buffers");
+		} else if (maxBufferedSize<0) {
+			throw new IllegalArgumentException("maxBufferedSize must be at least 0");
+		}
+		this.pool				= pool;
+		this.maxBufferedSize	= maxBufferedSize;
+	}
+
+	/**
+	 * Creates the buffers with a pool of its own.
+	 */
+	public ResponseBuffers() {
+		this(new ByteBufferPool(false, DEFAULT_INITIAL_SIZE,
+			DEFAULT_MAX_BUFFERED_SIZE, DEFAULT_MAX_POOLED_BYTES), DEFAULT_MAX_BUFFERED_SIZE);
+	}
+
+	/**
+	 * Writes a response to the given {@link OutputStream} and flushes it.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param response the response
+	 * @param ops the {@link OutputStream}
+	 * @param contentLengthSetter told the length of a buffered response, or null
+	 * @throws IOException on error
+	 */
+	public void write(
+		ObjectMapper mapper, JsonRpcServerResponse response,
+		OutputStream ops, ContentLengthSetter contentLengthSetter)
+		throws IOException {
+		write(mapper, response, ops, contentLengthSetter, null, null, null);
+	}
+
+	/**
+	 * Writes a response to the given {@link OutputStream}, compressed
+	 * with the given content coding if it's large enough, and flushes it.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param response the response
+	 * @param ops the {@link OutputStream}
+	 * @param contentLengthSetter told the length of a buffered response, or null
+	 * @param compression the {@link HttpCompression}, or null
+	 * @param encoding the content coding, or null
+	 * @param headerSetter told the {@code Content-Encoding}, or null
+	 * @throws IOException on error
+	 */
+	public void write(
+		ObjectMapper mapper, JsonRpcServerResponse response,
+		OutputStream ops, ContentLengthSetter contentLengthSetter,
+		HttpCompression compression, String encoding, HeaderSetter headerSetter)
+		throws IOException {
+		write(mapper, WireCodec.JSON, response, ops, contentLengthSetter, compression, encoding, headerSetter);
+	}
+
+	/**
+	 * Writes a response in the given {@link WireCodec} to the given
+	 * {@link OutputStream}, compressed with the given content coding
+	 * if it's large enough, and flushes it.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param codec the {@link WireCodec}
+	 * @param response the response
+	 * @param ops the {@link OutputStream}
+	 * @param contentLengthSetter told the length of a buffered response, or null
+	 * @param compression the {@link HttpCompression}, or null
+	 * @param encoding the content coding, or null
+	 * @param headerSetter told the {@code Content-Encoding}, or null
+	 * @throws IOException on error
+	 */
+	public void write(
+		ObjectMapper mapper, WireCodec codec, JsonRpcServerResponse response,
+		OutputStream ops, ContentLengthSetter contentLengthSetter,
+		HttpCompression compression, String encoding, HeaderSetter headerSetter)
+		throws IOException {
+		if (encoding==null) {
+			compression = null;
+		}
+		Object key = response.method!=null ? response.method : response.getClass();
+		SpillingOutputStream output = new SpillingOutputStream(
+			ops, estimate(key), compression, encoding, headerSetter);
+		try {
+			response.writeTo(mapper, codec, output);
+			if (output.isSpilled()) {
+				output.finish();
+			} else {
+				ByteBuffer buffer = output.buffer.detach();
+				output.buffer = null;
+				try {
+					int length = buffer.remaining();
+					record(key, length);
+					if (compression!=null && compression.shouldCompress(length)) {
+						writeCompressed(buffer, ops, contentLengthSetter, compression, encoding, headerSetter);
+					} else {
+						if (contentLengthSetter!=null) {
+							contentLengthSetter.setContentLength(length);
+						}
+						ops.write(buffer.array(), buffer.arrayOffset()+buffer.position(), length);
+					}
+				} finally {
+					pool.release(buffer);
+				}
+			}
+			ops.flush();
+		} finally {
+			output.release();
+		}
+	}
+
+	/**
+	 * Compresses a buffered response into another buffer
+	 * and writes it, with its compressed length.
+	 * @param buffer the response
+	 * @param ops the {@link OutputStream}
+	 * @param contentLengthSetter told the compressed length, or null
+	 * @param compression the {@link HttpCompression}
+	 * @param encoding the content coding
+	 * @param headerSetter told the {@code Content-Encoding}, or null
+	 * @throws IOException on error
+	 */
+	private void writeCompressed(
+		ByteBuffer buffer, OutputStream ops, ContentLengthSetter contentLengthSetter,
+		HttpCompression compression, String encoding, HeaderSetter headerSetter)
+		throws IOException {
+		ByteBufferOutputStream compressed = new ByteBufferOutputStream(pool, buffer.remaining()>>1);
+		try {
+			OutputStream compressor = compression.compress(compressed, encoding, headerSetter);
+			compressor.write(buffer.array(), buffer.arrayOffset()+buffer.position(), buffer.remaining());
+			compressor.close();
+			ByteBuffer output = compressed.detach();
+			try {
+				if (contentLengthSetter!=null) {
+					contentLengthSetter.setContentLength(output.remaining());
+				}
+				ops.write(output.array(), output.arrayOffset()+output.position(), output.remaining());
+			} finally {
+				pool.release(output);
+			}
+		} finally {
+			compressed.close();
+		}
+	}
+
+	/**
+	 * @param key the method, or the kind of response
+	 * @return the size to start a buffer with
+	 */
+	private int estimate(Object key) {
+		Integer averageSize = averageSizes.get(key);
+		if (averageSize==null) {
+			return DEFAULT_INITIAL_SIZE;
+		}
+		return Math.min(averageSize.intValue()+(averageSize.intValue()>>2), maxBufferedSize);
+	}
+
+	/**
+	 * Adds the size of a response to the moving average
+	 * of its method, which leans on the last few responses.
+	 * @param key the method, or the kind of response
+	 * @param size the size of the response
+	 */
+	private void record(Object key, int size) {
+		Integer averageSize = averageSizes.get(key);
+		averageSizes.put(key, averageSize==null
+			? size : averageSize.intValue()+((size-averageSize.intValue())>>2));
+	}
+
+	/**
+	 * @return the {@link ByteBufferPool}, for its statistics
+	 */
+	public ByteBufferPool getPool() {
+		return pool;
+	}
+
+	/**
+	 * Buffers what's written until it's too large to, and from then
+	 * on writes it straight to the underlying {@link OutputStream}.
+	 */
+	private class SpillingOutputStream
+		extends OutputStream {
+
+		private final HttpCompression compression;
+		private final String encoding;
+		private final HeaderSetter headerSetter;
+		private OutputStream ops;
+		private ByteBufferOutputStream buffer;
+
+		/**
+		 * @param ops the underlying {@link OutputStream}
+		 * @param initialCapacity the buffer's initial capacity
+		 * @param compression the {@link HttpCompression}, or null
+		 * @param encoding the content coding, or null
+		 * @param headerSetter told the {@code Content-Encoding}, or null
+		 */
+		private SpillingOutputStream(
+			OutputStream ops, int initialCapacity,
+			HttpCompression compression, String encoding, HeaderSetter headerSetter) {
+			this.ops			= ops;
+			this.buffer			= new ByteBufferOutputStream(pool, initialCapacity);
+			this.compression	= compression;
+			this.encoding		= encoding;
+			this.headerSetter	= headerSetter;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(int b)
+			throws IOException {
+			if (buffer!=null && buffer.size()<maxBufferedSize) {
+				buffer.write(b);
+			} else {
+				spill();
+				ops.write(b);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void write(byte[] b, int off, int len)
+			throws IOException {
+			if (buffer!=null && buffer.size()+len<=maxBufferedSize) {
+				buffer.write(b, off, len);
+			} else {
+				spill();
+				ops.write(b, off, len);
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void flush()
+			throws IOException {
+			if (buffer==null) {
+				ops.flush();
+			}
+		}
+
+		/**
+		 * @return whether the buffer has been spilled
+		 */
+		private boolean isSpilled() {
+			return buffer==null;
+		}
+
+		/**
+		 * Finishes a spilled response, which may be compressed.
+		 * @throws IOException on error
+		 */
+		private void finish()
+			throws IOException {
+			if (compression!=null) {
+				ops.close();
+			}
+		}
+
+		/**
+		 * Writes what's been buffered and gives the buffer back,
+		 * compressing from here on if the response is compressed.
+		 * @throws IOException on error
+		 */
+		private void spill()
+			throws IOException {
+			if (buffer==null) {
+				return;
+			}
+			if (compression!=null) {
+				ops = compression.compress(ops, encoding, headerSetter);
+			}
+			ByteBuffer buffered = buffer.detach();
+			buffer = null;
+			try {
+				ops.write(buffered.array(), buffered.arrayOffset()+buffered.position(), buffered.remaining());
+			} finally {
+				pool.release(buffered);
+			}
+		}
+
+		/**
+		 * Gives the buffer back if it hasn't been written, the stream
+		 * itself isn't closed as the generator closes it when it's done.
+		 */
+		private void release() {
+			if (buffer!=null) {
+				buffer.close();
+				buffer = null;
+			}
+		}
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Method;
+import java.lang.reflect.Type;
+
+/**
+ * A method exported by a {@link JsonRpcServer} along with the
+ * reflection data needed to dispatch a call to it.  All of the
+ * data is extracted once when the {@link DispatchIndex} is built
+ * so that requests never have to go back to the reflection API.
+ */
+public class ServiceMethod {
+
+	private final int index;
+	private final Method method;
+	private final Class<?>[] parameterTypes;
+	private final Type[] genericParameterTypes;
+	private final Type genericReturnType;
+	private final String[] parameterNames;
+
+	/**
+	 * Creates the {@code ServiceMethod} for the given {@link Method}.
+	 * @param index the method's position in its {@link DispatchIndex}
+	 * @param method the {@link Method}
+	 */
+	public ServiceMethod(int index, Method method) {
+		this.index					= index;
+		this.method					= method;
+		this.parameterTypes			= method.getParameterTypes();
+		this.genericParameterTypes	= method.getGenericParameterTypes();
+		this.genericReturnType		= method.getGenericReturnType();
+		this.parameterNames			= findParameterNames(method);
+	}
+
+	/**
+	 * Finds the name of each parameter of the given {@link Method}
+	 * from its {@link JsonRpcParam} annotation, or the deprecated
+	 * {@link JsonRpcParamName} annotation if it's not present.
+	 * Parameters without either annotation have a null name.
+	 * @param method the {@link Method}
+	 * @return the names
+	 */
+	@SuppressWarnings("deprecation")
+	private static String[] findParameterNames(Method method) {
+		Annotation[][] annotations = method.getParameterAnnotations();
+		String[] names = new String[annotations.length];
+		for (int i=0; i<annotations.length; i++) {
+			for (Annotation a : annotations[i]) {
+				if (JsonRpcParam.class.isInstance(a)) {
+					names[i] = JsonRpcParam.class.cast(a).value();
+					break;
+				} else if (JsonRpcParamName.class.isInstance(a)) {
+					names[i] = JsonRpcParamName.class.cast(a).value();
+				}
+			}
+		}
+		return names;
+	}
+
+	/**
+	 * @return the method's position in its {@link DispatchIndex}
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return the method
+	 */
+	public Method getMethod() {
+		return method;
+	}
+
+	/**
+	 * @return the number of parameters
+	 */
+	public int getParameterCount() {
+		return parameterTypes.length;
+	}
+
+	/**
+	 * @param index the parameter index
+	 * @return the parameter's type
+	 */
+	public Class<?> getParameterType(int index) {
+		return parameterTypes[index];
+	}
+
+	/**
+	 * @param index the parameter index
+	 * @return the parameter's generic type
+	 */
+	public Type getGenericParameterType(int index) {
+		return genericParameterTypes[index];
+	}
+
+	/**
+	 * @param index the parameter index
+	 * @return the parameter's name or null if it isn't named
+	 */
+	public String getParameterName(int index) {
+		return parameterNames[index];
+	}
+
+	/**
+	 * @return the generic return type
+	 */
+	public Type getGenericReturnType() {
+		return genericReturnType;
+	}
+
+}
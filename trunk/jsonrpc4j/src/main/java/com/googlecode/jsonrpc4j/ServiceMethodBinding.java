@@ -0,0 +1,183 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.lang.reflect.TypeVariable;
+import java.util.Collection;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * The {@link ObjectReader}s and {@link ObjectWriter}s used to
+ * convert the params and result of a {@link ServiceMethod}.
+ * Types are resolved once, when the method is first called, so
+ * the {@link ObjectMapper} can still be configured after the
+ * {@link JsonRpcServer} is created, but changes to it after the
+ * first call of a method aren't seen by that method.
+ */
+public class ServiceMethodBinding {
+
+	private static final Logger LOGGER = Logger.getLogger(ServiceMethodBinding.class.getName());
+
+	private final ObjectMapper mapper;
+	private final ServiceMethod method;
+	private final AsyncResultAdapter asyncResultAdapter;
+	private volatile Resolved resolved;
+
+	/**
+	 * Creates the binding for the given {@link ServiceMethod}.  When
+	 * the method returns one of the {@link AsyncResultAdapter}'s types
+	 * the result is written as the value it completes with.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param method the {@link ServiceMethod}
+	 * @param asyncResultAdapter the {@link AsyncResultAdapter} or null
+	 */
+	public ServiceMethodBinding(
+		ObjectMapper mapper, ServiceMethod method, AsyncResultAdapter asyncResultAdapter) {
+		this.mapper				= mapper;
+		this.method				= method;
+		this.asyncResultAdapter	= asyncResultAdapter;
+	}
+
+	/**
+	 * Creates the binding for the given {@link ServiceMethod}.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param method the {@link ServiceMethod}
+	 */
+	public ServiceMethodBinding(ObjectMapper mapper, ServiceMethod method) {
+		this(mapper, method, null);
+	}
+
+	/**
+	 * Finds the type of the value written in the response, which is the
+	 * return type unless it's asynchronous, when it's the type argument.
+	 * @param method the {@link ServiceMethod}
+	 * @param asyncResultAdapter the {@link AsyncResultAdapter} or null
+	 * @return the type
+	 */
+	private static Type findResultType(ServiceMethod method, AsyncResultAdapter asyncResultAdapter) {
+		Type genericReturnType = method.getGenericReturnType();
+		if (asyncResultAdapter!=null
+			&& asyncResultAdapter.isAsyncType(method.getMethod().getReturnType())) {
+			return (genericReturnType instanceof ParameterizedType)
+				? ((ParameterizedType) genericReturnType).getActualTypeArguments()[0]
+				: Object.class;
+		}
+		return genericReturnType;
+	}
+
+	/**
+	 * Creates the {@link ObjectWriter} for writing values into a
+	 * response.  Responses are flushed once they're complete so the
+	 * writer mustn't flush after each value.
+	 * @param mapper the {@link ObjectMapper}
+	 * @return the {@link ObjectWriter}
+	 */
+	public static ObjectWriter createWriter(ObjectMapper mapper) {
+		return mapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+	}
+
+	/**
+	 * Creates the writer for collections returned from methods with a
+	 * parameterized return type.  They're written as collections of the
+	 * declared element type so that type information on the element
+	 * type (such as {@link com.fasterxml.jackson.annotation.JsonTypeInfo})
+	 * is used.
+	 * @param mapper the {@link ObjectMapper}
+	 * @param genericReturnType the type of the written value
+	 * @return the {@link ObjectWriter} or null if there isn't one
+	 */
+	private static ObjectWriter createCollectionWriter(ObjectMapper mapper, Type genericReturnType) {
+		if (!(genericReturnType instanceof ParameterizedType)) {
+			return null;
+		}
+		try {
+			TypeFactory typeFactory = mapper.getTypeFactory();
+			Type actualTypeInCollection = ((ParameterizedType) genericReturnType).getActualTypeArguments()[0];
+			if (actualTypeInCollection instanceof TypeVariable) { // collection actually has a generic return type
+				actualTypeInCollection = ((TypeVariable<?>) actualTypeInCollection).getBounds()[0];
+			}
+			JavaType rootType = typeFactory.constructCollectionType(Collection.class, typeFactory.constructType(actualTypeInCollection));
+			return createWriter(mapper).withType(rootType);
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "could not do custom collection serialization falling back to default", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Reads the parameter at the given index from the given {@link JsonParser}.
+	 * @param index the parameter index
+	 * @param parser the {@link JsonParser}
+	 * @return the parameter value
+	 * @throws IOException on error
+	 */
+	public Object readParameter(int index, JsonParser parser)
+		throws IOException {
+		return resolve().parameterReaders[index].readValue(parser);
+	}
+
+	/**
+	 * Returns the {@link ObjectWriter} for writing the given result.
+	 * @param result the result
+	 * @return the {@link ObjectWriter}
+	 */
+	public ObjectWriter getResultWriter(Object result) {
+		Resolved resolved = resolve();
+		return (resolved.collectionResultWriter!=null && Collection.class.isInstance(result))
+			? resolved.collectionResultWriter : resolved.resultWriter;
+	}
+
+	/**
+	 * Resolves the readers and writers the first time they're
+	 * needed.  Threads racing to do so resolve the same ones,
+	 * so whichever is kept doesn't matter.
+	 * @return the {@link Resolved} readers and writers
+	 */
+	private Resolved resolve() {
+		Resolved resolved = this.resolved;
+		if (resolved==null) {
+			resolved = new Resolved(mapper, method, asyncResultAdapter);
+			this.resolved = resolved;
+		}
+		return resolved;
+	}
+
+	/**
+	 * The readers and writers of a method.
+	 */
+	private static class Resolved {
+
+		private final ObjectReader[] parameterReaders;
+		private final ObjectWriter resultWriter;
+		private final ObjectWriter collectionResultWriter;
+
+		/**
+		 * @param mapper the {@link ObjectMapper}
+		 * @param method the {@link ServiceMethod}
+		 * @param asyncResultAdapter the {@link AsyncResultAdapter} or null
+		 */
+		private Resolved(
+			ObjectMapper mapper, ServiceMethod method, AsyncResultAdapter asyncResultAdapter) {
+			TypeFactory typeFactory = mapper.getTypeFactory();
+			this.parameterReaders = new ObjectReader[method.getParameterCount()];
+			for (int i=0; i<parameterReaders.length; i++) {
+				parameterReaders[i] = mapper.reader(
+					typeFactory.constructType(method.getGenericParameterType(i)));
+			}
+			this.resultWriter = createWriter(mapper);
+			this.collectionResultWriter = createCollectionWriter(
+				mapper, findResultType(method, asyncResultAdapter));
+		}
+	}
+
+}
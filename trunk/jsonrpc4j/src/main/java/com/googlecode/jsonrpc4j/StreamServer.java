@@ -1,5 +1,9 @@
 package com.googlecode.jsonrpc4j;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -8,13 +12,32 @@ import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketException;
 import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.googlecode.jsonrpc4j.JsonRpcServer.JsonRpcServerResponse;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.BasicOutputStreamWrapper;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.FramedOutputStreamWrapper;
+
 import javax.net.ServerSocketFactory;
 import javax.net.ssl.SSLException;
 
@@ -28,14 +51,61 @@ public class StreamServer {
 	private static final Logger LOGGER = Logger.getLogger(StreamServer.class.getName());
 
 	private static final long SERVER_SOCKET_SO_TIMEOUT	= 5000;
+	private static final long DRAIN_POLL_INTERVAL		= 50;
+	private static final int MAX_QUEUED_REJECTIONS		= 64;
+
+	public static final int DEFAULT_MAX_IN_FLIGHT_REQUESTS = 16;
+	public static final int DEFAULT_MAX_QUEUED_CONNECTIONS = 1024;
 
-	private ThreadPoolExecutor executor;
+	/**
+	 * The kind of threads connections are handled on.
+	 */
+	public static enum ThreadMode {
+
+		/**
+		 * A pool of {@code maxThreads} platform threads, each
+		 * connection holding on to one of them.
+		 */
+		PLATFORM,
+
+		/**
+		 * A virtual thread per connection, with no limit on
+		 * the number of connections, see {@link VirtualThreads}.
+		 */
+		VIRTUAL
+	}
+
+	private volatile ExecutorService executor;
+	private volatile ExecutorService rejecter;
+	private int maxThreads;
+	private ThreadMode threadMode;
 	private ServerSocket serverSocket;
 	private JsonRpcServer jsonRpcServer;
 	private int maxClientErrors = 5;
+	private Executor pipelineExecutor;
+	private int maxInFlightRequests = DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+	private MessageFraming framing;
+	private int maxConnections			= Integer.MAX_VALUE;
+	private int maxQueuedConnections	= DEFAULT_MAX_QUEUED_CONNECTIONS;
+	private long idleTimeout			= 0;
+	private long readTimeout			= 0;
+	private long writeTimeout			= 0;
+	private HashedWheelTimer sharedTimer;
+	private volatile HashedWheelTimer timer;
+
+	private final AtomicInteger activeConnections	= new AtomicInteger(0);
+	private final AtomicLong rejectedConnections	= new AtomicLong(0);
+	private final AtomicLong rejectedRequests		= new AtomicLong(0);
+	private final AtomicLong drainedRequests		= new AtomicLong(0);
+	private final AtomicLong abortedRequests		= new AtomicLong(0);
+	private final AtomicLong idleTimeouts			= new AtomicLong(0);
+	private final AtomicLong readTimeouts			= new AtomicLong(0);
+	private final AtomicLong writeTimeouts			= new AtomicLong(0);
+	private final Set<Connection> connections		= Collections.synchronizedSet(new HashSet<Connection>());
 
 	private AtomicBoolean isStarted 	= new AtomicBoolean(false);
 	private AtomicBoolean keepRunning 	= new AtomicBoolean(false);
+	private AtomicBoolean draining		= new AtomicBoolean(false);
 
 	/**
 	 * Creates a {@code StreamServer} with the given max number
@@ -48,16 +118,34 @@ public class StreamServer {
 	 */
 	public StreamServer(
 		JsonRpcServer jsonRpcServer, int maxThreads, ServerSocket serverSocket) {
+		this(jsonRpcServer, maxThreads, serverSocket, ThreadMode.PLATFORM);
+	}
+
+	/**
+	 * Creates a {@code StreamServer} that handles connections
+	 * on the given kind of threads using the given
+	 * {@link ServerSocket} to listen for client connections.
+	 * 
+	 * @param jsonRpcServer the {@link JsonRpcServer} that will handle requests
+	 * @param maxThreads the max number of platform threads, unused for virtual threads
+	 * @param serverSocket the {@link ServerSocket} used for accepting client connections
+	 * @param threadMode the {@link ThreadMode}
+	 */
+	public StreamServer(
+		JsonRpcServer jsonRpcServer, int maxThreads,
+		ServerSocket serverSocket, ThreadMode threadMode) {
 
 		// initialize values
 		this.jsonRpcServer		= jsonRpcServer;
 		this.serverSocket		= serverSocket;
+		this.threadMode			= threadMode;
+		this.maxThreads			= maxThreads;
 
-		// create the executor server
-		executor = new ThreadPoolExecutor(
-			maxThreads+1, maxThreads+1, 0L, TimeUnit.MILLISECONDS,
-            new LinkedBlockingQueue<Runnable>());
-		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+		// make sure virtual threads are there before we're started
+		if (threadMode==ThreadMode.VIRTUAL && !VirtualThreads.isSupported()) {
+			throw new UnsupportedOperationException(
+				"Virtual threads are not supported by this runtime");
+		}
 
 		// we can't allow the server to re-throw exceptions
 		jsonRpcServer.setRethrowExceptions(false);
@@ -101,6 +189,39 @@ public class StreamServer {
 			+serverSocket.getInetAddress()
 			+":"+serverSocket.getLocalPort());
 
+		// create the executor, a thread for listening and one per
+		// connection, connections waiting for a thread are queued
+		if (threadMode==ThreadMode.VIRTUAL) {
+			executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+		} else {
+			ThreadPoolExecutor pool = new ThreadPoolExecutor(
+				maxThreads+1, maxThreads+1, 0L, TimeUnit.MILLISECONDS,
+				maxQueuedConnections>0
+					? new LinkedBlockingQueue<Runnable>(maxQueuedConnections)
+					: new SynchronousQueue<Runnable>());
+			pool.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+			executor = pool;
+		}
+
+		// connections that are turned away are told so on a thread
+		// of their own, so a client that doesn't read can't hold up
+		// the listener, those it can't keep up with are just closed
+		rejecter = new ThreadPoolExecutor(
+			1, 1, 0L, TimeUnit.MILLISECONDS,
+			new ArrayBlockingQueue<Runnable>(MAX_QUEUED_REJECTIONS),
+			new ThreadFactory() {
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "jsonrpc4j-stream-rejecter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+
+		// connections are timed out by a single timer
+		if (idleTimeout>0 || readTimeout>0 || writeTimeout>0) {
+			timer = sharedTimer!=null ? sharedTimer : new HashedWheelTimer();
+		}
+
 		// start the server
 		keepRunning.set(true);
 		executor.submit(new Server());
@@ -122,13 +243,24 @@ public class StreamServer {
 		// stop the server
 		keepRunning.set(false);
 
-		// wait for the clients to stop
-		executor.shutdownNow();
+		// wait for the clients to stop, hanging up on
+		// those that were still waiting for a thread
+		for (Runnable dropped : executor.shutdownNow()) {
+			if (Client.class.isInstance(dropped)) {
+				activeConnections.decrementAndGet();
+				Client.class.cast(dropped).hangUp();
+			}
+		}
 
 		try {
 			serverSocket.close();
 		} catch (IOException e) { /* no-op */ }
 
+		// and on those still waiting to be turned away
+		for (Runnable dropped : rejecter.shutdownNow()) {
+			Rejection.class.cast(dropped).close();
+		}
+
 		try {
 
 			// wait for it to finish
@@ -137,9 +269,16 @@ public class StreamServer {
 					2000 + SERVER_SOCKET_SO_TIMEOUT, TimeUnit.MILLISECONDS);
 			}
 
+			// stop our own timer
+			if (timer!=null && timer!=sharedTimer) {
+				timer.stop();
+			}
+			timer = null;
+
 			// set the flags
 			isStarted.set(false);
 			keepRunning.set(false);
+			draining.set(false);
 			
 		} catch (InterruptedException e) {
 			LOGGER.log(Level.SEVERE, "InterruptedException while waiting for termination", e);
@@ -148,7 +287,95 @@ public class StreamServer {
 	}
 
 	/**
-	 * Server thread.
+	 * Stops the server gracefully: it stops accepting connections,
+	 * closes those that are idle and lets the others finish the
+	 * requests they're handling, closing each once it's idle, for
+	 * up to the given time.  Then it stops as by {@link #stop()},
+	 * which aborts any requests that are still being handled.
+	 * Connections still waiting for a thread are closed without
+	 * being handled, each one that has sent something counting
+	 * as an aborted request.
+	 * See {@link #getDrainedRequests()} and {@link #getAbortedRequests()}.
+	 *
+	 * @param timeoutMillis how long to wait for requests to finish
+	 * @throws InterruptedException if a graceful shutdown didn't happen
+	 */
+	public void drain(long timeoutMillis)
+		throws InterruptedException {
+
+		// make sure we're started
+		if (!isStarted.get()) {
+			throw new IllegalStateException(
+				"The StreamServer is not started");
+		}
+
+		// stop accepting connections
+		draining.set(true);
+		try {
+			serverSocket.close();
+		} catch (IOException e) { /* no-op */ }
+
+		// close connections as they become idle, and those
+		// that haven't got a thread yet straight away
+		long deadline = System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+		while (true) {
+			abortQueuedConnections();
+			int pending = closeIdleConnections();
+			if (pending==0 && connections.isEmpty()) {
+				break;
+			} else if (System.nanoTime()-deadline>=0) {
+				abortedRequests.addAndGet(pending);
+				break;
+			}
+			Thread.sleep(DRAIN_POLL_INTERVAL);
+		}
+		LOGGER.log(Level.INFO,
+			"StreamServer drained: "+drainedRequests.get()+" requests finished, "
+			+abortedRequests.get()+" aborted");
+
+		// and stop
+		stop();
+	}
+
+	/**
+	 * Closes the connections that are waiting for a thread.
+	 */
+	private void abortQueuedConnections() {
+		ExecutorService executor = this.executor;
+		if (!ThreadPoolExecutor.class.isInstance(executor)) {
+			return;
+		}
+		List<Runnable> queued = new ArrayList<Runnable>();
+		ThreadPoolExecutor.class.cast(executor).getQueue().drainTo(queued);
+		for (Runnable dropped : queued) {
+			if (Client.class.isInstance(dropped)) {
+				activeConnections.decrementAndGet();
+				Client.class.cast(dropped).abandon();
+			}
+		}
+	}
+
+	/**
+	 * Closes the connections that are waiting for
+	 * a request and have no responses outstanding.
+	 * @return the number of responses outstanding
+	 * on the connections left open
+	 */
+	private int closeIdleConnections() {
+		List<Connection> open;
+		synchronized (connections) {
+			open = new ArrayList<Connection>(connections);
+		}
+		int pending = 0;
+		for (Connection connection : open) {
+			pending += connection.closeIfIdle();
+		}
+		return pending;
+	}
+
+	/**
+	 * Server thread, it listens for connections and hands
+	 * them to the executor unless there's no room for them.
 	 */
 	private class Server
 		implements Runnable {
@@ -161,21 +388,18 @@ public class StreamServer {
 			ServerSocket serverSocket = StreamServer.this.serverSocket;
 
 			// start the listening loop
-			Socket clientSocket = null;
-			while (StreamServer.this.keepRunning.get()) {
+			while (StreamServer.this.keepRunning.get() && !draining.get()) {
 				try {
 					// wait for a connection
 					serverSocket.setSoTimeout((int)SERVER_SOCKET_SO_TIMEOUT);
-					clientSocket = serverSocket.accept();
+					Socket clientSocket = serverSocket.accept();
 
 					// log the connection
 					LOGGER.log(Level.INFO, 
 						"Connection from "+clientSocket.getInetAddress()+":"+clientSocket.getPort());
 
-					// spawn a new Server for the next connection
-					// and break out of the server loop
-					executor.submit(new Server());
-					break;
+					// hand it off
+					admit(clientSocket);
 
 				} catch (SocketTimeoutException e) {
 					// this is expected because of so_timeout
@@ -186,12 +410,156 @@ public class StreamServer {
 					
 				} catch(IOException ioe) {
 					// this could be because the ServerSocket was closed
-					if (SocketException.class.isInstance(ioe) && !keepRunning.get()) {
+					if (SocketException.class.isInstance(ioe)
+						&& (!keepRunning.get() || draining.get())) {
 						break;
 					}
 					LOGGER.log(Level.SEVERE, "Exception while listening for clients", ioe);
 				}
 			}
+		}
+
+		/**
+		 * Hands a connection to the executor, or turns it away if
+		 * there are already {@code maxConnections} or the queue of
+		 * connections waiting for a thread is full.
+		 * @param clientSocket the client's {@link Socket}
+		 */
+		private void admit(Socket clientSocket) {
+			if (activeConnections.incrementAndGet()>maxConnections) {
+				activeConnections.decrementAndGet();
+				reject(clientSocket);
+				return;
+			}
+			try {
+				executor.execute(new Client(clientSocket));
+			} catch (RejectedExecutionException e) {
+				activeConnections.decrementAndGet();
+				reject(clientSocket);
+			}
+		}
+
+		/**
+		 * Turns a client away, telling it so off the listener thread.
+		 * @param clientSocket the client's {@link Socket}
+		 */
+		private void reject(Socket clientSocket) {
+			rejectedConnections.incrementAndGet();
+			LOGGER.log(Level.WARNING,
+				"Rejecting connection from "+clientSocket.getInetAddress()+":"+clientSocket.getPort());
+			Rejection rejection = new Rejection(clientSocket);
+			try {
+				rejecter.execute(rejection);
+			} catch (RejectedExecutionException e) {
+				rejection.close();
+			}
+		}
+	}
+
+	/**
+	 * Rejection task, it tells a client there's
+	 * no room for it and hangs up.
+	 */
+	private class Rejection
+		implements Runnable {
+
+		private final Socket clientSocket;
+
+		/**
+		 * @param clientSocket the client's {@link Socket}
+		 */
+		private Rejection(Socket clientSocket) {
+			this.clientSocket = clientSocket;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			try {
+				if (keepRunning.get()) {
+					OutputStream output = new BufferedOutputStream(clientSocket.getOutputStream());
+					MessageFraming framing = StreamServer.this.framing;
+					OutputStreamWrapper opsw = framing!=null
+						? new FramedOutputStreamWrapper(jsonRpcServer.mapper, output, framing)
+						: new BasicOutputStreamWrapper(jsonRpcServer.mapper, output);
+					opsw.writeResponse(jsonRpcServer.createOverloadedResponse(null));
+				}
+			} catch (IOException e) {
+				LOGGER.log(Level.FINE, "Unable to reject connection", e);
+			} finally {
+				close();
+			}
+		}
+
+		/**
+		 * Hangs up on the client.
+		 */
+		private void close() {
+			try {
+				clientSocket.close();
+			} catch (IOException e) { /* no-op */ }
+		}
+	}
+
+	/**
+	 * Client thread, it handles the requests of a connection.
+	 */
+	private class Client
+		implements Runnable {
+
+		private final Socket clientSocket;
+
+		/**
+		 * @param clientSocket the client's {@link Socket}
+		 */
+		private Client(Socket clientSocket) {
+			this.clientSocket = clientSocket;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void run() {
+			try {
+				if (draining.get()) {
+					abandon();
+				} else {
+					handleClient();
+				}
+			} finally {
+				activeConnections.decrementAndGet();
+			}
+		}
+
+		/**
+		 * Hangs up on a client that only got a thread, if at all,
+		 * once the server was draining, counting what it had sent
+		 * as an aborted request.
+		 */
+		private void abandon() {
+			try {
+				if (clientSocket.getInputStream().available()>0) {
+					abortedRequests.incrementAndGet();
+				}
+			} catch (IOException e) { /* no-op */ }
+			hangUp();
+		}
+
+		/**
+		 * Hangs up on the client.
+		 */
+		private void hangUp() {
+			try {
+				clientSocket.close();
+			} catch (IOException e) { /* no-op */ }
+		}
+
+		/**
+		 * Handles requests until the client hangs up,
+		 * errs too often or the server stops.
+		 */
+		private void handleClient() {
 
 			// handle the request
 			// get the streams
@@ -205,20 +573,49 @@ public class StreamServer {
 				return;
 			}
 
-			// keep handling requests
+			// framed messages are read and written whole, and the
+			// first byte is peeked at to pick the wire codec
+			MessageFraming framing = StreamServer.this.framing;
+			if (framing!=null) {
+				input = new BufferedInputStream(input);
+				output = new BufferedOutputStream(output);
+			} else if (!jsonRpcServer.getWireCodecs().isEmpty()) {
+				input = new BufferedInputStream(input);
+			}
+
+			// keep handling requests, responses to methods with
+			// asynchronous results are written when they complete
+			Connection connection = new Connection(clientSocket, output, framing);
+			input = connection.watch(input);
+			connections.add(connection);
+			boolean blocking = threadMode==ThreadMode.VIRTUAL
+				|| pipelineExecutor!=null || framing!=null;
 			int errors = 0;
 			while (StreamServer.this.keepRunning.get() && clientSocket.isConnected()) {
-				
 
-				// handle it
+				// a draining server lets idle connections go
+				if (draining.get() && connection.isIdle()) {
+					break;
+				}
+				connection.awaitRequest();
+
+				// handle it, a virtual thread can afford to block on the read
+				// and a pipelined connection's parser, or the framing's
+				// buffer, may have read ahead
 				try {
-					if (input.available()==0) {
+					if (!blocking && input.available()==0) {
 						Thread.yield();
 						continue;
 					}
 
-					jsonRpcServer.handle(input, output);
+					connection.handle(input);
 				} catch (Throwable t) {
+
+					// the client hung up, or we did while draining
+					if (clientSocket.isClosed()
+						|| (blocking && EOFException.class.isInstance(t))) {
+						break;
+					}
 					errors++;
 					if (errors<maxClientErrors) {
 						LOGGER.log(Level.SEVERE, "Exception while handling request", t);
@@ -229,7 +626,10 @@ public class StreamServer {
 				}
 			}
 
-			// clean up
+			// clean up once the outstanding responses are written
+			connection.awaitResponses();
+			connection.close();
+			connections.remove(connection);
 			try {
 				clientSocket.close();
 				input.close();
@@ -238,6 +638,492 @@ public class StreamServer {
 		}
 	}
 
+	/**
+	 * The responses of a client connection.  Responses to methods
+	 * with asynchronous results, and to every request when there's
+	 * a pipeline {@link Executor}, are written from the threads that
+	 * complete them, so writes are synchronized and the connection
+	 * keeps track of how many are outstanding.
+	 */
+	private class Connection
+		implements OutputStreamWrapper, AsyncResponseCallback {
+
+		private final Socket clientSocket;
+		private final OutputStream ops;
+		private final MessageFraming framing;
+		private WireCodec codec;
+		private OutputStreamWrapper output;
+		private JsonParser parser;
+		private int pendingResponses = 0;
+		private boolean awaitingRequest = false;
+		private HashedWheelTimer.Timeout idleTimer;
+		private HashedWheelTimer.Timeout readTimer;
+		private volatile long readingSince = 0;
+
+		/**
+		 * @param clientSocket the client's {@link Socket}
+		 * @param ops the socket's {@link OutputStream}
+		 * @param framing the {@link MessageFraming}, or null
+		 */
+		private Connection(Socket clientSocket, OutputStream ops, MessageFraming framing) {
+			this.clientSocket = clientSocket;
+			this.ops = ops;
+			this.framing = framing;
+			if (jsonRpcServer.getWireCodecs().isEmpty()) {
+				useCodec(WireCodec.JSON);
+			}
+		}
+
+		/**
+		 * Sets the {@link WireCodec} that the connection's
+		 * requests are read, and responses written, in.
+		 * @param codec the {@link WireCodec}
+		 */
+		private void useCodec(WireCodec codec) {
+			this.codec = codec;
+			this.output = framing!=null
+				? new FramedOutputStreamWrapper(jsonRpcServer.mapper, codec, ops, framing)
+				: new BasicOutputStreamWrapper(jsonRpcServer.mapper, codec, ops);
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.log(Level.FINE, "Connection from "
+					+clientSocket.getRemoteSocketAddress()+" uses "+codec);
+			}
+		}
+
+		/**
+		 * Picks the {@link WireCodec} by the first byte of the
+		 * connection, which is left in the {@link InputStream}.
+		 * @param input the {@link InputStream}, which must support marks
+		 * @throws IOException on error
+		 */
+		private void detectCodec(InputStream input)
+			throws IOException {
+			input.mark(1);
+			int firstByte = input.read();
+			if (firstByte<0) {
+				throw new EOFException("No content to map due to end-of-input");
+			}
+			input.reset();
+			useCodec(jsonRpcServer.detectWireCodec(firstByte));
+		}
+
+		/**
+		 * Wraps the connection's {@link InputStream} so that a request
+		 * counts as outstanding as soon as any of it has been read, and
+		 * so that a read of the rest of it that blocks for too long can
+		 * be told apart from one that doesn't.  Only the connection's
+		 * thread reads, and changes {@code awaitingRequest}, so no lock
+		 * is taken for a read once the request has started.
+		 * @param input the {@link InputStream}
+		 * @return the wrapped {@link InputStream}
+		 */
+		private InputStream watch(InputStream input) {
+			final boolean timed = readTimeout>0 && timer!=null;
+			return new FilterInputStream(input) {
+				@Override
+				public int read()
+					throws IOException {
+					if (timed) {
+						readingSince = System.nanoTime();
+					}
+					try {
+						int b = super.read();
+						if (b>=0 && awaitingRequest) {
+							requestStarted();
+						}
+						return b;
+					} finally {
+						if (timed) {
+							readingSince = 0;
+						}
+					}
+				}
+				@Override
+				public int read(byte[] b, int off, int len)
+					throws IOException {
+					if (timed) {
+						readingSince = System.nanoTime();
+					}
+					try {
+						int read = super.read(b, off, len);
+						if (read>0 && awaitingRequest) {
+							requestStarted();
+						}
+						return read;
+					} finally {
+						if (timed) {
+							readingSince = 0;
+						}
+					}
+				}
+			};
+		}
+
+		/**
+		 * Notes that the request being read has been read whole,
+		 * reads from now on are timed as idle.
+		 */
+		private synchronized void requestRead() {
+			cancel(readTimer);
+			readTimer = null;
+		}
+
+		/**
+		 * Closes the connection if the request it's reading has been
+		 * stuck in a single read for {@code readTimeout}, or checks
+		 * again when it could have been.
+		 */
+		private class ReadReaper
+			implements Runnable {
+
+			/**
+			 * {@inheritDoc}
+			 */
+			public void run() {
+				synchronized (Connection.this) {
+					if (readTimer==null) {
+						return;
+					}
+					long since = readingSince;
+					long blockedMillis = since!=0
+						? TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-since)
+						: 0;
+					if (blockedMillis<readTimeout) {
+						readTimer = schedule(this, readTimeout-blockedMillis);
+						return;
+					}
+					readTimer = null;
+				}
+				new Reaper(readTimeouts, "read").run();
+			}
+		}
+
+		/**
+		 * Schedules a timeout if there's a timer and a timeout.
+		 * @param task the task
+		 * @param timeout the timeout, in milliseconds
+		 * @return the {@link HashedWheelTimer.Timeout}, or null
+		 */
+		private HashedWheelTimer.Timeout schedule(Runnable task, long timeout) {
+			HashedWheelTimer timer = StreamServer.this.timer;
+			if (timer==null || timeout<=0) {
+				return null;
+			}
+			try {
+				return timer.schedule(task, timeout);
+			} catch (IllegalStateException e) {
+				return null;
+			}
+		}
+
+		/**
+		 * @param timeout the {@link HashedWheelTimer.Timeout}, or null
+		 */
+		private void cancel(HashedWheelTimer.Timeout timeout) {
+			if (timeout!=null) {
+				timeout.cancel();
+			}
+		}
+
+		/**
+		 * Notes that the connection is waiting for its next request,
+		 * if it has no responses outstanding it's idle from now.
+		 */
+		private synchronized void awaitRequest() {
+			if (!awaitingRequest) {
+				requestRead();
+				awaitingRequest = true;
+				if (pendingResponses==0) {
+					startIdleTimer();
+				}
+			}
+		}
+
+		/**
+		 * Starts timing the connection's idleness.
+		 */
+		private void startIdleTimer() {
+			cancel(idleTimer);
+			idleTimer = schedule(new Reaper(idleTimeouts, "idle"), idleTimeout);
+		}
+
+		/**
+		 * Closes the connection when it times out, the
+		 * blocked read or write then fails.
+		 */
+		private class Reaper
+			implements Runnable {
+
+			private final AtomicLong counter;
+			private final String reason;
+
+			/**
+			 * @param counter the counter of this kind of timeout
+			 * @param reason the kind of timeout
+			 */
+			private Reaper(AtomicLong counter, String reason) {
+				this.counter	= counter;
+				this.reason		= reason;
+			}
+
+			/**
+			 * {@inheritDoc}
+			 */
+			public void run() {
+				if (clientSocket.isClosed()) {
+					return;
+				}
+				counter.incrementAndGet();
+				LOGGER.log(Level.INFO, "Closing connection from "
+					+clientSocket.getInetAddress()+":"+clientSocket.getPort()
+					+" after a "+reason+" timeout");
+				try {
+					clientSocket.close();
+				} catch (IOException e) { /* no-op */ }
+			}
+		}
+
+		/**
+		 * Handles the next request from the given {@link InputStream}.
+		 * @param input the {@link InputStream}
+		 * @throws IOException on error
+		 */
+		private void handle(InputStream input)
+			throws IOException {
+			awaitRequest();
+
+			// a framed message is read whole first, and parsed from there
+			byte[] message = null;
+			if (framing!=null) {
+				if (pipelineExecutor!=null) {
+					awaitCapacity();
+				}
+				message = framing.readMessage(input);
+				requestStarted();
+				requestRead();
+				if (codec==null) {
+					useCodec(message.length>0
+						? jsonRpcServer.detectWireCodec(message[0])
+						: WireCodec.JSON);
+				}
+				if (pipelineExecutor!=null) {
+					JsonParser messageParser = codec.getJsonFactory(jsonRpcServer.mapper)
+						.createJsonParser(message);
+					try {
+						pipeline(jsonRpcServer.readRequest(messageParser));
+					} finally {
+						messageParser.close();
+					}
+					return;
+				}
+			}
+
+			// the codec of an unframed connection is
+			// picked when its first request arrives
+			if (codec==null) {
+				detectCodec(input);
+			}
+
+			// pipelined requests are read here and handled on the executor
+			if (pipelineExecutor!=null) {
+				if (parser==null) {
+					parser = codec.getJsonFactory(jsonRpcServer.mapper)
+						.createJsonParser(new NoCloseInputStream(input));
+				}
+				awaitCapacity();
+				JsonNode request = jsonRpcServer.readRequest(parser);
+				requestStarted();
+				requestRead();
+				pipeline(request);
+				return;
+			}
+
+			try {
+				if (message!=null) {
+					jsonRpcServer.handleAsync(message, 0, message.length, codec, this, this);
+				} else {
+					jsonRpcServer.handleAsync(input, codec, this, this);
+				}
+			} catch (IOException e) {
+				requestFailed();
+				throw e;
+			} catch (RuntimeException e) {
+				requestFailed();
+				throw e;
+			} finally {
+				requestRead();
+			}
+		}
+
+		/**
+		 * Counts the request being read as outstanding, once,
+		 * and starts timing the reads of the rest of it.
+		 */
+		private synchronized void requestStarted() {
+			if (awaitingRequest) {
+				awaitingRequest = false;
+				cancel(idleTimer);
+				pendingResponses++;
+				readTimer = schedule(new ReadReaper(), readTimeout);
+			}
+		}
+
+		/**
+		 * Stops counting a request that couldn't be handled.
+		 */
+		private synchronized void requestFailed() {
+			requestRead();
+			if (awaitingRequest) {
+				awaitingRequest = false;
+				cancel(idleTimer);
+			} else {
+				responseDone();
+			}
+		}
+
+		/**
+		 * @return whether no request is outstanding
+		 */
+		private synchronized boolean isIdle() {
+			return pendingResponses==0;
+		}
+
+		/**
+		 * Closes the connection if it's waiting for a
+		 * request and has no responses outstanding.
+		 * @return the number of responses outstanding
+		 */
+		private synchronized int closeIfIdle() {
+			if (awaitingRequest && pendingResponses==0) {
+				try {
+					clientSocket.close();
+				} catch (IOException e) { /* no-op */ }
+			}
+			return pendingResponses;
+		}
+
+		/**
+		 * Handles a request on the pipeline {@link Executor}, or
+		 * answers it with a server error if the executor won't
+		 * take it.
+		 * @param request the request
+		 */
+		private void pipeline(final JsonNode request) {
+			Runnable task = new Runnable() {
+				public void run() {
+					try {
+						jsonRpcServer.handleAsync(request, Connection.this, Connection.this);
+					} catch (Throwable t) {
+						LOGGER.log(Level.SEVERE, "Exception while handling request", t);
+						responseDone();
+					}
+				}
+			};
+			try {
+				pipelineExecutor.execute(task);
+			} catch (RejectedExecutionException e) {
+				rejectedRequests.incrementAndGet();
+				JsonRpcServerResponse response = jsonRpcServer.createOverloadedResponse(request);
+				try {
+					if (response!=null) {
+						writeResponse(response);
+					}
+				} catch (IOException ioe) {
+					LOGGER.log(Level.SEVERE, "Exception while writing response", ioe);
+				} finally {
+					responseDone();
+				}
+			}
+		}
+
+		/**
+		 * Waits for fewer than {@code maxInFlightRequests}
+		 * responses to be outstanding while the server is
+		 * running.
+		 */
+		private synchronized void awaitCapacity() {
+			while (pendingResponses>=maxInFlightRequests && keepRunning.get()) {
+				try {
+					wait(SERVER_SOCKET_SO_TIMEOUT);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		/**
+		 * Closes the parser of a pipelined connection.
+		 */
+		private void close() {
+			if (parser!=null) {
+				try {
+					parser.close();
+				} catch (IOException e) { /* no-op */ }
+			}
+		}
+
+		/**
+		 * Waits for the outstanding responses to be written
+		 * while the server is running.
+		 */
+		private synchronized void awaitResponses() {
+			while (pendingResponses>0 && keepRunning.get()) {
+				try {
+					wait(SERVER_SOCKET_SO_TIMEOUT);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void writeResponse(JsonRpcServerResponse response)
+			throws IOException {
+			synchronized (ops) {
+				HashedWheelTimer.Timeout writeTimer = schedule(
+					new Reaper(writeTimeouts, "write"), writeTimeout);
+				try {
+					output.writeResponse(response);
+				} finally {
+					cancel(writeTimer);
+				}
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onResponseWritten() {
+			responseDone();
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void onError(Throwable error) {
+			LOGGER.log(Level.SEVERE, "Exception while writing response", error);
+			responseDone();
+		}
+
+		/**
+		 * Counts a response as written.
+		 */
+		private synchronized void responseDone() {
+			pendingResponses--;
+			if (draining.get()) {
+				drainedRequests.incrementAndGet();
+			}
+			if (pendingResponses==0 && awaitingRequest) {
+				startIdleTimer();
+			}
+			notifyAll();
+		}
+	}
+
 	/**
 	 * @return the maxClientErrors
 	 */
@@ -252,6 +1138,203 @@ public class StreamServer {
 		this.maxClientErrors = maxClientErrors;
 	}
 
+	/**
+	 * Sets the {@link Executor} that requests are handled on,
+	 * which lets a connection keep reading requests while earlier
+	 * ones are still being handled, each response being written
+	 * whole as soon as it's ready, so possibly out of order (clients
+	 * match them up by id).  Without one (the default) a connection
+	 * handles a request at a time, on its own thread.  Requests that
+	 * the executor rejects, because its queue is full, are answered
+	 * with a server error.
+	 *
+	 * @param pipelineExecutor the pipelineExecutor to set
+	 */
+	public void setPipelineExecutor(Executor pipelineExecutor) {
+		this.pipelineExecutor = pipelineExecutor;
+	}
+
+	/**
+	 * Sets the number of requests of a connection that may be
+	 * outstanding at once before it stops reading more, when
+	 * requests are pipelined.
+	 *
+	 * @param maxInFlightRequests the maxInFlightRequests to set
+	 */
+	public void setMaxInFlightRequests(int maxInFlightRequests) {
+		if (maxInFlightRequests<1) {
+			throw new IllegalArgumentException(
+				"maxInFlightRequests must be at least 1");
+		}
+		this.maxInFlightRequests = maxInFlightRequests;
+	}
+
+	/**
+	 * Sets the {@link MessageFraming} that marks the boundaries
+	 * of the messages on each connection, clients have to use the
+	 * same framing.  Without one (the default) a message ends where
+	 * its JSON value does.
+	 *
+	 * @param framing the framing to set
+	 */
+	public void setFraming(MessageFraming framing) {
+		this.framing = framing;
+	}
+
+	/**
+	 * Sets the maximum number of open connections, including
+	 * those waiting for a thread.  Further connections are
+	 * answered with a server error and closed, which is written
+	 * on a thread of its own so that a client that doesn't read
+	 * it can't hold up the listener.
+	 *
+	 * @param maxConnections the maxConnections to set
+	 */
+	public void setMaxConnections(int maxConnections) {
+		if (maxConnections<1) {
+			throw new IllegalArgumentException(
+				"maxConnections must be at least 1");
+		}
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * Sets the maximum number of connections that may wait for
+	 * a thread when all {@code maxThreads} are busy, further
+	 * connections are answered with a server error and closed.
+	 * It's {@link #DEFAULT_MAX_QUEUED_CONNECTIONS} by default, it has
+	 * no effect with virtual threads and it takes effect when the
+	 * server is started.
+	 *
+	 * @param maxQueuedConnections the maxQueuedConnections to set
+	 */
+	public void setMaxQueuedConnections(int maxQueuedConnections) {
+		if (maxQueuedConnections<0) {
+			throw new IllegalArgumentException(
+				"maxQueuedConnections must not be negative");
+		}
+		this.maxQueuedConnections = maxQueuedConnections;
+	}
+
+	/**
+	 * @return the number of open connections, including
+	 * those waiting for a thread
+	 */
+	public int getActiveConnections() {
+		return activeConnections.get();
+	}
+
+	/**
+	 * @return the number of connections waiting for a thread
+	 */
+	public int getQueuedConnections() {
+		ExecutorService executor = this.executor;
+		return ThreadPoolExecutor.class.isInstance(executor)
+			? ThreadPoolExecutor.class.cast(executor).getQueue().size()
+			: 0;
+	}
+
+	/**
+	 * @return the number of connections that have been turned away
+	 */
+	public long getRejectedConnections() {
+		return rejectedConnections.get();
+	}
+
+	/**
+	 * @return the number of pipelined requests that have been
+	 * turned away because the pipeline executor rejected them
+	 */
+	public long getRejectedRequests() {
+		return rejectedRequests.get();
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a connection may wait for
+	 * a request, with no responses outstanding, before it's closed.
+	 * This also gets rid of connections whose client has gone away
+	 * without closing them.  Zero, the default, means forever.
+	 *
+	 * @param idleTimeout the idleTimeout to set
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, a single read of the rest of
+	 * a request that has started arriving may block before the
+	 * connection is closed.  A request is timed by one timeout,
+	 * started when its first byte arrives, which is checked every
+	 * {@code readTimeout} until the request has been read.  Zero,
+	 * the default, means forever.
+	 *
+	 * @param readTimeout the readTimeout to set
+	 */
+	public void setReadTimeout(long readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, writing a response may block
+	 * before the connection is closed.  Zero, the default, means
+	 * forever.
+	 *
+	 * @param writeTimeout the writeTimeout to set
+	 */
+	public void setWriteTimeout(long writeTimeout) {
+		this.writeTimeout = writeTimeout;
+	}
+
+	/**
+	 * Sets the {@link HashedWheelTimer} that times connections
+	 * out, so that it can be shared with other servers.  By default
+	 * the server has its own, if any timeout is set, which it stops
+	 * when it's stopped.
+	 *
+	 * @param timer the timer to set
+	 */
+	public void setTimer(HashedWheelTimer timer) {
+		this.sharedTimer = timer;
+	}
+
+	/**
+	 * @return the number of connections closed after an idle timeout
+	 */
+	public long getIdleTimeouts() {
+		return idleTimeouts.get();
+	}
+
+	/**
+	 * @return the number of connections closed after a read timeout
+	 */
+	public long getReadTimeouts() {
+		return readTimeouts.get();
+	}
+
+	/**
+	 * @return the number of connections closed after a write timeout
+	 */
+	public long getWriteTimeouts() {
+		return writeTimeouts.get();
+	}
+
+	/**
+	 * @return the number of requests that have finished
+	 * while the server was draining
+	 */
+	public long getDrainedRequests() {
+		return drainedRequests.get();
+	}
+
+	/**
+	 * @return the number of requests that were still being
+	 * handled when a drain ran out of time
+	 */
+	public long getAbortedRequests() {
+		return abortedRequests.get();
+	}
+
 	/**
 	 * @return the isStarted
 	 */
@@ -0,0 +1,138 @@
+package com.googlecode.jsonrpc4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.util.Map.Entry;
+
+/**
+ * An {@link HttpTransport} that uses {@link HttpURLConnection}, which
+ * follows redirects and keeps connections alive in the JDK's own cache
+ * (sized by the {@code http.maxConnections} system property).  A
+ * connection is only kept if its response is read to the end, so
+ * responses are drained when they're closed.
+ */
+public class UrlConnectionHttpTransport
+	implements HttpTransport {
+
+	public static final int CHUNK_SIZE = 8*1024;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public Response post(Request request)
+		throws IOException {
+		HttpURLConnection con = (HttpURLConnection)request.getUrl().openConnection(request.getProxy());
+		con.setConnectTimeout(request.getConnectTimeoutMillis());
+		con.setReadTimeout(request.getReadTimeoutMillis());
+		con.setAllowUserInteraction(false);
+		con.setDefaultUseCaches(false);
+		con.setDoInput(true);
+		con.setDoOutput(true);
+		con.setUseCaches(false);
+		con.setInstanceFollowRedirects(true);
+		con.setRequestMethod("POST");
+		for (Entry<String, String> entry : request.getHeaders().entrySet()) {
+			con.setRequestProperty(entry.getKey(), entry.getValue());
+		}
+
+		// stream the body rather than have it buffered
+		long contentLength = request.getBody().getContentLength();
+		if (contentLength>=0 && contentLength<=Integer.MAX_VALUE) {
+			con.setFixedLengthStreamingMode((int)contentLength);
+		} else {
+			con.setChunkedStreamingMode(CHUNK_SIZE);
+		}
+		con.connect();
+		try {
+			OutputStream output = con.getOutputStream();
+			request.getBody().writeTo(output);
+			output.close();
+		} catch (IOException e) {
+			con.disconnect();
+			throw e;
+		}
+		return new UrlConnectionResponse(con);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void close() {
+		// the JDK's cache closes idle connections itself
+	}
+
+	/**
+	 * The response of an {@link HttpURLConnection}.
+	 */
+	private static class UrlConnectionResponse
+		implements Response {
+
+		private final HttpURLConnection con;
+		private InputStream input;
+
+		/**
+		 * @param con the {@link HttpURLConnection}
+		 */
+		private UrlConnectionResponse(HttpURLConnection con) {
+			this.con = con;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public int getStatusCode() {
+			try {
+				return con.getResponseCode();
+			} catch (IOException e) {
+				return -1;
+			}
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public String getHeader(String name) {
+			return con.getHeaderField(name);
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public InputStream getInputStream()
+			throws IOException {
+			if (input==null) {
+				input = con.getInputStream();
+			}
+			return input;
+		}
+
+		/**
+		 * {@inheritDoc}
+		 */
+		public void close() {
+			InputStream body = input;
+			if (body==null) {
+				try {
+					body = con.getInputStream();
+				} catch (IOException e) {
+					body = con.getErrorStream();
+				}
+			}
+			if (body==null) {
+				return;
+			}
+			try {
+				byte[] buffer = new byte[CHUNK_SIZE];
+				while (body.read(buffer)>=0) {
+					// drained so that the connection can be reused
+				}
+				body.close();
+			} catch (IOException e) {
+				con.disconnect();
+			}
+		}
+	}
+
+}
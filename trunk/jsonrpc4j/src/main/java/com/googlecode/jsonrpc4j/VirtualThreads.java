@@ -0,0 +1,74 @@
+package com.googlecode.jsonrpc4j;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads on runtimes that have them (Java 21
+ * and later).  They're looked up reflectively so that the library
+ * still runs on older runtimes.  The {@link ExecutorService}s
+ * returned here can be given to {@link StreamServer} (see
+ * {@link StreamServer.ThreadMode#VIRTUAL}) or to
+ * {@link JsonRpcServer#setBatchExecutor(java.util.concurrent.Executor)}
+ * so that each call runs on its own virtual thread.
+ */
+public final class VirtualThreads {
+
+	private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactoryMethod();
+
+	private VirtualThreads() {
+		// no instances
+	}
+
+	/**
+	 * @return whether the runtime supports virtual threads
+	 */
+	public static boolean isSupported() {
+		return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR!=null;
+	}
+
+	/**
+	 * Creates an {@link ExecutorService} that starts a new
+	 * virtual thread for each task.
+	 *
+	 * @return the {@link ExecutorService}
+	 * @throws UnsupportedOperationException if the runtime doesn't support virtual threads
+	 */
+	public static ExecutorService newVirtualThreadPerTaskExecutor() {
+		if (NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR==null) {
+			throw new UnsupportedOperationException(
+				"Virtual threads aren't supported by this runtime");
+		}
+		try {
+			return ExecutorService.class.cast(
+				NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null));
+		} catch (IllegalAccessException e) {
+			throw new UnsupportedOperationException(e.getMessage());
+		} catch (InvocationTargetException e) {
+			throw new UnsupportedOperationException(e.getTargetException().getMessage());
+		}
+	}
+
+	/**
+	 * Finds {@code Executors.newVirtualThreadPerTaskExecutor()}, it's
+	 * tried out once because on some runtimes it exists but is a
+	 * preview feature that hasn't been enabled.
+	 * @return the method or null if it can't be used
+	 */
+	private static Method findFactoryMethod() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			ExecutorService.class.cast(method.invoke(null)).shutdown();
+			return method;
+		} catch (NoSuchMethodException e) {
+			return null;
+		} catch (IllegalAccessException e) {
+			return null;
+		} catch (InvocationTargetException e) {
+			return null;
+		}
+	}
+
+}
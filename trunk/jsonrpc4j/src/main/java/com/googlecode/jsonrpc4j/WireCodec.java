@@ -0,0 +1,232 @@
+package com.googlecode.jsonrpc4j;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * The encoding that JSON-RPC messages are sent in, JSON itself
+ * or one of the binary formats that Jackson has a {@link JsonFactory}
+ * for, such as Smile, CBOR or MessagePack.  Over http the codec
+ * is picked by content type, on a stream connection by the first
+ * byte that the client sends (see
+ * {@link JsonRpcServer#setWireCodecs(java.util.List)}).  The binary
+ * formats' factories are looked up reflectively, so their jars only
+ * have to be on the classpath of applications that use them, in a
+ * version built for the jackson-core that's there:
+ * <ul>
+ * <li>Smile: jackson-dataformat-smile 2.0.0 or later, the same minor
+ * version as jackson-core</li>
+ * <li>CBOR: jackson-dataformat-cbor 2.4.0 or later, which needs
+ * jackson-core 2.4 or later</li>
+ * <li>MessagePack: org.msgpack's jackson-dataformat-msgpack 0.7.0 or
+ * later, which needs jackson-core 2.6 or later</li>
+ * </ul>
+ * A factory that doesn't link against the jackson-core there is
+ * treated as if it weren't on the classpath.
+ */
+public class WireCodec {
+
+	/**
+	 * Plain JSON, read and written with the {@link ObjectMapper}'s
+	 * own {@link JsonFactory}.
+	 */
+	public static final WireCodec JSON = new WireCodec("json", null,
+		new String[] {
+			JsonRpcServer.JSONRPC_RESPONSE_CONTENT_TYPE,
+			"application/json",
+			"application/jsonrequest" },
+		new int[] { ' ', '\t', '\r', '\n', '{', '[', 0xEF });
+
+	public static final String SMILE_FACTORY_CLASS			= "com.fasterxml.jackson.dataformat.smile.SmileFactory";
+	public static final String CBOR_FACTORY_CLASS			= "com.fasterxml.jackson.dataformat.cbor.CBORFactory";
+	public static final String MESSAGE_PACK_FACTORY_CLASS	= "org.msgpack.jackson.dataformat.MessagePackFactory";
+
+	private final String name;
+	private final JsonFactory factory;
+	private final String[] contentTypes;
+	private final boolean[] firstBytes = new boolean[256];
+
+	/**
+	 * Creates the codec.
+	 * @param name the name, for logging
+	 * @param factory the {@link JsonFactory}, or null for the {@link ObjectMapper}'s
+	 * @param contentTypes the content types it's sent as, the first is the one sent
+	 * @param firstBytes the bytes that a message in it can start with
+	 */
+	public WireCodec(String name, JsonFactory factory, String[] contentTypes, int[] firstBytes) {
+		if (contentTypes.length==0) {
+			throw new IllegalArgumentException("There must be at least one content type");
+		}
+		this.name			= name;
+		this.factory		= factory;
+		this.contentTypes	= contentTypes.clone();
+		for (int b : firstBytes) {
+			this.firstBytes[b & 0xFF] = true;
+		}
+	}
+
+	/**
+	 * Creates the Smile codec, its messages start
+	 * with the {@code :)} of its header.
+	 * @return the codec
+	 * @throws UnsupportedOperationException if jackson-dataformat-smile isn't on the
+	 * classpath, or is too old or too new for its jackson-core
+	 */
+	public static WireCodec smile() {
+		return new WireCodec("smile", createFactory(SMILE_FACTORY_CLASS),
+			new String[] { "application/x-jackson-smile", "application/smile" },
+			new int[] { ':' });
+	}
+
+	/**
+	 * Creates the CBOR codec, its messages start with
+	 * an array, a map or the self-describe tag.
+	 * @return the codec
+	 * @throws UnsupportedOperationException if jackson-dataformat-cbor isn't on the
+	 * classpath, or is too old or too new for its jackson-core
+	 */
+	public static WireCodec cbor() {
+		return new WireCodec("cbor", createFactory(CBOR_FACTORY_CLASS),
+			new String[] { "application/cbor" },
+			concat(range(0x80, 0xBF), new int[] { 0xD9 }));
+	}
+
+	/**
+	 * Creates the MessagePack codec, its messages start with an
+	 * array or a map.  CBOR arrays start with the same bytes as
+	 * MessagePack's short arrays and maps, so a stream connection
+	 * that starts with one of them is read with whichever of the
+	 * two codecs comes first.
+	 * @return the codec
+	 * @throws UnsupportedOperationException if jackson-dataformat-msgpack isn't on the
+	 * classpath, or is too old or too new for its jackson-core
+	 */
+	public static WireCodec messagePack() {
+		return new WireCodec("msgpack", createFactory(MESSAGE_PACK_FACTORY_CLASS),
+			new String[] { "application/msgpack", "application/x-msgpack" },
+			concat(range(0x80, 0x9F), range(0xDC, 0xDF)));
+	}
+
+	/**
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return the content type that messages are sent as
+	 */
+	public String getContentType() {
+		return contentTypes[0];
+	}
+
+	/**
+	 * @return the {@link JsonFactory}, or null if it's the {@link ObjectMapper}'s
+	 */
+	public JsonFactory getJsonFactory() {
+		return factory;
+	}
+
+	/**
+	 * @param mapper the {@link ObjectMapper}
+	 * @return the {@link JsonFactory} to read and write messages with
+	 */
+	public JsonFactory getJsonFactory(ObjectMapper mapper) {
+		return factory!=null ? factory : mapper.getJsonFactory();
+	}
+
+	/**
+	 * @return whether it's plain JSON, which can be pretty printed
+	 */
+	public boolean isText() {
+		return factory==null;
+	}
+
+	/**
+	 * @param contentType a content type, with or without parameters, or null
+	 * @return whether it's one this codec is sent as
+	 */
+	public boolean matchesContentType(String contentType) {
+		if (contentType==null) {
+			return false;
+		}
+		int semicolon = contentType.indexOf(';');
+		if (semicolon>=0) {
+			contentType = contentType.substring(0, semicolon);
+		}
+		contentType = contentType.trim();
+		for (String type : contentTypes) {
+			if (type.equalsIgnoreCase(contentType)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param b the first byte of a message
+	 * @return whether a message in this codec can start with it
+	 */
+	public boolean matchesFirstByte(int b) {
+		return firstBytes[b & 0xFF];
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public String toString() {
+		return name;
+	}
+
+	/**
+	 * Instantiates a {@link JsonFactory} by class name.
+	 * @param className the class name
+	 * @return the {@link JsonFactory}
+	 * @throws UnsupportedOperationException if it can't be, as when it
+	 * isn't on the classpath or doesn't link against the jackson-core that is
+	 */
+	private static JsonFactory createFactory(String className) {
+		try {
+			return JsonFactory.class.cast(Class.forName(className).newInstance());
+		} catch (ClassNotFoundException e) {
+			throw new UnsupportedOperationException(className+" isn't on the classpath");
+		} catch (InstantiationException e) {
+			throw new UnsupportedOperationException(e.getMessage());
+		} catch (IllegalAccessException e) {
+			throw new UnsupportedOperationException(e.getMessage());
+		} catch (LinkageError e) {
+			UnsupportedOperationException unsupported = new UnsupportedOperationException(
+				className+" doesn't link against this jackson-core: "+e);
+			unsupported.initCause(e);
+			throw unsupported;
+		}
+	}
+
+	/**
+	 * @param from the first byte
+	 * @param to the last byte
+	 * @return the bytes from {@code from} to {@code to}
+	 */
+	private static int[] range(int from, int to) {
+		int[] bytes = new int[to-from+1];
+		for (int i=0; i<bytes.length; i++) {
+			bytes[i] = from+i;
+		}
+		return bytes;
+	}
+
+	/**
+	 * @param a some bytes
+	 * @param b some more bytes
+	 * @return both
+	 */
+	private static int[] concat(int[] a, int[] b) {
+		int[] bytes = new int[a.length+b.length];
+		System.arraycopy(a, 0, bytes, 0, a.length);
+		System.arraycopy(b, 0, bytes, a.length, b.length);
+		return bytes;
+	}
+
+}
@@ -11,10 +11,14 @@ import javax.servlet.http.HttpServletResponse;
 import com.fasterxml.jackson.core.JsonParseException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.HttpCompression;
 import com.googlecode.jsonrpc4j.JsonRpcServer;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.ContentLengthSetter;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.HeaderSetter;
 import com.googlecode.jsonrpc4j.OutputStreamWrapper.HttpCodeSetter;
 import com.googlecode.jsonrpc4j.OutputStreamWrapper.OutputStreamWrapperWithHTTPErrorCode;
 import com.googlecode.jsonrpc4j.StandardJsonError;
+import com.googlecode.jsonrpc4j.WireCodec;
 
 public class JsonRpcServerForHttp extends JsonRpcServer {
 	
@@ -55,9 +59,28 @@ public class JsonRpcServerForHttp extends JsonRpcServer {
 			}
 		};
 		OutputStreamWrapperWithHTTPErrorCode opsw = null;
+		WireCodec codec = findWireCodec(request.getContentType());
 		
 		try {
-			opsw = new OutputStreamWrapperWithHTTPErrorCode(mapper, response.getOutputStream(), httpCodeSetter);
+			WireCodec responseCodec = negotiateWireCodec(request.getHeader("Accept"), codec);
+			response.setContentType(responseCodec.getContentType());
+			HttpCompression compression = getHttpCompression();
+			String encoding = null;
+			if (compression!=null) {
+				encoding = compression.negotiate(request.getHeader("Accept-Encoding"));
+				response.setHeader("Vary", "Accept-Encoding");
+			}
+			opsw = new OutputStreamWrapperWithHTTPErrorCode(mapper, responseCodec, response.getOutputStream(),
+				httpCodeSetter, getResponseBuffers(), new ContentLengthSetter() {
+					public void setContentLength(int contentLength) {
+						response.setContentLength(contentLength);
+					}
+				},
+				compression, encoding, new HeaderSetter() {
+					public void setHeader(String name, String value) {
+						response.setHeader(name, value);
+					}
+				});
 		} catch (IOException e1) {
 			LOGGER.log(Level.WARNING, "Exception getting the response's output stream", e1);
 			try {
@@ -75,8 +98,11 @@ public class JsonRpcServerForHttp extends JsonRpcServer {
 				writeAndFlushResponseQuietly(opsw, createErrorResponse("2.0", 0, StandardJsonError.INVALID_REQUEST, null));
 				return;
 			}
+			if (getHttpCompression()!=null) {
+				ips = getHttpCompression().decompress(ips, request.getHeader("Content-Encoding"));
+			}
 			
-			super.handle( request.getInputStream(), opsw );
+			super.handle( ips, codec, opsw );
 		} catch (JsonParseException pe) {
 			LOGGER.log(Level.WARNING, "JsonParseException when handling request", pe);
 			writeAndFlushResponseQuietly(opsw, createErrorResponse("2.0", "null", StandardJsonError.PARSE_ERROR, null));
@@ -1,14 +1,24 @@
 package com.googlecode.jsonrpc4j.spring;
 
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 import org.springframework.beans.factory.BeanFactoryUtils;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.AsyncResultAdapter;
+import com.googlecode.jsonrpc4j.DefaultAsyncResultAdapter;
 import com.googlecode.jsonrpc4j.ErrorResolver;
+import com.googlecode.jsonrpc4j.HttpCompression;
+import com.googlecode.jsonrpc4j.InvokerFactory;
 import com.googlecode.jsonrpc4j.JsonRpcServer;
+import com.googlecode.jsonrpc4j.NotificationExecutor;
 import com.googlecode.jsonrpc4j.ProxyUtil;
+import com.googlecode.jsonrpc4j.WireCodec;
 
 /**
  * Abstract class for exposing composite services via spring.
@@ -25,6 +35,15 @@ public abstract class AbstractCompositeJsonServiceExporter
 	private boolean rethrowExceptions = false;
 	private boolean allowExtraParams = false;
 	private boolean allowLessParams	= false;
+	private InvokerFactory invokerFactory = null;
+	private Executor batchExecutor = null;
+	private int maxBatchParallelism = 0;
+	private int maxBatchSize = 0;
+	private int maxBatchInFlight = 0;
+	private NotificationExecutor notificationExecutor;
+	private AsyncResultAdapter asyncResultAdapter = null;
+	private HttpCompression httpCompression = null;
+	private List<WireCodec> wireCodecs = Collections.emptyList();
 
 	private JsonRpcServer jsonRpcServer;
 
@@ -75,6 +94,21 @@ public abstract class AbstractCompositeJsonServiceExporter
 		jsonRpcServer.setRethrowExceptions(rethrowExceptions);
 		jsonRpcServer.setAllowExtraParams(allowExtraParams);
 		jsonRpcServer.setAllowLessParams(allowLessParams);
+		jsonRpcServer.setInvokerFactory(invokerFactory);
+		jsonRpcServer.setBatchExecutor(batchExecutor);
+		if (maxBatchParallelism>0) {
+			jsonRpcServer.setMaxBatchParallelism(maxBatchParallelism);
+		}
+		if (maxBatchSize>0) {
+			jsonRpcServer.setMaxBatchSize(maxBatchSize);
+		}
+		if (maxBatchInFlight>0) {
+			jsonRpcServer.setMaxBatchInFlight(maxBatchInFlight);
+		}
+		jsonRpcServer.setNotificationExecutor(notificationExecutor);
+		jsonRpcServer.setAsyncResultAdapter(asyncResultAdapter);
+		jsonRpcServer.setHttpCompression(httpCompression);
+		jsonRpcServer.setWireCodecs(wireCodecs);
 
 		// export
 		exportService();
@@ -88,6 +122,10 @@ public abstract class AbstractCompositeJsonServiceExporter
 	}
 
 	/**
+	 * Sets the {@link ObjectMapper}, which is read from when each
+	 * method is first called, so changes to its configuration after
+	 * the service has handled requests aren't seen.
+	 *
 	 * @param objectMapper the objectMapper to set
 	 */
 	public void setObjectMapper(ObjectMapper objectMapper) {
@@ -150,4 +188,69 @@ public abstract class AbstractCompositeJsonServiceExporter
 		this.services = services;
 	}
 
+	/**
+	 * @param invokerFactory the invokerFactory to set
+	 */
+	public void setInvokerFactory(InvokerFactory invokerFactory) {
+		this.invokerFactory = invokerFactory;
+	}
+
+	/**
+	 * @param batchExecutor the batchExecutor to set
+	 */
+	public void setBatchExecutor(Executor batchExecutor) {
+		this.batchExecutor = batchExecutor;
+	}
+
+	/**
+	 * @param maxBatchParallelism the maxBatchParallelism to set
+	 */
+	public void setMaxBatchParallelism(int maxBatchParallelism) {
+		this.maxBatchParallelism = maxBatchParallelism;
+	}
+
+	/**
+	 * @param maxBatchSize the maxBatchSize to set
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+
+	/**
+	 * @param maxBatchInFlight the maxBatchInFlight to set
+	 */
+	public void setMaxBatchInFlight(int maxBatchInFlight) {
+		this.maxBatchInFlight = maxBatchInFlight;
+	}
+
+	/**
+	 * @param notificationExecutor the notificationExecutor to set
+	 */
+	public void setNotificationExecutor(NotificationExecutor notificationExecutor) {
+		this.notificationExecutor = notificationExecutor;
+	}
+
+	/**
+	 * Sets the {@link AsyncResultAdapter} of the server, there's
+	 * none by default, see {@link DefaultAsyncResultAdapter}.
+	 * @param asyncResultAdapter the asyncResultAdapter to set
+	 */
+	public void setAsyncResultAdapter(AsyncResultAdapter asyncResultAdapter) {
+		this.asyncResultAdapter = asyncResultAdapter;
+	}
+
+	/**
+	 * @param httpCompression the httpCompression to set
+	 */
+	public void setHttpCompression(HttpCompression httpCompression) {
+		this.httpCompression = httpCompression;
+	}
+
+	/**
+	 * @param wireCodecs the wireCodecs to set
+	 */
+	public void setWireCodecs(List<WireCodec> wireCodecs) {
+		this.wireCodecs = wireCodecs;
+	}
+
 }
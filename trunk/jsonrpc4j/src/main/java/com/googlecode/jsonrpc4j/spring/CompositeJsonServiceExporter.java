@@ -1,13 +1,16 @@
 package com.googlecode.jsonrpc4j.spring;
 
 import java.io.IOException;
+import java.util.concurrent.Executor;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.web.HttpRequestHandler;
 
+import com.googlecode.jsonrpc4j.AsyncServletHandler;
 import com.googlecode.jsonrpc4j.JsonRpcServer;
 
 /**
@@ -17,9 +20,17 @@ import com.googlecode.jsonrpc4j.JsonRpcServer;
  */
 public class CompositeJsonServiceExporter
 	extends AbstractCompositeJsonServiceExporter
-	implements HttpRequestHandler {
+	implements HttpRequestHandler,
+	DisposableBean {
+
+	public static final int DEFAULT_ASYNC_THREADS = 50;
 
 	private JsonRpcServer jsonRpcServer;
+	private AsyncServletHandler asyncHandler;
+	private boolean asyncMode	= false;
+	private Executor asyncExecutor;
+	private int asyncThreads	= DEFAULT_ASYNC_THREADS;
+	private long asyncTimeout	= -1;
 
 	/**
 	 * {@inheritDoc}
@@ -27,6 +38,24 @@ public class CompositeJsonServiceExporter
 	protected void exportService()
 		throws Exception {
 		jsonRpcServer = getJsonRpcServer();
+
+		// requests are handled off of the container's threads
+		if (asyncMode) {
+			asyncHandler = (asyncExecutor!=null)
+				? new AsyncServletHandler(jsonRpcServer, asyncExecutor)
+				: new AsyncServletHandler(jsonRpcServer, asyncThreads);
+			asyncHandler.setTimeout(asyncTimeout);
+		}
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	public void destroy()
+		throws Exception {
+		if (asyncHandler!=null) {
+			asyncHandler.shutdown();
+		}
 	}
 
 	/**
@@ -35,8 +64,46 @@ public class CompositeJsonServiceExporter
 	public void handleRequest(HttpServletRequest request, HttpServletResponse response)
 		throws ServletException,
 		IOException {
+		if (asyncHandler!=null) {
+			asyncHandler.handle(request, response);
+			return;
+		}
 		jsonRpcServer.handle(request, response);
 		response.getOutputStream().flush();
 	}
 
+	/**
+	 * Sets whether requests are handled in Servlet 3.1 async
+	 * mode, see {@link AsyncServletHandler}.
+	 *
+	 * @param asyncMode the asyncMode to set
+	 */
+	public void setAsyncMode(boolean asyncMode) {
+		this.asyncMode = asyncMode;
+	}
+
+	/**
+	 * Sets the {@link Executor} requests are handled on in async
+	 * mode, when not set a pool of {@code asyncThreads} is used.
+	 *
+	 * @param asyncExecutor the asyncExecutor to set
+	 */
+	public void setAsyncExecutor(Executor asyncExecutor) {
+		this.asyncExecutor = asyncExecutor;
+	}
+
+	/**
+	 * @param asyncThreads the asyncThreads to set
+	 */
+	public void setAsyncThreads(int asyncThreads) {
+		this.asyncThreads = asyncThreads;
+	}
+
+	/**
+	 * @param asyncTimeout the asyncTimeout to set
+	 */
+	public void setAsyncTimeout(long asyncTimeout) {
+		this.asyncTimeout = asyncTimeout;
+	}
+
 }
@@ -17,9 +17,12 @@ import org.springframework.context.ApplicationContextAware;
 import org.springframework.remoting.support.UrlBasedRemoteAccessor;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.HttpCompression;
+import com.googlecode.jsonrpc4j.HttpTransport;
 import com.googlecode.jsonrpc4j.JsonRpcHttpClient;
 import com.googlecode.jsonrpc4j.JsonRpcClient.RequestListener;
 import com.googlecode.jsonrpc4j.ReflectionUtil;
+import com.googlecode.jsonrpc4j.WireCodec;
 
 /**
  * {@link FactoryBean} for creating a {@link UrlBasedRemoteAccessor}
@@ -39,6 +42,10 @@ public class JsonProxyFactoryBean
 	private ObjectMapper		objectMapper		= null;
 	private JsonRpcHttpClient	jsonRpcHttpClient	= null;
 	private Map<String, String>	extraHttpHeaders	= new HashMap<String, String>();
+	private HttpCompression		httpCompression		= null;
+	private boolean				compressRequests	= false;
+	private WireCodec			wireCodec			= WireCodec.JSON;
+	private HttpTransport		httpTransport		= null;
 	private ApplicationContext	applicationContext;
 
 	/**
@@ -72,6 +79,12 @@ public class JsonProxyFactoryBean
 		try {
 			jsonRpcHttpClient = new JsonRpcHttpClient(objectMapper, new URL(getServiceUrl()), extraHttpHeaders);
 			jsonRpcHttpClient.setRequestListener(requestListener);
+			jsonRpcHttpClient.setHttpCompression(httpCompression);
+			jsonRpcHttpClient.setCompressRequests(compressRequests);
+			jsonRpcHttpClient.setWireCodec(wireCodec);
+			if (httpTransport!=null) {
+				jsonRpcHttpClient.setHttpTransport(httpTransport);
+			}
 		} catch (MalformedURLException mue) {
 			throw new RuntimeException(mue);
 		}
@@ -92,6 +105,15 @@ public class JsonProxyFactoryBean
 		Object arguments = ReflectionUtil.parseArguments(
 			invocation.getMethod(), invocation.getArguments(), useNamedParams);
 
+		// methods returning futures are invoked asynchronously
+		Type futureResultType = ReflectionUtil.getFutureResultType(invocation.getMethod());
+		if (futureResultType!=null) {
+			return jsonRpcHttpClient.invokeAsync(
+				invocation.getMethod().getName(),
+				arguments,
+				futureResultType, extraHttpHeaders);
+		}
+
 		// invoke it
 		return jsonRpcHttpClient.invoke(
 			invocation.getMethod().getName(),
@@ -156,4 +178,32 @@ public class JsonProxyFactoryBean
 		this.useNamedParams = useNamedParams;
 	}
 
+	/**
+	 * @param httpCompression the httpCompression to set
+	 */
+	public void setHttpCompression(HttpCompression httpCompression) {
+		this.httpCompression = httpCompression;
+	}
+
+	/**
+	 * @param compressRequests the compressRequests to set
+	 */
+	public void setCompressRequests(boolean compressRequests) {
+		this.compressRequests = compressRequests;
+	}
+
+	/**
+	 * @param wireCodec the wireCodec to set
+	 */
+	public void setWireCodec(WireCodec wireCodec) {
+		this.wireCodec = wireCodec;
+	}
+
+	/**
+	 * @param httpTransport the httpTransport to set
+	 */
+	public void setHttpTransport(HttpTransport httpTransport) {
+		this.httpTransport = httpTransport;
+	}
+
 }
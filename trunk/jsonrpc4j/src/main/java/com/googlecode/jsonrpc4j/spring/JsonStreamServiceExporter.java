@@ -2,11 +2,14 @@ package com.googlecode.jsonrpc4j.spring;
 
 import java.net.InetAddress;
 import java.net.ServerSocket;
+import java.util.concurrent.Executor;
 
 import javax.net.ServerSocketFactory;
 
 import org.springframework.beans.factory.DisposableBean;
 
+import com.googlecode.jsonrpc4j.MessageFraming;
+import com.googlecode.jsonrpc4j.NioStreamServer;
 import com.googlecode.jsonrpc4j.StreamServer;
 
 /**
@@ -25,6 +28,8 @@ public class JsonStreamServiceExporter
 	public static final int DEFAULT_BACKLOG				= 0;
 	public static final int DEFAULT_MAX_CLIENT_ERRORS	= 5;
 	public static final String DEFAULT_HOSTNAME			= "0.0.0.0";
+	public static final int DEFAULT_IO_THREADS			= 2;
+	public static final long DEFAULT_DRAIN_TIMEOUT		= 10000;
 
 	private ServerSocketFactory serverSocketFactory;
 	private int maxThreads		= DEFAULT_MAX_THREADS;
@@ -32,8 +37,21 @@ public class JsonStreamServiceExporter
 	private int backlog			= DEFAULT_BACKLOG;
 	private int maxClientErrors	= DEFAULT_MAX_CLIENT_ERRORS;
 	private String hostName		= DEFAULT_HOSTNAME;
+	private boolean nio			= false;
+	private int ioThreads		= DEFAULT_IO_THREADS;
+	private boolean virtualThreads = false;
+	private Executor pipelineExecutor;
+	private int maxInFlightRequests = StreamServer.DEFAULT_MAX_IN_FLIGHT_REQUESTS;
+	private MessageFraming framing;
+	private int maxConnections		= Integer.MAX_VALUE;
+	private int maxQueuedConnections = StreamServer.DEFAULT_MAX_QUEUED_CONNECTIONS;
+	private long drainTimeout	= DEFAULT_DRAIN_TIMEOUT;
+	private long idleTimeout	= 0;
+	private long readTimeout	= 0;
+	private long writeTimeout	= 0;
 	
 	private StreamServer streamServer;
+	private NioStreamServer nioStreamServer;
 
 	/**
 	 * {@inheritDoc}
@@ -42,6 +60,18 @@ public class JsonStreamServiceExporter
 	protected void exportService()
 		throws Exception {
 
+		// the non-blocking engine has its own threads for I/O
+		if (nio) {
+			if (nioStreamServer==null) {
+				nioStreamServer = new NioStreamServer(
+					getJsonRpcServer(), ioThreads, maxThreads,
+					port, backlog, InetAddress.getByName(hostName));
+				nioStreamServer.setMaxClientErrors(maxClientErrors);
+			}
+			nioStreamServer.start();
+			return;
+		}
+
 		// create a stream server if needed
 		if (streamServer==null) {
 	
@@ -55,8 +85,17 @@ public class JsonStreamServiceExporter
 				.createServerSocket(port, backlog, InetAddress.getByName(hostName));
 	
 			// create the stream server
-			streamServer = new StreamServer(getJsonRpcServer(), maxThreads, serverSocket);
+			streamServer = new StreamServer(getJsonRpcServer(), maxThreads, serverSocket,
+				virtualThreads ? StreamServer.ThreadMode.VIRTUAL : StreamServer.ThreadMode.PLATFORM);
 			streamServer.setMaxClientErrors(maxClientErrors);
+			streamServer.setPipelineExecutor(pipelineExecutor);
+			streamServer.setMaxInFlightRequests(maxInFlightRequests);
+			streamServer.setFraming(framing);
+			streamServer.setMaxConnections(maxConnections);
+			streamServer.setMaxQueuedConnections(maxQueuedConnections);
+			streamServer.setIdleTimeout(idleTimeout);
+			streamServer.setReadTimeout(readTimeout);
+			streamServer.setWriteTimeout(writeTimeout);
 		}
 
 		// start it
@@ -68,7 +107,11 @@ public class JsonStreamServiceExporter
 	 */
 	public void destroy()
 		throws Exception {
-		streamServer.stop();
+		if (nioStreamServer!=null) {
+			nioStreamServer.stop();
+		} else {
+			streamServer.drain(drainTimeout);
+		}
 	}
 
 	/**
@@ -120,4 +163,121 @@ public class JsonStreamServiceExporter
 		this.maxClientErrors = maxClientErrors;
 	}
 
+	/**
+	 * Sets whether the {@link NioStreamServer} is used instead
+	 * of the {@link StreamServer}, {@code maxThreads} being its
+	 * number of worker threads.
+	 *
+	 * @param nio the nio to set
+	 */
+	public void setNio(boolean nio) {
+		this.nio = nio;
+	}
+
+	/**
+	 * Sets whether the {@link StreamServer} handles each connection
+	 * on its own virtual thread, which needs Java 21 or later, in
+	 * which case {@code maxThreads} doesn't apply.
+	 *
+	 * @param virtualThreads the virtualThreads to set
+	 */
+	public void setVirtualThreads(boolean virtualThreads) {
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Sets the {@link Executor} the {@link StreamServer} handles
+	 * requests on so that each connection's requests are pipelined,
+	 * see {@link StreamServer#setPipelineExecutor(Executor)}.
+	 *
+	 * @param pipelineExecutor the pipelineExecutor to set
+	 */
+	public void setPipelineExecutor(Executor pipelineExecutor) {
+		this.pipelineExecutor = pipelineExecutor;
+	}
+
+	/**
+	 * @param maxInFlightRequests the maxInFlightRequests to set
+	 */
+	public void setMaxInFlightRequests(int maxInFlightRequests) {
+		this.maxInFlightRequests = maxInFlightRequests;
+	}
+
+	/**
+	 * Sets the {@link MessageFraming} of the {@link StreamServer},
+	 * see {@link StreamServer#setFraming(MessageFraming)}.
+	 *
+	 * @param framing the framing to set
+	 */
+	public void setFraming(MessageFraming framing) {
+		this.framing = framing;
+	}
+
+	/**
+	 * @param maxConnections the maxConnections to set
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * @param maxQueuedConnections the maxQueuedConnections to set
+	 */
+	public void setMaxQueuedConnections(int maxQueuedConnections) {
+		this.maxQueuedConnections = maxQueuedConnections;
+	}
+
+	/**
+	 * Sets how long, in milliseconds, the {@link StreamServer} is given
+	 * to finish the requests it's handling when the exporter is destroyed,
+	 * see {@link StreamServer#drain(long)}.
+	 *
+	 * @param drainTimeout the drainTimeout to set
+	 */
+	public void setDrainTimeout(long drainTimeout) {
+		this.drainTimeout = drainTimeout;
+	}
+
+	/**
+	 * See {@link StreamServer#setIdleTimeout(long)}.
+	 *
+	 * @param idleTimeout the idleTimeout to set
+	 */
+	public void setIdleTimeout(long idleTimeout) {
+		this.idleTimeout = idleTimeout;
+	}
+
+	/**
+	 * See {@link StreamServer#setReadTimeout(long)}.
+	 *
+	 * @param readTimeout the readTimeout to set
+	 */
+	public void setReadTimeout(long readTimeout) {
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * See {@link StreamServer#setWriteTimeout(long)}.
+	 *
+	 * @param writeTimeout the writeTimeout to set
+	 */
+	public void setWriteTimeout(long writeTimeout) {
+		this.writeTimeout = writeTimeout;
+	}
+
+	/**
+	 * @param ioThreads the ioThreads to set
+	 */
+	public void setIoThreads(int ioThreads) {
+		this.ioThreads = ioThreads;
+	}
+
+	/**
+	 * @param nioStreamServer the nioStreamServer to set
+	 */
+	public void setNioStreamServer(NioStreamServer nioStreamServer) {
+		this.nioStreamServer = nioStreamServer;
+		this.nio = true;
+	}
+
 }
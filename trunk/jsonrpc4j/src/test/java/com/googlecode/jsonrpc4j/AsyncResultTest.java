@@ -0,0 +1,167 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.BasicOutputStreamWrapper;
+
+/**
+ * Tests for methods returning asynchronous results.
+ */
+public class AsyncResultTest {
+
+	private static final String JSON_ENCODING = "UTF-8";
+
+	private ObjectMapper mapper;
+	private ByteArrayOutputStream baos;
+	private Service service;
+	private JsonRpcServer jsonRpcServer;
+
+	@Before
+	public void setup() {
+		mapper = new ObjectMapper();
+		baos = new ByteArrayOutputStream();
+		service = new Service();
+		jsonRpcServer = new JsonRpcServer(mapper, service, ServiceInterface.class);
+		jsonRpcServer.setAsyncResultAdapter(DefaultAsyncResultAdapter.INSTANCE);
+	}
+
+	@Test
+	public void futureIsNotWaitedForByDefault() throws Exception {
+		jsonRpcServer.setAsyncResultAdapter(null);
+		Callback callback = new Callback();
+		jsonRpcServer.handleAsync(request("future"),
+			new BasicOutputStreamWrapper(mapper, baos), callback);
+		assertEquals(0, callback.remaining.getCount());
+
+		JsonNode json = mapper.readTree(baos.toString(JSON_ENCODING));
+		assertFalse(json.get("result").get("done").booleanValue());
+	}
+
+	@Test
+	public void futureFailsWhenNoWaiterIsFree() throws Exception {
+		jsonRpcServer.setAsyncResultAdapter(new DefaultAsyncResultAdapter(1));
+		Callback waiting = new Callback();
+		jsonRpcServer.handleAsync(request("future"),
+			new BasicOutputStreamWrapper(mapper, new ByteArrayOutputStream()), waiting);
+		Callback rejected = new Callback();
+		jsonRpcServer.handleAsync(request("future"),
+			new BasicOutputStreamWrapper(mapper, baos), rejected);
+		assertEquals(0, rejected.remaining.getCount());
+		assertEquals(1, waiting.remaining.getCount());
+
+		JsonNode json = mapper.readTree(baos.toString(JSON_ENCODING));
+		assertEquals(RejectedExecutionException.class.getName(),
+			json.get("error").get("data").get("exceptionTypeName").textValue());
+
+		service.future.run();
+		assertTrue(waiting.remaining.await(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void handleWaitsForFuture() throws Exception {
+		service.future.run();
+		jsonRpcServer.handle(request("future"), baos);
+
+		JsonNode json = mapper.readTree(baos.toString(JSON_ENCODING));
+		assertEquals("done", json.get("result").textValue());
+	}
+
+	@Test
+	public void handleAsyncWritesWhenFutureCompletes() throws Exception {
+		Callback callback = new Callback();
+		jsonRpcServer.handleAsync(request("future"),
+			new BasicOutputStreamWrapper(mapper, baos), callback);
+		assertEquals(0, baos.size());
+		assertEquals(1, callback.remaining.getCount());
+
+		service.future.run();
+		assertTrue(callback.remaining.await(5, TimeUnit.SECONDS));
+		assertNull(callback.error.get());
+
+		JsonNode json = mapper.readTree(baos.toString(JSON_ENCODING));
+		assertEquals("done", json.get("result").textValue());
+	}
+
+	@Test
+	public void failedFutureIsAnError() throws Exception {
+		service.failed.run();
+		jsonRpcServer.handle(request("failed"), baos);
+
+		JsonNode json = mapper.readTree(baos.toString(JSON_ENCODING));
+		assertEquals("failed", json.get("error").get("message").textValue());
+		assertEquals(IllegalStateException.class.getName(),
+			json.get("error").get("data").get("exceptionTypeName").textValue());
+	}
+
+	@Test
+	public void notificationDoesNotWait() throws Exception {
+		Callback callback = new Callback();
+		jsonRpcServer.handleAsync(new ByteArrayInputStream(
+			"{\"jsonrpc\": \"2.0\", \"method\": \"future\"}".getBytes(JSON_ENCODING)),
+			new BasicOutputStreamWrapper(mapper, baos), callback);
+		assertEquals(0, callback.remaining.getCount());
+		assertEquals(0, baos.size());
+	}
+
+	private ByteArrayInputStream request(String method) throws Exception {
+		return new ByteArrayInputStream(
+			("{\"jsonrpc\": \"2.0\", \"method\": \""+method+"\", \"id\": 1}").getBytes(JSON_ENCODING));
+	}
+
+	private static class Callback
+		implements AsyncResponseCallback {
+		private final CountDownLatch remaining = new CountDownLatch(1);
+		private final AtomicReference<Throwable> error = new AtomicReference<Throwable>();
+		public void onResponseWritten() {
+			remaining.countDown();
+		}
+		public void onError(Throwable e) {
+			error.set(e);
+			remaining.countDown();
+		}
+	}
+
+	public interface ServiceInterface {
+		Future<String> future();
+		Future<String> failed();
+	}
+
+	public static class Service
+		implements ServiceInterface {
+		private final FutureTask<String> future = new FutureTask<String>(new Callable<String>() {
+			public String call() {
+				return "done";
+			}
+		});
+		private final FutureTask<String> failed = new FutureTask<String>(new Callable<String>() {
+			public String call() {
+				throw new IllegalStateException("failed");
+			}
+		});
+		public Future<String> future() {
+			return future;
+		}
+		public Future<String> failed() {
+			return failed;
+		}
+	}
+
+}
@@ -0,0 +1,279 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ReadListener;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for AsyncServletHandler, the container is stubbed
+ * to call the listeners as soon as they're set.
+ */
+public class AsyncServletHandlerTest {
+
+	private static final String JSON_ENCODING = "UTF-8";
+
+	private ObjectMapper mapper;
+	private AsyncServletHandler handler;
+	private ByteArrayOutputStream responseBody;
+	private CountDownLatch completed;
+	private Map<String, Object> responseState;
+	private AsyncListener asyncListener;
+	private CountDownLatch release;
+
+	@Before
+	public void setup() {
+		mapper = new ObjectMapper();
+		JsonRpcServer jsonRpcServer = new JsonRpcServer(mapper, new Service(), ServiceInterface.class);
+		handler = new AsyncServletHandler(jsonRpcServer, new Executor() {
+			public void execute(Runnable command) {
+				command.run();
+			}
+		});
+		responseBody = new ByteArrayOutputStream();
+		completed = new CountDownLatch(1);
+		responseState = new HashMap<String, Object>();
+		release = new CountDownLatch(1);
+	}
+
+	@Test
+	public void handlesPostInAsyncMode() throws Exception {
+		byte[] request = "{\"jsonrpc\": \"2.0\", \"method\": \"echo\", \"params\": [\"hi\"], \"id\": 1}"
+			.getBytes(JSON_ENCODING);
+		handler.handle(createRequest("POST", request), createResponse());
+
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+		assertEquals(JsonRpcServer.JSONRPC_RESPONSE_CONTENT_TYPE, responseState.get("setContentType"));
+		assertEquals(responseBody.size(), responseState.get("setContentLength"));
+
+		JsonNode json = mapper.readTree(responseBody.toString(JSON_ENCODING));
+		assertEquals("hi", json.get("result").textValue());
+	}
+
+	@Test
+	public void notificationCompletesWithoutBody() throws Exception {
+		byte[] request = "{\"jsonrpc\": \"2.0\", \"method\": \"echo\", \"params\": [\"hi\"]}"
+			.getBytes(JSON_ENCODING);
+		handler.handle(createRequest("POST", request), createResponse());
+
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+		assertEquals(0, responseBody.size());
+	}
+
+	@Test
+	public void badRequestIsServerError() throws Exception {
+		handler.handle(createRequest("POST", "{".getBytes(JSON_ENCODING)), createResponse());
+
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+		assertEquals(500, responseState.get("setStatus"));
+	}
+
+	@Test
+	public void tooLargeBodyIsRejected() throws Exception {
+		handler.setMaxRequestSize(10);
+		byte[] request = "{\"jsonrpc\": \"2.0\", \"method\": \"echo\", \"params\": [\"hi\"], \"id\": 1}"
+			.getBytes(JSON_ENCODING);
+
+		// by its declared length
+		handler.handle(createRequest("POST", request), createResponse());
+		assertEquals(413, responseState.get("setStatus"));
+		assertNull(asyncListener);
+
+		// and by what's read when the length isn't known
+		responseState.clear();
+		handler.handle(createRequest("POST", request, -1), createResponse());
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+		assertEquals(413, responseState.get("setStatus"));
+		assertEquals(0, responseBody.size());
+	}
+
+	@Test
+	public void timedOutExchangeIsCompleted() throws Exception {
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		handler = new AsyncServletHandler(
+			new JsonRpcServer(mapper, new Service(), ServiceInterface.class), new Executor() {
+				public void execute(Runnable command) {
+					tasks.add(command);
+				}
+			});
+		byte[] request = "{\"jsonrpc\": \"2.0\", \"method\": \"echo\", \"params\": [\"hi\"], \"id\": 1}"
+			.getBytes(JSON_ENCODING);
+		handler.handle(createRequest("POST", request), createResponse());
+
+		// the container times the request out before it's handled
+		asyncListener.onTimeout(null);
+		assertTrue(completed.await(5, TimeUnit.SECONDS));
+		assertEquals(503, responseState.get("setStatus"));
+
+		// and the late response isn't written
+		tasks.get(0).run();
+		assertFalse(responseState.containsKey("setContentType"));
+		assertEquals(0, responseBody.size());
+	}
+
+	@Test
+	public void saturatedPoolIsServiceUnavailable() throws Exception {
+		handler = new AsyncServletHandler(
+			new JsonRpcServer(mapper, new Service(), ServiceInterface.class), 1, 1);
+		try {
+			byte[] request = "{\"jsonrpc\": \"2.0\", \"method\": \"await\", \"params\": [\"hi\"], \"id\": 1}"
+				.getBytes(JSON_ENCODING);
+
+			// one request holds the thread, one waits for it, one is turned away
+			for (int i=0; i<3; i++) {
+				handler.handle(createRequest("POST", request), createResponse());
+			}
+			assertTrue(completed.await(5, TimeUnit.SECONDS));
+			assertEquals(503, responseState.get("setStatus"));
+		} finally {
+			release.countDown();
+			handler.shutdown();
+		}
+	}
+
+	private HttpServletRequest createRequest(String method, byte[] body) {
+		return createRequest(method, body, body.length);
+	}
+
+	private HttpServletRequest createRequest(String method, byte[] body, int contentLength) {
+		final ServletInputStream input = new StubInputStream(body);
+		final Object[] request = new Object[1];
+		final AsyncContext asyncContext = stub(AsyncContext.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				if (m.getName().equals("complete")) {
+					completed.countDown();
+				} else if (m.getName().equals("addListener")) {
+					asyncListener = (AsyncListener) args[0];
+				} else if (m.getName().equals("getRequest")) {
+					return request[0];
+				}
+				return null;
+			}
+		});
+		final Map<String, Object> values = new HashMap<String, Object>();
+		values.put("isAsyncSupported", true);
+		values.put("getMethod", method);
+		values.put("startAsync", asyncContext);
+		values.put("getInputStream", input);
+		values.put("getContentLength", contentLength);
+		request[0] = stub(HttpServletRequest.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				return values.get(m.getName());
+			}
+		});
+		return (HttpServletRequest) request[0];
+	}
+
+	private HttpServletResponse createResponse() {
+		final ServletOutputStream output = new StubOutputStream();
+		return stub(HttpServletResponse.class, new InvocationHandler() {
+			public Object invoke(Object proxy, Method m, Object[] args) {
+				if (m.getName().equals("getOutputStream")) {
+					return output;
+				} else if (m.getName().equals("isCommitted")) {
+					return false;
+				} else if (args!=null && args.length==1) {
+					responseState.put(m.getName(), args[0]);
+				}
+				return null;
+			}
+		});
+	}
+
+	private static <T> T stub(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(
+			AsyncServletHandlerTest.class.getClassLoader(), new Class<?>[] {type}, handler));
+	}
+
+	private static class StubInputStream
+		extends ServletInputStream {
+		private final ByteArrayInputStream input;
+		private StubInputStream(byte[] body) {
+			this.input = new ByteArrayInputStream(body);
+		}
+		public boolean isFinished() {
+			return input.available()==0;
+		}
+		public boolean isReady() {
+			return true;
+		}
+		public void setReadListener(ReadListener readListener) {
+			try {
+				readListener.onDataAvailable();
+				readListener.onAllDataRead();
+			} catch (IOException e) {
+				readListener.onError(e);
+			}
+		}
+		public int read() {
+			return input.read();
+		}
+	}
+
+	private class StubOutputStream
+		extends ServletOutputStream {
+		public boolean isReady() {
+			return true;
+		}
+		public void setWriteListener(WriteListener writeListener) {
+			try {
+				writeListener.onWritePossible();
+			} catch (IOException e) {
+				writeListener.onError(e);
+			}
+		}
+		public void write(int b) {
+			responseBody.write(b);
+		}
+	}
+
+	public interface ServiceInterface {
+		String echo(String value);
+		String await(String value);
+	}
+
+	public class Service
+		implements ServiceInterface {
+		public String echo(String value) {
+			return value;
+		}
+		public String await(String value) {
+			try {
+				release.await(5, TimeUnit.SECONDS);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return value;
+		}
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+
+public class ByteBufferPoolTest {
+
+	@Test
+	public void testSizeClasses() {
+		ByteBufferPool pool = new ByteBufferPool(true, 1024, 8192, 1024*1024);
+		assertEquals(1024, pool.acquire(1).capacity());
+		assertEquals(1024, pool.acquire(1024).capacity());
+		assertEquals(2048, pool.acquire(1025).capacity());
+		assertEquals(8192, pool.acquire(8192).capacity());
+		assertTrue(pool.acquire(1).isDirect());
+
+		// larger requests get a buffer of their own
+		ByteBuffer large = pool.acquire(10000);
+		assertEquals(10000, large.capacity());
+		pool.release(large);
+		assertEquals(0, pool.getPooledBytes());
+	}
+
+	@Test
+	public void testBuffersAreReused() {
+		ByteBufferPool pool = new ByteBufferPool(false, 1024, 8192, 1024*1024);
+		ByteBuffer buffer = pool.acquire(2000);
+		buffer.put((byte)1);
+		pool.release(buffer);
+		assertEquals(2048, pool.getPooledBytes());
+
+		ByteBuffer reused = pool.acquire(1500);
+		assertSame(buffer, reused);
+		assertEquals(0, reused.position());
+		assertEquals(1, pool.getHits());
+		assertEquals(1, pool.getMisses());
+		assertEquals(0, pool.getPooledBytes());
+	}
+
+	@Test
+	public void testPooledBytesAreCapped() {
+		ByteBufferPool pool = new ByteBufferPool(false, 1024, 8192, 3000);
+		ByteBuffer first = pool.acquire(2048);
+		ByteBuffer second = pool.acquire(2048);
+		pool.release(first);
+		pool.release(second);
+		assertEquals(2048, pool.getPooledBytes());
+	}
+
+	@Test
+	public void testOutputStreamGrows()
+		throws Exception {
+		ByteBufferPool pool = new ByteBufferPool(true, 16, 1024, 1024*1024);
+		ByteBufferOutputStream ops = new ByteBufferOutputStream(pool, 16);
+		byte[] data = new byte[100];
+		for (int i=0; i<data.length; i++) {
+			data[i] = (byte)i;
+		}
+		ops.write(data, 0, 10);
+		ops.write(data, 10, 90);
+		assertEquals(100, ops.size());
+
+		ByteBuffer buffer = ops.detach();
+		assertEquals(128, buffer.capacity());
+		assertEquals(100, buffer.remaining());
+		for (int i=0; i<data.length; i++) {
+			assertEquals(data[i], buffer.get());
+		}
+		assertEquals(16, pool.getPooledBytes());
+	}
+
+}
@@ -0,0 +1,95 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.reflect.InvocationTargetException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class DirectInvokerFactoryTest {
+
+	private ObjectMapper mapper;
+	private Object composite;
+	private DispatchIndex index;
+
+	@Before
+	public void setUp() {
+		mapper = new ObjectMapper();
+		composite = ProxyUtil.createCompositeServiceProxy(
+			getClass().getClassLoader(),
+			new Object[] { new EchoImpl(), new FailImpl() },
+			new Class<?>[] { Echo.class, Fail.class }, false);
+		index = new DispatchIndex(composite.getClass());
+	}
+
+	private JsonNode call(JsonRpcServer server, String json)
+		throws Exception {
+		ByteArrayOutputStream ops = new ByteArrayOutputStream();
+		server.handle(new ByteArrayInputStream(json.replace('\'', '"').getBytes("UTF-8")), ops);
+		return mapper.readTree(ops.toByteArray());
+	}
+
+	@Test
+	public void testCompositeServicesAreUnwrapped()
+		throws Exception {
+		ServiceMethod echo = index.get("echo").get(0);
+		Invoker invoker = DirectInvokerFactory.INSTANCE.createInvoker(composite, echo);
+		assertEquals("hi", invoker.invoke(new Object[] { "hi" }));
+	}
+
+	@Test
+	public void testExceptionsAreNotWrappedTwice()
+		throws Exception {
+		ServiceMethod fail = index.get("fail").get(0);
+		Invoker invoker = DirectInvokerFactory.INSTANCE.createInvoker(composite, fail);
+		try {
+			invoker.invoke(new Object[0]);
+		} catch (InvocationTargetException e) {
+			assertSame(IllegalStateException.class, e.getTargetException().getClass());
+			return;
+		}
+		throw new AssertionError("expected an InvocationTargetException");
+	}
+
+	@Test
+	public void testServerWithDirectInvokers()
+		throws Exception {
+		JsonRpcServer server = new JsonRpcServer(mapper, composite);
+		server.setInvokerFactory(DirectInvokerFactory.INSTANCE);
+		JsonNode response = call(server, "{'jsonrpc':'2.0','id':1,'method':'echo','params':['hello']}");
+		assertEquals("hello", response.get("result").asText());
+		response = call(server, "{'jsonrpc':'2.0','id':2,'method':'fail','params':[]}");
+		assertTrue(response.has("error"));
+	}
+
+	public interface Echo {
+		String echo(String message);
+	}
+
+	public interface Fail {
+		void fail();
+	}
+
+	private static class EchoImpl
+		implements Echo {
+		public String echo(String message) {
+			return message;
+		}
+	}
+
+	private static class FailImpl
+		implements Fail {
+		public void fail() {
+			throw new IllegalStateException("failed");
+		}
+	}
+
+}
@@ -0,0 +1,106 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Method;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class DispatchIndexTest {
+
+	@Test
+	public void testInheritedMethods()
+		throws Exception {
+		DispatchIndex index = new DispatchIndex(Service.class);
+
+		// methods of super interfaces are indexed with the interface's own
+		OverloadGroup inherited = index.get("inherited");
+		assertNotNull(inherited);
+		assertEquals(1, inherited.size());
+		assertEquals(BaseService.class, inherited.get(0).getMethod().getDeclaringClass());
+		assertTrue(index.getMethodNames().contains("own"));
+		assertNull(index.get("missing"));
+
+		// and so are those of super classes, Object's included
+		DispatchIndex classIndex = new DispatchIndex(ServiceImpl.class);
+		assertEquals(BaseServiceImpl.class,
+			classIndex.get("inherited").get(0).getMethod().getDeclaringClass());
+		assertNotNull(classIndex.get("toString"));
+	}
+
+	@Test
+	public void testOverloadedMethods()
+		throws Exception {
+		DispatchIndex index = new DispatchIndex(Service.class);
+
+		// the overloads share a group
+		OverloadGroup overloaded = index.get("overloaded");
+		assertEquals("overloaded", overloaded.getName());
+		assertEquals(3, overloaded.size());
+		Set<Integer> arities = new HashSet<Integer>();
+		for (int i=0; i<overloaded.size(); i++) {
+			arities.add(overloaded.get(i).getParameterCount());
+		}
+		assertEquals(3, arities.size());
+
+		// each group and method is where its index says
+		List<OverloadGroup> groups = index.getGroups();
+		for (int i=0; i<groups.size(); i++) {
+			assertEquals(i, groups.get(i).getIndex());
+			assertSame(groups.get(i), index.get(groups.get(i).getName()));
+		}
+		List<ServiceMethod> methods = index.getMethods();
+		assertEquals(Service.class.getMethods().length, methods.size());
+		for (int i=0; i<methods.size(); i++) {
+			assertEquals(i, methods.get(i).getIndex());
+			assertSame(methods.get(i), index.get(methods.get(i).getMethod()));
+		}
+
+		// and methods of other classes aren't found
+		Method other = ServiceImpl.class.getMethod("overloaded", String.class);
+		assertNull(index.get(other));
+	}
+
+	public interface BaseService {
+		String inherited(String value);
+	}
+
+	public interface Service
+		extends BaseService {
+		String own();
+		String overloaded();
+		String overloaded(String value);
+		String overloaded(String value, int count);
+	}
+
+	public static class BaseServiceImpl {
+		public String inherited(String value) {
+			return value;
+		}
+	}
+
+	public static class ServiceImpl
+		extends BaseServiceImpl
+		implements Service {
+		public String own() {
+			return "own";
+		}
+		public String overloaded() {
+			return "none";
+		}
+		public String overloaded(String value) {
+			return value;
+		}
+		public String overloaded(String value, int count) {
+			return value+count;
+		}
+	}
+
+}
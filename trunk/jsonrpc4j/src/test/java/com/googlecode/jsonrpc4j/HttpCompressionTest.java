@@ -0,0 +1,158 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.JsonRpcServer.JsonRpcServerResponse;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.ContentLengthSetter;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.HeaderSetter;
+
+public class HttpCompressionTest {
+
+	private HttpCompression compression;
+	private Map<String, String> headers;
+	private HeaderSetter headerSetter;
+
+	@Before
+	public void setUp() {
+		compression = new HttpCompression();
+		headers = new HashMap<String, String>();
+		headerSetter = new HeaderSetter() {
+			public void setHeader(String name, String value) {
+				headers.put(name, value);
+			}
+		};
+	}
+
+	@Test
+	public void testNegotiate() {
+		assertNull(compression.negotiate(null));
+		assertNull(compression.negotiate("identity"));
+		assertEquals("gzip", compression.negotiate("gzip, deflate"));
+		assertEquals("gzip", compression.negotiate("deflate, GZIP"));
+		assertEquals("deflate", compression.negotiate("gzip;q=0, deflate;q=0.5"));
+		assertEquals("gzip", compression.negotiate("*"));
+		assertEquals("deflate", compression.negotiate("gzip;q=0, *"));
+		assertNull(compression.negotiate("gzip;q=0, deflate;q=0"));
+	}
+
+	@Test
+	public void testGzipRoundTrip()
+		throws Exception {
+		assertRoundTrip("gzip");
+	}
+
+	@Test
+	public void testDeflateRoundTrip()
+		throws Exception {
+		assertRoundTrip("deflate");
+	}
+
+	@Test
+	public void testOnlyLargeResponsesAreCompressed()
+		throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		ResponseBuffers responseBuffers = new ResponseBuffers();
+		final int[] contentLength = new int[1];
+		ContentLengthSetter contentLengthSetter = new ContentLengthSetter() {
+			public void setContentLength(int length) {
+				contentLength[0] = length;
+			}
+		};
+
+		// small
+		ByteArrayOutputStream ops = new ByteArrayOutputStream();
+		responseBuffers.write(mapper, new JsonRpcServerResponse("2.0", 1, "small", mapper.writer()),
+			ops, contentLengthSetter, compression, "gzip", headerSetter);
+		assertNull(headers.get("Content-Encoding"));
+		assertEquals("small", mapper.readTree(ops.toByteArray()).get("result").textValue());
+
+		// large
+		String large = createBody();
+		ops = new ByteArrayOutputStream();
+		responseBuffers.write(mapper, new JsonRpcServerResponse("2.0", 1, large, mapper.writer()),
+			ops, contentLengthSetter, compression, "gzip", headerSetter);
+		assertEquals("gzip", headers.get("Content-Encoding"));
+		assertEquals(ops.size(), contentLength[0]);
+		assertTrue(ops.size()<large.length());
+		JsonNode node = mapper.readTree(compression.decompress(
+			new ByteArrayInputStream(ops.toByteArray()), "gzip"));
+		assertEquals(large, node.get("result").textValue());
+	}
+
+	@Test
+	public void testDecompressedSizeIsLimited()
+		throws Exception {
+		byte[] body = createBody().getBytes("UTF-8");
+		ByteArrayOutputStream ops = new ByteArrayOutputStream();
+		OutputStream compressor = compression.compress(ops, "gzip", headerSetter);
+		compressor.write(body);
+		compressor.close();
+
+		// exactly the limit is read
+		compression.setMaxDecompressedSize(body.length);
+		assertEquals(body.length, readFully(compression.decompress(
+			new ByteArrayInputStream(ops.toByteArray()), "gzip")).length);
+
+		// a byte more isn't
+		compression.setMaxDecompressedSize(body.length-1);
+		try {
+			readFully(compression.decompress(new ByteArrayInputStream(ops.toByteArray()), "gzip"));
+			fail();
+		} catch (IOException e) {
+			// expected
+		}
+	}
+
+	private byte[] readFully(InputStream ips)
+		throws IOException {
+		ByteArrayOutputStream ops = new ByteArrayOutputStream();
+		byte[] buffer = new byte[256];
+		for (int read=ips.read(buffer); read>=0; read=ips.read(buffer)) {
+			ops.write(buffer, 0, read);
+		}
+		return ops.toByteArray();
+	}
+
+	private void assertRoundTrip(String encoding)
+		throws Exception {
+		byte[] body = createBody().getBytes("UTF-8");
+		ByteArrayOutputStream ops = new ByteArrayOutputStream();
+		OutputStream compressor = compression.compress(ops, encoding, headerSetter);
+		compressor.write(body);
+		compressor.close();
+		assertEquals(encoding, headers.get("Content-Encoding"));
+		assertEquals(1, compression.getCompressedBodies());
+		assertEquals(body.length, compression.getUncompressedBytes());
+		assertEquals(ops.size(), compression.getCompressedBytes());
+		assertTrue(compression.getCompressionRatio()<0.5);
+
+		InputStream ips = compression.decompress(new ByteArrayInputStream(ops.toByteArray()), encoding);
+		assertEquals(new String(body, "UTF-8"), new String(readFully(ips), "UTF-8"));
+		assertEquals(1, compression.getDecompressedBodies());
+	}
+
+	private String createBody() {
+		StringBuilder body = new StringBuilder();
+		for (int i=0; i<500; i++) {
+			body.append("element ").append(i%10).append(", ");
+		}
+		return body.toString();
+	}
+
+}
@@ -6,7 +6,9 @@ import static org.junit.Assert.assertTrue;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import org.junit.After;
@@ -14,6 +16,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonNode;
 
 public class JsonRpcClientTest {
@@ -78,4 +81,28 @@ public class JsonRpcClientTest {
 		assertEquals(1, node.get("params").get("x").intValue());
 	}
 
+	@Test
+	public void testReaderCacheIsBounded()
+		throws Throwable {
+		client.setMaxCachedReaders(2);
+		JsonNode response = readJSON(baos("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":[1]}"));
+		assertEquals(Integer.valueOf(1), client.readResponse(Integer.class,
+			readJSON(baos("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":1}"))));
+		assertEquals("1", client.readResponse(String.class,
+			readJSON(baos("{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"1\"}"))));
+		assertEquals(2, client.getCachedReaderCount());
+
+		// further types are read, but not cached
+		assertEquals(Arrays.asList(1), client.readResponse(
+			new TypeReference<List<Integer>>() { }.getType(), response));
+		assertEquals(2, client.getCachedReaderCount());
+	}
+
+	private ByteArrayOutputStream baos(String json)
+		throws IOException {
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		baos.write(json.getBytes("UTF-8"));
+		return baos;
+	}
+
 }
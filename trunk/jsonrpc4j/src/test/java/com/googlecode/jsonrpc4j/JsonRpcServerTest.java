@@ -1,12 +1,24 @@
 package com.googlecode.jsonrpc4j;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -17,6 +29,8 @@ import com.fasterxml.jackson.annotation.JsonSubTypes.Type;
 import com.fasterxml.jackson.annotation.JsonTypeInfo;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 
 /**
  * Tests for JsonRpcServer
@@ -48,6 +62,21 @@ public class JsonRpcServerTest {
         jsonRpcServer.handle(new ClassPathResource("jsonRpcServerNotificationTest.json").getInputStream(), baos);
         assertEquals(0, baos.size());
     }
+
+	@Test
+	public void receiveJsonRpcNotificationOnExecutor() throws Exception {
+		NotificationExecutor executor = new NotificationExecutor(
+			1, 10, NotificationExecutor.OverflowPolicy.BLOCK);
+		jsonRpcServer.setNotificationExecutor(executor);
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerNotificationTest.json").getInputStream(), baos);
+		assertEquals(0, baos.size());
+
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(1, executor.getQueuedCount());
+		assertEquals(1, executor.getCompletedCount());
+		assertEquals(0, executor.getDroppedCount());
+	}
 	
 	
 	/////
@@ -389,6 +418,278 @@ public class JsonRpcServerTest {
 		assertTrue(json.get("id").isNull());
 	}
 	
+	@Test
+	public void callMethodWithParamsBeforeMethod() throws Exception {
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerParamsBeforeMethodTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals("success", json.get("result").textValue());
+	}
+
+	@Test
+	public void callMethodWithInvalidParamType() throws Exception {
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerInvalidParamTypeTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		// the rest of the request is still read
+		assertTrue(json.has("error"));
+		assertEquals(7, json.get("id").intValue());
+	}
+
+	@Test
+	public void callBatch() throws Exception {
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		assertBatchResponse(mapper.readTree(response));
+	}
+
+	@Test
+	public void callBatchWithExecutor() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			jsonRpcServer.setBatchExecutor(executor);
+			jsonRpcServer.setMaxBatchParallelism(3);
+			jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchTest.json").getInputStream(), baos);
+		} finally {
+			executor.shutdown();
+		}
+
+		String response = baos.toString(JSON_ENCODING);
+		assertBatchResponse(mapper.readTree(response));
+	}
+
+	@Test
+	public void callStreamedBatch() throws Exception {
+		jsonRpcServer.setMaxBatchInFlight(2);
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		assertBatchResponse(mapper.readTree(response));
+	}
+
+	@Test
+	public void callStreamedBatchWithExecutor() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			jsonRpcServer.setBatchExecutor(executor);
+			jsonRpcServer.setMaxBatchInFlight(1);
+			jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchTest.json").getInputStream(), baos);
+		} finally {
+			executor.shutdown();
+		}
+
+		String response = baos.toString(JSON_ENCODING);
+		assertBatchResponse(mapper.readTree(response));
+	}
+
+	@Test
+	public void callBatchLargerThanMaxBatchSize() throws Exception {
+		jsonRpcServer.setMaxBatchSize(2);
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchTest.json").getInputStream(), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		// the first two are handled, the rest are rejected
+		assertEquals(2, json.size());
+		assertEquals(1, json.get(0).get("id").intValue());
+		assertEquals("success", json.get(0).get("result").textValue());
+		assertEquals(-32600, json.get(1).get("error").get("code").intValue());
+	}
+
+	private void assertBatchResponse(JsonNode json) {
+		// responses in request order without the notification
+		assertTrue(json.isArray());
+		assertEquals(4, json.size());
+		assertEquals(1, json.get(0).get("id").intValue());
+		assertEquals("success", json.get(0).get("result").textValue());
+		assertEquals("x", json.get(1).get("id").textValue());
+		assertEquals(-32601, json.get(1).get("error").get("code").intValue());
+		assertEquals(-32600, json.get(2).get("error").get("code").intValue());
+		assertEquals(3, json.get(3).get("id").intValue());
+		assertEquals("intParam1, intParam2", json.get(3).get("result").textValue());
+	}
+
+	@Test
+	public void idsBeyondIntAreKept() throws Exception {
+		for (String id : new String[] { "4294967296", "9223372036854775807", "18446744073709551616" }) {
+			baos.reset();
+			jsonRpcServer.handle(new ByteArrayInputStream(
+				("{\"jsonrpc\":\"2.0\",\"method\":\"testMethod\",\"params\":[\"x\"],\"id\":"+id+"}")
+					.getBytes(JSON_ENCODING)), baos);
+
+			JsonNode json = mapper.readTree(baos.toString(JSON_ENCODING));
+			assertEquals(id, json.get("id").asText());
+			assertEquals("success", json.get("result").textValue());
+		}
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void deprecatedTreeResponsesStillWork() throws Exception {
+		List<String> value = new ArrayList<String>();
+		value.add("one");
+		value.add("two");
+		JsonNode tree = jsonRpcServer.valueToTree(mapper.writer(), value);
+		assertEquals(mapper.valueToTree(value), tree);
+
+		jsonRpcServer.createSuccessResponse("2.0", Integer.valueOf(7), tree).writeTo(mapper, baos);
+		JsonNode json = mapper.readTree(baos.toString(JSON_ENCODING));
+		assertEquals(7, json.get("id").intValue());
+		assertEquals(tree, json.get("result"));
+	}
+
+	@Test
+	@SuppressWarnings("deprecation")
+	public void deprecatedMethodLookupStillWorks() throws Exception {
+		Set<Method> methods = new HashSet<Method>();
+		for (Method method : ServiceInterface.class.getMethods()) {
+			if (method.getName().equals("overloadedMethod")) {
+				methods.add(method);
+			}
+		}
+
+		JsonRpcServer.MethodAndArgs methodArgs = jsonRpcServer.findBestMethodByParamsNode(
+			methods, mapper.readTree("[1, 2]"));
+		assertEquals(int.class, methodArgs.method.getParameterTypes()[0]);
+		assertEquals(2, methodArgs.arguments.size());
+
+		JsonNode result = jsonRpcServer.invoke(methodArgs.method, methodArgs.arguments);
+		assertEquals("intParam1, intParam2", result.textValue());
+
+		methodArgs = jsonRpcServer.findBestMethodUsingParamIndexes(
+			methods, 1, (ArrayNode)mapper.readTree("[\"a\"]"));
+		assertEquals(String.class, methodArgs.method.getParameterTypes()[0]);
+		assertEquals(1, methodArgs.arguments.size());
+
+		methodArgs = jsonRpcServerAnnotatedParam.findBestMethodUsingParamNames(
+			annotatedOverloads(), Collections.singleton("param1"),
+			(ObjectNode)mapper.readTree("{\"param1\":1}"));
+		assertEquals(int.class, methodArgs.method.getParameterTypes()[0]);
+
+		assertTrue(jsonRpcServer.isMatchingType(mapper.readTree("1"), int.class));
+		assertFalse(jsonRpcServer.isMatchingType(mapper.readTree("1"), String.class));
+	}
+
+	@Test
+	public void overridingDeprecatedDispatchHooksHasNoEffect() throws Exception {
+		final List<String> called = new ArrayList<String>();
+		JsonRpcServer server = new JsonRpcServer(mapper, new Service(), ServiceInterface.class) {
+			@Override
+			@SuppressWarnings("deprecation")
+			protected JsonNode invoke(Method m, List<JsonNode> params) {
+				called.add("invoke");
+				return null;
+			}
+			@Override
+			@SuppressWarnings("deprecation")
+			protected MethodAndArgs findBestMethodByParamsNode(Set<Method> methods, JsonNode paramsNode) {
+				called.add("findBestMethodByParamsNode");
+				return null;
+			}
+		};
+		server.handle(new ClassPathResource("jsonRpcServerOverLoadedMethodTwoIntParamsTest.json").getInputStream(), baos);
+
+		JsonNode json = mapper.readTree(baos.toString(JSON_ENCODING));
+		assertEquals("intParam1, intParam2", json.get("result").textValue());
+		assertTrue(called.isEmpty());
+	}
+
+	@Test
+	public void overridingDeprecatedResolutionHooksHasNoEffect() throws Exception {
+		final List<String> called = new ArrayList<String>();
+		JsonRpcServer server = new JsonRpcServer(mapper, new Service(), ServiceInterfaceWithParamNameAnnotaion.class) {
+			@Override
+			@SuppressWarnings("deprecation")
+			protected MethodAndArgs findBestMethodUsingParamIndexes(
+				Set<Method> methods, int paramCount, ArrayNode paramNodes) {
+				called.add("findBestMethodUsingParamIndexes");
+				return null;
+			}
+			@Override
+			@SuppressWarnings("deprecation")
+			protected MethodAndArgs findBestMethodUsingParamNames(
+				Set<Method> methods, Set<String> paramNames, ObjectNode paramNodes) {
+				called.add("findBestMethodUsingParamNames");
+				return null;
+			}
+			@Override
+			@SuppressWarnings("deprecation")
+			protected boolean isMatchingType(JsonNode node, Class<?> type) {
+				called.add("isMatchingType");
+				return false;
+			}
+		};
+		server.handle(new ClassPathResource("jsonRpcServerOverLoadedMethodTwoIntParamsTest.json").getInputStream(), baos);
+		assertEquals("intParam1, intParam2",
+			mapper.readTree(baos.toString(JSON_ENCODING)).get("result").textValue());
+
+		baos.reset();
+		server.handle(new ClassPathResource("jsonRpcServerOverLoadedMethodTwoNamedIntParamsTest.json").getInputStream(), baos);
+		assertEquals("intParam1, intParam2",
+			mapper.readTree(baos.toString(JSON_ENCODING)).get("result").textValue());
+		assertTrue(called.isEmpty());
+	}
+
+	private Set<Method> annotatedOverloads() {
+		Set<Method> methods = new HashSet<Method>();
+		for (Method method : ServiceInterfaceWithParamNameAnnotaion.class.getMethods()) {
+			if (method.getName().equals("overloadedMethod")) {
+				methods.add(method);
+			}
+		}
+		return methods;
+	}
+
+	@Test
+	public void debugLoggingKeepsStreamingRequests() throws Exception {
+		final List<JsonNode> trees = new ArrayList<JsonNode>();
+		JsonRpcServer server = new JsonRpcServer(mapper, new Service(), ServiceInterface.class) {
+			@Override
+			protected void handleNode(JsonNode node, OutputStreamWrapper opsw)
+				throws IOException {
+				trees.add(node);
+				super.handleNode(node, opsw);
+			}
+		};
+		Logger logger = Logger.getLogger(JsonRpcServer.class.getName());
+		Level level = logger.getLevel();
+		logger.setLevel(Level.FINE);
+		try {
+			server.handle(new ClassPathResource("jsonRpcServerOverLoadedMethodTwoIntParamsTest.json").getInputStream(), baos);
+			assertEquals("intParam1, intParam2",
+				mapper.readTree(baos.toString(JSON_ENCODING)).get("result").textValue());
+
+			baos.reset();
+			server.handle(new ClassPathResource("jsonRpcServerBatchTest.json").getInputStream(), baos);
+			assertTrue(mapper.readTree(baos.toString(JSON_ENCODING)).isArray());
+		} finally {
+			logger.setLevel(level);
+		}
+		assertTrue(trees.isEmpty());
+	}
+
+	@Test
+	public void callEmptyBatch() throws Exception {
+		jsonRpcServer.handle(new ByteArrayInputStream("[]".getBytes(JSON_ENCODING)), baos);
+
+		String response = baos.toString(JSON_ENCODING);
+		JsonNode json = mapper.readTree(response);
+
+		assertEquals(-32600, json.get("error").get("code").intValue());
+	}
+
+	@Test
+	public void callBatchOfNotifications() throws Exception {
+		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerBatchNotificationsTest.json").getInputStream(), baos);
+		assertEquals(0, baos.size());
+	}
+
 	@Test
 	public void callMethodWithPolymorphicCollection_truck() throws Exception {
 		jsonRpcServer.handle(new ClassPathResource("jsonRpcServerPolymorhpicCollectionMethodTrueTest.json").getInputStream(), baos);
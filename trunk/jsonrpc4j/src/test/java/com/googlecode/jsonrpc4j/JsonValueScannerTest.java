@@ -0,0 +1,95 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for JsonValueScanner
+ */
+public class JsonValueScannerTest {
+
+	private static final String JSON_ENCODING = "UTF-8";
+
+	@Test
+	public void findsBackToBackValues() throws Exception {
+		List<byte[]> values = scan(new JsonValueScanner(1024),
+			" {\"a\":[1,{\"b\":2}]}[1,2]\n\"s\" 42 ");
+		assertEquals(4, values.size());
+		assertEquals("{\"a\":[1,{\"b\":2}]}", new String(values.get(0), JSON_ENCODING));
+		assertEquals("[1,2]", new String(values.get(1), JSON_ENCODING));
+		assertEquals("\"s\"", new String(values.get(2), JSON_ENCODING));
+		assertEquals("42", new String(values.get(3), JSON_ENCODING));
+	}
+
+	@Test
+	public void ignoresStructureInStrings() throws Exception {
+		List<byte[]> values = scan(new JsonValueScanner(1024),
+			"{\"a\":\"}]\\\"{\\\\\"}");
+		assertEquals(1, values.size());
+		assertEquals("{\"a\":\"}]\\\"{\\\\\"}", new String(values.get(0), JSON_ENCODING));
+	}
+
+	@Test
+	public void keepsPartialValues() throws Exception {
+		JsonValueScanner scanner = new JsonValueScanner(1024);
+		assertEquals(0, scan(scanner, "{\"a\":\"x").size());
+		assertTrue(scanner.isInValue());
+		List<byte[]> values = scan(scanner, "é\"}");
+		assertEquals(1, values.size());
+		assertEquals("{\"a\":\"xé\"}", new String(values.get(0), JSON_ENCODING));
+		assertFalse(scanner.isInValue());
+	}
+
+	@Test
+	public void scansDirectBuffersByteByByte() throws Exception {
+		JsonValueScanner scanner = new JsonValueScanner(1024);
+		List<byte[]> values = new ArrayList<byte[]>();
+		byte[] json = "[1,\"two\"] 3 {}".getBytes(JSON_ENCODING);
+		ByteBuffer buffer = ByteBuffer.allocateDirect(4);
+		for (byte b : json) {
+			buffer.clear();
+			buffer.put(new byte[] { 9, 9 });
+			buffer.put(b);
+			buffer.flip();
+			buffer.position(2);
+			scanner.scan(buffer, values);
+		}
+		assertEquals(3, values.size());
+		assertEquals("[1,\"two\"]", new String(values.get(0), JSON_ENCODING));
+		assertEquals("3", new String(values.get(1), JSON_ENCODING));
+		assertEquals("{}", new String(values.get(2), JSON_ENCODING));
+	}
+
+	@Test
+	public void acceptsValuesOfTheMaximumSize() throws Exception {
+		List<byte[]> values = scan(new JsonValueScanner(8), "{\"ab\":1} [123456]");
+		assertEquals(2, values.size());
+	}
+
+	@Test(expected=IOException.class)
+	public void rejectsLargePartialValues() throws Exception {
+		JsonValueScanner scanner = new JsonValueScanner(8);
+		scan(scanner, "[1,2,");
+		scan(scanner, "3,4,");
+	}
+
+	@Test(expected=IOException.class)
+	public void rejectsLargeValues() throws Exception {
+		scan(new JsonValueScanner(8), "{\"abcdefgh\":1}");
+	}
+
+	private List<byte[]> scan(JsonValueScanner scanner, String json) throws Exception {
+		List<byte[]> values = new ArrayList<byte[]>();
+		scanner.scan(ByteBuffer.wrap(json.getBytes(JSON_ENCODING)), values);
+		return values;
+	}
+
+}
@@ -0,0 +1,77 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Tests for LongHashMap
+ */
+public class LongHashMapTest {
+
+	@Test
+	public void putsGetsAndRemoves() throws Exception {
+		LongHashMap<String> map = new LongHashMap<String>();
+		assertTrue(map.isEmpty());
+		assertNull(map.put(1, "one"));
+		assertNull(map.put(-1, "minus one"));
+		assertEquals("one", map.put(1, "uno"));
+		assertEquals(2, map.size());
+		assertEquals("uno", map.get(1));
+		assertEquals("minus one", map.get(-1));
+		assertNull(map.get(2));
+		assertEquals("uno", map.remove(1));
+		assertNull(map.remove(1));
+		assertEquals(1, map.size());
+	}
+
+	@Test
+	public void growsWithSequentialKeys() throws Exception {
+		LongHashMap<Long> map = new LongHashMap<Long>();
+		for (long i=1; i<=10000; i++) {
+			map.put(i, i);
+		}
+		assertEquals(10000, map.size());
+		for (long i=1; i<=10000; i++) {
+			assertEquals(Long.valueOf(i), map.get(i));
+		}
+		List<Long> removed = map.removeAll();
+		assertEquals(10000, removed.size());
+		assertTrue(map.isEmpty());
+		assertNull(map.get(1));
+	}
+
+	@Test
+	public void keepsCollidingKeysAfterRemoval() throws Exception {
+		LongHashMap<Long> map = new LongHashMap<Long>();
+		Map<Long, Long> expected = new HashMap<Long, Long>();
+		Random random = new Random(42);
+
+		// few distinct keys, so most probes run into others
+		for (int i=0; i<20000; i++) {
+			long key = ((long)random.nextInt(64))<<32 | random.nextInt(4);
+			if (random.nextBoolean()) {
+				assertEquals(expected.put(key, key), map.put(key, key));
+			} else {
+				assertEquals(expected.remove(key), map.remove(key));
+			}
+			assertEquals(expected.size(), map.size());
+		}
+		for (Long key : expected.keySet()) {
+			assertEquals(key, map.get(key));
+		}
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void rejectsNullValues() throws Exception {
+		new LongHashMap<String>().put(1, null);
+	}
+
+}
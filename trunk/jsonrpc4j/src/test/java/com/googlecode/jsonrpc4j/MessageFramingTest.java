@@ -0,0 +1,91 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.Test;
+
+public class MessageFramingTest {
+
+	private static final String FIRST	= "{\"jsonrpc\":\"2.0\",\"method\":\"a\",\"id\":1}";
+	private static final String SECOND	= "{\"jsonrpc\":\"2.0\",\"method\":\"b\",\"params\":[\"x\\ny\"],\"id\":2}";
+
+	@Test
+	public void testNewlineDelimited()
+		throws Exception {
+		assertRoundTrip(MessageFraming.NewlineDelimited.INSTANCE);
+	}
+
+	@Test
+	public void testLengthPrefixed()
+		throws Exception {
+		assertRoundTrip(MessageFraming.LengthPrefixed.INSTANCE);
+	}
+
+	@Test
+	public void testContentLengthHeader()
+		throws Exception {
+		assertRoundTrip(MessageFraming.ContentLengthHeader.INSTANCE);
+	}
+
+	@Test
+	public void testContentLengthHeaderIgnoresOtherHeaders()
+		throws Exception {
+		byte[] body = FIRST.getBytes("UTF-8");
+		InputStream ips = new ByteArrayInputStream((
+			"Content-Type: application/vscode-jsonrpc; charset=utf-8\r\n"
+			+"content-length: "+body.length+"\r\n\r\n"+FIRST).getBytes("UTF-8"));
+		assertEquals(FIRST, new String(
+			MessageFraming.ContentLengthHeader.INSTANCE.readMessage(ips), "UTF-8"));
+	}
+
+	@Test
+	public void testOversizedMessagesAreSkipped()
+		throws Exception {
+		assertSkipsOversized(new MessageFraming.NewlineDelimited(FIRST.length()));
+		assertSkipsOversized(new MessageFraming.LengthPrefixed(FIRST.length()));
+		assertSkipsOversized(new MessageFraming.ContentLengthHeader(FIRST.length()));
+	}
+
+	private void assertRoundTrip(MessageFraming framing)
+		throws Exception {
+		ByteArrayOutputStream ops = new ByteArrayOutputStream();
+		framing.writeMessage(ops, FIRST.getBytes("UTF-8"));
+		framing.writeMessage(ops, SECOND.getBytes("UTF-8"));
+
+		InputStream ips = new ByteArrayInputStream(ops.toByteArray());
+		assertEquals(FIRST, new String(framing.readMessage(ips), "UTF-8"));
+		assertEquals(SECOND, new String(framing.readMessage(ips), "UTF-8"));
+		try {
+			framing.readMessage(ips);
+			fail("Expected EOFException");
+		} catch (EOFException e) {
+			// expected
+		}
+	}
+
+	private void assertSkipsOversized(MessageFraming framing)
+		throws Exception {
+		ByteArrayOutputStream ops = new ByteArrayOutputStream();
+		framing.writeMessage(ops, SECOND.getBytes("UTF-8"));
+		framing.writeMessage(ops, FIRST.getBytes("UTF-8"));
+
+		InputStream ips = new ByteArrayInputStream(ops.toByteArray());
+		try {
+			framing.readMessage(ips);
+			fail("Expected IOException");
+		} catch (EOFException e) {
+			fail("Unexpected EOFException");
+		} catch (IOException e) {
+			// expected
+		}
+		assertEquals(FIRST, new String(framing.readMessage(ips), "UTF-8"));
+	}
+
+}
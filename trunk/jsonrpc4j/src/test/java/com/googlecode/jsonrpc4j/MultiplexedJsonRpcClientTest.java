@@ -0,0 +1,149 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class MultiplexedJsonRpcClientTest {
+
+	@Test
+	public void testManyThreadsShareOneConnection()
+		throws Throwable {
+		NioStreamServer server = new NioStreamServer(
+			new JsonRpcServer(new ServiceImpl(), Service.class),
+			1, 4, 0, 0, InetAddress.getByName("127.0.0.1"));
+		server.start();
+		try {
+			final MultiplexedJsonRpcClient client = new MultiplexedJsonRpcClient(
+				new Socket("127.0.0.1", server.getLocalPort()));
+			final Service service = ProxyUtil.createClientProxy(
+				this.getClass().getClassLoader(), Service.class, client);
+			final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			List<Thread> threads = new ArrayList<Thread>();
+			for (int t=0; t<8; t++) {
+				final String name = "thread"+t;
+				Thread thread = new Thread(new Runnable() {
+					public void run() {
+						try {
+							for (int i=0; i<200; i++) {
+								assertEquals("hello "+name+"-"+i, service.hello(name+"-"+i));
+							}
+						} catch (Throwable t) {
+							failure.compareAndSet(null, t);
+						}
+					}
+				});
+				threads.add(thread);
+				thread.start();
+			}
+			for (Thread thread : threads) {
+				thread.join(10000);
+			}
+			if (failure.get()!=null) {
+				throw failure.get();
+			}
+			assertEquals(0, client.getPendingCalls());
+			client.close();
+			assertTrue(client.isClosed());
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testCallTimeoutAndDisconnect()
+		throws Throwable {
+		ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+		try {
+			final MultiplexedJsonRpcClient client = new MultiplexedJsonRpcClient(
+				new Socket("127.0.0.1", serverSocket.getLocalPort()));
+			Socket socket = serverSocket.accept();
+
+			// a call that times out leaves the connection open
+			try {
+				client.invoke("hello", new Object[] { "dude" }, String.class, 100);
+				fail();
+			} catch (SocketTimeoutException e) {
+				// expected
+			}
+			assertEquals(0, client.getPendingCalls());
+			assertTrue(!client.isClosed());
+
+			// the server going away fails the calls waiting, and those after
+			final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+			Thread caller = new Thread(new Runnable() {
+				public void run() {
+					try {
+						client.invoke("hello", new Object[] { "dude" }, String.class, 0);
+					} catch (Throwable t) {
+						failure.set(t);
+					}
+				}
+			});
+			caller.start();
+			for (int i=0; i<500 && client.getPendingCalls()==0; i++) {
+				Thread.sleep(10);
+			}
+			assertEquals(1, client.getPendingCalls());
+			socket.close();
+			caller.join(5000);
+			assertTrue(failure.get() instanceof IOException);
+			assertTrue(client.isClosed());
+			try {
+				client.invoke("hello", new Object[] { "dude" }, String.class);
+				fail();
+			} catch (IOException e) {
+				// expected
+			}
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	@Test
+	public void testWireCodecIsFixedWhenCreated()
+		throws Throwable {
+		ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+		try {
+			MultiplexedJsonRpcClient client = new MultiplexedJsonRpcClient(
+				new ObjectMapper(), WireCodec.JSON,
+				new Socket("127.0.0.1", serverSocket.getLocalPort()));
+			assertSame(WireCodec.JSON, client.getWireCodec());
+			try {
+				client.setWireCodec(WireCodec.JSON);
+				fail();
+			} catch (IllegalStateException e) {
+				// expected
+			}
+			client.close();
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	public interface Service {
+		String hello(String name);
+	}
+
+	public static class ServiceImpl
+		implements Service {
+		public String hello(String name) {
+			return "hello "+name;
+		}
+	}
+
+}
@@ -0,0 +1,183 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class NioClientEngineTest {
+
+	private final AtomicInteger completions = new AtomicInteger(0);
+	private NioClientEngine engine;
+	private JsonRpcServer jsonRpcServer;
+
+	@Before
+	public void setUp()
+		throws Exception {
+		jsonRpcServer = new JsonRpcServer(new ServiceImpl(), Service.class);
+		engine = new NioClientEngine(1, new Executor() {
+			public void execute(Runnable command) {
+				completions.incrementAndGet();
+				new Thread(command).start();
+			}
+		});
+	}
+
+	@After
+	public void tearDown()
+		throws Exception {
+		engine.close();
+	}
+
+	@Test
+	public void testManySocketCallsInFlight()
+		throws Throwable {
+		NioStreamServer server = new NioStreamServer(
+			jsonRpcServer, 1, 4, 0, 0, InetAddress.getByName("127.0.0.1"));
+		server.start();
+		try {
+			NioJsonRpcClient client = new NioJsonRpcClient(
+				new InetSocketAddress("127.0.0.1", server.getLocalPort()), engine);
+			List<JsonRpcFuture<String>> futures = new ArrayList<JsonRpcFuture<String>>();
+			for (int i=0; i<500; i++) {
+				futures.add(client.invokeAsync("hello", new Object[] { String.valueOf(i) }, String.class));
+			}
+			for (int i=0; i<futures.size(); i++) {
+				assertEquals("hello "+i, futures.get(i).get(5, TimeUnit.SECONDS));
+			}
+			assertTrue(completions.get()>=500);
+
+			// futures from a proxy
+			AsyncService service = ProxyUtil.createClientProxy(
+				this.getClass().getClassLoader(), AsyncService.class, client);
+			assertEquals("hello dude", service.hello("dude").get(5, TimeUnit.SECONDS));
+			assertEquals("bye dude", service.bye("dude"));
+			client.close();
+		} finally {
+			server.stop();
+		}
+	}
+
+	@Test
+	public void testCallTimeoutAndDisconnect()
+		throws Throwable {
+		ServerSocket serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+		try {
+			NioJsonRpcClient client = new NioJsonRpcClient(
+				new InetSocketAddress("127.0.0.1", serverSocket.getLocalPort()), engine);
+			client.setCallTimeoutMillis(100);
+			JsonRpcFuture<String> timedOut = client.invokeAsync("hello", new Object[] { "dude" }, String.class);
+			Socket socket = serverSocket.accept();
+			try {
+				timedOut.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof SocketTimeoutException);
+			}
+
+			// the server going away fails the calls in flight
+			client.setCallTimeoutMillis(0);
+			JsonRpcFuture<String> disconnected = client.invokeAsync("hello", new Object[] { "dude" }, String.class);
+			socket.close();
+			try {
+				disconnected.get(5, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+		} finally {
+			serverSocket.close();
+		}
+	}
+
+	@Test
+	public void testManyHttpCallsInFlight()
+		throws Throwable {
+		HttpServer httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		httpServer.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange)
+				throws IOException {
+				ByteArrayOutputStream response = new ByteArrayOutputStream();
+				jsonRpcServer.handle(exchange.getRequestBody(), response);
+				exchange.getResponseHeaders().set("Content-Type", JsonRpcServer.JSONRPC_RESPONSE_CONTENT_TYPE);
+
+				// a length of 0 has the response sent chunked
+				boolean chunked = exchange.getRequestURI().getPath().equals("/chunked");
+				exchange.sendResponseHeaders(200, chunked ? 0 : response.size());
+				response.writeTo(exchange.getResponseBody());
+				exchange.close();
+			}
+		});
+		httpServer.start();
+		NioHttpTransport transport = new NioHttpTransport(engine);
+		transport.setMaxConnectionsPerHost(4);
+		try {
+			for (String path : new String[] { "/", "/chunked" }) {
+				JsonRpcHttpClient client = new JsonRpcHttpClient(
+					new URL("http://127.0.0.1:"+httpServer.getAddress().getPort()+path));
+				client.setNioHttpTransport(transport);
+				List<Future<String>> futures = new ArrayList<Future<String>>();
+				for (int i=0; i<100; i++) {
+					futures.add(client.invokeAsync("hello", new Object[] { String.valueOf(i) }, String.class));
+				}
+				for (int i=0; i<futures.size(); i++) {
+					assertEquals("hello "+i, futures.get(i).get(5, TimeUnit.SECONDS));
+				}
+
+				// futures from a proxy
+				AsyncService service = ProxyUtil.createClientProxy(
+					this.getClass().getClassLoader(), AsyncService.class, client);
+				assertEquals("hello dude", service.hello("dude").get(5, TimeUnit.SECONDS));
+			}
+			assertEquals(4, transport.getCreated());
+			assertEquals(4, transport.getIdle());
+		} finally {
+			transport.close();
+			httpServer.stop(0);
+		}
+	}
+
+	public interface Service {
+		String hello(String name);
+		String bye(String name);
+	}
+
+	public interface AsyncService {
+		Future<String> hello(String name);
+		String bye(String name);
+	}
+
+	public static class ServiceImpl
+		implements Service {
+		public String hello(String name) {
+			return "hello "+name;
+		}
+		public String bye(String name) {
+			return "bye "+name;
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.*;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class NioStreamServerTest {
+
+	private JsonRpcServer jsonRpcServer;
+	private JsonRpcClient jsonRpcClient;
+	private NioStreamServer nioStreamServer;
+
+	@Before
+	public void setUp()
+		throws Exception {
+		jsonRpcServer = new JsonRpcServer(new ServiceImpl(), Service.class);
+		jsonRpcClient = new JsonRpcClient();
+		nioStreamServer = new NioStreamServer(
+			jsonRpcServer, 2, 4, 0, 0, InetAddress.getByName("127.0.0.1"));
+		nioStreamServer.start();
+	}
+
+	@After
+	public void tearDown()
+		throws Exception {
+		nioStreamServer.stop();
+	}
+
+	@Test
+	public void testBasicConnection()
+		throws Exception {
+		Socket socket = new Socket("127.0.0.1", nioStreamServer.getLocalPort());
+		Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class,
+			jsonRpcClient, socket);
+
+		for (int i=0; i<100; i++) {
+			assertEquals(i, service.inc());
+		}
+		assertEquals("hello dude", service.hello("dude"));
+
+		// response buffers are reused
+		assertTrue(nioStreamServer.getBufferPool().getHits()>0);
+
+		socket.close();
+	}
+
+	@Test
+	public void testMultipleClients()
+		throws Exception {
+		Service[] services = new Service[5];
+		Socket[] sockets = new Socket[5];
+		for (int i=0; i<services.length; i++) {
+			sockets[i] = new Socket("127.0.0.1", nioStreamServer.getLocalPort());
+			services[i] = ProxyUtil.createClientProxy(
+				this.getClass().getClassLoader(), Service.class,
+				jsonRpcClient, sockets[i]);
+		}
+
+		for (int i=0; i<services.length; i++) {
+			assertEquals("hello "+i, services[i].hello(String.valueOf(i)));
+		}
+
+		for (int i=0; i<sockets.length; i++) {
+			sockets[i].close();
+		}
+	}
+
+	@Test
+	public void testBackToBackRequests()
+		throws Exception {
+		Socket socket = new Socket("127.0.0.1", nioStreamServer.getLocalPort());
+		OutputStream output = socket.getOutputStream();
+		InputStream input = socket.getInputStream();
+
+		// several requests in a single write, one split across two
+		output.write((
+			"{\"jsonrpc\":\"2.0\",\"method\":\"hello\",\"params\":[\"a\"],\"id\":1}"
+			+"{\"jsonrpc\":\"2.0\",\"method\":\"hello\",\"params\":[\"{b}\"],\"id\":2}\n"
+			+"{\"jsonrpc\":\"2.0\",\"method\":\"hello\",").getBytes("UTF-8"));
+		output.flush();
+		Thread.sleep(50);
+		output.write("\"params\":[\"c\\\"\"],\"id\":3}".getBytes("UTF-8"));
+		output.flush();
+
+		// the responses come back in order
+		ObjectMapper mapper = new ObjectMapper();
+		JsonParser parser = mapper.getJsonFactory().createJsonParser(input);
+		JsonNode response = mapper.readTree(parser);
+		assertEquals("hello a", response.get("result").textValue());
+		response = mapper.readTree(parser);
+		assertEquals("hello {b}", response.get("result").textValue());
+		response = mapper.readTree(parser);
+		assertEquals("hello c\"", response.get("result").textValue());
+
+		socket.close();
+	}
+
+	private static interface Service {
+		String hello(String whatever);
+		int inc();
+	}
+
+	private class ServiceImpl implements Service {
+		private int val;
+
+		public String hello(String whatever) {
+			return "hello "+whatever;
+		}
+
+		public synchronized int inc() {
+			return val++;
+		}
+	}
+
+}
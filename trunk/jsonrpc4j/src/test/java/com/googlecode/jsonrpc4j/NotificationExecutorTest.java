@@ -0,0 +1,99 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.googlecode.jsonrpc4j.NotificationExecutor.OverflowPolicy;
+
+/**
+ * Tests for NotificationExecutor
+ */
+public class NotificationExecutorTest {
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	private NotificationExecutor executor;
+
+	@After
+	public void teardown() throws Exception {
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void dropsWhenFull() throws Exception {
+		executor = new NotificationExecutor(1, 1, OverflowPolicy.DROP);
+		fill();
+
+		executor.execute(new Blocker());
+		assertEquals(3, executor.getQueuedCount());
+		assertEquals(1, executor.getDroppedCount());
+	}
+
+	@Test
+	public void callerRunsWhenFull() throws Exception {
+		executor = new NotificationExecutor(1, 1, OverflowPolicy.CALLER_RUNS);
+		fill();
+
+		final Thread[] ranOn = new Thread[1];
+		executor.execute(new Runnable() {
+			public void run() {
+				ranOn[0] = Thread.currentThread();
+			}
+		});
+		assertSame(Thread.currentThread(), ranOn[0]);
+		assertEquals(1, executor.getCompletedCount());
+		assertEquals(0, executor.getDroppedCount());
+	}
+
+	@Test
+	public void completesQueued() throws Exception {
+		executor = new NotificationExecutor(2, 10, OverflowPolicy.BLOCK);
+		for (int i=0; i<5; i++) {
+			executor.execute(new Runnable() {
+				public void run() {
+					throw new IllegalStateException("ignored");
+				}
+			});
+		}
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+		assertEquals(5, executor.getCompletedCount());
+	}
+
+	/**
+	 * Occupies the only thread and the only queue slot.
+	 */
+	private void fill() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		executor.execute(new Runnable() {
+			public void run() {
+				started.countDown();
+				new Blocker().run();
+			}
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		executor.execute(new Blocker());
+		assertEquals(1, executor.getPendingCount());
+	}
+
+	private class Blocker
+		implements Runnable {
+		public void run() {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
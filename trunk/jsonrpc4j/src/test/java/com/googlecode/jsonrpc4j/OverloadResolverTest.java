@@ -0,0 +1,121 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class OverloadResolverTest {
+
+	private ObjectMapper mapper;
+	private DispatchIndex index;
+
+	@Before
+	public void setUp() {
+		mapper = new ObjectMapper();
+		index = new DispatchIndex(Service.class);
+	}
+
+	private JsonNode json(String json)
+		throws Exception {
+		return mapper.readTree(json.replace('\'', '"'));
+	}
+
+	@Test
+	public void testResolveIndexed()
+		throws Exception {
+		OverloadResolver resolver = new OverloadResolver(
+			index.get("overloaded"), false, false, OverloadResolver.DEFAULT_MAX_CACHED_SHAPES);
+
+		ServiceMethod stringMethod = resolver.resolveIndexed(json("['a']"));
+		ServiceMethod intMethod = resolver.resolveIndexed(json("[1]"));
+		assertEquals(String.class, stringMethod.getParameterType(0));
+		assertEquals(int.class, intMethod.getParameterType(0));
+
+		// same shapes come from the cache
+		assertEquals(2, resolver.getCachedShapeCount());
+		assertSame(stringMethod, resolver.resolveIndexed(json("['b']")));
+		assertSame(intMethod, resolver.resolveIndexed(json("[2]")));
+		assertEquals(2, resolver.getCachedShapeCount());
+
+		// single candidates never touch the cache
+		assertEquals(2, resolver.resolveIndexed(json("['a', 'b']")).getParameterCount());
+		assertEquals(0, resolver.resolveIndexed(null).getParameterCount());
+		assertNull(resolver.resolveIndexed(json("['a', 'b', 'c']")));
+		assertEquals(2, resolver.getCachedShapeCount());
+	}
+
+	@Test
+	public void testResolveNamed()
+		throws Exception {
+		OverloadResolver resolver = new OverloadResolver(
+			index.get("named"), false, false, OverloadResolver.DEFAULT_MAX_CACHED_SHAPES);
+
+		assertEquals(String.class, resolver.resolveNamed(json("{'s':'a'}")).getParameterType(0));
+		assertEquals(int.class, resolver.resolveNamed(json("{'i':1}")).getParameterType(0));
+		assertNull(resolver.resolveNamed(json("{'x':1}")));
+		assertNull(resolver.resolveNamed(json("{'x':1}")));
+	}
+
+	@Test
+	public void testNamedShapesAreCached()
+		throws Exception {
+		OverloadResolver resolver = new OverloadResolver(
+			index.get("pair"), true, true, OverloadResolver.DEFAULT_MAX_CACHED_SHAPES);
+
+		ServiceMethod stringMethod = resolver.resolveNamed(json("{'a':'x','b':'y'}"));
+		assertEquals(String.class, stringMethod.getParameterType(0));
+		assertEquals(1, resolver.getCachedShapeCount());
+
+		// the order of the names doesn't matter, their types do
+		assertSame(stringMethod, resolver.resolveNamed(json("{'b':'z','a':'w'}")));
+		assertEquals(1, resolver.getCachedShapeCount());
+		assertEquals(int.class, resolver.resolveNamed(json("{'a':1,'b':2}")).getParameterType(0));
+		assertEquals(2, resolver.getCachedShapeCount());
+
+		// unused names only count towards the size
+		assertSame(stringMethod, resolver.resolveNamed(json("{'a':'x','b':'y','c':1}")));
+		assertSame(stringMethod, resolver.resolveNamed(json("{'a':'x','b':'y','d':true}")));
+		assertEquals(3, resolver.getCachedShapeCount());
+	}
+
+	@Test
+	public void testNestedArraysAreNotCached()
+		throws Exception {
+		OverloadResolver resolver = new OverloadResolver(
+			index.get("overloaded"), false, false, OverloadResolver.DEFAULT_MAX_CACHED_SHAPES);
+		assertEquals(1, resolver.resolveIndexed(json("[[[1]]]")).getParameterCount());
+		assertEquals(0, resolver.getCachedShapeCount());
+		assertEquals(1, resolver.resolveIndexed(json("[[1]]")).getParameterCount());
+		assertEquals(1, resolver.getCachedShapeCount());
+	}
+
+	@Test
+	public void testShapeCacheIsBounded()
+		throws Exception {
+		OverloadResolver resolver = new OverloadResolver(
+			index.get("overloaded"), false, false, 2);
+		resolver.resolveIndexed(json("['a']"));
+		resolver.resolveIndexed(json("[1]"));
+		resolver.resolveIndexed(json("[true]"));
+		resolver.resolveIndexed(json("[{}]"));
+		assertEquals(2, resolver.getCachedShapeCount());
+	}
+
+	private interface Service {
+		String overloaded();
+		String overloaded(String s);
+		String overloaded(int i);
+		String overloaded(String s1, String s2);
+		String named(@JsonRpcParam("s") String s);
+		String named(@JsonRpcParam("i") int i);
+		String pair(@JsonRpcParam("a") String a, @JsonRpcParam("b") String b);
+		String pair(@JsonRpcParam("a") int a, @JsonRpcParam("b") int b);
+	}
+
+}
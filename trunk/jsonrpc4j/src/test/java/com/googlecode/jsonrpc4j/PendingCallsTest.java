@@ -0,0 +1,101 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Tests for PendingCalls
+ */
+public class PendingCallsTest {
+
+	private HashedWheelTimer timer;
+	private PendingCalls calls;
+
+	@Before
+	public void setUp() throws Exception {
+		timer = new HashedWheelTimer();
+		calls = new PendingCalls(timer);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		timer.stop();
+	}
+
+	@Test
+	public void completesCallsByTheirIds() throws Exception {
+		JsonRpcFuture<JsonNode> first = new JsonRpcFuture<JsonNode>();
+		JsonRpcFuture<JsonNode> second = new JsonRpcFuture<JsonNode>();
+		long firstId = calls.register(first, 0);
+		long secondId = calls.register(second, 0);
+		assertTrue(firstId!=secondId);
+		assertEquals(2, calls.size());
+
+		JsonNode response = response(secondId);
+		assertTrue(calls.complete(response));
+		assertFalse(calls.complete(response));
+		assertSame(response, second.get(1, TimeUnit.SECONDS));
+		assertFalse(first.isDone());
+		assertEquals(1, calls.size());
+	}
+
+	@Test
+	public void timesCallsOut() throws Exception {
+		JsonRpcFuture<JsonNode> future = new JsonRpcFuture<JsonNode>();
+		long id = calls.register(future, 50);
+		try {
+			future.get(5, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof SocketTimeoutException);
+		}
+		assertEquals(0, calls.size());
+		assertFalse(calls.complete(response(id)));
+	}
+
+	@Test
+	public void closingFailsEveryCall() throws Exception {
+		JsonRpcFuture<JsonNode> future = new JsonRpcFuture<JsonNode>();
+		calls.register(future, 0);
+		IOException cause = new IOException("closed");
+		assertTrue(calls.close(cause));
+		assertFalse(calls.close(cause));
+		try {
+			future.get(1, TimeUnit.SECONDS);
+			fail();
+		} catch (ExecutionException e) {
+			assertSame(cause, e.getCause());
+		}
+		try {
+			calls.register(new JsonRpcFuture<JsonNode>(), 0);
+			fail();
+		} catch (IOException e) {
+			assertSame(cause, e.getCause());
+		}
+	}
+
+	private static JsonNode response(long id) {
+		ObjectNode response = new ObjectMapper().createObjectNode();
+		response.put("jsonrpc", "2.0");
+		response.put("id", id);
+		response.put("result", "ok");
+		return response;
+	}
+
+}
@@ -0,0 +1,272 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public class PooledHttpTransportTest {
+
+	private HttpServer httpServer;
+	private JsonRpcServer jsonRpcServer;
+	private PooledHttpTransport transport;
+	private URL url;
+
+	@Before
+	public void setUp()
+		throws Exception {
+		jsonRpcServer = new JsonRpcServer(new ServiceImpl(), Service.class);
+		httpServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		httpServer.createContext("/", new HttpHandler() {
+			public void handle(HttpExchange exchange)
+				throws IOException {
+				ByteArrayOutputStream response = new ByteArrayOutputStream();
+				jsonRpcServer.handle(exchange.getRequestBody(), response);
+				exchange.getResponseHeaders().set("Content-Type", JsonRpcServer.JSONRPC_RESPONSE_CONTENT_TYPE);
+
+				// a length of 0 has the response sent chunked
+				boolean chunked = exchange.getRequestURI().getPath().equals("/chunked");
+				exchange.sendResponseHeaders(200, chunked ? 0 : response.size());
+				response.writeTo(exchange.getResponseBody());
+				exchange.close();
+			}
+		});
+		httpServer.start();
+		transport = new PooledHttpTransport();
+		url = new URL("http://127.0.0.1:"+httpServer.getAddress().getPort()+"/");
+	}
+
+	@After
+	public void tearDown() {
+		transport.close();
+		httpServer.stop(0);
+	}
+
+	@Test
+	public void testConnectionsAreReused()
+		throws Throwable {
+		Service service = createService(url);
+		for (int i=0; i<10; i++) {
+			assertEquals("hello "+i, service.hello(String.valueOf(i)));
+		}
+		assertEquals(1, transport.getCreated());
+		assertEquals(1, transport.getIdle());
+		assertEquals(0, transport.getLeased());
+	}
+
+	@Test
+	public void testChunkedBodies()
+		throws Throwable {
+		char[] chars = new char[100*1024];
+		Arrays.fill(chars, 'x');
+		String name = new String(chars);
+		Service service = createService(new URL(url, "/chunked"));
+		for (int i=0; i<3; i++) {
+			assertEquals("hello "+name, service.hello(name));
+		}
+		assertEquals(1, transport.getCreated());
+		assertEquals(1, transport.getIdle());
+	}
+
+	@Test
+	public void testIdleConnectionsAreEvicted()
+		throws Throwable {
+		transport.setMaxIdleMillis(50);
+		Service service = createService(url);
+		assertEquals("hello dude", service.hello("dude"));
+		Thread.sleep(100);
+		transport.evictIdleConnections();
+		assertEquals(1, transport.getEvicted());
+		assertEquals(0, transport.getIdle());
+		assertEquals("hello dude", service.hello("dude"));
+		assertEquals(2, transport.getCreated());
+	}
+
+	@Test
+	public void testUrlConnectionTransport()
+		throws Throwable {
+		JsonRpcHttpClient client = new JsonRpcHttpClient(new URL(url, "/chunked"));
+		client.setHttpTransport(new UrlConnectionHttpTransport());
+		Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+		for (int i=0; i<3; i++) {
+			assertEquals("hello "+i, service.hello(String.valueOf(i)));
+		}
+	}
+
+	@Test
+	public void testClosedIdleConnectionsAreNotReused()
+		throws Throwable {
+		RawServer server = new RawServer(false);
+		try {
+			Service service = createService(server.url);
+			assertEquals("ok", service.hello("dude"));
+			Thread.sleep(100);
+			assertEquals("ok", service.hello("dude"));
+			assertEquals(2, transport.getCreated());
+			assertEquals(2, server.requests.get());
+		} finally {
+			server.close();
+		}
+	}
+
+	@Test
+	public void testSentRequestsAreNotRetried()
+		throws Throwable {
+		RawServer server = new RawServer(true);
+		try {
+			JsonRpcHttpClient client = new JsonRpcHttpClient(server.url);
+			client.setHttpTransport(transport);
+			assertEquals("ok", client.invoke("hello", new Object[] { "dude" }, String.class));
+			try {
+				client.invoke("hello", new Object[] { "dude" }, String.class);
+				fail();
+			} catch (IOException e) {
+				// the server hung up after reading it
+			}
+			assertEquals(1, transport.getCreated());
+			assertEquals(2, server.requests.get());
+		} finally {
+			server.close();
+		}
+	}
+
+	/**
+	 * A server that answers the first request of each connection and
+	 * then closes it, either straight away or after reading the next.
+	 */
+	private static class RawServer
+		implements Runnable {
+
+		private final ServerSocket serverSocket;
+		private final boolean readNext;
+		private final AtomicInteger requests = new AtomicInteger(0);
+		private final URL url;
+
+		private RawServer(boolean readNext)
+			throws IOException {
+			this.serverSocket = new ServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+			this.readNext = readNext;
+			this.url = new URL("http://127.0.0.1:"+serverSocket.getLocalPort()+"/");
+			Thread thread = new Thread(this);
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public void run() {
+			try {
+				while (true) {
+					Socket socket = serverSocket.accept();
+					InputStream input = new BufferedInputStream(socket.getInputStream());
+					readRequest(input);
+					byte[] body = "{\"jsonrpc\":\"2.0\",\"id\":1,\"result\":\"ok\"}".getBytes("UTF-8");
+					OutputStream output = socket.getOutputStream();
+					output.write(("HTTP/1.1 200 OK\r\nContent-Length: "+body.length+"\r\n\r\n").getBytes("UTF-8"));
+					output.write(body);
+					output.flush();
+					if (readNext) {
+						readRequest(input);
+					}
+					socket.close();
+				}
+			} catch (IOException e) {
+				// closed
+			}
+		}
+
+		private void readRequest(InputStream input)
+			throws IOException {
+			int contentLength = 0;
+			boolean chunked = false;
+			String header;
+			while ((header = readLine(input)).length()>0) {
+				if (header.toLowerCase().startsWith("content-length:")) {
+					contentLength = Integer.parseInt(header.substring(15).trim());
+				} else if (header.toLowerCase().startsWith("transfer-encoding:")) {
+					chunked = true;
+				}
+			}
+			if (chunked) {
+				int chunkSize;
+				while ((chunkSize = Integer.parseInt(readLine(input), 16))>0) {
+					skip(input, chunkSize);
+					readLine(input);
+				}
+				readLine(input);
+			} else {
+				skip(input, contentLength);
+			}
+			requests.incrementAndGet();
+		}
+
+		private String readLine(InputStream input)
+			throws IOException {
+			StringBuilder line = new StringBuilder();
+			int b;
+			while ((b = input.read())!='\n') {
+				if (b<0) {
+					throw new EOFException();
+				}
+				line.append((char)b);
+			}
+			return line.toString().trim();
+		}
+
+		private void skip(InputStream input, int length)
+			throws IOException {
+			for (int i=0; i<length; i++) {
+				if (input.read()<0) {
+					throw new EOFException();
+				}
+			}
+		}
+
+		private void close()
+			throws IOException {
+			serverSocket.close();
+		}
+	}
+
+	/**
+	 * @param serviceUrl the url
+	 * @return a proxy to the service that uses the transport
+	 */
+	private Service createService(URL serviceUrl) {
+		JsonRpcHttpClient client = new JsonRpcHttpClient(serviceUrl);
+		client.setHttpTransport(transport);
+		return ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, client);
+	}
+
+	public interface Service {
+		String hello(String name);
+	}
+
+	public static class ServiceImpl
+		implements Service {
+		public String hello(String name) {
+			return "hello "+name;
+		}
+	}
+
+}
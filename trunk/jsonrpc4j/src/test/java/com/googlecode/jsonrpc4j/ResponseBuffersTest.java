@@ -0,0 +1,92 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.JsonRpcServer.JsonRpcServerResponse;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.ContentLengthSetter;
+
+public class ResponseBuffersTest {
+
+	private ObjectMapper mapper;
+	private CountingOutputStream ops;
+	private int[] contentLength;
+	private ContentLengthSetter contentLengthSetter;
+
+	@Before
+	public void setUp() {
+		mapper = new ObjectMapper();
+		ops = new CountingOutputStream();
+		contentLength = new int[] { -1 };
+		contentLengthSetter = new ContentLengthSetter() {
+			public void setContentLength(int length) {
+				contentLength[0] = length;
+			}
+		};
+	}
+
+	@Test
+	public void testBufferedResponseHasContentLength()
+		throws Exception {
+		ResponseBuffers responseBuffers = new ResponseBuffers();
+		for (int i=0; i<3; i++) {
+			ops.reset();
+			responseBuffers.write(mapper, createResponse("hello"), ops, contentLengthSetter);
+
+			assertEquals(ops.size(), contentLength[0]);
+			assertEquals(1, ops.writes);
+			JsonNode node = mapper.readTree(ops.toByteArray());
+			assertEquals("hello", node.get("result").textValue());
+		}
+
+		// the buffers are recycled
+		assertEquals(2, responseBuffers.getPool().getHits());
+	}
+
+	@Test
+	public void testLargeResponseIsStreamed()
+		throws Exception {
+		ResponseBuffers responseBuffers = new ResponseBuffers(
+			new ByteBufferPool(false, 16, 64, 1024), 64);
+		StringBuilder result = new StringBuilder();
+		for (int i=0; i<100; i++) {
+			result.append("0123456789");
+		}
+		responseBuffers.write(mapper, createResponse(result.toString()), ops, contentLengthSetter);
+
+		assertEquals(-1, contentLength[0]);
+		assertTrue(ops.writes>1);
+		JsonNode node = mapper.readTree(ops.toByteArray());
+		assertEquals(result.toString(), node.get("result").textValue());
+	}
+
+	private JsonRpcServerResponse createResponse(String result) {
+		return new JsonRpcServerResponse("2.0", 1, result, mapper.writer());
+	}
+
+	private static class CountingOutputStream
+		extends ByteArrayOutputStream {
+
+		private int writes = 0;
+
+		@Override
+		public synchronized void write(byte[] b, int off, int len) {
+			writes++;
+			super.write(b, off, len);
+		}
+
+		@Override
+		public synchronized void reset() {
+			writes = 0;
+			super.reset();
+		}
+	}
+
+}
@@ -0,0 +1,59 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class ServiceMethodBindingTest {
+
+	@Test
+	public void testMapperCanBeConfiguredAfterBinding()
+		throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		ServiceMethodBinding binding = new ServiceMethodBinding(mapper,
+			new ServiceMethod(0, Service.class.getMethod("echo", Bean.class)));
+
+		// configured once the binding exists, but before it's used
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+		Bean bean = Bean.class.cast(binding.readParameter(0,
+			mapper.getJsonFactory().createJsonParser("{\"name\":\"dude\",\"unknown\":1}")));
+		assertEquals("dude", bean.name);
+	}
+
+	@Test
+	public void testServerSeesMapperConfiguredAfterCreation()
+		throws Exception {
+		ObjectMapper mapper = new ObjectMapper();
+		JsonRpcServer server = new JsonRpcServer(mapper, new ServiceImpl(), Service.class);
+		mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		server.handle(new ByteArrayInputStream((
+			"{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"echo\","
+			+"\"params\":[{\"name\":\"dude\",\"unknown\":1}]}").getBytes("UTF-8")), response);
+		assertEquals("dude", mapper.readTree(response.toByteArray()).get("result").get("name").textValue());
+	}
+
+	public interface Service {
+		Bean echo(Bean bean);
+	}
+
+	public static class ServiceImpl
+		implements Service {
+		public Bean echo(Bean bean) {
+			return bean;
+		}
+	}
+
+	public static class Bean {
+		public String name;
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.googlecode.jsonrpc4j;
+
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ServerSocketFactory;
+
+/**
+ * Compares the throughput of {@link StreamServer} on a pool of
+ * platform threads against virtual threads.  It isn't run as part
+ * of the build, run it with:
+ * <pre>
+ * java -cp ... com.googlecode.jsonrpc4j.StreamServerBenchmark [connections] [callsPerConnection] [maxThreads]
+ * </pre>
+ * With more connections than {@code maxThreads} the platform pool
+ * can only serve some of the clients at a time.
+ */
+public class StreamServerBenchmark {
+
+	public static void main(String[] args)
+		throws Exception {
+		int connections	= args.length>0 ? Integer.parseInt(args[0]) : 200;
+		int calls		= args.length>1 ? Integer.parseInt(args[1]) : 500;
+		int maxThreads	= args.length>2 ? Integer.parseInt(args[2]) : 50;
+
+		// warm up, then measure
+		run(StreamServer.ThreadMode.PLATFORM, Math.min(connections, maxThreads), calls, maxThreads);
+		report(StreamServer.ThreadMode.PLATFORM, connections, calls, maxThreads);
+		if (VirtualThreads.isSupported()) {
+			run(StreamServer.ThreadMode.VIRTUAL, Math.min(connections, maxThreads), calls, maxThreads);
+			report(StreamServer.ThreadMode.VIRTUAL, connections, calls, maxThreads);
+		} else {
+			System.out.println("VIRTUAL: not supported by this runtime");
+		}
+	}
+
+	private static void report(
+		StreamServer.ThreadMode threadMode, int connections, int calls, int maxThreads)
+		throws Exception {
+		long nanos = run(threadMode, connections, calls, maxThreads);
+		double seconds = nanos/1e9;
+		System.out.println(String.format(
+			"%s: %d connections x %d calls in %.2f s, %.0f calls/s",
+			threadMode, connections, calls, seconds, connections*(double)calls/seconds));
+	}
+
+	private static long run(
+		StreamServer.ThreadMode threadMode, int connections, final int calls, int maxThreads)
+		throws Exception {
+		ServerSocket serverSocket = ServerSocketFactory.getDefault()
+			.createServerSocket(0, connections, InetAddress.getByName("127.0.0.1"));
+		JsonRpcServer jsonRpcServer = new JsonRpcServer(new EchoImpl(), Echo.class);
+		StreamServer streamServer = new StreamServer(jsonRpcServer, maxThreads, serverSocket, threadMode);
+		streamServer.start();
+		try {
+
+			// connect the clients
+			final JsonRpcClient jsonRpcClient = new JsonRpcClient();
+			final Socket[] sockets = new Socket[connections];
+			for (int i=0; i<connections; i++) {
+				sockets[i] = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+			}
+
+			// call away
+			final CountDownLatch start = new CountDownLatch(1);
+			final CountDownLatch done = new CountDownLatch(connections);
+			final AtomicLong failures = new AtomicLong();
+			for (int i=0; i<connections; i++) {
+				final Socket socket = sockets[i];
+				Thread client = new Thread(new Runnable() {
+					public void run() {
+						try {
+							Echo echo = ProxyUtil.createClientProxy(
+								StreamServerBenchmark.class.getClassLoader(), Echo.class,
+								jsonRpcClient, socket);
+							start.await();
+							for (int j=0; j<calls; j++) {
+								echo.echo(j);
+							}
+						} catch (Throwable t) {
+							failures.incrementAndGet();
+						} finally {
+
+							// hang up so a platform thread is freed for the next client
+							try {
+								socket.close();
+							} catch (Exception e) { /* no-op */ }
+							done.countDown();
+						}
+					}
+				});
+				client.setDaemon(true);
+				client.start();
+			}
+			long started = System.nanoTime();
+			start.countDown();
+			done.await();
+			long elapsed = System.nanoTime()-started;
+			for (Socket socket : sockets) {
+				socket.close();
+			}
+			if (failures.get()>0) {
+				System.out.println(threadMode+": "+failures.get()+" clients failed");
+			}
+			return elapsed;
+		} finally {
+			streamServer.stop();
+		}
+	}
+
+	public static interface Echo {
+		int echo(int value);
+	}
+
+	public static class EchoImpl
+		implements Echo {
+		public int echo(int value) {
+			return value;
+		}
+	}
+
+}
@@ -1,10 +1,21 @@
 package com.googlecode.jsonrpc4j;
 
 import static org.junit.Assert.*;
+import static org.junit.Assume.assumeTrue;
 
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.InetAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketException;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -13,11 +24,17 @@ import javax.net.ServerSocketFactory;
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
 public class StreamServerTest {
 
 	private ServerSocket serverSocket;
 	private JsonRpcServer jsonRpcServer;
 	private JsonRpcClient jsonRpcClient;
+	private CountDownLatch sleeping;
 
 	@Before
 	public void setUp()
@@ -25,6 +42,7 @@ public class StreamServerTest {
 		serverSocket = ServerSocketFactory.getDefault().createServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
 		jsonRpcServer = new JsonRpcServer(new ServiceImpl(), Service.class);
 		jsonRpcClient = new JsonRpcClient();
+		sleeping = new CountDownLatch(1);
 	}
 
 	@Test
@@ -57,6 +75,423 @@ public class StreamServerTest {
 		streamServer.stop();
 	}
 
+	@Test
+	public void testWireCodecIsDetectedPerConnection()
+		throws Exception {
+
+		// the server peeks at each connection's first byte
+		WireCodec codec = new WireCodec("test", new JsonFactory(),
+			new String[] { "application/x-test" }, new int[] { 0x01 });
+		jsonRpcServer.setWireCodecs(Arrays.asList(codec));
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.start();
+
+		// one client in JSON, one in the other codec
+		JsonRpcClient codecClient = new JsonRpcClient();
+		codecClient.setWireCodec(codec);
+		Socket socket1 = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		Socket socket2 = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		Service service1 = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, jsonRpcClient, socket1);
+		Service service2 = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class, codecClient, socket2);
+		for (int i=0; i<10; i++) {
+			assertEquals("hello "+i, service1.hello(String.valueOf(i)));
+			assertEquals("hello "+i, service2.hello(String.valueOf(i)));
+		}
+
+		socket1.close();
+		socket2.close();
+		streamServer.stop();
+	}
+
+	@Test
+	public void testVirtualThreads()
+		throws Exception {
+		assumeTrue(VirtualThreads.isSupported());
+
+		// create and start the server
+		StreamServer streamServer = new StreamServer(
+			jsonRpcServer, 0, serverSocket, StreamServer.ThreadMode.VIRTUAL);
+		streamServer.start();
+
+		// more clients than a platform server would have threads for
+		Service[] services = new Service[20];
+		Socket[] sockets = new Socket[20];
+		for (int i=0; i<services.length; i++) {
+			sockets[i] = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+			services[i] = ProxyUtil.createClientProxy(
+				this.getClass().getClassLoader(), Service.class,
+				jsonRpcClient, sockets[i]);
+		}
+		for (int i=0; i<services.length; i++) {
+			assertEquals("hello "+i, services[i].hello(String.valueOf(i)));
+		}
+
+		// disconnect clients
+		for (int i=0; i<sockets.length; i++) {
+			sockets[i].close();
+		}
+
+		// stop it
+		streamServer.stop();
+	}
+
+	@Test
+	public void testPipelinedRequests()
+		throws Exception {
+
+		// create and start the server
+		ExecutorService pipelineExecutor = Executors.newFixedThreadPool(4);
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.setPipelineExecutor(pipelineExecutor);
+		streamServer.start();
+
+		// send a slow request followed by a fast one
+		Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		OutputStream ops = socket.getOutputStream();
+		ops.write((
+			"{\"jsonrpc\":\"2.0\",\"method\":\"sleep\",\"params\":[500],\"id\":1}"
+			+"{\"jsonrpc\":\"2.0\",\"method\":\"hello\",\"params\":[\"dude\"],\"id\":2}")
+			.getBytes("UTF-8"));
+		ops.flush();
+
+		// the fast one isn't held up by the slow one
+		ObjectMapper mapper = new ObjectMapper();
+		InputStream ips = socket.getInputStream();
+		JsonParser parser = mapper.getJsonFactory().createJsonParser(ips);
+		JsonNode first = mapper.readTree(parser);
+		assertEquals(2, first.get("id").intValue());
+		assertEquals("hello dude", first.get("result").textValue());
+		JsonNode second = mapper.readTree(parser);
+		assertEquals(1, second.get("id").intValue());
+		assertEquals(500, second.get("result").intValue());
+
+		// disconnect
+		socket.close();
+
+		// stop it
+		streamServer.stop();
+		pipelineExecutor.shutdown();
+	}
+
+	@Test
+	public void testFramedConnections()
+		throws Exception {
+		MessageFraming[] framings = new MessageFraming[] {
+			MessageFraming.NewlineDelimited.INSTANCE,
+			MessageFraming.LengthPrefixed.INSTANCE,
+			MessageFraming.ContentLengthHeader.INSTANCE
+		};
+		for (MessageFraming framing : framings) {
+			ServerSocket framedSocket = ServerSocketFactory.getDefault()
+				.createServerSocket(0, 0, InetAddress.getByName("127.0.0.1"));
+
+			// create and start the server
+			StreamServer streamServer = new StreamServer(jsonRpcServer, 5, framedSocket);
+			streamServer.setFraming(framing);
+			streamServer.start();
+
+			// create and connect with a client
+			Socket socket = new Socket(framedSocket.getInetAddress(), framedSocket.getLocalPort());
+			Service service = ProxyUtil.createClientProxy(
+				this.getClass().getClassLoader(), Service.class,
+				jsonRpcClient, socket, framing);
+
+			// invoke
+			for (int i=0; i<10; i++) {
+				assertEquals("hello "+i, service.hello(String.valueOf(i)));
+			}
+
+			// disconnect
+			socket.close();
+
+			// stop it
+			streamServer.stop();
+		}
+	}
+
+	@Test
+	public void testConnectionsOverLimitAreRejected()
+		throws Exception {
+
+		// create and start the server
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 1, serverSocket);
+		streamServer.setMaxConnections(1);
+		streamServer.start();
+
+		// the first client gets in
+		Socket socket1 = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		Service service1 = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class,
+			jsonRpcClient, socket1);
+		assertEquals("hello dude", service1.hello("dude"));
+		assertEquals(1, streamServer.getActiveConnections());
+
+		// the second is told there's no room and hung up on
+		Socket socket2 = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		JsonNode response = new ObjectMapper().readTree(new NoCloseInputStream(socket2.getInputStream()));
+		assertEquals(StandardJsonError.SERVER_ERROR.getJsonCode(),
+			response.get("error").get("code").intValue());
+		assertEquals(-1, socket2.getInputStream().read());
+		assertEquals(1, streamServer.getRejectedConnections());
+
+		// the first is still served
+		assertEquals("hello again", service1.hello("again"));
+
+		// disconnect
+		socket1.close();
+		socket2.close();
+
+		// stop it
+		streamServer.stop();
+	}
+
+	@Test
+	public void testPipelinedRequestsOverLimitAreRejected()
+		throws Exception {
+
+		// create and start the server with room for a single request
+		ThreadPoolExecutor pipelineExecutor = new ThreadPoolExecutor(
+			1, 1, 0L, TimeUnit.MILLISECONDS, new SynchronousQueue<Runnable>());
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.setPipelineExecutor(pipelineExecutor);
+		streamServer.start();
+
+		// send a slow request followed by a fast one
+		Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		OutputStream ops = socket.getOutputStream();
+		ops.write((
+			"{\"jsonrpc\":\"2.0\",\"method\":\"sleep\",\"params\":[500],\"id\":1}"
+			+"{\"jsonrpc\":\"2.0\",\"method\":\"hello\",\"params\":[\"dude\"],\"id\":2}")
+			.getBytes("UTF-8"));
+		ops.flush();
+
+		// the fast one is turned away straight away
+		ObjectMapper mapper = new ObjectMapper();
+		JsonParser parser = mapper.getJsonFactory().createJsonParser(socket.getInputStream());
+		JsonNode first = mapper.readTree(parser);
+		assertEquals(2, first.get("id").intValue());
+		assertEquals(StandardJsonError.SERVER_ERROR.getJsonCode(),
+			first.get("error").get("code").intValue());
+		JsonNode second = mapper.readTree(parser);
+		assertEquals(1, second.get("id").intValue());
+		assertEquals(1, streamServer.getRejectedRequests());
+
+		// disconnect
+		socket.close();
+
+		// stop it
+		streamServer.stop();
+		pipelineExecutor.shutdown();
+	}
+
+	@Test
+	public void testDrainFinishesInFlightRequests()
+		throws Exception {
+
+		// create and start the server
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.start();
+
+		// an idle client and a busy one
+		Socket idleSocket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		Service idleService = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class,
+			jsonRpcClient, idleSocket);
+		assertEquals("hello dude", idleService.hello("dude"));
+		Socket busySocket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		final Service busyService = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class,
+			jsonRpcClient, busySocket);
+		final long[] result = new long[1];
+		Thread busy = new Thread(new Runnable() {
+			public void run() {
+				result[0] = busyService.sleep(500);
+			}
+		});
+		busy.start();
+		sleeping.await();
+
+		// the in-flight call finishes and the idle client is let go
+		streamServer.drain(5000);
+		busy.join();
+		assertEquals(500, result[0]);
+		assertEquals(-1, idleSocket.getInputStream().read());
+		assertEquals(1, streamServer.getDrainedRequests());
+		assertEquals(0, streamServer.getAbortedRequests());
+		assertFalse(streamServer.isStarted());
+
+		// disconnect
+		idleSocket.close();
+		busySocket.close();
+	}
+
+	@Test
+	public void testDrainAbortsRequestsPastTheDeadline()
+		throws Exception {
+
+		// create and start the server
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.start();
+
+		// a call that takes longer than the drain
+		Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		final Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class,
+			jsonRpcClient, socket);
+		Thread busy = new Thread(new Runnable() {
+			public void run() {
+				try {
+					service.sleep(5000);
+				} catch (Throwable t) {
+					// expected
+				}
+			}
+		});
+		busy.setDaemon(true);
+		busy.start();
+		sleeping.await();
+
+		streamServer.drain(100);
+		assertEquals(1, streamServer.getAbortedRequests());
+		assertFalse(streamServer.isStarted());
+
+		// disconnect
+		socket.close();
+	}
+
+	@Test
+	public void testDrainAbortsQueuedConnections()
+		throws Exception {
+
+		// create and start the server, with a thread for one client
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 1, serverSocket);
+		streamServer.start();
+
+		// a busy client holds the thread
+		Socket busySocket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		final Service busyService = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class,
+			jsonRpcClient, busySocket);
+		final long[] result = new long[1];
+		Thread busy = new Thread(new Runnable() {
+			public void run() {
+				result[0] = busyService.sleep(500);
+			}
+		});
+		busy.start();
+		sleeping.await();
+
+		// another sends a request while waiting for the thread
+		Socket queuedSocket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		queuedSocket.getOutputStream().write(
+			"{\"jsonrpc\":\"2.0\",\"method\":\"hello\",\"params\":[\"dude\"],\"id\":1}"
+			.getBytes("UTF-8"));
+		queuedSocket.getOutputStream().flush();
+		for (int i=0; i<500 && streamServer.getQueuedConnections()==0; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(1, streamServer.getQueuedConnections());
+
+		// the in-flight call finishes, the queued one is hung up on
+		streamServer.drain(5000);
+		busy.join();
+		assertEquals(500, result[0]);
+		try {
+			assertEquals(-1, queuedSocket.getInputStream().read());
+		} catch (SocketException e) {
+			// reset, its request was never read
+		}
+		assertEquals(1, streamServer.getDrainedRequests());
+		assertEquals(1, streamServer.getAbortedRequests());
+		assertEquals(0, streamServer.getActiveConnections());
+
+		// disconnect
+		busySocket.close();
+		queuedSocket.close();
+	}
+
+	@Test
+	public void testIdleConnectionsAreClosed()
+		throws Exception {
+
+		// create and start the server
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.setIdleTimeout(300);
+		streamServer.start();
+
+		// a call, then nothing
+		Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		socket.setSoTimeout(5000);
+		Service service = ProxyUtil.createClientProxy(
+			this.getClass().getClassLoader(), Service.class,
+			jsonRpcClient, socket);
+		assertEquals("hello dude", service.hello("dude"));
+
+		assertEquals(-1, socket.getInputStream().read());
+		assertEquals(1, streamServer.getIdleTimeouts());
+		assertEquals(0, streamServer.getReadTimeouts());
+
+		// stop the server
+		socket.close();
+		streamServer.stop();
+	}
+
+	@Test
+	public void testStalledRequestsAreClosed()
+		throws Exception {
+
+		// create and start the server
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.setIdleTimeout(60000);
+		streamServer.setReadTimeout(300);
+		streamServer.start();
+
+		// half a request, then nothing
+		Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		socket.setSoTimeout(5000);
+		socket.getOutputStream().write("{\"jsonrpc\":\"2.0\",".getBytes("UTF-8"));
+		socket.getOutputStream().flush();
+
+		assertEquals(-1, socket.getInputStream().read());
+		assertEquals(1, streamServer.getReadTimeouts());
+		assertEquals(0, streamServer.getIdleTimeouts());
+
+		// stop the server
+		socket.close();
+		streamServer.stop();
+	}
+
+	@Test
+	public void testSlowRequestsAreNotClosed()
+		throws Exception {
+
+		// create and start the server
+		StreamServer streamServer = new StreamServer(jsonRpcServer, 5, serverSocket);
+		streamServer.setReadTimeout(300);
+		streamServer.start();
+
+		// a request that takes longer than the timeout, no read blocking for as long
+		Socket socket = new Socket(serverSocket.getInetAddress(), serverSocket.getLocalPort());
+		socket.setSoTimeout(5000);
+		String request = "{\"jsonrpc\":\"2.0\",\"id\":1,\"method\":\"hello\",\"params\":[\"dude\"]}";
+		OutputStream ops = socket.getOutputStream();
+		for (int i=0; i<request.length(); i+=8) {
+			ops.write(request.substring(i, Math.min(i+8, request.length())).getBytes("UTF-8"));
+			ops.flush();
+			Thread.sleep(100);
+		}
+
+		JsonNode response = new ObjectMapper().readTree(socket.getInputStream());
+		assertEquals("hello dude", response.get("result").asText());
+		assertEquals(0, streamServer.getReadTimeouts());
+
+		// stop the server
+		socket.close();
+		streamServer.stop();
+	}
+
 	@Test
 	public void testMultipleClients()
 		throws Exception {
@@ -134,6 +569,7 @@ public class StreamServerTest {
 
 	private static interface Service {
 		String hello(String whatever);
+		long sleep(long millis);
 		int inc();
 		void reset();
 	}
@@ -147,6 +583,16 @@ public class StreamServerTest {
 			return "hello "+whatever;
 		}
 
+		public long sleep(long millis) {
+			sleeping.countDown();
+			try {
+				Thread.sleep(millis);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			return millis;
+		}
+
 		public int inc() {
 			LOGGER.log(Level.INFO, "server: inc():"+val);
 			return val++;
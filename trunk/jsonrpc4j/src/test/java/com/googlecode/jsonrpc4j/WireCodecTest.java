@@ -0,0 +1,117 @@
+package com.googlecode.jsonrpc4j;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.googlecode.jsonrpc4j.OutputStreamWrapper.BasicOutputStreamWrapper;
+
+public class WireCodecTest {
+
+	private ObjectMapper mapper;
+	private JsonRpcServer server;
+	private WireCodec codec;
+
+	@Before
+	public void setUp() {
+		mapper = new ObjectMapper();
+		server = new JsonRpcServer(mapper, new Service(), ServiceInterface.class);
+		codec = new WireCodec("test", new JsonFactory(),
+			new String[] { "application/x-test" }, new int[] { 0x01, 0xA0 });
+		server.setWireCodecs(Arrays.asList(codec));
+	}
+
+	@Test
+	public void testContentTypeNegotiation() {
+		assertSame(codec, server.findWireCodec("application/x-test; charset=UTF-8"));
+		assertSame(WireCodec.JSON, server.findWireCodec("application/json"));
+		assertSame(WireCodec.JSON, server.findWireCodec(null));
+		assertSame(codec, server.negotiateWireCodec("application/x-test, */*", WireCodec.JSON));
+		assertSame(WireCodec.JSON, server.negotiateWireCodec("application/json, application/x-test", codec));
+		assertSame(codec, server.negotiateWireCodec("*/*", codec));
+		assertSame(codec, server.negotiateWireCodec(null, codec));
+	}
+
+	@Test
+	public void testFirstByteDetection() {
+		assertSame(WireCodec.JSON, server.detectWireCodec('{'));
+		assertSame(WireCodec.JSON, server.detectWireCodec(' '));
+		assertSame(codec, server.detectWireCodec(0xA0));
+		assertSame(WireCodec.JSON, server.detectWireCodec(0xFF));
+		assertTrue(codec.matchesFirstByte((byte)0xA0));
+		assertFalse(codec.matchesFirstByte('['));
+	}
+
+	@Test
+	public void testRoundTripInCodec()
+		throws Throwable {
+		JsonRpcClient client = new JsonRpcClient(mapper);
+		client.setWireCodec(codec);
+		ByteArrayOutputStream request = new ByteArrayOutputStream();
+		client.invoke("hello", new Object[] { "dude" }, request);
+
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		server.handle(new ByteArrayInputStream(request.toByteArray()), codec,
+			new BasicOutputStreamWrapper(mapper, codec, response));
+		assertEquals("hello dude", client.readResponse(String.class,
+			new ByteArrayInputStream(response.toByteArray())));
+	}
+
+	@Test
+	public void testRoundTripInSmile()
+		throws Throwable {
+		WireCodec smile = WireCodec.smile();
+		assertEquals("application/x-jackson-smile", smile.getContentType());
+		assertFalse(smile.isText());
+		server.setWireCodecs(Arrays.asList(smile));
+
+		JsonRpcClient client = new JsonRpcClient(mapper);
+		client.setWireCodec(smile);
+		ByteArrayOutputStream request = new ByteArrayOutputStream();
+		client.invoke("hello", new Object[] { "dude" }, request);
+		byte[] requestBytes = request.toByteArray();
+		assertTrue(smile.matchesFirstByte(requestBytes[0]));
+		assertSame(smile, server.detectWireCodec(requestBytes[0]));
+		assertSame(smile, server.findWireCodec("application/x-jackson-smile"));
+
+		ByteArrayOutputStream response = new ByteArrayOutputStream();
+		server.handle(new ByteArrayInputStream(requestBytes), smile,
+			new BasicOutputStreamWrapper(mapper, smile, response));
+		byte[] responseBytes = response.toByteArray();
+		assertEquals(':', responseBytes[0]);
+		assertEquals("hello dude", client.readResponse(String.class,
+			new ByteArrayInputStream(responseBytes)));
+	}
+
+	@Test
+	public void testBinaryCodecsNeedTheirFactories() {
+		try {
+			WireCodec.messagePack();
+			assertTrue(false);
+		} catch (UnsupportedOperationException expected) {
+			// jackson-dataformat-msgpack isn't on the classpath
+		}
+	}
+
+	public interface ServiceInterface {
+		String hello(String name);
+	}
+
+	public static class Service
+		implements ServiceInterface {
+		public String hello(String name) {
+			return "hello "+name;
+		}
+	}
+
+}